@@ -6,21 +6,36 @@
 package com.protonmail.sarahszabo.stellar;
 
 import com.protonmail.sarahszabo.stellar.conversions.StellarFFMPEGTimeStamp;
+import com.protonmail.sarahszabo.stellar.conversions.StellarHyperspace;
+import com.protonmail.sarahszabo.stellar.conversions.converters.ConversionPath;
+import com.protonmail.sarahszabo.stellar.daemon.DaemonProtocol;
+import com.protonmail.sarahszabo.stellar.daemon.StellarClient;
+import com.protonmail.sarahszabo.stellar.daemon.StellarDaemon;
 import com.protonmail.sarahszabo.stellar.conversions.converters.StellarOPUSConverter;
+import com.protonmail.sarahszabo.stellar.conversions.converters.standardformconverter.StandardFormScan;
 import com.protonmail.sarahszabo.stellar.conversions.converters.standardformconverter.StellarStandardFormConverter;
+import com.protonmail.sarahszabo.stellar.metadata.ConverterMetadata;
 import com.protonmail.sarahszabo.stellar.metadata.ConverterMetadataBuilder;
+import com.protonmail.sarahszabo.stellar.metadata.opus.OpusTagsRewriter;
+import com.protonmail.sarahszabo.stellar.util.FileExtension;
+import com.protonmail.sarahszabo.stellar.util.HeadlessPrompts;
+import com.protonmail.sarahszabo.stellar.util.JobContext;
 import com.protonmail.sarahszabo.stellar.util.StellarCLIUtils;
 import com.protonmail.sarahszabo.stellar.util.StellarGravitonField;
+import com.protonmail.sarahszabo.stellar.util.StellarLoggingFormatter;
 import static com.protonmail.sarahszabo.stellar.util.StellarGravitonField.*;
-import com.protonmail.sarahszabo.stellar.util.StellarGreatFilter;
+import com.protonmail.sarahszabo.stellar.util.RegionScan;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -48,13 +63,35 @@ public class Main {
     /**
      * The logger for this class
      */
-    public static final Logger logger = Logger.getLogger(Main.class.getName());
+    public static final Logger logger = StellarLoggingFormatter.forClass(Main.class);
 
     /**
      * @param args the command line arguments
      * @throws java.io.IOException If something went wrong
      */
     public static void main(String[] args) throws IOException {
+        //--headless, --yes, --files=... and friends answer prompts, they aren't part of the grammar below
+        args = HeadlessPrompts.applyFlags(args);
+        reportStartup(args);
+        if (args.length == 1 && args[0].equalsIgnoreCase("Daemon")) {
+            StellarDaemon.DAEMON.serve(DaemonProtocol.getSocketPath());
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("Daemon") && args[1].equalsIgnoreCase("Stop")) {
+            StellarClient.main(args);
+        } else {
+            run(args);
+        }
+        StellarCLIUtils.shutdownUI();
+        System.exit(0);
+    }
+
+    /**
+     * Runs one command of the command line grammar, without exiting. The
+     * daemon runs its clients' commands through here.
+     *
+     * @param args The command line arguments, without the flags
+     * @throws java.io.IOException If something went wrong
+     */
+    public static void run(String... args) throws IOException {
         //We have to check greater than section first, then we check integer comparison
         //Odd Number of Entries >= 3 (URL, timestamp0 timestamp1 timestamp2 timestamp3
         if (args.length >= 3 && argIsLink(args[0]) && (args.length + 1) % 2 == 0
@@ -74,11 +111,18 @@ public class Main {
             } //Get From Clipboard
             else if (args[0].equalsIgnoreCase("-CL")) {
                 StellarMode.GET_FROM_CLIPBOARD.start(args);
+            } //Get From Clipboard, Keeping a Lossless Archive Copy
+            else if (args[0].equalsIgnoreCase("-CL-ARCHIVE")) {
+                StellarMode.CLIPBOARD_ARCHIVE.start(args);
             } else if (args[0].equalsIgnoreCase("-TO_STANDARD_FORM")) {
                 handleToStandardForm();
             } //Initiate Region Scan, Applying all filters from grand filter
             else if (args[0].equalsIgnoreCase("Region-Scan")) {
-                StellarGreatFilter.filterPaths(StellarCLIUtils.getFilesFromClipboard().get());
+                RegionScan scan = RegionScan.plan(StellarCLIUtils.getFilesFromClipboard().get(), getRegionScanJournal());
+                System.out.println("Region-Scan Renamed: " + scan.apply() + " Files, Journal: " + scan.getJournal());
+            } //Finish the Conversion Batches of a JVM That Died
+            else if (args[0].equalsIgnoreCase("Resume")) {
+                resumeConversions();
             } //Ask For Status of Folder Paths
             else if (args[0].equalsIgnoreCase("Status")) {
                 System.out.println(StellarDiskManager.DISKMANAGER.getState());
@@ -97,23 +141,36 @@ public class Main {
                 else {
                     stellarConversion(StellarMode.CLIPBOARD_SAME_ARTIST, args);
                 }
+            } //Finish or Undo an Interrupted Region-Scan
+            else if (args[0].equalsIgnoreCase("Region-Scan")) {
+                RegionScan scan = RegionScan.resume(getRegionScanJournal());
+                if (args[1].equalsIgnoreCase("Resume")) {
+                    System.out.println("Region-Scan Renamed: " + scan.apply() + " Files");
+                } else if (args[1].equalsIgnoreCase("Rollback")) {
+                    System.out.println("Region-Scan Restored: " + scan.rollback() + " Files");
+                } else {
+                    printHelp();
+                }
             }//Change Settings
             else if (args[0].equalsIgnoreCase("Set")) {
                 if (args[1].equalsIgnoreCase("Pictures-Folder")) {
                     Path path = StellarCLIUtils.getFolderFor("Picture Folder")
                             .orElse(StellarDiskManager.USER_DIR);
                     StellarDiskManager.setPictureOutputFolder(path);
-                    messageThenExit("Picture Folder Changed To:" + path);
+                    logger.info("Picture Folder Changed To:" + path);
+                    return;
                 } else if (args[1].equalsIgnoreCase("Output-Folder")) {
                     Path path = StellarCLIUtils.getFolderFor("Output Folder")
                             .orElse(StellarDiskManager.USER_DIR);
                     StellarDiskManager.setOutputFolder(path);
-                    messageThenExit("Output Folder Changed To: " + path);
+                    logger.info("Output Folder Changed To: " + path);
+                    return;
                 } else if (args[1].equalsIgnoreCase("Space-Bridge-Folder")) {
                     Path path = StellarCLIUtils.getFolderFor("Space-Bridge Folder")
                             .orElse(StellarDiskManager.USER_DIR);
                     StellarDiskManager.setSpaceBridgeDirectory(path);
-                    messageThenExit("Space-Bridge Folder Changed To: " + path);
+                    logger.info("Space-Bridge Folder Changed To: " + path);
+                    return;
                 } //Set Picture Metadata
                 if (args[1].equalsIgnoreCase("Album-Art")) {
                     Path imageFile = StellarCLIUtils.getFile("Select an Image File",
@@ -124,11 +181,21 @@ public class Main {
                     if (files.isEmpty()) {
                         throw new IllegalStateException("Attempt to set album art with null clipboard opus file or null image selected");
                     }
+                    //Read the tags of everything that needs a re-encode up front, a chunk of files per exiftool
+                    Map<Path, ConverterMetadata> existing = StellarDiskManager.getMetadata(files.stream()
+                            .filter(path -> !path.getFileName().toString().toLowerCase().endsWith(FileExtension.OPUS.toString()))
+                            .collect(Collectors.toList()));
                     files.parallelStream().forEach(path -> {
                         try {
+                            //.opus files only need their picture comment swapped, no re-encode
+                            if (path.getFileName().toString().toLowerCase().endsWith(FileExtension.OPUS.toString())) {
+                                OpusTagsRewriter.rewrite(path, StellarDiskManager.getOutputFolder().resolve(path.getFileName()),
+                                        tags -> tags.setPicture(imageFile));
+                                return;
+                            }
                             //Get metadata from file
                             ConverterMetadataBuilder metadata
-                                    = new ConverterMetadataBuilder(StellarDiskManager.getMetadata(path));
+                                    = new ConverterMetadataBuilder(existing.get(path));
                             //Set to new image
                             metadata.albumArtPath(imageFile);
                             //Map new metadata to opus file
@@ -154,51 +221,71 @@ public class Main {
         } else {
             printHelp();
         }
-        StellarCLIUtils.shutdownUI();
-        System.exit(0);
     }
 
     /**
-     * Scans the current directory for malformatted filenames: multiple "-"
-     * characters. Exits if it finds one.
+     * Reports how long the JVM took to get to the command, with
+     * -Dstellar.startup.report=true. The StartupHarness of the benchmarks
+     * reads this line.
+     *
+     * @param args The command line arguments
      */
-    private static String scanForMalformattedFilenamesString(Path currentDir) throws IOException {
-        System.out.println("\nBeginning Scan for Malformatted Filenames");
-        var files = Files.list(currentDir);
-        var malformedList = new ArrayList<Path>(100);
-        files.parallel().map(path -> new StellarStandardFormConverter(path, path.getParent()))
-                .filter(converter -> !converter.isConversionCandidate())
-                .forEach(converter -> malformedList.add(converter.getInputFile()));
-        if (!malformedList.isEmpty()) {
-            StellarGravitonField.hyperlightMessage("The following files are malformed (multiple \"-\" characters):\n\n"
-                    + malformedList.stream().map(Path::toString).collect(Collectors.joining("\n"))
-                    + "\n\nIndexing Disabled for these files");
-            return StellarGravitonField.hyperlightMessageString("The following files are malformed (multiple \"-\" characters):\n\n"
-                    + malformedList.stream().map(Path::toString).collect(Collectors.joining("\n"))
-                    + "\n\nIndexing Disabled for these files");
+    private static void reportStartup(String[] args) {
+        if (Boolean.getBoolean("stellar.startup.report")) {
+            long millis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+            System.err.println("Stellar Startup: " + millis + " ms to " + String.join(" ", args)
+                    + (HeadlessPrompts.isHeadless() ? " (Headless)" : ""));
+        }
+    }
+
+    /**
+     * Finishes the conversion batches left behind by a JVM that died, then
+     * lists the output files. Nothing finished is converted again.
+     */
+    private static void resumeConversions() {
+        List<Path> finalPaths = StellarHyperspace.resumeConversionTasks().stream().map(future -> {
+            try {
+                return future.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                logger.log(Level.SEVERE, "A resumed conversion failed", ex);
+                return null;
+            }
+        }).filter(Objects::nonNull).collect(Collectors.toList());
+        if (finalPaths.isEmpty()) {
+            logger.info("There are no interrupted conversions to resume");
+            return;
         }
-        System.out.println("Scan completed. No malformed filenames detected\n");
-        return "Scan completed. No malformed filenames detected\n";
+        logger.info("\n\n\nCompleted Output Files:");
+        finalPaths.forEach(System.out::println);
+        logger.info(ConversionPath.report());
+    }
+
+    /**
+     * Gets the Region-Scan journal of the current directory.
+     *
+     * @return The journal path
+     */
+    private static Path getRegionScanJournal() {
+        return JobContext.getWorkingDirectory().resolve(RegionScan.JOURNAL_NAME);
     }
 
     /**
      * Scans the current directory for malformatted filenames: multiple "-"
-     * characters. Exits if it finds one.
+     * characters. Only the filenames are looked at, and the result is kept for
+     * the conversion.
+     *
+     * @param currentDir The directory to scan
+     * @return The scan result
      */
-    private static void scanForMalformattedFilenames(Path currentDir) throws IOException {
+    private static StandardFormScan scanForMalformattedFilenames(Path currentDir) throws IOException {
         System.out.println("\nBeginning Scan for Malformatted Filenames");
-        var files = Files.list(currentDir);
-        var malformedList = new ArrayList<Path>(100);
-        files.parallel().map(path -> new StellarStandardFormConverter(path, path.getParent()))
-                .filter(converter -> !converter.isConversionCandidate())
-                .forEach(converter -> malformedList.add(converter.getInputFile()));
-        if (!malformedList.isEmpty()) {
-            StellarGravitonField.hyperlightMessage("The following files are malformed (multiple \"-\" characters):\n\n"
-                    + malformedList.stream().map(Path::toString).collect(Collectors.joining("\n"))
-                    + "\n\nIndexing Disabled for these files");
+        var scan = StandardFormScan.scan(currentDir);
+        if (!scan.getMalformed().isEmpty()) {
+            StellarGravitonField.hyperlightMessage(scan.getReport());
         } else {
-            System.out.println("Scan completed. No malformed filenames detected\n");
+            System.out.println(scan.getReport());
         }
+        return scan;
     }
 
     /**
@@ -207,27 +294,19 @@ public class Main {
      */
     private static void handleToStandardForm() throws IOException {
         //TODO: If the title tag has ARTIST - TITLE in it, auto-correct to just TITLE, same for the artist tag field
-        var currentDir = System.getProperty("user.dir");
+        var currentDir = JobContext.getWorkingDirectory().toString();
         System.out.println("Current Directory: " + currentDir);
         //Scan for malformatted filenames <multiple "-"> / no file extension. This prints a list to the terminal if there are detected
-        var malformatted = scanForMalformattedFilenamesString(Paths.get(currentDir));
+        var scan = scanForMalformattedFilenames(Paths.get(currentDir));
         //UI for confirmation
         var response = StellarCLIUtils.showConfirmationDialog("Current Directory: " + currentDir
-                + "\n\n" + malformatted
+                + "\n\n" + (scan.getMalformed().isEmpty() ? scan.getReport() : StellarGravitonField.hyperlightMessageString(scan.getReport()))
                 + "\n\nAre all the files in this folder in ARTIST - FILENAME.EXTENSION format and are ready to be changed?");
         if (response) {
-            //List for duplicate files to watch out for at the end
-            var duplicateList = new ArrayList<Path>(10);
-            Files.list(Paths.get(currentDir)).parallel()
-                    //No directories
-                    .filter(path -> !Files.isDirectory(path) && StellarStandardFormConverter.isFiletypeCandidate(path.getFileName().toString()))
-                    .map(file -> new StellarStandardFormConverter(file, file.getParent()))
-                    .forEach(converter -> {
-                        converter.convert();
-                        if (converter.hadDuplicate()) {
-                            duplicateList.add(converter.getDestinationFile());
-                        }
-                    });
+            //List for duplicate files to watch out for at the end, one kid3-cli session per batch of files
+            var duplicateList = StellarStandardFormConverter.convertAll(scan.getFiles(), Paths.get(currentDir)).stream()
+                    .filter(StellarStandardFormConverter::hadDuplicate).map(StellarStandardFormConverter::getDestinationFile)
+                    .collect(Collectors.toList());
 
             //Report duplicate files
             hyperlightMessage("Duplicate Files Observed: \n" + duplicateList.stream().map(Path::toString).collect(Collectors.joining("\n")));
@@ -277,7 +356,7 @@ public class Main {
         String message = StellarDiskManager.readHelpText();
         message += "\n\n" + StellarDiskManager.getState();
         message += "\n\n" + Main.FULL_PROGRAM_NAME;
-        messageThenExit(message);
+        logger.info(message);
     }
 
     /**
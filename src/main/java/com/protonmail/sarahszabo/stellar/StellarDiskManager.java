@@ -8,35 +8,62 @@ package com.protonmail.sarahszabo.stellar;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.exc.InvalidDefinitionException;
 import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException;
 import com.fasterxml.jackson.databind.module.SimpleModule;
-import com.protonmail.sarahszabo.stellar.conversions.converters.StellarOPUSConverter;
+import com.protonmail.sarahszabo.stellar.conversions.converters.ConversionStage;
 import com.protonmail.sarahszabo.stellar.metadata.ConverterMetadata;
 import com.protonmail.sarahszabo.stellar.metadata.ConverterMetadataBuilder;
-import com.protonmail.sarahszabo.stellar.metadata.MetadataType;
+import com.protonmail.sarahszabo.stellar.metadata.ExifToolMetadataParser;
+import com.protonmail.sarahszabo.stellar.metadata.opus.OpusTags;
+import com.protonmail.sarahszabo.stellar.metadata.opus.OpusTagsRewriter;
+import com.protonmail.sarahszabo.stellar.telemetry.CacheLookupEvent;
+import com.protonmail.sarahszabo.stellar.telemetry.MetadataLookupEvent;
+import com.protonmail.sarahszabo.stellar.telemetry.StellarTelemetry;
+import com.protonmail.sarahszabo.stellar.util.FileExtension;
+import com.protonmail.sarahszabo.stellar.util.JobContext;
 import com.protonmail.sarahszabo.stellar.util.PathDeserializer;
 import com.protonmail.sarahszabo.stellar.util.StellarCLIUtils;
 import com.protonmail.sarahszabo.stellar.util.StellarGravitonField;
 import static com.protonmail.sarahszabo.stellar.util.StellarGravitonField.*;
 import com.protonmail.sarahszabo.stellar.util.StellarLoggingFormatter;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
-import java.time.LocalDate;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.apache.commons.io.FileUtils;
 
 /**
@@ -51,9 +78,9 @@ public enum StellarDiskManager {
      */
     DISKMANAGER;
     /**
-     * The user directory (root).
+     * The user directory (root), moved with -Dstellar.home=FOLDER.
      */
-    public static final Path USER_DIR = Paths.get("/home/sarah");
+    public static final Path USER_DIR = Paths.get(System.getProperty("stellar.home", "/home/sarah"));
     /**
      * The configuration folder
      */
@@ -87,6 +114,36 @@ public enum StellarDiskManager {
     public static final ObjectMapper mapper = new ObjectMapper();
 
     private static final Logger logger = StellarLoggingFormatter.forClass(StellarDiskManager.class);
+    /**
+     * The most files kept in the metadata cache.
+     */
+    private static final int METADATA_CACHE_SIZE = 16384;
+    /**
+     * Metadata already read with exiftool, by the absolute path of its file.
+     */
+    private static final ConcurrentMap<Path, CachedMetadata> METADATA_CACHE = new ConcurrentHashMap<>(METADATA_CACHE_SIZE * 2);
+    /**
+     * The locks that keep two threads from reading the same file at once,
+     * picked by the hash of the file's absolute path.
+     */
+    private static final Object[] METADATA_LOCKS = Stream.generate(Object::new).limit(64).toArray();
+    /**
+     * The most files read by one exiftool run.
+     */
+    private static final int METADATA_CHUNK_SIZE = Math.max(1, Integer.getInteger("stellar.metadata.chunk", 64));
+    /**
+     * The most chunks of metadata read at once, across all batches.
+     */
+    private static final int METADATA_PARALLELISM = Math.max(1, Integer.getInteger("stellar.metadata.parallelism",
+            Runtime.getRuntime().availableProcessors()));
+    /**
+     * The threads chunks of metadata are read on.
+     */
+    private static final ExecutorService METADATA_THREADS = Executors.newFixedThreadPool(METADATA_PARALLELISM, runnable -> {
+        Thread thread = new Thread(runnable, "Stellar Metadata Reader");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     /**
      * Gets the full folder of generic picture files.
@@ -114,99 +171,248 @@ public enum StellarDiskManager {
     }
 
     /**
-     * Generates the album art image from the opus file, and puts it in the
-     * output folder. NOTE: The .dat file may be 0 Bytes if there was no image
-     * file in the .opus file. This file contains binary image information.
+     * Gets a list of metadata from an already existing file on the disk. The
+     * file is read where it is, .opus files in this JVM and everything else
+     * with exiftool.
+     *
+     * @param path The path of the opus file
+     * @return The metadata of the opus file
+     * @throws RuntimeException If something went wrong in I/O
+     */
+    public static ConverterMetadata getMetadata(Path path) {
+        //A resident process, ex: the daemon, sees the same files again and again
+        Optional<ConverterMetadata> cached = getCachedMetadata(path);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        Path key = path.toAbsolutePath();
+        //Converters of the same file read it once, unrelated files never wait on each other
+        synchronized (METADATA_LOCKS[Math.floorMod(key.hashCode(), METADATA_LOCKS.length)]) {
+            cached = lookupCache(path);
+            if (cached.isPresent()) {
+                return cached.get();
+            }
+            try {
+                return readMetadataChunk(List.of(path)).get(path);
+            } catch (IOException ex) {
+                Logger.getLogger(StellarDiskManager.class.getName()).log(Level.SEVERE, null, ex);
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+
+    /**
+     * Gets the metadata of every file, reading them in chunks. .opus files
+     * are read in this JVM, everything else with one exiftool -json run per
+     * chunk.
      *
-     * @param path The path of the .dat file
-     * @param partialMetadata The partial (Only artist/title) metadata
-     * @return The picture file generated
-     */
-    private static Path generateImagefromFile(Path path) throws IOException {
-        //Decompose Picture Stored as Binary File
-        String noExtension = StellarGravitonField.stripFileExtension(path);
-        Path imageFile = newPath(REINDEXING_FOLDER, noExtension + ".png");
-        processOP(true, imageFile, REINDEXING_FOLDER, "exiftool", "-Picture", "-b", path.getFileName().toString());
-        return imageFile;
+     * @param paths The files
+     * @return The metadata of every file, by the path given for it
+     * @throws RuntimeException If something went wrong in I/O
+     */
+    public static Map<Path, ConverterMetadata> getMetadata(Collection<Path> paths) {
+        Map<Path, ConverterMetadata> metadata = new HashMap<>(paths.size() * 2);
+        getMetadata(paths, metadata::put);
+        return metadata;
     }
 
     /**
-     * Gets a list of metadata from an already existing file on the disk.
+     * Gets the metadata of every file, handing each one to the consumer as
+     * soon as its chunk is read. Up to {@link #METADATA_PARALLELISM} chunks are
+     * read at once, the consumer is only ever called on this thread.
      *
-     * @param path The path of the opus file
-     * @return The metadata of the opus file
+     * @param paths The files
+     * @param consumer Receives every file, by the path given for it, with its
+     * metadata
      * @throws RuntimeException If something went wrong in I/O
      */
-    public static ConverterMetadata getMetadata(Path path) {
+    public static void getMetadata(Collection<Path> paths, BiConsumer<Path, ConverterMetadata> consumer) {
+        List<Path> unread = new ArrayList<>();
+        for (Path path : new LinkedHashSet<>(paths)) {
+            Optional<ConverterMetadata> cached = getCachedMetadata(path);
+            if (cached.isPresent()) {
+                consumer.accept(path, cached.get());
+            } else {
+                unread.add(path);
+            }
+        }
+        CompletionService<Map<Path, ConverterMetadata>> chunks = new ExecutorCompletionService<>(METADATA_THREADS);
+        List<Future<Map<Path, ConverterMetadata>>> submitted = new ArrayList<>();
+        for (int i = 0; i < unread.size(); i += METADATA_CHUNK_SIZE) {
+            List<Path> chunk = unread.subList(i, Math.min(i + METADATA_CHUNK_SIZE, unread.size()));
+            submitted.add(chunks.submit(JobContext.wrap(() -> readMetadataChunk(chunk))));
+        }
         try {
-            Path metadataFilePath = newPath(REINDEXING_FOLDER, StellarGravitonField.stripFileExtension(path) + ".txt");
-            //Import .Opus File to ReIndexing Directory, Use Reindexing folder to avoid name clashes
-            Path reindexingOpusFile = newPath(REINDEXING_FOLDER, path.getFileName());
-            Files.createDirectories(REINDEXING_FOLDER);
-            synchronized (StellarDiskManager.class) {
-                if (Files.notExists(reindexingOpusFile)) {
-                    Files.copy(path, reindexingOpusFile, StandardCopyOption.REPLACE_EXISTING);
+            for (int i = 0; i < submitted.size(); i++) {
+                chunks.take().get().forEach(consumer);
+            }
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : new RuntimeException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } finally {
+            submitted.forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * Gets the cached metadata of the file, if it hasn't changed since it was
+     * read.
+     *
+     * @param path The file
+     * @return The metadata, if it is cached
+     */
+    private static Optional<ConverterMetadata> getCachedMetadata(Path path) {
+        Optional<ConverterMetadata> cached = lookupCache(path);
+        CacheLookupEvent.record("Metadata", path.toAbsolutePath(), cached.isPresent());
+        return cached;
+    }
+
+    /**
+     * Gets the cached metadata of the file without recording the lookup.
+     *
+     * @param path The file
+     * @return The metadata, if it is cached and the file is unchanged
+     */
+    private static Optional<ConverterMetadata> lookupCache(Path path) {
+        try {
+            CachedMetadata cached = METADATA_CACHE.get(path.toAbsolutePath());
+            return cached != null && cached.isCurrent(Files.readAttributes(path, BasicFileAttributes.class))
+                    ? Optional.of(cached.metadata) : Optional.empty();
+        } catch (IOException ex) {
+            //Missing files are reported when they are read
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Reads the metadata of one chunk of files, where they are. Files neither
+     * the in-JVM reader nor exiftool could read get the default metadata, as
+     * an untagged file would.
+     *
+     * @param chunk The files
+     * @return The metadata of every file in the chunk
+     * @throws IOException If something went wrong in I/O
+     */
+    private static Map<Path, ConverterMetadata> readMetadataChunk(List<Path> chunk) throws IOException {
+        long started = System.nanoTime();
+        Map<Path, ConverterMetadata> read = new HashMap<>(chunk.size() * 2);
+        Map<String, Path> exiftool = new LinkedHashMap<>();
+        //Each file's lookup covers reading its tags and storing them
+        Map<Path, MetadataLookupEvent> events = new HashMap<>(chunk.size() * 2);
+        for (Path path : chunk) {
+            MetadataLookupEvent event = new MetadataLookupEvent();
+            event.begin();
+            events.put(path, event);
+            if (path.getFileName().toString().toLowerCase().endsWith(FileExtension.OPUS.toString())) {
+                try {
+                    OpusTags tags = OpusTagsRewriter.read(path);
+                    ConverterMetadataBuilder metadata = new ConverterMetadataBuilder(ConverterMetadata.getDefaultMetadata());
+                    ExifToolMetadataParser.parseComments(tags.getComments(), metadata);
+                    read.put(path, storeMetadata(path, metadata, tags.getPicture(), event));
+                    continue;
+                } catch (IOException | RuntimeException ex) {
+                    //Malformed tags too, if exiftool can't parse the file either it gets the default metadata
+                    logger.fine("Reading " + path + " with exiftool: " + ex.getMessage());
                 }
             }
-            //Create Metadata file
-            processOP(true, metadataFilePath, REINDEXING_FOLDER, "exiftool", path.getFileName().toString());
-            //Trim Entries from exiftool
-            List<String> lines = null;
-            //PATCH: Sometimes exiftool writes in UTF- and others in ASCII (Cp1252)
+            exiftool.put(path.toAbsolutePath().toString(), path);
+        }
+        if (!exiftool.isEmpty()) {
+            //Every file of the run waits on the same exiftool process
+            exiftool.values().forEach(path -> events.get(path).begin());
+            List<String> command = new ArrayList<>(List.of("exiftool", "-json", "-b"));
+            command.addAll(exiftool.keySet());
+            Process process = StellarGravitonField.startProcess(new ProcessBuilder(command)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD));
+            JsonNode entries;
+            try (InputStream out = process.getInputStream()) {
+                entries = mapper.readTree(out);
+            }
             try {
-                lines = Files.readAllLines(metadataFilePath).stream().collect(Collectors.toList());
-            } catch (Exception e) {
-                lines = Files.readAllLines(metadataFilePath, Charset.forName("Cp1252")).stream().collect(Collectors.toList());
+                //exiftool exits with 1 if any file failed, the others are still printed
+                process.waitFor();
+            } catch (InterruptedException ex) {
+                process.destroyForcibly();
+                throw new InterruptedIOException("Interrupted waiting for exiftool");
             }
-            ConverterMetadataBuilder metadata
-                    = new ConverterMetadataBuilder(ConverterMetadata.getDefaultMetadata());
-            for (String str : lines) {
-                String contents = str.split(":")[0];
-                if (contents.matches("Artist\\s+")) {
-                    //Data is always after the : character
-                    String artist = preferredTitleFormat(str.split(":")[1].trim());
-                    //Map Behaviour overwrites existing entry
-                    metadata.artist(artist);
-                } else if (contents.matches("Title\\s+")) {
-                    //Data is always after the : character
-                    String title = preferredTitleFormat(str.split(":")[1].trim());
-                    //Map Behaviour overwrites existing entry
-                    metadata.title(title);
-                } else if (contents.matches("Picture\\s+")) {
-                    Path picturePath = generateImagefromFile(path);
-                    //Attempt Picture Reconstruction
-                    //If the picture file is less than 100 bytes, there was no image data in the .opus file, we'll have to ask the user for it
-                    if (Files.size(picturePath) < 100) {
-                        //Put default metadata into metadata map
-                        metadata.albumArtPath(ConverterMetadata.getDefaultMetadata().getAlbumArtPath());
-                    } else {
-                        //Get Picture File Path & Insert into Map
-                        metadata.albumArtPath(picturePath);
-                    }
-                } else if (contents.matches(MetadataType.DATE + "\\s+")) {
-                    //Data is always after the : character
-                    String date = preferredTitleFormat(str.split(":")[1].trim());
-                    //Map Behaviour overwrites existing entry
-                    metadata.date(LocalDate.parse(date, StellarOPUSConverter.DATE_FORMATTER));
-
-                } else if (contents.matches(StellarOPUSConverter.CREATED_BY_TAG + "\\s+")) {
-                    //Data is always after the : character
-                    String comment = preferredTitleFormat(str.split(":")[1].trim());
-                    //Map Behaviour overwrites existing entry
-                    metadata.createdBy(comment);
-                } else if (contents.matches("Encoder Options\\s+")) {
-                    //Data is always after the : character
-                    int bitrate = Integer.parseInt(str.split("--bitrate ")[1].replace('k', ' ').replace('K', ' ').trim()
-                    );
-                    //Map Behaviour overwrites existing entry
-                    metadata.bitrate(bitrate);
+            for (ExifToolMetadataParser.Entry entry : ExifToolMetadataParser.parseChunk(entries)) {
+                Path path = exiftool.get(entry.getSourceFile());
+                if (path == null) {
+                    continue;
+                } else if (entry.getFailure().isPresent()) {
+                    //Only this file gets the default metadata below, the rest of the chunk is kept
+                    logger.warning("Malformed tags in " + path + ": " + entry.getFailure().get());
+                } else {
+                    read.put(path, storeMetadata(path, entry.getMetadata().get(), entry.getPicture(), events.get(path)));
                 }
             }
-            return metadata.buildMetadata();
-        } catch (IOException ex) {
-            Logger.getLogger(StellarDiskManager.class.getName()).log(Level.SEVERE, null, ex);
-            throw new RuntimeException(ex);
         }
+        for (Path path : chunk) {
+            if (!read.containsKey(path)) {
+                read.put(path, storeMetadata(path, new ConverterMetadataBuilder(ConverterMetadata.getDefaultMetadata()),
+                        Optional.empty(), events.get(path)));
+            }
+        }
+        ConversionStage.METADATA.record(started);
+        return read;
+    }
+
+    /**
+     * Stores the album art of the file in the re-indexing folder, and caches
+     * its metadata. Every file gets its own picture, named after its absolute
+     * path, so same-named files in different folders never share one.
+     *
+     * @param path The file
+     * @param metadata The metadata read from the file
+     * @param picture The album art read from the file, if it had a picture
+     * @param event The lookup of the file, begun before its tags were read,
+     * committed here
+     * @return The metadata
+     * @throws IOException If the picture could not be written
+     */
+    private static ConverterMetadata storeMetadata(Path path, ConverterMetadataBuilder metadata, Optional<byte[]> picture,
+            MetadataLookupEvent event) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        //If the picture is less than 100 bytes, there was no image data in the file
+        if (picture.isPresent() && picture.get().length >= 100) {
+            Files.createDirectories(REINDEXING_FOLDER);
+            Path imageFile = newPath(REINDEXING_FOLDER, StellarGravitonField.stripFileExtension(path) + " "
+                    + UUID.nameUUIDFromBytes(path.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8)) + ".png");
+            //Written aside and moved in, a converter may be reading the previous copy
+            Path scratch = Files.createTempFile(REINDEXING_FOLDER, "Picture ", ".part");
+            try {
+                Files.write(scratch, picture.get());
+                Files.move(scratch, imageFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(scratch);
+            }
+            metadata.albumArtPath(imageFile);
+            event.picture = true;
+        } else {
+            metadata.albumArtPath(ConverterMetadata.getDefaultMetadata().getAlbumArtPath());
+        }
+        event.file = path.toString();
+        event.commit();
+        return remember(path.toAbsolutePath(), attributes, metadata.buildMetadata());
+    }
+
+    /**
+     * Caches the metadata of the file.
+     *
+     * @param key The absolute path of the file
+     * @param attributes The attributes of the file when it was read
+     * @param metadata The metadata
+     * @return The metadata
+     */
+    private static ConverterMetadata remember(Path key, BasicFileAttributes attributes, ConverterMetadata metadata) {
+        //Bounded, a full cache simply starts over
+        if (METADATA_CACHE.size() >= METADATA_CACHE_SIZE) {
+            METADATA_CACHE.clear();
+        }
+        METADATA_CACHE.put(key, new CachedMetadata(attributes, metadata));
+        return metadata;
     }
 
     /**
@@ -338,20 +544,6 @@ public enum StellarDiskManager {
      */
     public static final Path REINDEXING_FOLDER = newPath(StellarDiskManager.tempDirectory, "ReIndexing");
 
-    /**
-     * Copies a file to the temporary directory from the specified directory.
-     *
-     * @param filePath The file to copy
-     * @return The file location after it has been copied over
-     * @throws IOException If something happened
-     */
-    public static Path copyToReindexing(Path filePath) throws IOException {
-        Path destination = StellarGravitonField.newPath(REINDEXING_FOLDER, filePath.getFileName());
-        logger.fine(tempDirectory.toString());
-        Files.copy(filePath, destination, StandardCopyOption.REPLACE_EXISTING);
-        return destination;
-    }
-
     /**
      * Copies a file to the temporary directory from the specified directory.
      *
@@ -379,6 +571,46 @@ public enum StellarDiskManager {
         return destination;
     }
 
+    /**
+     * Creates a fresh working directory for one conversion inside the temporary
+     * directory, so that concurrent conversions never share intermediate files.
+     *
+     * @return The path to the new working directory
+     * @throws IOException If something happened
+     */
+    public static Path createWorkspace() throws IOException {
+        return Files.createTempDirectory(tempDirectory, "Workspace ");
+    }
+
+    /**
+     * Deletes a working directory and everything in it, once its conversion
+     * is done with it.
+     *
+     * @param workspace The working directory from
+     * {@link StellarDiskManager#createWorkspace()}
+     */
+    public static void deleteWorkspace(Path workspace) {
+        if (!FileUtils.deleteQuietly(workspace.toFile())) {
+            logger.fine("Could not delete the working directory " + workspace);
+        }
+    }
+
+    /**
+     * Copies a file into the specified working directory.
+     *
+     * @param filePath The file to copy
+     * @param workspace The working directory from
+     * {@link StellarDiskManager#createWorkspace()}
+     * @return The file location after it has been copied over
+     * @throws IOException If something happened
+     */
+    public static Path copyToWorkspace(Path filePath, Path workspace) throws IOException {
+        Path destination = StellarGravitonField.newPath(workspace, filePath.getFileName());
+        Files.copy(filePath, destination, StandardCopyOption.REPLACE_EXISTING);
+        StellarTelemetry.TELEMETRY.staged(filePath, destination);
+        return destination;
+    }
+
     /**
      * Gets the picture output folder path.
      *
@@ -415,6 +647,48 @@ public enum StellarDiskManager {
         return new DiskManagerState(outputFolder, pictureOutputFolder, spaceBridgeDirectory);
     }
 
+    /**
+     * Metadata read from a file, and the size and modification time the file
+     * had then.
+     */
+    private static final class CachedMetadata {
+
+        /**
+         * The size of the file.
+         */
+        private final long size;
+        /**
+         * The modification time of the file.
+         */
+        private final FileTime modified;
+        /**
+         * The metadata.
+         */
+        private final ConverterMetadata metadata;
+
+        /**
+         * Constructs a new {@link CachedMetadata}.
+         *
+         * @param attributes The attributes of the file when it was read
+         * @param metadata The metadata
+         */
+        private CachedMetadata(BasicFileAttributes attributes, ConverterMetadata metadata) {
+            this.size = attributes.size();
+            this.modified = attributes.lastModifiedTime();
+            this.metadata = metadata;
+        }
+
+        /**
+         * Whether or not the file is unchanged since it was read.
+         *
+         * @param attributes The attributes of the file now
+         * @return The boolean
+         */
+        private boolean isCurrent(BasicFileAttributes attributes) {
+            return this.size == attributes.size() && this.modified.equals(attributes.lastModifiedTime());
+        }
+    }
+
     /**
      * An abstraction representing the previous state of the program.
      */
@@ -8,10 +8,14 @@ package com.protonmail.sarahszabo.stellar;
 import com.protonmail.sarahszabo.stellar.conversions.SpaceBridge;
 import com.protonmail.sarahszabo.stellar.conversions.StellarFFMPEGTimeStamp;
 import com.protonmail.sarahszabo.stellar.conversions.StellarHyperspace;
+import com.protonmail.sarahszabo.stellar.conversions.converters.ConversionPath;
 import com.protonmail.sarahszabo.stellar.conversions.converters.StellarOPUSConverter;
+import com.protonmail.sarahszabo.stellar.conversions.converters.encoders.FLACEncoder;
+import com.protonmail.sarahszabo.stellar.conversions.converters.encoders.OpusEncoder;
 import com.protonmail.sarahszabo.stellar.metadata.ConverterMetadata;
 import com.protonmail.sarahszabo.stellar.metadata.ConverterMetadataBuilder;
 import com.protonmail.sarahszabo.stellar.metadata.MetadataType;
+import com.protonmail.sarahszabo.stellar.metadata.opus.OpusTagsRewriter;
 import com.protonmail.sarahszabo.stellar.transmissions.Uplink;
 import com.protonmail.sarahszabo.stellar.transmissions.YoutubeUplink;
 import com.protonmail.sarahszabo.stellar.util.FileExtension;
@@ -25,6 +29,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -32,7 +37,6 @@ import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
-import javafx.application.Platform;
 import org.apache.commons.io.FileUtils;
 
 /**
@@ -64,10 +68,20 @@ public enum StellarMode {
             if (ConverterMetadata.isDefaultMetadata(MetadataType.ALBUM_ART, newMetadata)) {
                 throw new RuntimeException("There is no Album Art Available for: " + selected);
             }
+            //Read the tags of everything that needs a re-encode up front, a chunk of files per exiftool
+            Map<Path, ConverterMetadata> existing = StellarDiskManager.getMetadata(paths.stream()
+                    .filter(path -> !path.getFileName().toString().toLowerCase().endsWith(FileExtension.OPUS.toString()))
+                    .collect(Collectors.toList()));
             for (Path path : paths) {
+                //.opus files only need their picture comment swapped, no re-encode
+                if (path.getFileName().toString().toLowerCase().endsWith(FileExtension.OPUS.toString())) {
+                    OpusTagsRewriter.rewrite(path, StellarDiskManager.getOutputFolder().resolve(path.getFileName()),
+                            tags -> tags.setPicture(newMetadata.getAlbumArtPath()));
+                    continue;
+                }
                 //Get Old Metadata for our Files
                 ConverterMetadataBuilder oldOpusMetadata
-                        = new ConverterMetadataBuilder(StellarDiskManager.getMetadata(path));
+                        = new ConverterMetadataBuilder(existing.get(path));
                 //Set With new Album Art
                 oldOpusMetadata.albumArtPath(newMetadata.getAlbumArtPath());
                 StellarOPUSConverter converter = new StellarOPUSConverter(path, oldOpusMetadata.buildMetadata());
@@ -155,6 +169,7 @@ public enum StellarMode {
                 }
             }
             Logger.getLogger(StellarMode.class.getName()).info("\n\nFinished Files: " + text);
+            Logger.getLogger(StellarMode.class.getName()).info(ConversionPath.report());
             deleteOriginalFilesWithConfirmation(List.of(path));
         }
     },
@@ -178,6 +193,21 @@ public enum StellarMode {
             doMultipleConversion(Optional.of(StellarCLIUtils.getFilesFromClipboard().get()));
         }
 
+    },
+    /**
+     * Gets the files from the clipboard and converts each of them to both a
+     * 192K .opus file and a lossless .flac archive copy, decoding every file
+     * only once.
+     */
+    CLIPBOARD_ARCHIVE {
+        @Override
+        public void start(String... args) {
+            List<Path> paths = StellarCLIUtils.getFilesFromClipboard().get();
+            printFileList(StellarHyperspace.runMultiFormatConversionTasks(paths,
+                    List.of(new OpusEncoder(StellarOPUSConverter.DEFAULT_BITRATE), new FLACEncoder())));
+            deleteOriginalFilesWithConfirmation(paths);
+        }
+
     },
     /**
      * Used when using graphics mode to directly convert links.
@@ -237,6 +267,7 @@ public enum StellarMode {
         })
                 .collect(Collectors.joining("\n"));
         Logger.getLogger(StellarMode.class.getName()).info("\n\nCompleted Files:\n\n" + string);
+        Logger.getLogger(StellarMode.class.getName()).info(ConversionPath.report());
     }
 
     /**
@@ -275,6 +306,7 @@ public enum StellarMode {
             }).collect(Collectors.toList());
             Logger.getLogger(StellarMode.class.getName()).info("\n\n\nCompleted Output Files:");
             finalPaths.stream().forEachOrdered(path -> System.out.println(path));
+            Logger.getLogger(StellarMode.class.getName()).info(ConversionPath.report());
             //Delete Original Files
             deleteOriginalFilesWithConfirmation(paths.get());
             try {
@@ -282,7 +314,7 @@ public enum StellarMode {
             } catch (InterruptedException ex) {
                 Logger.getLogger(StellarMode.class.getName()).log(Level.SEVERE, null, ex);
             }
-            Platform.exit();
+            StellarCLIUtils.shutdownUI();
         } else {
             throw new IllegalStateException("A File in the Path Doesn't Exist! "
                     + "You might be using an illegal characterset for the filename!");
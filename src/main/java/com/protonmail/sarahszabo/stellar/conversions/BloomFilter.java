@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.conversions;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Bloom filter of 64 bit hashes, about 1% false positives. It grows by
+ * adding a filter twice the size of the last whenever the last is full, so it
+ * never has to see its keys again. Not thread safe, the owner locks.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+final class BloomFilter {
+
+    /**
+     * The bits per key.
+     */
+    private static final int BITS_PER_KEY = 10;
+    /**
+     * The number of bits set per key.
+     */
+    private static final int HASHES = 7;
+
+    /**
+     * Hashes the bytes, FNV-1a finished with the MurmurHash3 mix.
+     *
+     * @param bytes The bytes, from their position to their limit
+     * @return The hash
+     */
+    static long hash(ByteBuffer bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = bytes.position(); i < bytes.limit(); i++) {
+            hash = (hash ^ (bytes.get(i) & 0xff)) * 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * The bits of each filter.
+     */
+    private final List<long[]> filters = new ArrayList<>();
+    /**
+     * The number of keys the last filter is sized for.
+     */
+    private int capacity;
+    /**
+     * The number of keys in the last filter.
+     */
+    private int count;
+
+    /**
+     * Constructs a new, empty {@link BloomFilter}.
+     *
+     * @param expectedSize The expected number of keys
+     */
+    BloomFilter(int expectedSize) {
+        this.capacity = Math.max(1024, expectedSize) / 2;
+        grow();
+    }
+
+    /**
+     * Adds a filter twice the size of the last.
+     */
+    private void grow() {
+        this.capacity *= 2;
+        this.count = 0;
+        this.filters.add(new long[(int) Math.min(Integer.MAX_VALUE - 8, ((long) this.capacity * BITS_PER_KEY + 63) / 64)]);
+    }
+
+    /**
+     * Adds the key.
+     *
+     * @param hash The hash of the key
+     */
+    void add(long hash) {
+        if (this.count++ == this.capacity) {
+            grow();
+            this.count = 1;
+        }
+        long[] bits = this.filters.get(this.filters.size() - 1);
+        long size = bits.length * 64L;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Math.floorMod(hash + i * (hash >>> 32 | 1), size);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Whether or not the key may have been added. False means it certainly
+     * wasn't.
+     *
+     * @param hash The hash of the key
+     * @return The boolean
+     */
+    boolean mightContain(long hash) {
+        for (long[] bits : this.filters) {
+            long size = bits.length * 64L;
+            boolean all = true;
+            for (int i = 0; i < HASHES && all; i++) {
+                long bit = Math.floorMod(hash + i * (hash >>> 32 | 1), size);
+                all = (bits[(int) (bit >>> 6)] & (1L << bit)) != 0;
+            }
+            if (all) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
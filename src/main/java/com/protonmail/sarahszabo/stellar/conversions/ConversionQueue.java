@@ -0,0 +1,430 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.conversions;
+
+import com.protonmail.sarahszabo.stellar.StellarDiskManager;
+import com.protonmail.sarahszabo.stellar.conversions.converters.ConversionCheckpoint;
+import com.protonmail.sarahszabo.stellar.conversions.converters.ConversionStage;
+import com.protonmail.sarahszabo.stellar.conversions.converters.StellarOPUSConverter;
+import com.protonmail.sarahszabo.stellar.telemetry.StellarTelemetry;
+import com.protonmail.sarahszabo.stellar.util.StellarLoggingFormatter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * A durable batch of conversions. Every file of the batch is written to a
+ * journal before anything runs, and every job's progress is appended to it as
+ * it happens: when its finished files are in the working directory, when they
+ * are in the output folder, or that it failed. If the JVM dies mid batch, the
+ * journal is left behind and {@link ConversionQueue#findAbandoned(Path)} picks
+ * it up on the next start: finished jobs are not redone, jobs whose files were
+ * already encoded are only copied to the output folder and their working
+ * directory deleted, and the rest, including those that failed, are converted.
+ * The journal is deleted once every job is finished or failed. The lines that
+ * say a job's files are encoded or finished are forced to the disk before the
+ * job moves on, so they survive the machine going down too.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class ConversionQueue {
+
+    /**
+     * The first line of every journal.
+     */
+    private static final String JOURNAL_HEADER = "Stellar Conversion Queue";
+    /**
+     * The extension of the journal files.
+     */
+    private static final String JOURNAL_EXTENSION = ".journal";
+    /**
+     * The number of queues created by this JVM, keeps their journals apart.
+     */
+    private static final AtomicInteger QUEUE_COUNT = new AtomicInteger();
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOG = StellarLoggingFormatter.forClass(ConversionQueue.class);
+
+    /**
+     * Gets the folder the journals are kept in, in the configuration folder.
+     *
+     * @return The folder
+     */
+    public static Path getFolder() {
+        return StellarDiskManager.CONFIGURATION_FOLDER.resolve("Conversion Queue");
+    }
+
+    /**
+     * Queues the files for conversion to .opus and writes the journal. Nothing
+     * is converted until {@link ConversionQueue#run()}.
+     *
+     * @param folder The folder to keep the journal in
+     * @param files The files to convert
+     * @param outputFolder The folder to put the finished files in
+     * @return The queue
+     * @throws IOException If the journal could not be written
+     */
+    public static ConversionQueue create(Path folder, Collection<Path> files, Path outputFolder) throws IOException {
+        ProcessHandle self = ProcessHandle.current();
+        //The owner's pid and start time tell a dead batch from one still running in another JVM
+        Path journal = Files.createDirectories(folder).resolve(self.pid() + "-"
+                + self.info().startInstant().map(Instant::toEpochMilli).orElse(0L) + "-"
+                + QUEUE_COUNT.getAndIncrement() + JOURNAL_EXTENSION);
+        Path output = outputFolder.toAbsolutePath().normalize();
+        List<Job> jobs = files.stream().map(file -> new Job(file.toAbsolutePath().normalize(), output))
+                .collect(Collectors.toList());
+        List<String> lines = new ArrayList<>(jobs.size() + 1);
+        lines.add(JOURNAL_HEADER);
+        for (int i = 0; i < jobs.size(); i++) {
+            lines.add("Q\t" + i + "\t" + jobs.get(i).source + "\t" + jobs.get(i).outputFolder);
+        }
+        Files.write(journal, lines, StandardCharsets.UTF_8);
+        return new ConversionQueue(journal, jobs);
+    }
+
+    /**
+     * Loads the queue recorded in the journal, to resume it.
+     *
+     * @param journal The journal file
+     * @return The queue, with every job at its last recorded stage
+     * @throws IOException If the journal could not be read
+     */
+    public static ConversionQueue load(Path journal) throws IOException {
+        List<String> lines = Files.readAllLines(journal, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(JOURNAL_HEADER)) {
+            throw new IOException("Not a conversion queue journal: " + journal);
+        }
+        List<Job> jobs = new ArrayList<>(lines.size());
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split("\t");
+            try {
+                switch (fields[0]) {
+                    case "Q":
+                        jobs.add(new Job(Paths.get(fields[2]), Paths.get(fields[3])));
+                        break;
+                    case "S":
+                        Job encoded = jobs.get(Integer.parseInt(fields[1]));
+                        encoded.stage = ConversionStage.valueOf(fields[2]);
+                        encoded.workspace = Paths.get(fields[3]);
+                        encoded.outputNames = List.of(Arrays.copyOfRange(fields, 4, fields.length));
+                        break;
+                    case "D":
+                        Job done = jobs.get(Integer.parseInt(fields[1]));
+                        done.stage = ConversionStage.COPY_BACK;
+                        done.destination = Paths.get(fields[2]);
+                        break;
+                    case "F":
+                        //Failed before the crash, tried again
+                        jobs.get(Integer.parseInt(fields[1]));
+                        break;
+                    default:
+                        throw new IllegalArgumentException(fields[0]);
+                }
+            } catch (RuntimeException ex) {
+                //A line torn by a crash, the job it describes runs again from its last whole line
+                LOG.fine("Ignoring journal line: " + line);
+            }
+        }
+        return new ConversionQueue(journal, jobs);
+    }
+
+    /**
+     * Finds the journals left behind by JVMs that died mid batch. Journals of
+     * batches still running, in this JVM or another, are left alone.
+     *
+     * @param folder The folder the journals are kept in
+     * @return The journals, oldest first
+     * @throws IOException If the folder could not be read
+     */
+    public static List<Path> findAbandoned(Path folder) throws IOException {
+        if (Files.notExists(folder)) {
+            return Collections.emptyList();
+        }
+        List<Path> journals = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, "*" + JOURNAL_EXTENSION)) {
+            for (Path journal : stream) {
+                if (!isOwnerAlive(journal)) {
+                    journals.add(journal);
+                }
+            }
+        }
+        journals.sort((first, second) -> {
+            try {
+                return Files.getLastModifiedTime(first).compareTo(Files.getLastModifiedTime(second));
+            } catch (IOException ex) {
+                return 0;
+            }
+        });
+        return journals;
+    }
+
+    /**
+     * Whether or not the JVM that wrote the journal is still running.
+     *
+     * @param journal The journal
+     * @return The boolean
+     */
+    private static boolean isOwnerAlive(Path journal) {
+        String[] owner = journal.getFileName().toString().split("-");
+        try {
+            long pid = Long.parseLong(owner[0]), started = Long.parseLong(owner[1]);
+            //A reused pid belongs to a process that started later
+            return ProcessHandle.of(pid).filter(ProcessHandle::isAlive)
+                    .map(process -> process.info().startInstant().map(Instant::toEpochMilli).orElse(0L) == started)
+                    .orElse(false);
+        } catch (RuntimeException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * The journal file.
+     */
+    private final Path journal;
+    /**
+     * The jobs, in journal order.
+     */
+    private final List<Job> jobs;
+
+    /**
+     * Constructs a new {@link ConversionQueue}.
+     *
+     * @param journal The journal file
+     * @param jobs The jobs
+     */
+    private ConversionQueue(Path journal, List<Job> jobs) {
+        this.journal = journal;
+        this.jobs = Collections.unmodifiableList(jobs);
+    }
+
+    /**
+     * Runs every job that isn't finished in hyperspace, each from its last
+     * recorded stage, and waits for them. Finished jobs give their recorded
+     * output straight away. Deletes the journal once no job is left to run.
+     *
+     * @return The future paths of the primary outputs, in journal order
+     * @throws IOException If the journal could not be written
+     */
+    public List<Future<Path>> run() throws IOException {
+        List<Future<Path>> futures;
+        try (FileChannel writer = FileChannel.open(this.journal, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            List<Callable<Path>> tasks = new ArrayList<>(this.jobs.size());
+            for (int i = 0; i < this.jobs.size(); i++) {
+                tasks.add(toTask(writer, i));
+            }
+            futures = StellarHyperspace.runGeneralConversionTasks(tasks);
+        }
+        if (getPending().isEmpty()) {
+            Files.delete(this.journal);
+        }
+        return futures;
+    }
+
+    /**
+     * Builds the task that takes the job from its last recorded stage to the
+     * output folder.
+     *
+     * @param writer The journal
+     * @param index The index of the job
+     * @return The task
+     */
+    private Callable<Path> toTask(FileChannel writer, int index) {
+        Job job = this.jobs.get(index);
+        return () -> {
+            try {
+                if (job.destination != null) {
+                    return job.destination;
+                } else if (job.isEncoded()) {
+                    LOG.info("Resuming " + job.source.getFileName() + " after " + job.stage);
+                    job.destination = copyBack(job);
+                    record(writer, "D\t" + index + "\t" + job.destination, true);
+                    FileUtils.deleteQuietly(job.workspace.toFile());
+                    TempSpaceBudget.BUDGET.releaseWorkspace(job.workspace);
+                } else {
+                    StellarOPUSConverter converter = new StellarOPUSConverter(job.source, job.outputFolder);
+                    converter.setCheckpoint(new ConversionCheckpoint() {
+                        @Override
+                        public void encoded(ConversionStage stage, Path workspace, List<String> outputNames) throws IOException {
+                            record(writer, "S\t" + index + "\t" + stage.name() + "\t" + workspace.toAbsolutePath()
+                                    + "\t" + String.join("\t", outputNames), true);
+                            job.workspace = workspace.toAbsolutePath();
+                        }
+
+                        @Override
+                        public void committed(List<Path> finished) throws IOException {
+                            job.destination = finished.get(0);
+                            record(writer, "D\t" + index + "\t" + job.destination, true);
+                        }
+                    });
+                    converter.convertToOPUS();
+                }
+                return job.destination;
+            } catch (Exception ex) {
+                job.failed = true;
+                record(writer, "F\t" + index, false);
+                //A failed job is converted from scratch next time, its encoded files would only hold the room
+                if (job.workspace != null) {
+                    FileUtils.deleteQuietly(job.workspace.toFile());
+                    TempSpaceBudget.BUDGET.releaseWorkspace(job.workspace);
+                }
+                throw ex;
+            }
+        };
+    }
+
+    /**
+     * Copies the finished files of an encoded job from its working directory
+     * to the output folder.
+     *
+     * @param job The job
+     * @return The primary output
+     * @throws IOException If a file could not be copied
+     */
+    private static Path copyBack(Job job) throws IOException {
+        long started = System.nanoTime();
+        List<Path> finished = new ArrayList<>(job.outputNames.size());
+        for (String name : job.outputNames) {
+            Path destination = job.outputFolder.resolve(name);
+            Files.copy(job.workspace.resolve(name), destination,
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            StellarTelemetry.TELEMETRY.written(Files.size(destination));
+            finished.add(destination);
+        }
+        ConversionStage.COPY_BACK.record(started);
+        return finished.get(0);
+    }
+
+    /**
+     * Appends a line to the journal. The line is in the file once this
+     * returns, so it survives the JVM dying. Forced lines are also on the
+     * disk, so they survive the machine going down. A failure only means the
+     * job runs again, so it isn't worth forcing.
+     *
+     * @param writer The journal
+     * @param line The line
+     * @param force Whether or not to force the line to the disk
+     * @throws IOException If the journal could not be written
+     */
+    private static void record(FileChannel writer, String line, boolean force) throws IOException {
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(line + System.lineSeparator());
+        synchronized (writer) {
+            while (bytes.hasRemaining()) {
+                writer.write(bytes);
+            }
+            if (force) {
+                writer.force(false);
+            }
+        }
+    }
+
+    /**
+     * Gets the files whose jobs are neither finished nor failed.
+     *
+     * @return The files
+     */
+    public List<Path> getPending() {
+        return this.jobs.stream().filter(job -> job.destination == null && !job.failed).map(job -> job.source)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Gets the journal file.
+     *
+     * @return The journal
+     */
+    public Path getJournal() {
+        return this.journal;
+    }
+
+    /**
+     * One queued conversion and the last stage it was recorded at.
+     */
+    private static final class Job {
+
+        /**
+         * The file to convert.
+         */
+        private final Path source;
+        /**
+         * The folder the finished files go in.
+         */
+        private final Path outputFolder;
+        /**
+         * The last stage recorded, null if none yet.
+         */
+        private volatile ConversionStage stage;
+        /**
+         * The working directory holding the encoded files, null if not
+         * encoded yet.
+         */
+        private volatile Path workspace;
+        /**
+         * The names of the encoded files, the primary output first.
+         */
+        private volatile List<String> outputNames = Collections.emptyList();
+        /**
+         * The primary output in the output folder, null until finished.
+         */
+        private volatile Path destination;
+        /**
+         * Whether or not the conversion failed.
+         */
+        private volatile boolean failed;
+
+        /**
+         * Constructs a new {@link Job}.
+         *
+         * @param source The file to convert
+         * @param outputFolder The folder the finished files go in
+         */
+        private Job(Path source, Path outputFolder) {
+            this.source = source;
+            this.outputFolder = outputFolder;
+        }
+
+        /**
+         * Whether or not the finished files are still waiting in the working
+         * directory, only the copy back is left.
+         *
+         * @return The boolean
+         */
+        private boolean isEncoded() {
+            return this.workspace != null && !this.outputNames.isEmpty()
+                    && this.outputNames.stream().allMatch(name -> Files.isRegularFile(this.workspace.resolve(name)));
+        }
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.conversions;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.protonmail.sarahszabo.stellar.metadata.ConverterMetadata;
+import com.protonmail.sarahszabo.stellar.util.PathDeserializer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * The ledger Space-Bridge keeps of the whole library: the metadata of every
+ * file, so exiftool only runs for files it hasn't seen yet. Safe to fill from
+ * parallel streams. Stored in the compact binary {@link LibraryLedgerFile}
+ * format, JSON export and import are kept for debugging. In memory, paths
+ * live in a {@link PathTrie} of interned components, the metadata in packed
+ * int records of {@link StringPool} IDs, and a {@link BloomFilter} answers
+ * for files the ledger has never seen.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class LibraryLedger {
+
+    /**
+     * The object mapper for the ledger file.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Static Initialiser for {@link LibraryLedger}. Sets up the mapper.
+     */
+    static {
+        //Registered by hand, the service files of the modules clash inside shaded jars
+        MAPPER.registerModules(new ParameterNamesModule(), new Jdk8Module(), new JavaTimeModule());
+        var module = new SimpleModule("Path Deserializer Module");
+        module.addKeyDeserializer(Path.class, new PathDeserializer());
+        MAPPER.registerModule(module);
+        MAPPER.enable(SerializationFeature.INDENT_OUTPUT);
+    }
+
+    /**
+     * The number of ints in a record: artist, title and creator string IDs,
+     * epoch day, album art node and bitrate.
+     */
+    private static final int RECORD_INTS = 6;
+    /**
+     * The bound on the index and length of a title stored as part of its file
+     * name.
+     */
+    private static final int TITLE_LIMIT = 1 << 15;
+
+    /**
+     * Guards the in-memory entries, many readers or one writer.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Every string of the in-memory entries: path components, artists, titles
+     * and creators.
+     */
+    private final StringPool strings;
+    /**
+     * The files added or changed since the ledger file was loaded, and their
+     * album art, with the record of each file as its value.
+     */
+    private final PathTrie paths;
+    /**
+     * The packed records of the in-memory entries.
+     */
+    private int[] records;
+    /**
+     * Every file of the ledger, in memory or in the ledger file, by the hash
+     * of its path.
+     */
+    private final BloomFilter known;
+    /**
+     * The loaded ledger file, null if none was loaded.
+     */
+    private volatile LibraryLedgerFile mapped;
+    /**
+     * The number of files of the ledger file that were put again.
+     */
+    private int shadowed;
+
+    /**
+     * Constructs a new, empty {@link LibraryLedger}.
+     *
+     * @param expectedSize The expected number of files
+     */
+    public LibraryLedger(int expectedSize) {
+        this.strings = new StringPool(expectedSize * 2);
+        this.paths = new PathTrie(this.strings, expectedSize);
+        this.records = new int[Math.max(16, expectedSize) * RECORD_INTS];
+        this.known = new BloomFilter(expectedSize);
+    }
+
+    /**
+     * Adds every entry of the ledger file. A binary ledger is memory-mapped
+     * and its entries decoded only when asked for, a JSON one, ex: from an
+     * older version or {@link #exportJSON(java.nio.file.Path)}, is read
+     * completely. A missing or empty file adds nothing.
+     *
+     * @param file The ledger file
+     * @return The number of entries in the file
+     * @throws IOException If the file could not be read
+     */
+    public int load(Path file) throws IOException {
+        if (Files.notExists(file) || Files.size(file) == 0) {
+            return 0;
+        } else if (!LibraryLedgerFile.isLedgerFile(file)) {
+            return importJSON(file);
+        }
+        LibraryLedgerFile loaded = LibraryLedgerFile.map(file);
+        this.lock.writeLock().lock();
+        try {
+            if (this.mapped == null && this.paths.size() == 0) {
+                for (int record = 0; record < loaded.size(); record++) {
+                    this.known.add(BloomFilter.hash(loaded.getPathBytes(record)));
+                }
+                this.mapped = loaded;
+                return loaded.size();
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+        //Already filled, the file is decoded on top
+        for (int record = 0; record < loaded.size(); record++) {
+            put(loaded.getPath(record), loaded.getMetadata(record));
+        }
+        return loaded.size();
+    }
+
+    /**
+     * Writes the ledger to the file in the binary format, replacing it only
+     * once the new one is completely written.
+     *
+     * @param file The ledger file
+     * @throws IOException If the file could not be written
+     */
+    public void store(Path file) throws IOException {
+        LibraryLedgerFile loaded = this.mapped;
+        if (loaded != null && this.paths.size() == 0) {
+            //Nothing new, the loaded file is copied without decoding it
+            replace(file, loaded::copyTo);
+        } else {
+            replace(file, temp -> LibraryLedgerFile.write(temp, this));
+        }
+    }
+
+    /**
+     * Adds every entry of a JSON ledger file.
+     *
+     * @param file The JSON file
+     * @return The number of entries in the file
+     * @throws IOException If the file could not be read
+     */
+    public int importJSON(Path file) throws IOException {
+        Map<Path, ConverterMetadata> stored = MAPPER.readValue(file.toFile(), new TypeReference<HashMap<Path, ConverterMetadata>>() {
+        });
+        stored.forEach(this::put);
+        return stored.size();
+    }
+
+    /**
+     * Writes the ledger to the file as indented JSON, for debugging.
+     *
+     * @param file The JSON file
+     * @throws IOException If the file could not be written
+     */
+    public void exportJSON(Path file) throws IOException {
+        Map<Path, ConverterMetadata> all = new HashMap<>(size() * 2);
+        forEach(all::put);
+        replace(file, temp -> MAPPER.writeValue(temp.toFile(), all));
+    }
+
+    /**
+     * Writes a temporary file next to the file, then moves it over the file.
+     *
+     * @param file The file to replace
+     * @param writer Writes the temporary file
+     * @throws IOException If the file could not be written
+     */
+    private static void replace(Path file, LedgerWriter writer) throws IOException {
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), ".ledger-", ".tmp");
+        try {
+            writer.write(temp);
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Calls the consumer with every file of the ledger and its metadata,
+     * decoding them one at a time. The consumer must not change the ledger.
+     *
+     * @param consumer The consumer
+     */
+    public void forEach(BiConsumer<Path, ConverterMetadata> consumer) {
+        this.lock.readLock().lock();
+        try {
+            LibraryLedgerFile loaded = this.mapped;
+            if (loaded != null) {
+                for (int record = 0; record < loaded.size(); record++) {
+                    Path path = loaded.getPath(record);
+                    //Files put again are visited with the in-memory entries
+                    if (this.shadowed == 0 || this.paths.get(path) == PathTrie.NONE) {
+                        consumer.accept(path, loaded.getMetadata(record));
+                    }
+                }
+            }
+            this.paths.forEach((path, record) -> consumer.accept(path, decode(path, record)));
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Decodes an in-memory record. The caller holds the lock.
+     *
+     * @param file The file of the record
+     * @param record The record
+     * @return The metadata
+     */
+    private ConverterMetadata decode(Path file, int record) {
+        int at = record * RECORD_INTS, title = this.records[at + 1];
+        return new ConverterMetadata(this.strings.get(this.records[at]),
+                title >= 0 ? this.strings.get(title) : decodeTitle(file, -title - 1),
+                this.strings.get(this.records[at + 2]), LibraryLedgerFile.fromDay(this.records[at + 3]),
+                this.paths.getPath(this.records[at + 4]), this.records[at + 5]);
+    }
+
+    /**
+     * Encodes the title as a string ID, or as where it is in the file name
+     * when it is part of it, as it is for every file Stellar names itself.
+     *
+     * @param file The file
+     * @param title The title
+     * @return The string ID, or negative for a part of the file name
+     */
+    private int encodeTitle(Path file, String title) {
+        int index = file.getFileName() == null ? -1 : file.getFileName().toString().indexOf(title);
+        if (index >= 0 && index < TITLE_LIMIT && title.length() < TITLE_LIMIT) {
+            return -(index * TITLE_LIMIT + title.length()) - 1;
+        }
+        return this.strings.intern(title);
+    }
+
+    /**
+     * Decodes a title that is part of the file name.
+     *
+     * @param file The file
+     * @param encoded The encoded title, see
+     * {@link #encodeTitle(java.nio.file.Path, java.lang.String)}
+     * @return The title
+     */
+    private static String decodeTitle(Path file, int encoded) {
+        int index = encoded / TITLE_LIMIT;
+        return file.getFileName().toString().substring(index, index + encoded % TITLE_LIMIT);
+    }
+
+    /**
+     * Whether or not the ledger has the file. Files the ledger has never seen
+     * are almost always turned away by a Bloom filter, without a lookup.
+     *
+     * @param file The file
+     * @return The boolean
+     */
+    public boolean contains(Path file) {
+        ByteBuffer key = ByteBuffer.wrap(file.toString().getBytes(StandardCharsets.UTF_8));
+        this.lock.readLock().lock();
+        try {
+            if (!this.known.mightContain(BloomFilter.hash(key))) {
+                return false;
+            }
+            LibraryLedgerFile loaded = this.mapped;
+            return this.paths.get(file) != PathTrie.NONE || (loaded != null && loaded.find(key) >= 0);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the metadata of the file. Only this file's entry is decoded.
+     *
+     * @param file The file
+     * @return The metadata, null if the ledger doesn't have the file
+     */
+    public ConverterMetadata get(Path file) {
+        this.lock.readLock().lock();
+        try {
+            int record = this.paths.get(file);
+            if (record != PathTrie.NONE) {
+                return decode(file, record);
+            }
+            LibraryLedgerFile loaded = this.mapped;
+            record = loaded == null ? -1 : loaded.find(file);
+            return record < 0 ? null : loaded.getMetadata(record);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Records the metadata of the file.
+     *
+     * @param file The file
+     * @param metadata The metadata
+     */
+    public void put(Path file, ConverterMetadata metadata) {
+        byte[] key = file.toString().getBytes(StandardCharsets.UTF_8);
+        this.lock.writeLock().lock();
+        try {
+            int record = this.paths.get(file);
+            if (record == PathTrie.NONE) {
+                record = this.paths.size();
+                this.paths.put(file, record);
+                this.known.add(BloomFilter.hash(ByteBuffer.wrap(key)));
+                LibraryLedgerFile loaded = this.mapped;
+                if (loaded != null && loaded.find(ByteBuffer.wrap(key)) >= 0) {
+                    this.shadowed++;
+                }
+                if ((record + 1) * RECORD_INTS > this.records.length) {
+                    this.records = Arrays.copyOf(this.records, this.records.length + (this.records.length >> 1) / RECORD_INTS * RECORD_INTS);
+                }
+            }
+            int at = record * RECORD_INTS;
+            this.records[at] = this.strings.intern(metadata.getArtist());
+            this.records[at + 1] = encodeTitle(file, metadata.getTitle());
+            this.records[at + 2] = this.strings.intern(metadata.getCreatedBy());
+            this.records[at + 3] = LibraryLedgerFile.toDay(metadata.getStellarIndexDate());
+            this.records[at + 4] = this.paths.add(metadata.getAlbumArtPath());
+            this.records[at + 5] = metadata.getBitrate();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets every file in the ledger.
+     *
+     * @return The files
+     */
+    public Set<Path> getFiles() {
+        Set<Path> files = new HashSet<>(size() * 2);
+        forEach((path, metadata) -> files.add(path));
+        return Collections.unmodifiableSet(files);
+    }
+
+    /**
+     * Gets the number of files in the ledger.
+     *
+     * @return The size
+     */
+    public int size() {
+        this.lock.readLock().lock();
+        try {
+            LibraryLedgerFile loaded = this.mapped;
+            return (loaded == null ? 0 : loaded.size()) + this.paths.size() - this.shadowed;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes a ledger file.
+     */
+    @FunctionalInterface
+    private static interface LedgerWriter {
+
+        /**
+         * Writes the ledger to the file.
+         *
+         * @param file The file
+         * @throws IOException If the file could not be written
+         */
+        void write(Path file) throws IOException;
+    }
+}
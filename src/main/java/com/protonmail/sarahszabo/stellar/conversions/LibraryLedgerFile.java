@@ -0,0 +1,370 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.conversions;
+
+import com.protonmail.sarahszabo.stellar.metadata.ConverterMetadata;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The binary form of the {@link LibraryLedger}, read through a memory map.
+ * Every string, paths, artists, titles, the creator and the album art paths,
+ * is stored once in a string table, and every file is a fixed size record of
+ * string IDs, its bitrate and its date as an epoch day. Records are sorted by
+ * the bytes of their path, so a lookup is a binary search over the mapped
+ * file, and only the record that is asked for is ever decoded.
+ *
+ * <pre>
+ * "STLEDGER" version entries strings blobLength
+ * entries * (path artist title createdBy date art bitrate)
+ * (strings + 1) * string offset into the blob
+ * blob of UTF-8 strings
+ * </pre>
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+final class LibraryLedgerFile {
+
+    /**
+     * The bytes every ledger file starts with.
+     */
+    private static final byte[] MAGIC = "STLEDGER".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * The version of the format.
+     */
+    private static final int VERSION = 1;
+    /**
+     * The size of the header.
+     */
+    private static final int HEADER_SIZE = MAGIC.length + 4 * 4;
+    /**
+     * The number of ints in a record.
+     */
+    private static final int RECORD_INTS = 7;
+    /**
+     * The epoch day stored for {@link LocalDate#MAX}, which doesn't fit an int.
+     */
+    private static final int MAX_DAY = Integer.MAX_VALUE;
+    /**
+     * The epoch day stored for {@link LocalDate#MIN}.
+     */
+    private static final int MIN_DAY = Integer.MIN_VALUE;
+
+    /**
+     * Whether or not the file is a binary ledger, rather than a JSON one.
+     *
+     * @param file The file
+     * @return The boolean
+     * @throws IOException If the file could not be read
+     */
+    static boolean isLedgerFile(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return Arrays.equals(in.readNBytes(MAGIC.length), MAGIC);
+        }
+    }
+
+    /**
+     * Writes the entries to the file as a binary ledger.
+     *
+     * @param file The file
+     * @param ledger The ledger
+     * @throws IOException If the file could not be written
+     */
+    static void write(Path file, LibraryLedger ledger) throws IOException {
+        Map<String, Integer> ids = new HashMap<>(ledger.size() * 4);
+        List<byte[]> strings = new ArrayList<>(ledger.size() * 2);
+        List<int[]> records = new ArrayList<>(ledger.size());
+        ledger.forEach((path, metadata) -> records.add(new int[]{intern(path.toString(), ids, strings),
+            intern(metadata.getArtist(), ids, strings), intern(metadata.getTitle(), ids, strings),
+            intern(metadata.getCreatedBy(), ids, strings), toDay(metadata.getStellarIndexDate()),
+            intern(metadata.getAlbumArtPath().toString(), ids, strings), metadata.getBitrate()}));
+        //Sorted the way lookups compare them, Arrays.compare orders bytes like ByteBuffer.compareTo
+        records.sort((a, b) -> Arrays.compare(strings.get(a[0]), strings.get(b[0])));
+        int blobLength = 0;
+        for (byte[] string : strings) {
+            blobLength += string.length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(Math.toIntExact(HEADER_SIZE + (long) records.size() * RECORD_INTS * 4
+                + (strings.size() + 1L) * 4 + blobLength));
+        out.put(MAGIC).putInt(VERSION).putInt(records.size()).putInt(strings.size()).putInt(blobLength);
+        for (int[] record : records) {
+            for (int field : record) {
+                out.putInt(field);
+            }
+        }
+        int offset = 0;
+        for (byte[] string : strings) {
+            out.putInt(offset);
+            offset += string.length;
+        }
+        out.putInt(offset);
+        for (byte[] string : strings) {
+            out.put(string);
+        }
+        out.flip();
+        writeFully(file, out);
+    }
+
+    /**
+     * Writes the bytes to the file, replacing its contents.
+     *
+     * @param file The file
+     * @param bytes The bytes
+     * @throws IOException If the file could not be written
+     */
+    private static void writeFully(Path file, ByteBuffer bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Gets the ID of the string, adding it to the table if it's new.
+     *
+     * @param string The string
+     * @param ids The IDs of the strings in the table
+     * @param strings The table
+     * @return The ID
+     */
+    private static int intern(String string, Map<String, Integer> ids, List<byte[]> strings) {
+        return ids.computeIfAbsent(string, key -> {
+            strings.add(key.getBytes(StandardCharsets.UTF_8));
+            return strings.size() - 1;
+        });
+    }
+
+    /**
+     * Converts the date to the epoch day stored for it.
+     *
+     * @param date The date
+     * @return The epoch day
+     */
+    static int toDay(LocalDate date) {
+        if (date.equals(LocalDate.MAX)) {
+            return MAX_DAY;
+        } else if (date.equals(LocalDate.MIN)) {
+            return MIN_DAY;
+        }
+        return Math.toIntExact(date.toEpochDay());
+    }
+
+    /**
+     * Converts the stored epoch day back to its date.
+     *
+     * @param day The epoch day
+     * @return The date
+     */
+    static LocalDate fromDay(int day) {
+        return day == MAX_DAY ? LocalDate.MAX : day == MIN_DAY ? LocalDate.MIN : LocalDate.ofEpochDay(day);
+    }
+
+    /**
+     * Maps the binary ledger file.
+     *
+     * @param file The file
+     * @return The mapped ledger
+     * @throws IOException If the file could not be read, or isn't a ledger
+     */
+    static LibraryLedgerFile map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Ledger too large to map: " + file);
+            }
+            //The mapping stays valid once the channel is closed
+            return new LibraryLedgerFile(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * The mapped file.
+     */
+    private final MappedByteBuffer buffer;
+    /**
+     * The number of records.
+     */
+    private final int entries;
+    /**
+     * Where the string offsets start.
+     */
+    private final int offsets;
+    /**
+     * Where the string bytes start.
+     */
+    private final int blob;
+
+    /**
+     * Constructs a new {@link LibraryLedgerFile}, checking its header.
+     *
+     * @param file The file, for error messages
+     * @param buffer The mapped file
+     * @throws IOException If the file isn't a ledger, or is truncated
+     */
+    private LibraryLedgerFile(Path file, MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        byte[] magic = new byte[MAGIC.length];
+        if (buffer.capacity() >= HEADER_SIZE) {
+            buffer.get(0, magic);
+        }
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a library ledger: " + file);
+        } else if (buffer.getInt(MAGIC.length) != VERSION) {
+            throw new IOException("Unsupported library ledger version " + buffer.getInt(MAGIC.length) + ": " + file);
+        }
+        this.entries = buffer.getInt(MAGIC.length + 4);
+        int strings = buffer.getInt(MAGIC.length + 8), blobLength = buffer.getInt(MAGIC.length + 12);
+        long offsetsAt = HEADER_SIZE + (long) this.entries * RECORD_INTS * 4, blobAt = offsetsAt + (strings + 1L) * 4;
+        if (this.entries < 0 || strings < 0 || blobLength < 0 || blobAt + blobLength != buffer.capacity()) {
+            throw new IOException("Truncated library ledger: " + file);
+        }
+        this.offsets = (int) offsetsAt;
+        this.blob = (int) blobAt;
+    }
+
+    /**
+     * Gets a field of a record.
+     *
+     * @param record The record
+     * @param field The field
+     * @return The value
+     */
+    private int field(int record, int field) {
+        return this.buffer.getInt(HEADER_SIZE + (record * RECORD_INTS + field) * 4);
+    }
+
+    /**
+     * Gets the bytes of a string, without copying them.
+     *
+     * @param id The string ID
+     * @return A view of the string's bytes in the map
+     */
+    private ByteBuffer bytes(int id) {
+        int start = this.buffer.getInt(this.offsets + id * 4), end = this.buffer.getInt(this.offsets + id * 4 + 4);
+        return this.buffer.slice(this.blob + start, end - start);
+    }
+
+    /**
+     * Decodes a string.
+     *
+     * @param id The string ID
+     * @return The string
+     */
+    private String string(int id) {
+        ByteBuffer bytes = bytes(id);
+        byte[] copy = new byte[bytes.remaining()];
+        bytes.get(copy);
+        return new String(copy, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Finds the record of the file, comparing the bytes of its path in place.
+     *
+     * @param file The file
+     * @return The record, negative if the ledger doesn't have the file
+     */
+    int find(Path file) {
+        return find(ByteBuffer.wrap(file.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Finds the record of the file, comparing the bytes of its path in place.
+     *
+     * @param key The UTF-8 bytes of the file's path
+     * @return The record, negative if the ledger doesn't have the file
+     */
+    int find(ByteBuffer key) {
+        int low = 0, high = this.entries - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int compared = bytes(field(middle, 0)).compareTo(key);
+            if (compared < 0) {
+                low = middle + 1;
+            } else if (compared > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copies this ledger file, as is, to the file.
+     *
+     * @param file The file
+     * @throws IOException If the file could not be written
+     */
+    void copyTo(Path file) throws IOException {
+        writeFully(file, this.buffer.duplicate().clear());
+    }
+
+    /**
+     * Gets the number of records.
+     *
+     * @return The size
+     */
+    int size() {
+        return this.entries;
+    }
+
+    /**
+     * Gets the UTF-8 bytes of the path of a record, without copying them.
+     *
+     * @param record The record
+     * @return A view of the bytes in the map
+     */
+    ByteBuffer getPathBytes(int record) {
+        return bytes(field(record, 0));
+    }
+
+    /**
+     * Decodes the path of a record.
+     *
+     * @param record The record
+     * @return The path
+     */
+    Path getPath(int record) {
+        return Paths.get(string(field(record, 0)));
+    }
+
+    /**
+     * Decodes the metadata of a record.
+     *
+     * @param record The record
+     * @return The metadata
+     */
+    ConverterMetadata getMetadata(int record) {
+        return new ConverterMetadata(string(field(record, 1)), string(field(record, 2)), string(field(record, 3)),
+                fromDay(field(record, 4)), Paths.get(string(field(record, 5))), field(record, 6));
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.conversions;
+
+import com.protonmail.sarahszabo.stellar.util.StellarLoggingFormatter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.logging.Logger;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * The RAM backed staging tier. Working directories whose estimated footprint
+ * fits the memory budget are made in a RAM backed file system, /dev/shm by
+ * default, so the staged copy, the ripped frames and the encoded files of a
+ * short track never touch the disk. The tools still see plain files. A
+ * working directory that doesn't fit spills to the temporary folder on disk,
+ * see {@link TempSpaceBudget#reserve(long)}. The budget is set with
+ * -Dstellar.staging.memory=SIZE (0 turns the tier off) and the folder with
+ * -Dstellar.staging.memory.dir=FOLDER.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public enum MemoryStaging {
+    /**
+     * The tier of this JVM.
+     */
+    SHM;
+
+    /**
+     * The largest default budget.
+     */
+    private static final long DEFAULT_BUDGET_CAP = 1L << 30;
+    /**
+     * The logger.
+     */
+    private static final Logger logger = StellarLoggingFormatter.forClass(MemoryStaging.class);
+
+    /**
+     * The folder the working directories are made in, null until first
+     * needed or if the tier is off.
+     */
+    private Path root;
+    /**
+     * The budget in bytes, -1 until first needed, 0 if the tier is off.
+     */
+    private long budget = -1;
+    /**
+     * The bytes reserved by the working directories in memory.
+     */
+    private long reserved;
+    /**
+     * The most bytes reserved at once.
+     */
+    private long peakReserved;
+    /**
+     * The number of working directories staged in memory.
+     */
+    private long resident;
+    /**
+     * The number of working directories that didn't fit and spilled to disk.
+     */
+    private long spills;
+
+    /**
+     * Reserves room in memory if the footprint fits the budget, never waits.
+     *
+     * @param bytes The estimated footprint
+     * @return Whether or not the room was reserved, if not the working
+     * directory goes to disk
+     */
+    synchronized boolean tryReserve(long bytes) {
+        if (getBudget() == 0) {
+            return false;
+        } else if (this.reserved + bytes > this.budget) {
+            this.spills++;
+            return false;
+        }
+        this.reserved += bytes;
+        this.peakReserved = Math.max(this.peakReserved, this.reserved);
+        this.resident++;
+        return true;
+    }
+
+    /**
+     * Releases room reserved with {@link MemoryStaging#tryReserve(long)}.
+     *
+     * @param bytes The bytes
+     */
+    synchronized void release(long bytes) {
+        this.reserved -= bytes;
+    }
+
+    /**
+     * Makes a working directory in memory. The room must have been reserved.
+     *
+     * @return The working directory
+     * @throws IOException If it could not be made
+     */
+    Path createWorkspace() throws IOException {
+        Path folder;
+        synchronized (this) {
+            folder = this.root;
+        }
+        return Files.createTempDirectory(folder, "Workspace ");
+    }
+
+    /**
+     * Gets the budget, finding the RAM backed folder and working out the
+     * default the first time. The default is a quarter of the folder's free
+     * space, at most 1GB, or 0 if there is no such folder.
+     *
+     * @return The budget in bytes, 0 if the tier is off
+     */
+    public synchronized long getBudget() {
+        if (this.budget < 0) {
+            Path folder = Paths.get(System.getProperty("stellar.staging.memory.dir", "/dev/shm"));
+            String configured = System.getProperty("stellar.staging.memory");
+            try {
+                long limit = configured != null ? TempSpaceBudget.parseSize(configured)
+                        : Files.isDirectory(folder) ? Math.min(Files.getFileStore(folder).getUsableSpace() / 4, DEFAULT_BUDGET_CAP) : 0;
+                if (limit > 0) {
+                    this.root = createRoot(folder);
+                }
+                this.budget = limit;
+            } catch (IOException ex) {
+                this.budget = 0;
+                logger.warning("No RAM backed staging in " + folder + ": " + ex);
+            }
+        }
+        return this.budget;
+    }
+
+    /**
+     * Sets the budget, 0 turns the tier off.
+     *
+     * @param bytes The budget in bytes
+     * @throws IOException If the RAM backed folder could not be set up
+     */
+    public synchronized void setBudget(long bytes) throws IOException {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("The memory staging budget can't be negative: " + bytes);
+        } else if (bytes > 0 && this.root == null) {
+            this.root = createRoot(Paths.get(System.getProperty("stellar.staging.memory.dir", "/dev/shm")));
+        }
+        this.budget = bytes;
+    }
+
+    /**
+     * Makes this JVM's folder in the RAM backed folder, deleted on exit.
+     *
+     * @param folder The RAM backed folder
+     * @return This JVM's folder
+     * @throws IOException If it could not be made
+     */
+    private static Path createRoot(Path folder) throws IOException {
+        Path root = Files.createTempDirectory(folder, "Stellar OPUS Converter Staging ");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> FileUtils.deleteQuietly(root.toFile()),
+                "Stellar Memory Staging Cleanup Thread"));
+        return root;
+    }
+
+    /**
+     * Gets the bytes reserved by the working directories in memory.
+     *
+     * @return The bytes
+     */
+    public synchronized long getReserved() {
+        return this.reserved;
+    }
+
+    /**
+     * Gets the most bytes reserved in memory at once.
+     *
+     * @return The bytes
+     */
+    public synchronized long getPeakReserved() {
+        return this.peakReserved;
+    }
+
+    /**
+     * Gets the number of working directories staged in memory.
+     *
+     * @return The count
+     */
+    public synchronized long getResident() {
+        return this.resident;
+    }
+
+    /**
+     * Gets the number of working directories that didn't fit the budget and
+     * spilled to disk.
+     *
+     * @return The count
+     */
+    public synchronized long getSpills() {
+        return this.spills;
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.conversions;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * A map from paths to ints, stored as a trie of interned path components.
+ * Files in the same folder share every node of the folder, so a library costs
+ * little more than its file names. Nodes are kept in parallel int arrays and
+ * found through one open addressing table keyed by parent and name. Not thread
+ * safe, the owner locks.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+final class PathTrie {
+
+    /**
+     * The value of a node without one.
+     */
+    static final int NONE = -1;
+
+    /**
+     * The names of the components.
+     */
+    private final StringPool names;
+    /**
+     * The parent of each node, node 0 is the empty root.
+     */
+    private int[] parents;
+    /**
+     * The component name of each node.
+     */
+    private int[] nameIds;
+    /**
+     * The value of each node, {@link #NONE} if it has none.
+     */
+    private int[] values;
+    /**
+     * The number of nodes, including the root.
+     */
+    private int nodes = 1;
+    /**
+     * The number of nodes with a value.
+     */
+    private int size;
+    /**
+     * An open addressing table of node IDs by parent and name, 0 is an empty
+     * slot.
+     */
+    private int[] table;
+
+    /**
+     * Constructs a new, empty {@link PathTrie}.
+     *
+     * @param names The pool for the component names
+     * @param expectedSize The expected number of paths
+     */
+    PathTrie(StringPool names, int expectedSize) {
+        int capacity = Math.max(16, expectedSize * 2);
+        this.names = names;
+        this.parents = new int[capacity];
+        this.nameIds = new int[capacity];
+        this.values = new int[capacity];
+        this.values[0] = NONE;
+        this.table = new int[Integer.highestOneBit(capacity * 2 - 1) * 2];
+    }
+
+    /**
+     * Hashes a child of a node.
+     *
+     * @param parent The parent node
+     * @param name The name ID
+     * @return The hash
+     */
+    private static int hash(int parent, int name) {
+        int hash = (parent * 0x9E3779B9) ^ (name * 0x85EBCA6B);
+        return hash ^ (hash >>> 15);
+    }
+
+    /**
+     * Finds the slot of the child, or the empty slot it would go in.
+     *
+     * @param parent The parent node
+     * @param name The name ID
+     * @return The slot
+     */
+    private int slot(int parent, int name) {
+        int mask = this.table.length - 1;
+        for (int slot = hash(parent, name) & mask;; slot = (slot + 1) & mask) {
+            int node = this.table[slot];
+            if (node == 0 || (this.parents[node] == parent && this.nameIds[node] == name)) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Gets the component names of the path, the root first if it has one.
+     * Split from the path's string, cheaper than a path per name.
+     *
+     * @param path The path
+     * @return The names
+     */
+    private static String[] components(Path path) {
+        String string = path.toString(), separator = path.getFileSystem().getSeparator();
+        Path root = path.getRoot();
+        int offset = root == null ? 0 : 1, start = root == null ? 0 : root.toString().length();
+        String[] components = new String[path.getNameCount() + offset];
+        if (root != null) {
+            components[0] = root.toString();
+        }
+        for (int i = offset; i < components.length; i++) {
+            int end = string.indexOf(separator, start);
+            components[i] = string.substring(start, end < 0 ? string.length() : end);
+            start = end + separator.length();
+        }
+        return components;
+    }
+
+    /**
+     * Finds the node of the path.
+     *
+     * @param path The path
+     * @return The node, {@link #NONE} if the trie doesn't have it
+     */
+    int find(Path path) {
+        int node = 0;
+        for (String component : components(path)) {
+            int name = this.names.find(component);
+            if (name < 0 || (node = this.table[slot(node, name)]) == 0) {
+                return NONE;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Gets the value of the path.
+     *
+     * @param path The path
+     * @return The value, {@link #NONE} if it has none
+     */
+    int get(Path path) {
+        int node = find(path);
+        return node == NONE ? NONE : this.values[node];
+    }
+
+    /**
+     * Gets the node of the path, adding it if it's new.
+     *
+     * @param path The path
+     * @return The node
+     */
+    int add(Path path) {
+        int node = 0;
+        for (String component : components(path)) {
+            int name = this.names.intern(component), slot = slot(node, name);
+            if (this.table[slot] == 0) {
+                this.table[slot] = newNode(node, name);
+                //Kept at most three quarters full
+                if (this.nodes * 4 > this.table.length * 3) {
+                    rehash();
+                }
+            }
+            node = this.table[slot(node, name)];
+        }
+        return node;
+    }
+
+    /**
+     * Sets the value of the path.
+     *
+     * @param path The path
+     * @param value The value
+     * @return The previous value, {@link #NONE} if it had none
+     */
+    int put(Path path, int value) {
+        int node = add(path), previous = this.values[node];
+        this.values[node] = value;
+        if (previous == NONE) {
+            this.size++;
+        }
+        return previous;
+    }
+
+    /**
+     * Adds a node.
+     *
+     * @param parent The parent node
+     * @param name The name ID
+     * @return The new node
+     */
+    private int newNode(int parent, int name) {
+        if (this.nodes == this.parents.length) {
+            int capacity = this.nodes + (this.nodes >> 1);
+            this.parents = Arrays.copyOf(this.parents, capacity);
+            this.nameIds = Arrays.copyOf(this.nameIds, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+        }
+        this.parents[this.nodes] = parent;
+        this.nameIds[this.nodes] = name;
+        this.values[this.nodes] = NONE;
+        return this.nodes++;
+    }
+
+    /**
+     * Doubles the table.
+     */
+    private void rehash() {
+        this.table = new int[this.table.length * 2];
+        int mask = this.table.length - 1;
+        for (int node = 1; node < this.nodes; node++) {
+            int slot = hash(this.parents[node], this.nameIds[node]) & mask;
+            while (this.table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            this.table[slot] = node;
+        }
+    }
+
+    /**
+     * Rebuilds the path of a node.
+     *
+     * @param node The node
+     * @return The path
+     */
+    Path getPath(int node) {
+        int depth = 0;
+        for (int current = node; current != 0; current = this.parents[current]) {
+            depth++;
+        }
+        String[] components = new String[depth];
+        for (int current = node; current != 0; current = this.parents[current]) {
+            components[--depth] = this.names.get(this.nameIds[current]);
+        }
+        return Paths.get(components[0], Arrays.copyOfRange(components, 1, components.length));
+    }
+
+    /**
+     * Calls the consumer with every path that has a value. Paths of files in
+     * the same folder are built from the folder's path.
+     *
+     * @param consumer The consumer
+     */
+    void forEach(PathValueConsumer consumer) {
+        int lastParent = NONE;
+        Path parentPath = null;
+        for (int node = 1; node < this.nodes; node++) {
+            if (this.values[node] == NONE) {
+                continue;
+            }
+            Path path;
+            if (this.parents[node] == 0) {
+                path = getPath(node);
+            } else {
+                if (this.parents[node] != lastParent) {
+                    lastParent = this.parents[node];
+                    parentPath = getPath(lastParent);
+                }
+                path = parentPath.resolve(this.names.get(this.nameIds[node]));
+            }
+            consumer.accept(path, this.values[node]);
+        }
+    }
+
+    /**
+     * Gets the number of paths with a value.
+     *
+     * @return The size
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Receives a path and its value.
+     */
+    @FunctionalInterface
+    static interface PathValueConsumer {
+
+        /**
+         * Receives a path and its value.
+         *
+         * @param path The path
+         * @param value The value
+         */
+        void accept(Path path, int value);
+    }
+}
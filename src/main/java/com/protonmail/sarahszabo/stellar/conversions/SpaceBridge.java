@@ -7,13 +7,9 @@ package com.protonmail.sarahszabo.stellar.conversions;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.protonmail.sarahszabo.stellar.StellarDiskManager;
 import com.protonmail.sarahszabo.stellar.metadata.ConverterMetadata;
-import com.protonmail.sarahszabo.stellar.util.PathDeserializer;
+import com.protonmail.sarahszabo.stellar.telemetry.CacheLookupEvent;
 import com.protonmail.sarahszabo.stellar.util.StellarGravitonField;
 import com.protonmail.sarahszabo.stellar.util.StellarLoggingFormatter;
 import java.io.IOException;
@@ -24,9 +20,7 @@ import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
@@ -60,15 +54,11 @@ public enum SpaceBridge {
     /**
      * The ledger used for mapping the entire library for the temporal playlists
      */
-    private static final Map<Path, ConverterMetadata> LIBRARY_LEDGER = new HashMap<>(3000);
+    private static final LibraryLedger LIBRARY_LEDGER = new LibraryLedger(3000);
     /**
      * The filename and extension of the playlist ledger.
      */
     private static final Path LIBRARY_LEDGER_PATH;
-    /**
-     * The object mapper for mapping SB objects.
-     */
-    private static final ObjectMapper MAPPER = new ObjectMapper();
     /**
      * The default console logger for space-bridge operations.
      */
@@ -94,11 +84,6 @@ public enum SpaceBridge {
      */
     static {
         try {
-            MAPPER.findAndRegisterModules();
-            var module = new SimpleModule("Path Deserializer Module");
-            module.addKeyDeserializer(Path.class, new PathDeserializer());
-            MAPPER.registerModule(module);
-            MAPPER.enable(SerializationFeature.INDENT_OUTPUT);
             StellarDiskManager.DiskManagerState state = StellarDiskManager.getState();
             //The directory we're watching
             watching = state.getSpaceBridgeDirectory();
@@ -146,29 +131,21 @@ public enum SpaceBridge {
         logger.log(Level.INFO, "\n\nSpace-Bridge Initiation");
         //Get Previous Ledger if Available, make a new one if not
         Files.createDirectories(LIBRARY_LEDGER_PATH.getParent());
-        if (!Files.exists(LIBRARY_LEDGER_PATH)) {
-            Files.createFile(LIBRARY_LEDGER_PATH);
-        } else {
-            //Previous Ledger Exists, Add It
-            Map<Path, ConverterMetadata> previousLedger = MAPPER.readValue(LIBRARY_LEDGER_PATH.toFile(),
-                    new TypeReference<HashMap<Path, ConverterMetadata>>() {
-            });
-            System.exit(0);
-            LIBRARY_LEDGER.putAll(previousLedger);
+        if (LIBRARY_LEDGER.load(LIBRARY_LEDGER_PATH) > 0) {
             logger.info("Found a Previous Ledger, Adding It!");
         }
         //Begin file walk
-        Files.walk(watching, FileVisitOption.FOLLOW_LINKS).parallel()
+        List<Path> unknown = Files.walk(watching, FileVisitOption.FOLLOW_LINKS).parallel()
                 //Don't get directories for the ledger & don't get playlist .xspf files
                 .filter(path -> !Files.isDirectory(path) && !path.getFileName().toString().contains(".xspf"))
-                //Main loop, build ledger
-                .forEach(filePath -> {
-                    //If the file exists in our ledger, don't force a costly exiftool
-                    //Add only if we don't have it in our list
-                    if (!LIBRARY_LEDGER.containsKey(filePath)) {
-                        LIBRARY_LEDGER.put(filePath, StellarDiskManager.getMetadata(filePath));
-                    }
-                });
+                //If the file exists in our ledger, don't force a costly exiftool
+                .filter(filePath -> {
+                    boolean known = LIBRARY_LEDGER.contains(filePath);
+                    CacheLookupEvent.record("Library Ledger", filePath, known);
+                    return !known;
+                }).collect(Collectors.toList());
+        //Main loop, build ledger, a chunk of files per exiftool
+        StellarDiskManager.getMetadata(unknown, LIBRARY_LEDGER::put);
         //All work completed
         logger.info("Shutting Down Stellar Hyperspace");
         shutdownBridge();
@@ -205,21 +182,20 @@ public enum SpaceBridge {
             //Folders Are Already Set Up, But we Need to Make the Current Playlists Folder
             Files.createDirectories(playlist.getPath());
             //Purge Old Entries
-            Files.walk(playlist.getPath()).parallel()
-                    //Filter by: Is NOT in date range for deletion?
-                    .filter(path -> !playlist.isInCurrentDateRange(StellarDiskManager.getMetadata(path)))
-                    //Delete all not in range
-                    .forEach(path -> {
-                        try {
-                            Files.deleteIfExists(path);
-                            logger.info("Deleted: " + path);
-                        } catch (IOException ex) {
-                            logger.severe(ex.toString());
-                        }
-                    });
-            ;
+            List<Path> entries = Files.walk(playlist.getPath()).filter(Files::isRegularFile).collect(Collectors.toList());
+            StellarDiskManager.getMetadata(entries, (path, metadata) -> {
+                //Delete all NOT in date range
+                if (!playlist.isInCurrentDateRange(metadata)) {
+                    try {
+                        Files.deleteIfExists(path);
+                        logger.info("Deleted: " + path);
+                    } catch (IOException ex) {
+                        logger.severe(ex.toString());
+                    }
+                }
+            });
             //Copy all files that fall within the time period for this playlist
-            LIBRARY_LEDGER.keySet().stream().parallel()
+            LIBRARY_LEDGER.getFiles().stream().parallel()
                     //Filter by if it's in the right date range for this playlist& doesn't exist
                     .filter(path -> playlist.isInCurrentDateRange(LIBRARY_LEDGER.get(path))
                     && Files.notExists(playlist.getPath().resolve(path.getFileName())))
@@ -233,7 +209,7 @@ public enum SpaceBridge {
                     });
             logger.info("Temporal Playlist Generation Finished for: " + playlist);
         }
-        MAPPER.writeValue(LIBRARY_LEDGER_PATH.toFile(), LIBRARY_LEDGER);
+        LIBRARY_LEDGER.store(LIBRARY_LEDGER_PATH);
     }
 
     /**
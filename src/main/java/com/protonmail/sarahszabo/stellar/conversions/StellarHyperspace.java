@@ -5,8 +5,14 @@
  */
 package com.protonmail.sarahszabo.stellar.conversions;
 
-import com.protonmail.sarahszabo.stellar.conversions.converters.StellarOPUSConverter;
+import com.protonmail.sarahszabo.stellar.StellarDiskManager;
+import com.protonmail.sarahszabo.stellar.conversions.converters.StellarAudioConverter;
+import com.protonmail.sarahszabo.stellar.conversions.converters.encoders.StellarEncoder;
+import com.protonmail.sarahszabo.stellar.telemetry.StellarTelemetry;
+import com.protonmail.sarahszabo.stellar.util.JobContext;
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -49,13 +55,31 @@ public class StellarHyperspace {
         return hyperspace;
     }
 
+    /**
+     * Whether or not hyperspace outlives the commands run in it, ex: in the
+     * daemon, where it is shared by every client.
+     */
+    private static volatile boolean resident;
+
+    /**
+     * Makes hyperspace outlive the commands run in it. False vacuums are then
+     * ignored, every command already waits for its own tasks.
+     */
+    public static void makeResident() {
+        resident = true;
+    }
+
     /**
      * Causes a false vacuum, clearing the hyperspace of any new requests, then
-     * waits for all executors to shutdown.
+     * waits for all executors to shutdown. Does nothing once hyperspace is
+     * {@link StellarHyperspace#makeResident() resident}.
      *
      * @throws java.lang.InterruptedException if the thread was interrupted
      */
     public static void initiateFalseVacuum() throws InterruptedException {
+        if (resident) {
+            return;
+        }
         hyperspace.shutdown();
         hyperspace.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
     }
@@ -70,7 +94,8 @@ public class StellarHyperspace {
      */
     public static List<Future<Path>> runGeneralConversionTasks(Collection<Callable<Path>> tasks) {
         try {
-            return hyperspace.invokeAll(tasks);
+            return hyperspace.invokeAll(tasks.stream().map(JobContext::wrap).map(StellarTelemetry.TELEMETRY::track)
+                    .collect(Collectors.toList()));
         } catch (InterruptedException ex) {
             Logger.getLogger(StellarHyperspace.class.getName()).log(Level.SEVERE, null, ex);
             throw new RuntimeException(ex);
@@ -79,18 +104,57 @@ public class StellarHyperspace {
 
     /**
      * Runs the selected conversion tasks in hyperspace. Give the paths to
-     * convert, and they will be converted.
+     * convert, and they will be converted. The batch is queued in a
+     * {@link ConversionQueue} first, so if the JVM dies it can be finished
+     * with {@link StellarHyperspace#resumeConversionTasks()}.
      *
      * @param tasks The tasks to run
      * @return The future paths
      */
     public static List<Future<Path>> runConversionTasks(Collection<Path> tasks) {
+        try {
+            return ConversionQueue.create(ConversionQueue.getFolder(), tasks, StellarDiskManager.getOutputFolder()).run();
+        } catch (IOException ex) {
+            Logger.getLogger(StellarHyperspace.class.getName()).log(Level.SEVERE, null, ex);
+            throw new IllegalStateException("Hyperspace Conversion Queue Unwritable", ex);
+        }
+    }
+
+    /**
+     * Finishes the batches of conversion tasks left behind by JVMs that died
+     * while running them, each job from its last recorded stage.
+     *
+     * @return The future paths, oldest batch first
+     */
+    public static List<Future<Path>> resumeConversionTasks() {
+        List<Future<Path>> futures = new ArrayList<>();
+        try {
+            for (Path journal : ConversionQueue.findAbandoned(ConversionQueue.getFolder())) {
+                futures.addAll(ConversionQueue.load(journal).run());
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(StellarHyperspace.class.getName()).log(Level.SEVERE, null, ex);
+            throw new IllegalStateException("Hyperspace Conversion Queue Unreadable", ex);
+        }
+        return futures;
+    }
+
+    /**
+     * Runs the selected conversion tasks in hyperspace, producing every encoder
+     * output from a single decode of each file. Give the paths to convert, and
+     * they will be converted.
+     *
+     * @param tasks The paths to convert
+     * @param encoders The encoders to feed, the first one is the primary output
+     * @return The future paths of the primary outputs
+     */
+    public static List<Future<Path>> runMultiFormatConversionTasks(Collection<Path> tasks, List<StellarEncoder> encoders) {
         List<Callable<Path>> hyperspaceTasks = tasks.stream().map(path -> {
             return (Callable<Path>) () -> {
-                StellarOPUSConverter converter = new StellarOPUSConverter(path);
-                return converter.convertToOPUS().get();
+                StellarAudioConverter converter = new StellarAudioConverter(path, StellarDiskManager.getOutputFolder(), encoders);
+                return converter.convert();
             };
-        }).collect(Collectors.toList());
+        }).map(JobContext::wrap).map(StellarTelemetry.TELEMETRY::track).collect(Collectors.toList());
         try {
             return hyperspace.invokeAll(hyperspaceTasks);
         } catch (InterruptedException ex) {
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.conversions;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interned strings, stored once each as UTF-8 in one growing byte array and
+ * known by an int ID. A million copies of the same artist or folder name cost
+ * one entry. Not thread safe, the owner locks.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+final class StringPool {
+
+    /**
+     * The bytes of every string, back to back.
+     */
+    private byte[] blob;
+    /**
+     * The number of bytes used in the blob.
+     */
+    private int blobLength;
+    /**
+     * Where each string ends in the blob, by ID. A string starts where the
+     * previous one ends.
+     */
+    private int[] ends;
+    /**
+     * The number of strings.
+     */
+    private int size;
+    /**
+     * An open addressing table of string IDs plus one, 0 is an empty slot.
+     */
+    private int[] table;
+
+    /**
+     * Constructs a new, empty {@link StringPool}.
+     *
+     * @param expectedSize The expected number of strings
+     */
+    StringPool(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        this.blob = new byte[capacity * 8];
+        this.ends = new int[capacity];
+        this.table = new int[Integer.highestOneBit(capacity * 2 - 1) * 2];
+    }
+
+    /**
+     * Hashes a string.
+     *
+     * @param string The string
+     * @return The hash
+     */
+    private static int hash(String string) {
+        int hash = string.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Finds the slot of the string, or the empty slot it would go in.
+     *
+     * @param string The string
+     * @return The slot
+     */
+    private int slot(String string) {
+        int mask = this.table.length - 1;
+        for (int slot = hash(string) & mask;; slot = (slot + 1) & mask) {
+            int id = this.table[slot] - 1;
+            if (id < 0 || matches(id, string)) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Whether or not the string with the ID is the string. ASCII strings,
+     * most path components and names, are compared without encoding them.
+     *
+     * @param id The string ID
+     * @param string The string
+     * @return The boolean
+     */
+    private boolean matches(int id, String string) {
+        int start = start(id), length = this.ends[id] - start;
+        if (length < string.length()) {
+            return false;
+        }
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c >= 0x80) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                return Arrays.equals(this.blob, start, start + length, bytes, 0, bytes.length);
+            } else if (i >= length || this.blob[start + i] != c) {
+                return false;
+            }
+        }
+        return length == string.length();
+    }
+
+    /**
+     * Gets where the string starts in the blob.
+     *
+     * @param id The string ID
+     * @return The offset
+     */
+    private int start(int id) {
+        return id == 0 ? 0 : this.ends[id - 1];
+    }
+
+    /**
+     * Gets the ID of the string, adding it if it's new.
+     *
+     * @param string The string
+     * @return The ID
+     */
+    int intern(String string) {
+        int slot = slot(string);
+        if (this.table[slot] != 0) {
+            return this.table[slot] - 1;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        if (this.blobLength + bytes.length > this.blob.length) {
+            this.blob = Arrays.copyOf(this.blob, Math.max(this.blob.length + (this.blob.length >> 1), this.blobLength + bytes.length));
+        }
+        if (this.size == this.ends.length) {
+            this.ends = Arrays.copyOf(this.ends, this.size + (this.size >> 1));
+        }
+        System.arraycopy(bytes, 0, this.blob, this.blobLength, bytes.length);
+        this.blobLength += bytes.length;
+        this.ends[this.size] = this.blobLength;
+        this.table[slot] = ++this.size;
+        //Kept at most three quarters full
+        if (this.size * 4 > this.table.length * 3) {
+            rehash();
+        }
+        return this.size - 1;
+    }
+
+    /**
+     * Gets the ID of the string without adding it.
+     *
+     * @param string The string
+     * @return The ID, negative if the pool doesn't have the string
+     */
+    int find(String string) {
+        return this.table[slot(string)] - 1;
+    }
+
+    /**
+     * Doubles the table.
+     */
+    private void rehash() {
+        int[] old = this.table;
+        this.table = new int[old.length * 2];
+        int mask = this.table.length - 1;
+        for (int entry : old) {
+            if (entry != 0) {
+                int slot = hash(get(entry - 1)) & mask;
+                while (this.table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                this.table[slot] = entry;
+            }
+        }
+    }
+
+    /**
+     * Decodes a string.
+     *
+     * @param id The string ID
+     * @return The string
+     */
+    String get(int id) {
+        return new String(this.blob, start(id), this.ends[id] - start(id), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the number of strings.
+     *
+     * @return The size
+     */
+    int size() {
+        return this.size;
+    }
+}
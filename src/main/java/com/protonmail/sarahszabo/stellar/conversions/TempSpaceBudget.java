@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.conversions;
+
+import com.protonmail.sarahszabo.stellar.StellarDiskManager;
+import com.protonmail.sarahszabo.stellar.conversions.converters.encoders.StellarEncoder;
+import com.protonmail.sarahszabo.stellar.util.StellarLoggingFormatter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Admission control for the temporary folder. Every conversion reserves its
+ * peak footprint in the temporary folder, estimated from the size and duration
+ * of its source, before it creates its working directory, and waits while the
+ * conversions in flight already hold the budget. The reservation is released
+ * once the working directory is deleted. A working directory kept for a later
+ * resume keeps holding the bytes it still uses until
+ * {@link TempSpaceBudget#releaseWorkspace(java.nio.file.Path)}. Conversions that fit the
+ * {@link MemoryStaging} budget are staged in memory instead and never wait.
+ * The budget is set with -Dstellar.temp.budget=SIZE, ex: 20G, and defaults to
+ * three quarters of the space left on the temporary folder's disk.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public enum TempSpaceBudget {
+    /**
+     * The budget of this JVM.
+     */
+    BUDGET;
+
+    /**
+     * The bytes per second of decoded CD quality audio, the worst case of a
+     * lossless output.
+     */
+    private static final long LOSSLESS_BYTES_PER_SECOND = 44_100 * 2 * 2;
+    /**
+     * The room every working directory needs besides the staged file and the
+     * outputs: ripped album art and tag files.
+     */
+    private static final long WORKSPACE_OVERHEAD = 1 << 20;
+    /**
+     * The logger.
+     */
+    private static final Logger logger = StellarLoggingFormatter.forClass(TempSpaceBudget.class);
+
+    /**
+     * Estimates the peak footprint of a conversion in the temporary folder:
+     * the staged copy of the source plus every output. Outputs are sized from
+     * the duration and bitrate, with a tenth added for the container, or
+     * taken to be the size of the source if the duration is unknown.
+     *
+     * @param sourceBytes The size of the source
+     * @param duration The duration of the source in seconds, if known
+     * @param encoders The encoders of the conversion
+     * @return The estimated bytes
+     */
+    public static long estimate(long sourceBytes, OptionalDouble duration, List<StellarEncoder> encoders) {
+        long bytes = sourceBytes + WORKSPACE_OVERHEAD;
+        for (StellarEncoder encoder : encoders) {
+            if (duration.isPresent()) {
+                double perSecond = encoder.getBitrate() > 0 ? encoder.getBitrate() * 1000 / 8.0 : LOSSLESS_BYTES_PER_SECOND;
+                bytes += (long) (perSecond * duration.getAsDouble() * 1.1);
+            } else {
+                bytes += sourceBytes;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Parses a size such as 512M or 20G, plain numbers are bytes.
+     *
+     * @param size The size
+     * @return The bytes
+     * @throws NumberFormatException If the size isn't one
+     */
+    static long parseSize(String size) {
+        String trimmed = size.trim().toUpperCase(Locale.ROOT);
+        int shift = trimmed.endsWith("K") ? 10 : trimmed.endsWith("M") ? 20 : trimmed.endsWith("G") ? 30
+                : trimmed.endsWith("T") ? 40 : 0;
+        return Long.parseLong(shift == 0 ? trimmed : trimmed.substring(0, trimmed.length() - 1).trim()) << shift;
+    }
+
+    /**
+     * The budget in bytes, 0 until first needed.
+     */
+    private long budget;
+    /**
+     * The bytes reserved by the conversions in flight.
+     */
+    private long reserved;
+    /**
+     * The number of conversions that had to wait for room.
+     */
+    private long waits;
+    /**
+     * The reservations of the working directories kept for a later resume.
+     */
+    private final Map<Path, Reservation> retained = new ConcurrentHashMap<>();
+
+    /**
+     * Reserves room for a working directory: in memory if it fits the
+     * {@link MemoryStaging} budget, otherwise in the temporary folder, waiting
+     * until the conversions in flight leave enough. A conversion larger than
+     * the whole budget is let in once nothing else is in flight, rather than
+     * never.
+     *
+     * @param bytes The estimated footprint
+     * @return The reservation, close it once the working directory is deleted
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public Reservation reserve(long bytes) throws InterruptedException {
+        if (MemoryStaging.SHM.tryReserve(bytes)) {
+            return new Reservation(bytes, true);
+        }
+        return reserveOnDisk(bytes);
+    }
+
+    /**
+     * Reserves room in the temporary folder, waiting until the conversions in
+     * flight leave enough.
+     *
+     * @param bytes The estimated footprint
+     * @return The reservation
+     * @throws InterruptedException If interrupted while waiting
+     */
+    private synchronized Reservation reserveOnDisk(long bytes) throws InterruptedException {
+        long limit = getBudget();
+        if (this.reserved > 0 && this.reserved + bytes > limit) {
+            this.waits++;
+            logger.fine("Waiting for " + bytes + " bytes of temporary space, " + this.reserved + " of " + limit + " reserved");
+            while (this.reserved > 0 && this.reserved + bytes > limit) {
+                wait();
+            }
+        }
+        this.reserved += bytes;
+        return new Reservation(bytes, false);
+    }
+
+    /**
+     * Gets the budget, working out the default the first time.
+     *
+     * @return The budget in bytes
+     */
+    public synchronized long getBudget() {
+        if (this.budget == 0) {
+            String configured = System.getProperty("stellar.temp.budget");
+            if (configured != null) {
+                this.budget = parseSize(configured);
+            } else {
+                try {
+                    this.budget = Files.getFileStore(StellarDiskManager.getTempDirectory()).getUsableSpace() / 4 * 3;
+                } catch (IOException ex) {
+                    this.budget = Long.MAX_VALUE;
+                    logger.warning("Could not size the temporary folder's disk, no temporary space budget: " + ex);
+                }
+            }
+        }
+        return this.budget;
+    }
+
+    /**
+     * Sets the budget, ex: to reconfigure a running daemon.
+     *
+     * @param bytes The budget in bytes
+     */
+    public synchronized void setBudget(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("The temporary space budget must be positive: " + bytes);
+        }
+        this.budget = bytes;
+        notifyAll();
+    }
+
+    /**
+     * Gets the bytes reserved by the conversions in flight.
+     *
+     * @return The bytes
+     */
+    public synchronized long getReserved() {
+        return this.reserved;
+    }
+
+    /**
+     * Gets the number of conversions that had to wait for room.
+     *
+     * @return The count
+     */
+    public synchronized long getWaits() {
+        return this.waits;
+    }
+
+    /**
+     * Releases the bytes of a reservation.
+     *
+     * @param bytes The bytes
+     */
+    private synchronized void release(long bytes) {
+        this.reserved -= bytes;
+        notifyAll();
+    }
+
+    /**
+     * Releases the room still held by a working directory that was kept with
+     * {@link Reservation#retain(java.nio.file.Path)}, once it was resumed or
+     * deleted.
+     *
+     * @param workspace The working directory
+     */
+    public void releaseWorkspace(Path workspace) {
+        Reservation reservation = this.retained.remove(workspace.toAbsolutePath());
+        if (reservation != null) {
+            reservation.release(reservation.getBytes());
+        }
+    }
+
+    /**
+     * Room held by one conversion, in memory or in the temporary folder.
+     */
+    public static final class Reservation implements AutoCloseable {
+
+        /**
+         * The bytes held, 0 once released.
+         */
+        private long bytes;
+        /**
+         * Whether or not the room is in memory.
+         */
+        private final boolean inMemory;
+        /**
+         * Whether or not the room was handed over to a retained working
+         * directory.
+         */
+        private boolean retained;
+
+        /**
+         * Constructs a new {@link Reservation}.
+         *
+         * @param bytes The bytes held
+         * @param inMemory Whether or not the room is in memory
+         */
+        private Reservation(long bytes, boolean inMemory) {
+            this.bytes = bytes;
+            this.inMemory = inMemory;
+        }
+
+        /**
+         * Makes the working directory in the tier the room is held in.
+         *
+         * @return The working directory
+         * @throws IOException If it could not be made
+         */
+        public Path createWorkspace() throws IOException {
+            return this.inMemory ? MemoryStaging.SHM.createWorkspace() : StellarDiskManager.createWorkspace();
+        }
+
+        /**
+         * Whether or not the room is in memory.
+         *
+         * @return The boolean
+         */
+        public boolean isInMemory() {
+            return this.inMemory;
+        }
+
+        /**
+         * Gets the bytes held.
+         *
+         * @return The bytes, 0 once released
+         */
+        public synchronized long getBytes() {
+            return this.bytes;
+        }
+
+        /**
+         * Keeps holding the room of a working directory that outlives its
+         * conversion, ex: one a checkpoint will resume from. Only the bytes
+         * the working directory still uses stay held, the rest is released
+         * right away. Closing the reservation does nothing afterwards, the
+         * room is released by {@link TempSpaceBudget#releaseWorkspace(java.nio.file.Path)}.
+         *
+         * @param workspace The working directory
+         */
+        public void retain(Path workspace) {
+            long used;
+            try {
+                used = FileUtils.sizeOfDirectory(workspace.toFile());
+            } catch (RuntimeException ex) {
+                used = getBytes();
+            }
+            synchronized (this) {
+                this.retained = true;
+            }
+            release(Math.max(0, getBytes() - used));
+            BUDGET.retained.put(workspace.toAbsolutePath(), this);
+        }
+
+        /**
+         * Releases some of the room.
+         *
+         * @param bytes The bytes to release, no more than are held
+         */
+        private void release(long bytes) {
+            synchronized (this) {
+                bytes = Math.min(bytes, this.bytes);
+                this.bytes -= bytes;
+            }
+            if (bytes > 0 && this.inMemory) {
+                MemoryStaging.SHM.release(bytes);
+            } else if (bytes > 0) {
+                BUDGET.release(bytes);
+            }
+        }
+
+        /**
+         * Releases the room, only the first call counts. Does nothing for a
+         * retained working directory.
+         */
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (this.retained) {
+                    return;
+                }
+            }
+            release(getBytes());
+        }
+    }
+}
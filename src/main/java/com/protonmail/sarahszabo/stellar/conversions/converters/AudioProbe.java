@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.conversions.converters;
+
+import com.protonmail.sarahszabo.stellar.util.StellarGravitonField;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.OptionalDouble;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * The result of probing a file with ffprobe: the codec of its first audio
+ * stream, the name of its container and its duration. Used to decide which
+ * {@link ConversionPath} a file can take, and how much temporary space its
+ * conversion needs.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class AudioProbe {
+
+    /**
+     * The probe used when ffprobe could not tell us anything about the file.
+     */
+    public static final AudioProbe UNKNOWN = new AudioProbe("", "", -1);
+
+    /**
+     * Probes the file with ffprobe. Never fails, if ffprobe is missing or
+     * can't read the file, {@link AudioProbe#UNKNOWN} is returned and the file
+     * is simply transcoded.
+     *
+     * @param file The file to probe
+     * @return The probe result
+     */
+    public static AudioProbe probe(Path file) {
+        //ffprobe -v error -select_streams a:0 -show_entries stream=codec_name:format=format_name,duration -of default=nw=1 FILE
+        ProcessBuilder builder = new ProcessBuilder("ffprobe", "-v", "error", "-select_streams", "a:0",
+                "-show_entries", "stream=codec_name:format=format_name,duration", "-of", "default=nw=1", file.toString())
+                .redirectError(ProcessBuilder.Redirect.DISCARD);
+        try {
+            Process process = StellarGravitonField.startProcess(builder);
+            String output = IOUtils.toString(process.getInputStream(), StandardCharsets.UTF_8);
+            if (process.waitFor() != 0) {
+                return UNKNOWN;
+            }
+            return parse(output);
+        } catch (IOException ex) {
+            Logger.getLogger(AudioProbe.class.getName()).log(Level.FINE, "ffprobe unavailable", ex);
+            return UNKNOWN;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return UNKNOWN;
+        }
+    }
+
+    /**
+     * Parses the key=value output of ffprobe.
+     *
+     * @param output The output of ffprobe
+     * @return The probe result
+     */
+    static AudioProbe parse(String output) {
+        String codec = "", format = "";
+        double duration = -1;
+        for (String line : output.split("\\R")) {
+            if (line.startsWith("codec_name=")) {
+                codec = line.substring("codec_name=".length()).trim();
+            } else if (line.startsWith("format_name=")) {
+                format = line.substring("format_name=".length()).trim();
+            } else if (line.startsWith("duration=")) {
+                try {
+                    duration = Double.parseDouble(line.substring("duration=".length()).trim());
+                } catch (NumberFormatException ex) {
+                    //N/A for streams without a known length
+                }
+            }
+        }
+        return new AudioProbe(codec, format, duration);
+    }
+
+    /**
+     * The codec of the first audio stream, ex: opus.
+     */
+    private final String codec;
+    /**
+     * The container format names, ex: matroska,webm.
+     */
+    private final String formatName;
+    /**
+     * The duration in seconds, negative if unknown.
+     */
+    private final double duration;
+
+    /**
+     * Constructs a new {@link AudioProbe}.
+     *
+     * @param codec The codec of the first audio stream
+     * @param formatName The container format names
+     * @param duration The duration in seconds, negative if unknown
+     */
+    private AudioProbe(String codec, String formatName, double duration) {
+        this.codec = codec;
+        this.formatName = formatName;
+        this.duration = duration;
+    }
+
+    /**
+     * Whether or not the first audio stream is Opus.
+     *
+     * @return The boolean
+     */
+    public boolean isOpus() {
+        return this.codec.equals("opus");
+    }
+
+    /**
+     * Whether or not the container is Ogg.
+     *
+     * @return The boolean
+     */
+    public boolean isOgg() {
+        return this.formatName.equals("ogg");
+    }
+
+    /**
+     * Whether or not the container is WebM or Matroska.
+     *
+     * @return The boolean
+     */
+    public boolean isMatroska() {
+        return this.formatName.contains("matroska") || this.formatName.contains("webm");
+    }
+
+    /**
+     * Gets the cheapest path that produces a valid .opus file from this
+     * source.
+     *
+     * @return The conversion path
+     */
+    public ConversionPath getOpusPath() {
+        if (isOpus() && isOgg()) {
+            return ConversionPath.RETAG;
+        } else if (isOpus() && isMatroska()) {
+            return ConversionPath.REMUX;
+        }
+        return ConversionPath.TRANSCODE;
+    }
+
+    /**
+     * Gets the codec of the first audio stream.
+     *
+     * @return The codec
+     */
+    public String getCodec() {
+        return this.codec;
+    }
+
+    /**
+     * Gets the container format names.
+     *
+     * @return The format names
+     */
+    public String getFormatName() {
+        return this.formatName;
+    }
+
+    /**
+     * Gets the duration of the file.
+     *
+     * @return The duration in seconds, empty if ffprobe didn't know it
+     */
+    public OptionalDouble getDuration() {
+        return this.duration >= 0 ? OptionalDouble.of(this.duration) : OptionalDouble.empty();
+    }
+
+    @Override
+    public String toString() {
+        return "Codec: " + this.codec + ", Container: " + this.formatName
+                + (this.duration >= 0 ? ", Duration: " + this.duration + "s" : "");
+    }
+}
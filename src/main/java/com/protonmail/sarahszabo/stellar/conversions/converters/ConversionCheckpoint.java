@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.conversions.converters;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Told by the {@link StellarAudioConverter} when a conversion has finished its
+ * expensive work and when it has committed it, so the work can be recorded and
+ * never redone. See
+ * {@link StellarAudioConverter#setCheckpoint(ConversionCheckpoint)}.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+@FunctionalInterface
+public interface ConversionCheckpoint {
+
+    /**
+     * Called once the finished files are in the working directory, just
+     * before they are copied to the output folder.
+     *
+     * @param stage The stage that produced them, Transcode, Remux or Retag
+     * @param workspace The working directory of the conversion
+     * @param outputNames The names of the finished files in the working
+     * directory, the primary output first
+     * @throws IOException If the checkpoint could not be recorded, the
+     * conversion fails
+     */
+    void encoded(ConversionStage stage, Path workspace, List<String> outputNames) throws IOException;
+
+    /**
+     * Called once the finished files are in the output folder, just before
+     * the working directory is deleted. Until then, the working directory of
+     * a conversion that reported {@link ConversionCheckpoint#encoded} is kept
+     * even if the conversion fails, so the files can still be copied out.
+     *
+     * @param finished The finished files, the primary output first
+     * @throws IOException If the checkpoint could not be recorded, the
+     * conversion fails
+     */
+    default void committed(List<Path> finished) throws IOException {
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.conversions.converters;
+
+import com.protonmail.sarahszabo.stellar.util.JobContext;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * The route a file takes through the {@link StellarAudioConverter}, from the
+ * cheapest to the most expensive. Every conversion records the path it took so
+ * a run can report how much work was actually done. The counts are kept for
+ * the whole process, for JMX, and for every {@link JobContext} job, so each
+ * command of a resident daemon reports only its own conversions.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public enum ConversionPath {
+
+    /**
+     * The source is already Opus in an Ogg container, only the tags are
+     * rewritten.
+     */
+    RETAG {
+        @Override
+        public String toString() {
+            return "Retagged";
+        }
+    },
+    /**
+     * The source is Opus in a WebM/MKV container, the audio stream is copied
+     * into Ogg without re-encoding.
+     */
+    REMUX {
+        @Override
+        public String toString() {
+            return "Remuxed";
+        }
+    },
+    /**
+     * The source is decoded and re-encoded.
+     */
+    TRANSCODE {
+        @Override
+        public String toString() {
+            return "Transcoded";
+        }
+    };
+
+    /**
+     * The number of conversions that took this path since the process
+     * started.
+     */
+    private final LongAdder count = new LongAdder();
+    /**
+     * The number of conversions that took this path for each job still
+     * running, forgotten with the job.
+     */
+    private final Map<JobContext, LongAdder> jobCounts = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Records one conversion taking this path, for the process and the
+     * current job.
+     */
+    public void record() {
+        this.count.increment();
+        JobContext.current().ifPresent(job -> this.jobCounts.computeIfAbsent(job, key -> new LongAdder()).increment());
+    }
+
+    /**
+     * Gets the number of conversions that took this path since the process
+     * started.
+     *
+     * @return The count
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * Gets the number of conversions that took this path during this run: for
+     * the current job, or the whole process outside of one.
+     *
+     * @return The count
+     */
+    public long getRunCount() {
+        return JobContext.current().map(job -> {
+            LongAdder jobCount = this.jobCounts.get(job);
+            return jobCount == null ? 0 : jobCount.sum();
+        }).orElseGet(this::getCount);
+    }
+
+    /**
+     * Generates a one line report of the paths taken during this run. Ex:
+     * Retagged: 3, Remuxed: 1, Transcoded: 12.
+     *
+     * @return The report
+     */
+    public static String report() {
+        return Arrays.stream(values()).map(path -> path + ": " + path.getRunCount()).collect(Collectors.joining(", "));
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.conversions.converters;
+
+import com.protonmail.sarahszabo.stellar.util.LatencyHistogram;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * The stages a file goes through in the {@link StellarAudioConverter}. Every
+ * stage keeps a {@link LatencyHistogram} of how long it took during this run,
+ * so a slow batch shows where the time went.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public enum ConversionStage {
+
+    /**
+     * Reading the existing tags of the file with exiftool.
+     */
+    METADATA {
+        @Override
+        public String toString() {
+            return "Metadata Lookup";
+        }
+    },
+    /**
+     * Creating the working directory and copying the file into it.
+     */
+    STAGING {
+        @Override
+        public String toString() {
+            return "Staging";
+        }
+    },
+    /**
+     * Ripping the album art from a video.
+     */
+    ALBUM_ART {
+        @Override
+        public String toString() {
+            return "Album Art";
+        }
+    },
+    /**
+     * Probing the file with ffprobe for the cheapest conversion path.
+     */
+    PROBE {
+        @Override
+        public String toString() {
+            return "Probe";
+        }
+    },
+    /**
+     * Decoding the file and feeding every encoder, see
+     * {@link ConversionPath#TRANSCODE}.
+     */
+    TRANSCODE {
+        @Override
+        public String toString() {
+            return "Transcode";
+        }
+    },
+    /**
+     * Copying the Opus stream into Ogg, see {@link ConversionPath#REMUX}.
+     */
+    REMUX {
+        @Override
+        public String toString() {
+            return "Remux";
+        }
+    },
+    /**
+     * Rewriting the Opus tags, see {@link ConversionPath#RETAG}.
+     */
+    RETAG {
+        @Override
+        public String toString() {
+            return "Retag";
+        }
+    },
+    /**
+     * Copying the finished files to the output folder.
+     */
+    COPY_BACK {
+        @Override
+        public String toString() {
+            return "Copy Back";
+        }
+    };
+
+    /**
+     * Gets the stage in which the conversion path does its work.
+     *
+     * @param path The conversion path
+     * @return The stage
+     */
+    public static ConversionStage of(ConversionPath path) {
+        switch (path) {
+            case RETAG:
+                return RETAG;
+            case REMUX:
+                return REMUX;
+            default:
+                return TRANSCODE;
+        }
+    }
+
+    /**
+     * The latencies of this stage during this run.
+     */
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    /**
+     * Records one pass through this stage that started at the time given.
+     * Returns the time it finished, so consecutive stages can be chained.
+     *
+     * @param started The {@link System#nanoTime()} the stage started at
+     * @return The {@link System#nanoTime()} the stage finished at
+     */
+    public long record(long started) {
+        long finished = System.nanoTime();
+        this.latencies.record(TimeUnit.NANOSECONDS.toMicros(finished - started));
+        return finished;
+    }
+
+    /**
+     * Gets the latencies of this stage during this run.
+     *
+     * @return The latencies
+     */
+    public LatencyHistogram getLatencies() {
+        return this.latencies;
+    }
+
+    /**
+     * Clears the latencies of every stage.
+     */
+    public static void resetAll() {
+        Arrays.stream(values()).forEach(stage -> stage.latencies.reset());
+    }
+
+    /**
+     * Generates a report of the stages that ran during this run, one line
+     * each.
+     *
+     * @return The report
+     */
+    public static String report() {
+        return Arrays.stream(values()).filter(stage -> stage.latencies.getCount() > 0)
+                .map(stage -> stage + ": " + stage.latencies).collect(Collectors.joining("\n"));
+    }
+}
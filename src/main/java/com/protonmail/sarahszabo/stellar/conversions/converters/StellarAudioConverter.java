@@ -0,0 +1,743 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.conversions.converters;
+
+import com.protonmail.sarahszabo.stellar.Main;
+import com.protonmail.sarahszabo.stellar.StellarDiskManager;
+import com.protonmail.sarahszabo.stellar.conversions.StellarFFMPEGTimeStamp;
+import com.protonmail.sarahszabo.stellar.conversions.TempSpaceBudget;
+import com.protonmail.sarahszabo.stellar.conversions.converters.encoders.OpusEncoder;
+import com.protonmail.sarahszabo.stellar.conversions.converters.encoders.StellarEncoder;
+import com.protonmail.sarahszabo.stellar.metadata.ConverterMetadata;
+import com.protonmail.sarahszabo.stellar.metadata.ConverterMetadataBuilder;
+import com.protonmail.sarahszabo.stellar.metadata.MetadataType;
+import com.protonmail.sarahszabo.stellar.metadata.VorbisPicture;
+import com.protonmail.sarahszabo.stellar.metadata.opus.OpusTagsRewriter;
+import com.protonmail.sarahszabo.stellar.telemetry.CacheLookupEvent;
+import com.protonmail.sarahszabo.stellar.telemetry.StellarTelemetry;
+import com.protonmail.sarahszabo.stellar.util.AsyncLogHandler;
+import com.protonmail.sarahszabo.stellar.util.FileExtension;
+import com.protonmail.sarahszabo.stellar.util.StellarCLIUtils;
+import com.protonmail.sarahszabo.stellar.util.StellarGravitonField;
+import static com.protonmail.sarahszabo.stellar.util.StellarGravitonField.*;
+import com.protonmail.sarahszabo.stellar.util.ParsedFileName;
+import com.protonmail.sarahszabo.stellar.util.StellarFileNameParser;
+import com.protonmail.sarahszabo.stellar.util.StellarGreatFilter;
+import com.protonmail.sarahszabo.stellar.util.StellarLoggingFormatter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The conversion engine for audio outputs. The source file is decoded exactly
+ * once by ffmpeg into a WAV stream, and that stream is fanned out to every
+ * {@link StellarEncoder} given to the converter, so producing an .opus copy at
+ * several bitrates and a .flac archive costs one decode instead of one per
+ * output. NOTE: Requires these libraries to use successfully: exiftool, ffmpeg,
+ * and opusenc libraries.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public class StellarAudioConverter extends StellarConverter {
+
+    /**
+     * The created by tag, used for metadata comments.
+     */
+    public static final String CREATED_BY_TAG = MetadataType.CREATED_BY.toString();
+    /**
+     * The date time formatter used for metadata.
+     */
+    public static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    /**
+     * The size of the buffer used to fan the decoded stream out to the
+     * encoders.
+     */
+    private static final int FAN_OUT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Gets the filename format for the image conversion process. The metadata
+     * must be set before calling this method.
+     *
+     * @param metadata The metadata list to generate the filename from
+     * @return The filename with .png extension
+     */
+    public static String getImageFileName(Map<MetadataType, String> metadata) {
+        return preferredTitleFormat(metadata.get(MetadataType.ARTIST)) + " -- "
+                + preferredTitleFormat(metadata.get(MetadataType.TITLE)) + ".png";
+    }
+
+    /**
+     * Applies the file name filters to the string and returns a nicely
+     * formatted string. Removes unwanted information, such as (HQ 320K) from
+     * the filename.
+     *
+     * @param str The string filename
+     * @return The nicely formatted filename
+     */
+    protected static String applyFileNameFilters(String str) {
+        return StellarFileNameParser.removeNoise(str);
+    }
+
+    /**
+     * Gets the title and author from the file name, and fills the map with this
+     * data.
+     *
+     * @param filePath The path of the file for which metadata analysis is
+     * taking place
+     * @return The metadata found or
+     * {@link ConverterMetadata#getDefaultMetadata()} if none was found
+     */
+    public static ConverterMetadata generateMetadata(Path filePath) {
+        ConverterMetadataBuilder builder = new ConverterMetadataBuilder(ConverterMetadata.getDefaultMetadata());
+        //One scan strips the track number and (HQ 192K) or some other such annoyance, then splits at "-", "|" or "/"
+        ParsedFileName parsed = StellarFileNameParser.DEFAULT.parse(filePath);
+        if (parsed.hasArtistTitle()) {
+            builder.artist(parsed.getArtist());
+            builder.title(parsed.getTitle());
+        }
+        return builder.buildMetadata();
+    }
+
+    /**
+     * Runs the path through the filters and checks it before it is handed to
+     * the {@link StellarConverter} constructor.
+     *
+     * @param filePath The file for conversion
+     * @param outputFolder The path to put the finished file in
+     * @return The filtered path
+     * @throws IOException If something happened while filtering
+     */
+    private static Path filterInputFile(Path filePath, Path outputFolder) throws IOException {
+        if (Files.isDirectory(filePath)) {
+            throw new IllegalArgumentException("The given file path is that of a direcory!");
+        } else if (!Files.isDirectory(outputFolder)) {
+            throw new IllegalArgumentException("Output folder isn't a directory!");
+        } else if (!filePath.getFileName().toString().contains(".")) {
+            throw new IllegalArgumentException("The file extention type is not supported by the converter!" + filePath);
+        }
+        //Run through filters before accepting path
+        return Objects.requireNonNull(StellarGreatFilter.filterPaths(Arrays.asList(filePath)).get(0));
+    }
+
+    /**
+     * The encoders this converter feeds by default.
+     */
+    private final List<StellarEncoder> encoders;
+    /**
+     * The metadata of the file, built up over the course of the conversion.
+     */
+    protected final ConverterMetadataBuilder metadataBuilder;
+    /**
+     * The extension of the original file.
+     */
+    protected final FileExtension fileExtension;
+    /**
+     * The original file name without extension in the preferred format.
+     */
+    protected final String originalFileNameNoEXTPreferred;
+    /**
+     * The folder the finished files are put in.
+     */
+    protected final Path outputFolder;
+    /**
+     * The logger of this converter.
+     */
+    protected final Logger logger;
+    /**
+     * Told when the finished files are in the working directory, may be null.
+     */
+    private volatile ConversionCheckpoint checkpoint;
+
+    /**
+     * Constructs a new {@link StellarAudioConverter} with the specified file
+     * path, output folder, logger, metadata and encoder outputs. If the
+     * converted files already exist, they are overwritten. For supported file
+     * extensions, see {@link FileExtension}.
+     *
+     * @param filePath The file for conversion
+     * @param outputFolder The path to put the finished files in
+     * @param logger The cartographer to use with this converter
+     * @param metadata The metadata to use for this converter
+     * @param encoders The encoders to feed, the first one is the primary
+     * output
+     * @throws java.io.IOException If something happened
+     * @throws IllegalArgumentException If file type not supported by this
+     * converter
+     */
+    public StellarAudioConverter(Path filePath, Path outputFolder, Logger logger, ConverterMetadata metadata,
+            List<StellarEncoder> encoders) throws IOException {
+        super(filterInputFile(filePath, outputFolder), outputFolder, encoders.get(0).getFileExtension(), false);
+        this.encoders = List.copyOf(encoders);
+        this.outputFolder = Objects.requireNonNull(outputFolder);
+        this.logger = Objects.requireNonNull(logger);
+        StellarLoggingFormatter.attach(this.logger, AsyncLogHandler.console());
+        String fileName = filePath.getFileName().toString();
+        try {
+            this.fileExtension = FileExtension.valueOf(fileName.substring(fileName.lastIndexOf('.') + 1).toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            logger.severe("The file extention type is not supported by the converter!" + filePath.toString());
+            throw new IllegalArgumentException("The file extention type is not supported by the converter!" + filePath.toString(), ex);
+        }
+        this.originalFileNameNoEXTPreferred = preferredTitleFormat(FileExtension.stripFileExtension(this.INPUT_FILE));
+        //Define Metadata Before Metadata Generation
+        this.metadataBuilder = new ConverterMetadataBuilder(Objects.requireNonNull(metadata));
+        this.DESTINATION_FILE = this.outputFolder.resolve(getOutputFileName(this.encoders.get(0), this.encoders));
+    }
+
+    /**
+     * Constructs a new {@link StellarAudioConverter} with the specified file
+     * path, output folder and encoder outputs. The metadata is read from the
+     * file.
+     *
+     * @param filePath The file for conversion
+     * @param outputFolder The path to put the finished files in
+     * @param encoders The encoders to feed, the first one is the primary
+     * output
+     * @throws java.io.IOException If something happened
+     */
+    public StellarAudioConverter(Path filePath, Path outputFolder, List<StellarEncoder> encoders) throws IOException {
+        this(filePath, outputFolder, Logger.getLogger(StellarAudioConverter.class.getName()),
+                StellarDiskManager.getMetadata(filePath), encoders);
+    }
+
+    /**
+     * Asks the user for the information about the title and artist and sets the
+     * metadata with it.
+     */
+    private void generateTitleArtist() {
+        this.metadataBuilder.addAll(StellarCLIUtils.askUserForArtistTitle(applyFileNameFilters(this.originalFileNameNoEXTPreferred)));
+    }
+
+    /**
+     * Gets the title and author from the file name, if it names them.
+     *
+     * @return Whether the file name had the title and author
+     */
+    private boolean generateMetadataFromFileName() {
+        ParsedFileName parsed = StellarFileNameParser.DEFAULT.parse(this.INPUT_FILE);
+        if (!parsed.hasArtistTitle()) {
+            return false;
+        }
+        this.metadataBuilder.artist(parsed.getArtist());
+        this.metadataBuilder.title(parsed.getTitle());
+        return true;
+    }
+
+    /**
+     * Makes a best effort to get the title name and artist name from the
+     * filename. Works if the filename looks like MyTitle -- MyTrack.mp4. If
+     * that fails, the tags are kept, or if there are none, the user is asked.
+     */
+    protected void resolveArtistTitle() {
+        //If this matches the ARTIST -- FILENAME pattern, generate metadata from filename
+        if (this.FILE_NAME.indexOf('-') >= 0 && generateMetadataFromFileName()) {
+            return;
+        }//If we don't have tags, and don't have ARTIST - TITLE format, ask user
+        if (this.metadataBuilder.isDefaultMetadata()) {
+            generateTitleArtist();
+        }
+    }
+
+    /**
+     * Helper method for automating comparisons against default metadata fields.
+     *
+     * @param type The type to compare
+     * @return Whether or not they are equal
+     */
+    private boolean isDefaultMetadata(MetadataType type) {
+        return ConverterMetadata.isDefaultMetadata(type, getMetadata());
+    }
+
+    /**
+     * Fills in the metadata fields that the conversion needs and that are not
+     * set yet: the date, album art, created by and bitrate fields.
+     *
+     * @param encoders The encoders of this conversion
+     */
+    private void completeMetadata(List<StellarEncoder> encoders) {
+        //Check the Date Field
+        if (isDefaultMetadata(MetadataType.DATE)) {
+            this.metadataBuilder.date(LocalDate.now());
+        }
+        //Check Album Art
+        if (isDefaultMetadata(MetadataType.ALBUM_ART)) {
+            this.metadataBuilder.albumArtPath(StellarDiskManager.getGenericPicture());
+        }//Set Created By
+        this.metadataBuilder.createdBy(CREATED_BY_TAG + "=" + Main.FULL_PROGRAM_NAME);
+        //Set Bitrate From the Primary Lossy Output if Not Already Set
+        if (isDefaultMetadata(MetadataType.BITRATE)) {
+            encoders.stream().mapToInt(StellarEncoder::getBitrate).filter(bitrate -> bitrate > 0).findFirst()
+                    .ifPresent(this.metadataBuilder::bitrate);
+        }
+    }
+
+    /**
+     * Gets the name of the file the encoder will produce. If another encoder
+     * of the conversion produces the same extension, the encoder's qualifier
+     * is added to keep the two apart.
+     *
+     * @param encoder The encoder
+     * @param encoders All the encoders of the conversion
+     * @return The file name
+     */
+    protected String getOutputFileName(StellarEncoder encoder, List<StellarEncoder> encoders) {
+        //If we have metadata title, use that as the filename
+        String title = this.metadataBuilder.getTitle().equalsIgnoreCase(ConverterMetadata.getDefaultMetadata().getTitle())
+                ? this.originalFileNameNoEXTPreferred : this.metadataBuilder.getTitle();
+        boolean shared = encoders.stream().filter(other -> other != encoder)
+                .anyMatch(other -> other.getFileExtension().equals(encoder.getFileExtension()));
+        return preferredTitleFormat(shared ? title + " (" + encoder.getQualifier() + ")" : title) + encoder.getFileExtension();
+    }
+
+    /**
+     * Converts the file to every encoder output given in the constructor.
+     *
+     * @return The path to the primary output file
+     */
+    @Override
+    public Path convert() {
+        try {
+            resolveArtistTitle();
+            return convert(this.encoders, null, null).get(this.encoders.get(0));
+        } catch (IOException ex) {
+            Logger.getLogger(StellarAudioConverter.class.getName()).log(Level.SEVERE, null, ex);
+            throw new IllegalStateException("Conversion " + this.INPUT_FILE + " was unsuccessful.", ex);
+        }
+    }
+
+    /**
+     * Converts the file to every encoder output given in the constructor with
+     * the specified metadata.
+     *
+     * @param metadata The metadata to use
+     * @return The path to the primary output file
+     */
+    @Override
+    public Path convert(ConverterMetadata metadata) {
+        this.metadataBuilder.addAll(metadata);
+        try {
+            return convert(this.encoders, null, null).get(this.encoders.get(0));
+        } catch (IOException ex) {
+            Logger.getLogger(StellarAudioConverter.class.getName()).log(Level.SEVERE, null, ex);
+            throw new IllegalStateException("Conversion " + this.INPUT_FILE + " was unsuccessful.", ex);
+        }
+    }
+
+    /**
+     * Converts the file to every encoder output given in the constructor.
+     *
+     * @return The paths of the finished files, by encoder, in encoder order
+     * @throws IOException If something went wrong
+     */
+    public Map<StellarEncoder, Path> convertAll() throws IOException {
+        resolveArtistTitle();
+        return convert(this.encoders, null, null);
+    }
+
+    /**
+     * Runs the conversion pipeline: probes the file, reserves its room in
+     * memory or the temporary folder with the {@link TempSpaceBudget}, stages
+     * it in its own working directory there, rips the album art from videos, decodes the audio
+     * once and feeds it to every encoder, then copies the finished files to
+     * the output folder and deletes the working directory. Both timestamps may
+     * be null. If either timestamp is null, the times are ignored.
+     *
+     * @param encoders The encoders to feed
+     * @param start The start time
+     * @param end The end time
+     * @return The paths of the finished files, by encoder, in encoder order
+     * @throws IOException If something went wrong
+     */
+    protected Map<StellarEncoder, Path> convert(List<StellarEncoder> encoders, StellarFFMPEGTimeStamp start,
+            StellarFFMPEGTimeStamp end) throws IOException {
+        long started = System.nanoTime();
+        //Probed in place, the size and duration decide the room the conversion needs before anything is staged
+        AudioProbe probe = AudioProbe.probe(this.INPUT_FILE);
+        logger.fine(probe.toString());
+        ConversionStage.PROBE.record(started);
+        TempSpaceBudget.Reservation reservation;
+        try {
+            reservation = TempSpaceBudget.BUDGET.reserve(TempSpaceBudget.estimate(Files.size(this.INPUT_FILE),
+                    probe.getDuration(), encoders));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for temporary space for " + this.INPUT_FILE, ex);
+        }
+        try (reservation) {
+            Path workspace = reservation.createWorkspace();
+            //Encoded files a checkpoint knows about are kept until they are committed, to be copied out on resume
+            boolean keep = false;
+            try {
+                started = System.nanoTime();
+                Path stagedFile = StellarDiskManager.copyToWorkspace(this.INPUT_FILE, workspace);
+                started = ConversionStage.STAGING.record(started);
+                if (processImage(workspace, stagedFile)) {
+                    started = ConversionStage.ALBUM_ART.record(started);
+                }
+                completeMetadata(encoders);
+                ConverterMetadata metadata = this.metadataBuilder.buildMetadata();
+                Map<StellarEncoder, String> outputNames = new LinkedHashMap<>(encoders.size());
+                for (StellarEncoder encoder : encoders) {
+                    outputNames.put(encoder, getOutputFileName(encoder, encoders));
+                }
+                ConversionPath path = chooseConversionPath(probe, encoders, start, end);
+                if (path == ConversionPath.TRANSCODE) {
+                    decodeAndEncode(workspace, stagedFile, start, end, metadata, outputNames);
+                } else if (path == ConversionPath.RETAG) {
+                    OpusTagsRewriter.rewrite(stagedFile, workspace.resolve(outputNames.get(encoders.get(0))),
+                            tags -> tags.setMetadata(metadata));
+                } else {
+                    copyAudioStream(workspace, stagedFile, metadata, outputNames.get(encoders.get(0)));
+                }
+                started = ConversionStage.of(path).record(started);
+                path.record();
+                logger.info(path + ": " + this.INPUT_FILE.getFileName());
+                ConversionCheckpoint checkpoint = this.checkpoint;
+                if (checkpoint != null) {
+                    checkpoint.encoded(ConversionStage.of(path), workspace, List.copyOf(outputNames.values()));
+                    keep = true;
+                }
+                //Copy Back from the working directory
+                Map<StellarEncoder, Path> finished = new LinkedHashMap<>(encoders.size());
+                for (Map.Entry<StellarEncoder, String> entry : outputNames.entrySet()) {
+                    Path destination = this.outputFolder.resolve(entry.getValue());
+                    Files.copy(workspace.resolve(entry.getValue()), destination,
+                            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                    StellarTelemetry.TELEMETRY.written(Files.size(destination));
+                    finished.put(entry.getKey(), destination);
+                }
+                ConversionStage.COPY_BACK.record(started);
+                if (checkpoint != null) {
+                    checkpoint.committed(List.copyOf(finished.values()));
+                    keep = false;
+                }
+                this.DESTINATION_FILE = finished.get(encoders.get(0));
+                this.metadata = metadata;
+                return Collections.unmodifiableMap(finished);
+            } finally {
+                if (!keep) {
+                    StellarDiskManager.deleteWorkspace(workspace);
+                } else {
+                    //Still on the disk until the checkpoint's resume copies it out and deletes it
+                    reservation.retain(workspace);
+                }
+            }
+        }
+    }
+
+    /**
+     * Chooses the cheapest valid way to produce the outputs. Only a single
+     * Opus output of a whole file can skip the transcode, and only if the
+     * source's audio already is Opus.
+     *
+     * @param probe The probe of the input file
+     * @param encoders The encoders of this conversion
+     * @param start The start time, may be null
+     * @param end The end time, may be null
+     * @return The conversion path
+     */
+    private ConversionPath chooseConversionPath(AudioProbe probe, List<StellarEncoder> encoders,
+            StellarFFMPEGTimeStamp start, StellarFFMPEGTimeStamp end) {
+        if (encoders.size() != 1 || !(encoders.get(0) instanceof OpusEncoder) || (start != null && end != null)
+                || !(this.fileExtension == FileExtension.OPUS || FileExtension.isVideo(this.fileExtension))) {
+            return ConversionPath.TRANSCODE;
+        }
+        return probe.getOpusPath();
+    }
+
+    /**
+     * Copies the Opus audio stream of the staged file into a new Ogg file
+     * without re-encoding it, replacing the tags with the metadata. Works for
+     * both Ogg and WebM/MKV sources.
+     *
+     * @param workspace The working directory of the conversion
+     * @param stagedFile The staged copy of the input file
+     * @param metadata The metadata to tag the output with
+     * @param outputName The output file name
+     * @throws IOException If ffmpeg failed
+     */
+    private void copyAudioStream(Path workspace, Path stagedFile, ConverterMetadata metadata, String outputName) throws IOException {
+        //The tags go through an ffmetadata file, a picture comment is far too large for the command line
+        Path metadataFile = workspace.resolve(stagedFile.getFileName() + ".ffmetadata");
+        Files.writeString(metadataFile, toFFMetadata(metadata), StandardCharsets.UTF_8);
+        //ffmpeg -i in.webm -i tags.ffmetadata -map 0:a:0 -map_metadata 1 -c:a copy -f ogg out.opus
+        List<String> command = List.of("ffmpeg", "-v", "error", "-nostdin", "-y", "-i", stagedFile.getFileName().toString(),
+                "-i", metadataFile.getFileName().toString(), "-map", "0:a:0", "-map_metadata", "1",
+                "-map_metadata:s:a:0", "1:g", "-c:a", "copy", "-f", "ogg", outputName);
+        logger.info("COMMAND: " + String.join(" ", command));
+        Process process = startProcess(new ProcessBuilder(command).directory(workspace.toFile()).inheritIO());
+        try {
+            if (process.waitFor() != 0) {
+                throw new IOException("ffmpeg could not copy the audio stream of " + this.INPUT_FILE);
+            }
+        } catch (InterruptedException ex) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while converting " + this.INPUT_FILE, ex);
+        }
+    }
+
+    /**
+     * Writes the metadata in ffmpeg's ffmetadata format, with the same
+     * comments opusenc would write.
+     *
+     * @param metadata The metadata
+     * @return The ffmetadata file contents
+     * @throws IOException If the album art could not be read
+     */
+    private static String toFFMetadata(ConverterMetadata metadata) throws IOException {
+        StringBuilder builder = new StringBuilder(";FFMETADATA1\n");
+        appendFFMetadata(builder, "title", metadata.getTitle());
+        appendFFMetadata(builder, "artist", metadata.getArtist());
+        appendFFMetadata(builder, MetadataType.DATE.toString(), metadata.getStellarIndexDate().format(DATE_FORMATTER));
+        String createdBy = metadata.getCreatedBy();
+        int separator = createdBy.indexOf('=');
+        appendFFMetadata(builder, separator > 0 ? createdBy.substring(0, separator) : CREATED_BY_TAG,
+                createdBy.substring(separator + 1));
+        if (Files.isRegularFile(metadata.getAlbumArtPath())) {
+            appendFFMetadata(builder, VorbisPicture.COMMENT_NAME, VorbisPicture.toCommentValue(metadata.getAlbumArtPath()));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Appends one escaped key=value line to the ffmetadata contents.
+     *
+     * @param builder The contents so far
+     * @param key The key
+     * @param value The value
+     */
+    private static void appendFFMetadata(StringBuilder builder, String key, String value) {
+        builder.append(escapeFFMetadata(key)).append('=').append(escapeFFMetadata(value)).append('\n');
+    }
+
+    /**
+     * Escapes the characters that have a meaning in the ffmetadata format.
+     *
+     * @param string The string
+     * @return The escaped string
+     */
+    private static String escapeFFMetadata(String string) {
+        return string.replaceAll("([=;#\\\\\n])", "\\\\$1");
+    }
+
+    /**
+     * Decodes the staged file once with ffmpeg and writes the decoded WAV
+     * stream into the standard input of every encoder at the same time.
+     *
+     * @param workspace The working directory of the conversion
+     * @param stagedFile The staged copy of the input file
+     * @param start The start time, may be null
+     * @param end The end time, may be null
+     * @param metadata The metadata to tag the outputs with
+     * @param outputNames The output file names by encoder
+     * @throws IOException If the decoder or any encoder failed
+     */
+    private void decodeAndEncode(Path workspace, Path stagedFile, StellarFFMPEGTimeStamp start,
+            StellarFFMPEGTimeStamp end, ConverterMetadata metadata, Map<StellarEncoder, String> outputNames) throws IOException {
+        List<String> decodeCommand = new ArrayList<>(16);
+        decodeCommand.addAll(List.of("ffmpeg", "-v", "error", "-nostdin", "-i", stagedFile.getFileName().toString()));
+        if (start != null && end != null) {
+            decodeCommand.addAll(List.of("-ss", start.toString(), "-to", end.toString()));
+        }
+        decodeCommand.addAll(List.of("-vn", "-sn", "-dn", "-f", "wav", "-"));
+        logger.info("COMMAND: " + String.join(" ", decodeCommand));
+        Process decoder = startProcess(new ProcessBuilder(decodeCommand).directory(workspace.toFile())
+                .redirectError(ProcessBuilder.Redirect.INHERIT));
+        Map<StellarEncoder, Process> encoderProcesses = new LinkedHashMap<>(outputNames.size());
+        for (Map.Entry<StellarEncoder, String> entry : outputNames.entrySet()) {
+            List<String> command = entry.getKey().getEncodeCommand(entry.getValue(), metadata);
+            logger.info("COMMAND: " + String.join(" ", command));
+            encoderProcesses.put(entry.getKey(), startProcess(new ProcessBuilder(command).directory(workspace.toFile())
+                    .redirectOutput(ProcessBuilder.Redirect.INHERIT).redirectError(ProcessBuilder.Redirect.INHERIT)));
+        }
+        fanOut(decoder, encoderProcesses);
+        try {
+            if (decoder.waitFor() != 0) {
+                throw new IOException("ffmpeg could not decode " + this.INPUT_FILE);
+            }
+            for (Map.Entry<StellarEncoder, Process> entry : encoderProcesses.entrySet()) {
+                if (entry.getValue().waitFor() != 0) {
+                    throw new IOException(entry.getKey() + " encoder failed for " + this.INPUT_FILE);
+                }
+            }
+        } catch (InterruptedException ex) {
+            decoder.destroyForcibly();
+            encoderProcesses.values().forEach(Process::destroyForcibly);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while converting " + this.INPUT_FILE, ex);
+        }
+    }
+
+    /**
+     * Copies the decoder's output into every encoder's input. An encoder that
+     * stops accepting input is dropped, the rest continue.
+     *
+     * @param decoder The decoder process
+     * @param encoderProcesses The encoder processes
+     * @throws IOException If the decoder's output could not be read
+     */
+    private void fanOut(Process decoder, Map<StellarEncoder, Process> encoderProcesses) throws IOException {
+        Map<StellarEncoder, OutputStream> sinks = new LinkedHashMap<>(encoderProcesses.size());
+        encoderProcesses.forEach((encoder, process) -> sinks.put(encoder, process.getOutputStream()));
+        byte[] buffer = new byte[FAN_OUT_BUFFER_SIZE];
+        try (InputStream decoded = decoder.getInputStream()) {
+            int read;
+            while (!sinks.isEmpty() && (read = decoded.read(buffer)) != -1) {
+                var iterator = sinks.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    var sink = iterator.next();
+                    try {
+                        sink.getValue().write(buffer, 0, read);
+                    } catch (IOException ex) {
+                        logger.warning(sink.getKey() + " encoder stopped accepting input for " + this.INPUT_FILE);
+                        closeQuietly(sink.getValue());
+                        iterator.remove();
+                    }
+                }
+            }
+        } finally {
+            sinks.values().forEach(StellarAudioConverter::closeQuietly);
+        }
+    }
+
+    /**
+     * Closes the stream, ignoring failures from encoders that already exited.
+     *
+     * @param stream The stream to close
+     */
+    private static void closeQuietly(OutputStream stream) {
+        try {
+            stream.close();
+        } catch (IOException ex) {
+            Logger.getLogger(StellarAudioConverter.class.getName()).log(Level.FINE, null, ex);
+        }
+    }
+
+    /**
+     * Gets the filename format for the image conversion process. The metadata
+     * must be set before calling this method.
+     *
+     * @return The filename with .png extension
+     */
+    private String getImageFileName() {
+        return preferredTitleFormat(this.metadataBuilder.getArtist()) + " -- "
+                + preferredTitleFormat(this.metadataBuilder.getTitle()) + ".png";
+    }
+
+    /**
+     * Gets the image from the video, only called after the video has been
+     * staged in the working directory, and adds the album art path to
+     * metadata.
+     *
+     * @param workspace The working directory of the conversion
+     * @param stagedFile The staged copy of the input file
+     * @return Whether or not the file was a video
+     * @throws IOException If something went wrong
+     */
+    private boolean processImage(Path workspace, Path stagedFile) throws IOException {
+        //If we're pointing at a video file, get it's image at 30s
+        if (FileExtension.isVideo(this.fileExtension)) {
+            Path imageFilePath = StellarDiskManager.getPictureOutputFolder().resolve(getImageFileName());
+            //Check if Image Already Exists, if not, generate image
+            boolean ripped = Files.exists(imageFilePath) && Files.size(imageFilePath) > 0;
+            CacheLookupEvent.record("Album Art", imageFilePath, ripped);
+            if (!ripped) {
+                //ffmpeg -ss 25 -i input.mp4 -qscale:v 2 -frames:v 1 -huffman optimal output.jpg
+                processOP(false, null, workspace, "ffmpeg", "-ss", "30", "-i", stagedFile.getFileName().toString(), "-y",
+                        "-qscale:v", "2", "-frames:v", "1", "-huffman", "optimal", getImageFileName());
+                //Copy Image to Picture Output Folder
+                Files.copy(workspace.resolve(getImageFileName()), imageFilePath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            this.metadataBuilder.albumArtPath(imageFilePath);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sets the checkpoint told when the finished files are in the working
+     * directory, before they are copied to the output folder.
+     *
+     * @param checkpoint The checkpoint, or null for none
+     */
+    public void setCheckpoint(ConversionCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Gets the metadata. Note that the metadata is only complete after one of
+     * the convert methods has been called.
+     *
+     * @return The metadata in read-only format
+     */
+    @Override
+    public ConverterMetadata getMetadata() {
+        return this.metadataBuilder.buildMetadata();
+    }
+
+    /**
+     * Gets the encoders this converter feeds by default.
+     *
+     * @return The read-only list of encoders
+     */
+    public List<StellarEncoder> getEncoders() {
+        return this.encoders;
+    }
+
+    /**
+     * Gets the original file path.
+     *
+     * @return The original file path
+     */
+    public Path getOriginalFilePath() {
+        return this.INPUT_FILE;
+    }
+
+    /**
+     * Gets the output folder file path.
+     *
+     * @return The output folder file path
+     */
+    public Path getOutputFolder() {
+        return this.outputFolder;
+    }
+
+    /**
+     * Gets the original file extension.
+     *
+     * @return The file extension of the original file
+     */
+    public FileExtension getOriginalFileExtension() {
+        return this.fileExtension;
+    }
+}
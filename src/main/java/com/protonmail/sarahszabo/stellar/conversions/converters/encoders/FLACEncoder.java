@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.conversions.converters.encoders;
+
+import com.protonmail.sarahszabo.stellar.conversions.converters.StellarAudioConverter;
+import com.protonmail.sarahszabo.stellar.metadata.ConverterMetadata;
+import com.protonmail.sarahszabo.stellar.metadata.MetadataType;
+import java.util.List;
+
+/**
+ * An encoder that produces lossless .flac files with ffmpeg, used for archive
+ * copies.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class FLACEncoder implements StellarEncoder {
+
+    /**
+     * The FLAC compression level, 0 (fastest) to 12 (smallest).
+     */
+    private final int compressionLevel;
+
+    /**
+     * Constructs a new {@link FLACEncoder} with the specified compression
+     * level.
+     *
+     * @param compressionLevel The compression level, 0 to 12
+     */
+    public FLACEncoder(int compressionLevel) {
+        if (compressionLevel < 0 || compressionLevel > 12) {
+            throw new IllegalArgumentException("FLAC compression levels run from 0 to 12");
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Constructs a new {@link FLACEncoder} with the default compression level
+     * of 6.
+     */
+    public FLACEncoder() {
+        this(6);
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".flac";
+    }
+
+    @Override
+    public String getQualifier() {
+        return "Level " + this.compressionLevel;
+    }
+
+    @Override
+    public int getBitrate() {
+        return 0;
+    }
+
+    @Override
+    public List<String> getEncodeCommand(String outputFileName, ConverterMetadata metadata) {
+        //ffmpeg -f wav -i - -c:a flac -compression_level 6 "audio.flac"
+        return List.of("ffmpeg", "-v", "error", "-f", "wav", "-i", "-", "-y",
+                "-c:a", "flac", "-compression_level", String.valueOf(this.compressionLevel),
+                "-metadata", "title=" + metadata.getTitle(),
+                "-metadata", "artist=" + metadata.getArtist(),
+                "-metadata", MetadataType.DATE.toString() + "=" + metadata.getStellarIndexDate().format(StellarAudioConverter.DATE_FORMATTER),
+                "-metadata", metadata.getCreatedBy(),
+                outputFileName);
+    }
+
+    @Override
+    public String toString() {
+        return "FLAC " + getQualifier();
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.conversions.converters.encoders;
+
+import com.protonmail.sarahszabo.stellar.conversions.converters.StellarAudioConverter;
+import com.protonmail.sarahszabo.stellar.metadata.ConverterMetadata;
+import com.protonmail.sarahszabo.stellar.metadata.MetadataType;
+import java.util.List;
+
+/**
+ * An encoder that produces .opus files with opusenc at a fixed bitrate.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class OpusEncoder implements StellarEncoder {
+
+    /**
+     * The bitrate in K.
+     */
+    private final int bitrate;
+
+    /**
+     * Constructs a new {@link OpusEncoder} with the specified bitrate.
+     *
+     * @param bitrate The bitrate in K
+     */
+    public OpusEncoder(int bitrate) {
+        if (bitrate <= 0) {
+            throw new IllegalArgumentException("Bitrate is at or below 0");
+        }
+        this.bitrate = bitrate;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".opus";
+    }
+
+    @Override
+    public String getQualifier() {
+        return this.bitrate + "K";
+    }
+
+    @Override
+    public int getBitrate() {
+        return this.bitrate;
+    }
+
+    @Override
+    public List<String> getEncodeCommand(String outputFileName, ConverterMetadata metadata) {
+        //opusenc reads the WAV stream from stdin when given "-" as the input file
+        return List.of("opusenc", "--bitrate", this.bitrate + "k",
+                "--title", metadata.getTitle(),
+                "--artist", metadata.getArtist(),
+                "--picture", metadata.getAlbumArtPath().toAbsolutePath().toString(),
+                "--comment", MetadataType.DATE.toString() + "=" + metadata.getStellarIndexDate().format(StellarAudioConverter.DATE_FORMATTER),
+                "--comment", metadata.getCreatedBy(),
+                "-", outputFileName);
+    }
+
+    @Override
+    public String toString() {
+        return "Opus " + getQualifier();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.conversions.converters.encoders;
+
+import com.protonmail.sarahszabo.stellar.metadata.ConverterMetadata;
+import java.util.List;
+
+/**
+ * An encoder output for the
+ * {@link com.protonmail.sarahszabo.stellar.conversions.converters.StellarAudioConverter}.
+ * Every encoder reads the same decoded WAV stream from its standard input, so
+ * one decode of the source file can feed any number of encoders at once.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public interface StellarEncoder {
+
+    /**
+     * Gets the file extension of the files this encoder produces. INCLUDES THE
+     * DOT '.'.
+     *
+     * @return The file extension
+     */
+    String getFileExtension();
+
+    /**
+     * Gets a short qualifier for this encoder, used to tell apart two outputs
+     * that share the same file extension. Ex: 192K.
+     *
+     * @return The qualifier
+     */
+    String getQualifier();
+
+    /**
+     * Gets the bitrate of this encoder in K, or zero if the encoder is
+     * lossless.
+     *
+     * @return The bitrate
+     */
+    int getBitrate();
+
+    /**
+     * Gets the command that encodes the WAV stream arriving on standard input
+     * into the specified output file. The process is run in the working
+     * directory of the conversion.
+     *
+     * @param outputFileName The name of the file to create
+     * @param metadata The metadata to tag the output with
+     * @return The command for a {@link ProcessBuilder}
+     */
+    List<String> getEncodeCommand(String outputFileName, ConverterMetadata metadata);
+}
@@ -188,7 +188,7 @@ public class KID3CommandBuilder {
         try {
             var list = build();
             var builder = StellarGravitonField.processOPBuilder(false, commands.toArray(new String[list.size()]));
-            var process = builder.start();
+            var process = StellarGravitonField.startProcess(builder);
             var string = IOUtils.toString(process.getInputStream(), Charset.defaultCharset());
             process.waitFor();
             return string;
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.conversions.converters.standardformconverter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.protonmail.sarahszabo.stellar.util.StellarGravitonField;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A long running kid3-cli process that is fed one command at a time in its
+ * JSON mode. Every request gets exactly one JSON response line, so a whole
+ * read-decide-write sequence, for as many files as needed, costs one process
+ * instead of one per command. kid3-cli is only started by the first command,
+ * so a session that is never used costs nothing. Sessions are not thread
+ * safe, use one per thread.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class KID3Session implements AutoCloseable {
+
+    /**
+     * The JSON mapper for requests and responses.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOG = Logger.getLogger(KID3Session.class.getName());
+
+    /**
+     * The kid3-cli process.
+     */
+    private Process process;
+    /**
+     * The standard input of kid3-cli.
+     */
+    private BufferedWriter requests;
+    /**
+     * The standard output of kid3-cli.
+     */
+    private BufferedReader responses;
+    /**
+     * The id of the next request.
+     */
+    private int nextId = 1;
+    /**
+     * The directory kid3-cli is currently in.
+     */
+    private Path currentDirectory;
+
+    /**
+     * Constructs a new kid3-cli session, kid3-cli is started by the first
+     * command.
+     */
+    public KID3Session() {
+    }
+
+    /**
+     * Starts kid3-cli if it isn't running yet.
+     *
+     * @throws IOException If kid3-cli could not be started
+     */
+    private void start() throws IOException {
+        if (this.process != null) {
+            return;
+        }
+        this.process = StellarGravitonField.startProcess(new ProcessBuilder("kid3-cli").redirectError(ProcessBuilder.Redirect.INHERIT));
+        this.requests = new BufferedWriter(new OutputStreamWriter(this.process.getOutputStream(), StandardCharsets.UTF_8));
+        this.responses = new BufferedReader(new InputStreamReader(this.process.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sends one command and waits for its response.
+     *
+     * @param method The kid3-cli command
+     * @param params The arguments of the command
+     * @return The result of the command, may be a null node
+     * @throws IOException If kid3-cli reported an error or died
+     */
+    private JsonNode call(String method, Object... params) throws IOException {
+        start();
+        ObjectNode request = MAPPER.createObjectNode().put("jsonrpc", "2.0").put("id", this.nextId++).put("method", method);
+        ArrayNode array = request.putArray("params");
+        for (Object param : params) {
+            array.addPOJO(param);
+        }
+        String line = MAPPER.writeValueAsString(request);
+        LOG.fine("KID3 Request: " + line);
+        this.requests.write(line);
+        this.requests.newLine();
+        this.requests.flush();
+        JsonNode response = readResponse();
+        if (response.has("error")) {
+            throw new IOException("kid3-cli " + method + " failed: " + response.get("error").path("message").asText());
+        }
+        return response.path("result");
+    }
+
+    /**
+     * Reads the next JSON response line, skipping anything kid3-cli prints
+     * that isn't JSON, such as its prompt.
+     *
+     * @return The response
+     * @throws IOException If kid3-cli died
+     */
+    private JsonNode readResponse() throws IOException {
+        String line;
+        while ((line = this.responses.readLine()) != null) {
+            int start = line.indexOf('{');
+            if (start >= 0) {
+                return MAPPER.readTree(line.substring(start));
+            }
+        }
+        throw new IOException("kid3-cli ended the session unexpectedly");
+    }
+
+    /**
+     * Selects the file that the following commands work on.
+     *
+     * @param file The file
+     * @return This session
+     * @throws IOException If the file could not be selected
+     */
+    public KID3Session select(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        if (!directory.equals(this.currentDirectory)) {
+            call("cd", directory.toString());
+            this.currentDirectory = directory;
+        }
+        call("select", file.getFileName().toString());
+        return this;
+    }
+
+    /**
+     * Gets a frame of a tag of the selected file.
+     *
+     * @param frame The frame name, ex: Title
+     * @param tag The tag number, 1 to 3
+     * @return The value, empty if the frame doesn't exist
+     * @throws IOException If kid3-cli failed
+     */
+    public String get(String frame, int tag) throws IOException {
+        JsonNode result = call("get", frame, tag);
+        return result.isNull() || result.isMissingNode() ? "" : result.asText();
+    }
+
+    /**
+     * Whether or not the tag of the selected file has a title or an artist.
+     *
+     * @param tag The tag number, 1 to 3
+     * @return The boolean
+     * @throws IOException If kid3-cli failed
+     */
+    public boolean hasTag(int tag) throws IOException {
+        return !get("Title", tag).isBlank() || !get("Artist", tag).isBlank();
+    }
+
+    /**
+     * Sets a frame of a tag of the selected file.
+     *
+     * @param frame The frame name, ex: Title
+     * @param value The value
+     * @param tag The tag number, 1 to 3
+     * @return This session
+     * @throws IOException If kid3-cli failed
+     */
+    public KID3Session set(String frame, String value, int tag) throws IOException {
+        call("set", frame, value, tag);
+        return this;
+    }
+
+    /**
+     * Copies one tag of the selected file over another.
+     *
+     * @param tagSource The tag to copy
+     * @param tagDestination The tag to paste into
+     * @return This session
+     * @throws IOException If kid3-cli failed
+     */
+    public KID3Session copyTag(int tagSource, int tagDestination) throws IOException {
+        call("copy", tagSource);
+        call("paste", tagDestination);
+        return this;
+    }
+
+    /**
+     * Removes a tag from the selected file.
+     *
+     * @param tag The tag number, 1 to 3
+     * @return This session
+     * @throws IOException If kid3-cli failed
+     */
+    public KID3Session deleteTag(int tag) throws IOException {
+        call("remove", tag);
+        return this;
+    }
+
+    /**
+     * Converts tag 2 of the selected file to ID3 V2.4.
+     *
+     * @return This session
+     * @throws IOException If kid3-cli failed
+     */
+    public KID3Session tag2To2Point4() throws IOException {
+        call("to24");
+        return this;
+    }
+
+    /**
+     * Writes the changes made to the selected file to the disk.
+     *
+     * @return This session
+     * @throws IOException If kid3-cli failed
+     */
+    public KID3Session save() throws IOException {
+        call("save");
+        return this;
+    }
+
+    /**
+     * Ends the session, giving kid3-cli a moment to exit on its own. Does
+     * nothing if kid3-cli was never started.
+     */
+    @Override
+    public void close() {
+        if (this.process == null) {
+            return;
+        }
+        try {
+            this.requests.write("exit");
+            this.requests.newLine();
+            this.requests.close();
+            if (!this.process.waitFor(5, TimeUnit.SECONDS)) {
+                this.process.destroyForcibly();
+            }
+        } catch (IOException ex) {
+            this.process.destroyForcibly();
+        } catch (InterruptedException ex) {
+            LOG.log(Level.FINE, null, ex);
+            this.process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
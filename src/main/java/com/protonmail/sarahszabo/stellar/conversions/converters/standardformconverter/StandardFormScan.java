@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.conversions.converters.standardformconverter;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The result of scanning a directory for -TO_STANDARD_FORM, made from the
+ * filenames alone. The directory is listed once and no file is opened, so
+ * the same result feeds the confirmation dialog and the conversion.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class StandardFormScan {
+
+    /**
+     * Scans the directory.
+     *
+     * @param directory The directory to scan
+     * @return The scan result
+     * @throws IOException If the directory could not be listed
+     */
+    public static StandardFormScan scan(Path directory) throws IOException {
+        List<Path> malformed = new ArrayList<>(100), files = new ArrayList<>(100);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (!StellarStandardFormConverter.isConversionCandidate(name)) {
+                    malformed.add(path);
+                }
+                if (StellarStandardFormConverter.isFiletypeCandidate(name) && !Files.isDirectory(path)) {
+                    files.add(path);
+                }
+            }
+        }
+        return new StandardFormScan(directory, malformed, files);
+    }
+
+    /**
+     * The directory that was scanned.
+     */
+    private final Path directory;
+    /**
+     * The entries whose names are not in ARTIST - TITLE.EXTENSION form.
+     */
+    private final List<Path> malformed;
+    /**
+     * The files of a supported type, the ones the conversion works on.
+     */
+    private final List<Path> files;
+
+    /**
+     * Constructs a new {@link StandardFormScan}.
+     *
+     * @param directory The directory that was scanned
+     * @param malformed The malformed entries
+     * @param files The files of a supported type
+     */
+    private StandardFormScan(Path directory, List<Path> malformed, List<Path> files) {
+        this.directory = directory;
+        this.malformed = Collections.unmodifiableList(malformed);
+        this.files = Collections.unmodifiableList(files);
+    }
+
+    /**
+     * Gets the directory that was scanned.
+     *
+     * @return The directory
+     */
+    public Path getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Gets the entries whose names are not in ARTIST - TITLE.EXTENSION form
+     * (multiple "-" characters, no "-" or no file extension).
+     *
+     * @return The malformed entries
+     */
+    public List<Path> getMalformed() {
+        return this.malformed;
+    }
+
+    /**
+     * Gets the files of a supported type, the ones the conversion works on.
+     *
+     * @return The files
+     */
+    public List<Path> getFiles() {
+        return this.files;
+    }
+
+    /**
+     * Generates the report shown to the user before the conversion.
+     *
+     * @return The report
+     */
+    public String getReport() {
+        if (this.malformed.isEmpty()) {
+            return "Scan completed. No malformed filenames detected\n";
+        }
+        return "The following files are malformed (multiple \"-\" characters):\n\n"
+                + this.malformed.stream().map(Path::toString).collect(Collectors.joining("\n"))
+                + "\n\nIndexing Disabled for these files";
+    }
+}
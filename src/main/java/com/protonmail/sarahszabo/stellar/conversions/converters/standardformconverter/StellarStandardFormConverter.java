@@ -18,14 +18,27 @@ package com.protonmail.sarahszabo.stellar.conversions.converters.standardformcon
 
 import com.protonmail.sarahszabo.stellar.Main;
 import static com.protonmail.sarahszabo.stellar.Main.logger;
+import com.protonmail.sarahszabo.stellar.conversions.StellarHyperspace;
 import com.protonmail.sarahszabo.stellar.conversions.converters.StellarConverter;
 import com.protonmail.sarahszabo.stellar.metadata.ConverterMetadata;
-import static com.protonmail.sarahszabo.stellar.util.StellarGravitonField.processOP;
+import com.protonmail.sarahszabo.stellar.metadata.id3.ID3File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * A converter for converting music files that are malformed to their proper
@@ -37,15 +50,36 @@ import java.util.logging.Logger;
 public class StellarStandardFormConverter extends StellarConverter {
 
     private static final String SUPPORTED_FILETYPE_REGEX = "mp3|opus|ogg|wav|aac|flac|m4a|mkv|webm|mp4";
+    /**
+     * Matches filenames of a supported type.
+     */
+    private static final Pattern FILETYPE_PATTERN = Pattern.compile(".*\\.(" + SUPPORTED_FILETYPE_REGEX + ")");
+    /**
+     * Matches filenames in ARTIST - TITLE.EXTENSION form: anything but "-"
+     * with a - and anything but "-" a . and then a supported extension.
+     */
+    private static final Pattern CONVERSION_PATTERN = Pattern.compile("[^-]*-[^-]*\\.(" + SUPPORTED_FILETYPE_REGEX + ")");
 
     /**
      * Determines whether or not a filename matches the currently supported
      * types or not.
      *
+     * @param filename The filename
      * @return The boolean
      */
     public static boolean isFiletypeCandidate(String filename) {
-        return filename.matches(".*\\.(" + SUPPORTED_FILETYPE_REGEX + ")");
+        return FILETYPE_PATTERN.matcher(filename).matches();
+    }
+
+    /**
+     * Determines whether or not a filename is in ARTIST - TITLE.EXTENSION form
+     * and can be converted.
+     *
+     * @param filename The filename
+     * @return The boolean
+     */
+    public static boolean isConversionCandidate(String filename) {
+        return CONVERSION_PATTERN.matcher(filename).matches();
     }
 
     /**
@@ -68,7 +102,7 @@ public class StellarStandardFormConverter extends StellarConverter {
     public StellarStandardFormConverter(Path inputFile, Path destinationFolder) {
         //Ternery is a bugfix for Linux OS's that do not require file names to be present
         super(inputFile, destinationFolder, inputFile.getFileName().toString().contains(".")
-                ? inputFile.getFileName().toString().substring(inputFile.getFileName().toString().lastIndexOf('.')) : "", true);
+                ? inputFile.getFileName().toString().substring(inputFile.getFileName().toString().lastIndexOf('.')) : "", false);
     }
 
     /**
@@ -83,26 +117,76 @@ public class StellarStandardFormConverter extends StellarConverter {
 
     @Override
     public boolean isConversionCandidate() {
-        //Matches anything but "-" with a - and anything but "-" a . and then one or more text characters.
-        return this.FILE_NAME.matches("[^-]*-[^-]*\\.(" + SUPPORTED_FILETYPE_REGEX + ")");
+        return isConversionCandidate(this.FILE_NAME);
     }
 
     /**
-     * Handles the decision logic for the tags to set them into standard form.
-     * Preserves if both tags exist, deletes tag1. If tag1 but not tag2 exist,
-     * copies tag1->tag2 and deletes tag1. If tag2 exists, but not tag1, then
-     * does nothing.
+     * Converts every file in two phases. First every final filename is
+     * planned in memory, in the order of the input paths, so collisions
+     * between files of the batch and with files already on the disk are
+     * always resolved the same way. Then the tags are written and the files
+     * renamed on the hyperspace threads, one batch and kid3-cli session per
+     * thread. A batch of only .mp3 files never starts kid3-cli. A file that
+     * fails doesn't stop the others, every failure is reported once all files
+     * were tried.
      *
-     * @param tag1 The first tag
-     * @param tag2 The second tag
+     * @param files The files to convert
+     * @param destinationFolder The folder to save the files in
+     * @return The converters, after conversion
+     * @throws IllegalStateException If any file could not be converted, naming
+     * every file that failed, with the failures after the first suppressed
      */
-    private void convertHandleTagDecisionLogic(String tag1, String tag2, Path inputFile) {
-        if (KID3CommandBuilder.isTagIDV3Valid(tag1) && KID3CommandBuilder.isTagIDV3Valid(tag2)) {
-            var s = new KID3CommandBuilder(inputFile).deleteTag(1).buildAndExecuteString();
-            System.out.println(s);
-        } else if (KID3CommandBuilder.isTagIDV3Valid(tag1) && !KID3CommandBuilder.isTagIDV3Valid(tag2)) {
-            var s = new KID3CommandBuilder(inputFile).copyTag(1, 2).deleteTag(1).buildAndExecuteString();
+    public static List<StellarStandardFormConverter> convertAll(Collection<Path> files, Path destinationFolder) {
+        List<StellarStandardFormConverter> converters = files.stream().sorted()
+                .map(file -> new StellarStandardFormConverter(file, destinationFolder)).collect(Collectors.toList());
+        Map<Path, RuntimeException> failures = new ConcurrentSkipListMap<>();
+        //Phase 1: Plan every filename, in order so the same file always gets the plain name
+        Map<Path, Path> reservations = new HashMap<>(converters.size() * 2);
+        List<StellarStandardFormConverter> planned = new ArrayList<>(converters.size());
+        for (var converter : converters) {
+            try {
+                converter.plan(reservations);
+                planned.add(converter);
+            } catch (RuntimeException ex) {
+                failures.put(converter.INPUT_FILE, ex);
+            }
+        }
+        //Phase 2: Apply tags and renames with at most one batch per hyperspace thread
+        int batchSize = Math.max(1, planned.size() / Runtime.getRuntime().availableProcessors() + 1);
+        List<Callable<Path>> batches = IntStream.range(0, (planned.size() + batchSize - 1) / batchSize).mapToObj(batch -> {
+            return (Callable<Path>) () -> {
+                try (KID3Session session = new KID3Session()) {
+                    for (var converter : planned.subList(batch * batchSize, Math.min(planned.size(), (batch + 1) * batchSize))) {
+                        try {
+                            converter.apply(session);
+                        } catch (RuntimeException ex) {
+                            failures.put(converter.INPUT_FILE, ex);
+                        }
+                    }
+                }
+                return destinationFolder;
+            };
+        }).collect(Collectors.toList());
+        for (Future<Path> batch : StellarHyperspace.runGeneralConversionTasks(batches)) {
+            try {
+                batch.get();
+            } catch (ExecutionException ex) {
+                //Only a kid3-cli session that could not be started or closed gets here
+                failures.put(destinationFolder, new IllegalStateException(ex.getCause()));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Standard form conversion interrupted", ex);
+            }
         }
+        if (!failures.isEmpty()) {
+            var errors = failures.values().iterator();
+            IllegalStateException failure = new IllegalStateException("Standard form conversion failed for "
+                    + failures.size() + " of " + converters.size() + " files:\n"
+                    + failures.keySet().stream().map(Path::toString).collect(Collectors.joining("\n")), errors.next());
+            errors.forEachRemaining(failure::addSuppressed);
+            throw failure;
+        }
+        return converters;
     }
 
     /**
@@ -116,71 +200,186 @@ public class StellarStandardFormConverter extends StellarConverter {
      */
     @Override
     public Path convert() {
-        //Use this temp variable just in case we get a conversion and the filename changes
-        var inputFileInCaseOfConversion = this.INPUT_FILE;
-        if (isConversionCandidate()) {
-            System.out.println("Indexing File: " + this.INPUT_FILE);
-            this.metadata = generateArtistTitle();
-            this.finalFileName = (this.metadata.getTitle() + super.FILE_EXTENSION).trim();
-            //Generates and executes the conversion
-            convertHandleConversionString();
-
-            ///Finish up filename, remove space character which appears as first character sometimes
-            if (this.finalFileName.charAt(0) == ' ') {
-                this.finalFileName = this.finalFileName.substring(1);
+        try (KID3Session session = new KID3Session()) {
+            return convert(session);
+        }
+    }
+
+    /**
+     * Converts the track like {@link StellarStandardFormConverter#convert()},
+     * using an already running kid3-cli session. The tags are set, read,
+     * corrected and saved with the file selected once, then the file is
+     * renamed. .mp3 files are tagged in the JVM, the session is only used for
+     * other containers, or ID3 tags {@link ID3File} can't handle.
+     *
+     * @param session The kid3-cli session
+     * @return The path to the newly converted file (will rename if discovers
+     * duplicates)
+     */
+    public Path convert(KID3Session session) {
+        plan(new HashMap<>(2));
+        return apply(session);
+    }
+
+    /**
+     * Plans the conversion without touching the file: works out the tags and
+     * the final filename, reserving it so no other file of the batch can take
+     * it. If the name is taken, on the disk or by another file, the artist is
+     * added to the name.
+     *
+     * @param reservations The final paths reserved so far, mapped to the files
+     * that reserved them
+     */
+    private void plan(Map<Path, Path> reservations) {
+        if (!isConversionCandidate()) {
+            return;
+        }
+        System.out.println("Indexing File: " + this.INPUT_FILE);
+        this.metadata = generateArtistTitle();
+        this.finalFileName = (this.metadata.getTitle() + super.FILE_EXTENSION).trim();
+        Path target = reserve(reservations, this.finalFileName);
+        if (target == null) {
+            this.hadDuplicate = true;
+            //File Already Exists, rename
+            String duplicateName = super.FILE_NAME_NO_EXTENSION + " (" + this.metadata.getArtist() + ")";
+            this.finalFileName = duplicateName + super.FILE_EXTENSION;
+            for (int copy = 2; (target = reserve(reservations, this.finalFileName)) == null; copy++) {
+                this.finalFileName = duplicateName + " " + copy + super.FILE_EXTENSION;
             }
-            System.out.println("Indexing Output: " + this.finalFileName);
-            this.DESTINATION_FILE = this.INPUT_FILE.getParent().resolve(this.finalFileName);
+            logger.info("Duplicate Observed & Corrected: " + this.finalFileName);
+        }
+        System.out.println("Indexing Output: " + this.finalFileName);
+        this.DESTINATION_FILE = target;
+    }
+
+    /**
+     * Reserves a filename next to the input file.
+     *
+     * @param reservations The final paths reserved so far
+     * @param fileName The filename to reserve
+     * @return The reserved path, or null if it exists or is reserved already
+     */
+    private Path reserve(Map<Path, Path> reservations, String fileName) {
+        Path target = this.INPUT_FILE.toAbsolutePath().getParent().resolve(fileName).normalize();
+        if (Files.exists(target) || reservations.putIfAbsent(target, this.INPUT_FILE) != null) {
+            return null;
+        }
+        return target;
+    }
+
+    /**
+     * Applies the planned conversion: writes the tags and renames the file.
+     *
+     * @param session The kid3-cli session
+     * @return The path to the converted file
+     */
+    private Path apply(KID3Session session) {
+        boolean conversionCandidate = isConversionCandidate();
+        if (!conversionCandidate && !isFiletypeCandidate()) {
+            return this.DESTINATION_FILE;
+        }
+        if (!this.FILE_EXTENSION.equalsIgnoreCase(".mp3") || !convertID3(conversionCandidate)) {
+            convertKID3(session, conversionCandidate);
+        }
+        if (conversionCandidate) {
             //Handler for the file move and renaming operations
             convertHandleFileMoveOperations();
-            inputFileInCaseOfConversion = this.DESTINATION_FILE;
-        }
-        if (isFiletypeCandidate()) {
-            //Do miscellanious checks on IDV3 Tags This runs whether there was a conversion or not
-            //Check That tag 2 is the primary tag and delete tag 1 if it exists, copying if tag2 does not exist, but 1 does
-            var tag2 = new KID3CommandBuilder(inputFileInCaseOfConversion).selectTag(2).get().buildAndExecuteString();
-            var tag1 = new KID3CommandBuilder(inputFileInCaseOfConversion).selectTag(1).get().buildAndExecuteString();
-            convertHandleTagDecisionLogic(tag1, tag2, inputFileInCaseOfConversion);
         }
         return this.DESTINATION_FILE;
     }
 
     /**
-     * Handler for the file move and renaming operations.
+     * Sets and corrects the tags of an .mp3 file without leaving the JVM.
+     *
+     * @param conversionCandidate Whether or not the Title and Artist are set
+     * from the filename
+     * @return Whether or not the tags were handled, false if the file has to
+     * go through kid3-cli instead
      */
-    private void convertHandleFileMoveOperations() {
-        //Rename on Disk
-        if (Files.exists(this.DESTINATION_FILE)) {
-            this.hadDuplicate = true;
-            //File Already Exists, rename
-            this.finalFileName = super.FILE_NAME_NO_EXTENSION + " (" + this.metadata.getArtist() + ")" + super.FILE_EXTENSION;
-            super.DESTINATION_FILE = super.DESTINATION_FILE.getParent().resolve(this.finalFileName);
-            logger.info("Duplicate Observed & Corrected: " + this.finalFileName);
+    private boolean convertID3(boolean conversionCandidate) {
+        ID3File id3;
+        try {
+            id3 = ID3File.read(this.INPUT_FILE);
+        } catch (IOException ex) {
+            Logger.getLogger(Main.class.getName()).log(Level.FINE, "Falling back to kid3-cli", ex);
+            return false;
         }
+        if (conversionCandidate) {
+            id3.setTitle(this.metadata.getTitle()).setArtist(this.metadata.getArtist()).upgradeTo24();
+        }
+        //Same decision logic as for kid3-cli, tag 2 is primary and tag 1 is deleted, copying if tag 2 does not exist
+        boolean tag1 = id3.hasV1Tag(), tag2 = id3.hasV2Tag();
+        if (tag1 && !tag2) {
+            id3.copyV1ToV2().upgradeTo24();
+        }
+        id3.removeV1();
         try {
-            Files.move(this.INPUT_FILE, this.DESTINATION_FILE);
+            id3.write();
         } catch (IOException ex) {
             Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
-            throw new IllegalStateException("Something went wrong with renaming: " + this.INPUT_FILE, ex);
+            throw new IllegalStateException("Could not set tags for: " + this.INPUT_FILE, ex);
         }
+        return true;
     }
 
     /**
-     * Handles convert's conversion string step.
+     * Sets and corrects the tags of the file through kid3-cli.
+     *
+     * @param session The kid3-cli session
+     * @param conversionCandidate Whether or not the Title and Artist are set
+     * from the filename
      */
-    private void convertHandleConversionString() {
+    private void convertKID3(KID3Session session, boolean conversionCandidate) {
         try {
-            //Set Tags: kid3-cli -c "tag 1" -c "set Title "TITLE"" -c "set Artist "ARTIST"" FILENAME.EXT
-            /*processOP("kid3-cli", "-c", "tag 2", "-c", "set Title \'" + this.metadata.getTitle() + "\'",
-                    "-c", "set Artist \'" + this.metadata.getArtist() + "\'", this.INPUT_FILE.toString());*/
-            processOP(new KID3CommandBuilder(this.INPUT_FILE).selectTag(2).setTitle(this.metadata.getTitle())
-                    .setArtist(this.metadata.getArtist()).Tag2To2Point4().build());
+            session.select(this.INPUT_FILE);
+            if (conversionCandidate) {
+                //Set Tags: tag 2 Title & Artist, then upgrade to 2.4
+                session.set("Title", this.metadata.getTitle(), 2).set("Artist", this.metadata.getArtist(), 2).tag2To2Point4();
+            }
+            if (isFiletypeCandidate()) {
+                //Do miscellanious checks on IDV3 Tags This runs whether there was a conversion or not
+                //Check That tag 2 is the primary tag and delete tag 1 if it exists, copying if tag2 does not exist, but 1 does
+                convertHandleTagDecisionLogic(session);
+            }
+            session.save();
         } catch (IOException ex) {
             Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
             throw new IllegalStateException("Could not set tags for: " + this.INPUT_FILE, ex);
         }
     }
 
+    /**
+     * Handles the decision logic for the tags to set them into standard form.
+     * Preserves if both tags exist, deletes tag1. If tag1 but not tag2 exist,
+     * copies tag1->tag2 and deletes tag1. If tag2 exists, but not tag1, then
+     * does nothing.
+     *
+     * @param session The session with the file selected
+     * @throws IOException If kid3-cli failed
+     */
+    private void convertHandleTagDecisionLogic(KID3Session session) throws IOException {
+        boolean tag1 = session.hasTag(1), tag2 = session.hasTag(2);
+        if (tag1 && tag2) {
+            session.deleteTag(1);
+        } else if (tag1) {
+            session.copyTag(1, 2).deleteTag(1);
+        }
+    }
+
+    /**
+     * Handler for the file move and renaming operations. The destination was
+     * reserved when planning, the move still refuses to replace a file that
+     * appeared since.
+     */
+    private void convertHandleFileMoveOperations() {
+        try {
+            Files.move(this.INPUT_FILE, this.DESTINATION_FILE);
+        } catch (IOException ex) {
+            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
+            throw new IllegalStateException("Something went wrong with renaming: " + this.INPUT_FILE, ex);
+        }
+    }
+
     @Override
     public Path convert(ConverterMetadata metadata) {
         throw new UnsupportedOperationException("This class looks for mismatched file names and tags and corrects those errors,"
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The wire format between the {@link StellarClient} and the
+ * {@link StellarDaemon}. The client sends one request: its working directory,
+ * its command line, and its answers to prompts. The daemon streams back
+ * frames of standard output and standard error, a type byte then a length
+ * prefixed payload, and ends with an exit frame carrying the exit status.
+ * Strings are sent as a length then their UTF-8 bytes, so no argument or
+ * answer is too long to send.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class DaemonProtocol {
+
+    /**
+     * The version of the protocol, the first thing a client sends.
+     */
+    static final int VERSION = 2;
+    /**
+     * A frame of standard output.
+     */
+    static final byte STDOUT = 'O';
+    /**
+     * A frame of standard error, log records included.
+     */
+    static final byte STDERR = 'E';
+    /**
+     * The last frame, carrying the exit status.
+     */
+    static final byte EXIT = 'X';
+
+    /**
+     * Gets the socket the daemon listens on: -Dstellar.socket=FILE, or
+     * Stellar.sock in the configuration folder. Worked out without the disk
+     * manager, so the client stays thin.
+     *
+     * @return The socket path
+     */
+    public static Path getSocketPath() {
+        String socket = System.getProperty("stellar.socket");
+        return socket != null ? Paths.get(socket)
+                : Paths.get(System.getProperty("stellar.home", "/home/sarah"), "Configuration", "Stellar.sock");
+    }
+
+    /**
+     * Writes a request.
+     *
+     * @param out The stream to the daemon
+     * @param request The request
+     * @throws IOException If the daemon went away
+     */
+    static void writeRequest(DataOutputStream out, Request request) throws IOException {
+        out.writeInt(VERSION);
+        writeString(out, request.directory.toString());
+        out.writeInt(request.args.size());
+        for (String arg : request.args) {
+            writeString(out, arg);
+        }
+        out.writeInt(request.answers.size());
+        for (Map.Entry<String, String> answer : request.answers.entrySet()) {
+            writeString(out, answer.getKey());
+            writeString(out, answer.getValue());
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads a request.
+     *
+     * @param in The stream from the client
+     * @return The request
+     * @throws IOException If the client went away or speaks another version
+     */
+    static Request readRequest(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported Stellar daemon protocol: " + version);
+        }
+        Path directory = Paths.get(readString(in));
+        int count = in.readInt();
+        List<String> args = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            args.add(readString(in));
+        }
+        count = in.readInt();
+        Map<String, String> answers = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            answers.put(readString(in), readString(in));
+        }
+        return new Request(directory, args, answers);
+    }
+
+    /**
+     * Writes a string as its length then its UTF-8 bytes.
+     *
+     * @param out The stream
+     * @param string The string
+     * @throws IOException If the other side went away
+     */
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by
+     * {@link #writeString(java.io.DataOutputStream, java.lang.String)}.
+     *
+     * @param in The stream
+     * @return The string
+     * @throws IOException If the other side went away or sent a bad length
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Bad string length in Stellar daemon request: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a frame.
+     *
+     * @param out The stream to the client
+     * @param type The type of the frame
+     * @param payload The payload
+     * @throws IOException If the client went away
+     */
+    static void writeFrame(DataOutputStream out, byte type, byte[] payload) throws IOException {
+        out.writeByte(type);
+        out.writeInt(payload.length);
+        out.write(payload);
+    }
+
+    /**
+     * One command for the daemon.
+     */
+    static final class Request {
+
+        /**
+         * The working directory of the client.
+         */
+        final Path directory;
+        /**
+         * The command line, in Main's grammar.
+         */
+        final List<String> args;
+        /**
+         * The answers to prompts, ex: stellar.confirm=true.
+         */
+        final Map<String, String> answers;
+
+        /**
+         * Constructs a new {@link Request}.
+         *
+         * @param directory The working directory of the client
+         * @param args The command line
+         * @param answers The answers to prompts
+         */
+        Request(Path directory, List<String> args, Map<String, String> answers) {
+            this.directory = directory;
+            this.args = List.copyOf(args);
+            this.answers = Map.copyOf(answers);
+        }
+    }
+
+    /**
+     * Utility class, no instances required.
+     */
+    private DaemonProtocol() {
+        throw new AssertionError("Utility Class");
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.daemon;
+
+import com.protonmail.sarahszabo.stellar.Main;
+import com.protonmail.sarahszabo.stellar.util.HeadlessPrompts;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The thin client of the {@link StellarDaemon}. Takes the same command line as
+ * {@link Main}, sends it to the daemon with the working directory and the
+ * prompt flags, prints what the daemon streams back, and exits with the
+ * command's status. Paths are made absolute first, since the daemon has a
+ * working directory of its own. Without a daemon, the command is simply run
+ * here, ex:
+ * <pre>
+ * java -cp Stellar-Current-Shaded.jar com.protonmail.sarahszabo.stellar.daemon.StellarClient -CL --yes
+ * </pre>
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class StellarClient {
+
+    /**
+     * The prompt answers that are paths.
+     */
+    private static final Set<String> PATH_ANSWERS = Set.of("stellar.folder", "stellar.picture", "stellar.select");
+
+    /**
+     * Runs the command on the daemon.
+     *
+     * @param args The command line, in Main's grammar
+     * @throws IOException If the daemon went away mid command
+     */
+    public static void main(String[] args) throws IOException {
+        String[] command = HeadlessPrompts.applyFlags(args);
+        Path socket = DaemonProtocol.getSocketPath();
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException ex) {
+            if (command.length == 2 && command[0].equalsIgnoreCase("Daemon") && command[1].equalsIgnoreCase("Stop")) {
+                System.err.println("No Stellar daemon is listening on " + socket);
+                System.exit(1);
+            }
+            Main.main(args);
+            return;
+        }
+        Map<String, String> answers = new HashMap<>();
+        for (String property : HeadlessPrompts.FLAGS.values()) {
+            String answer = System.getProperty(property);
+            if (answer != null) {
+                answers.put(property, PATH_ANSWERS.contains(property) ? absolute(answer)
+                        : property.equals("stellar.files") ? Arrays.stream(answer.split(File.pathSeparator))
+                        .map(StellarClient::absolute).collect(Collectors.joining(File.pathSeparator)) : answer);
+            }
+        }
+        List<String> commandLine = Arrays.stream(command)
+                .map(arg -> !arg.contains("http") && Files.exists(Paths.get(arg)) ? absolute(arg) : arg)
+                .collect(Collectors.toList());
+        try (channel) {
+            DaemonProtocol.writeRequest(new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel))),
+                    new DaemonProtocol.Request(Paths.get("").toAbsolutePath(), commandLine, answers));
+            System.exit(relay(new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)))));
+        }
+    }
+
+    /**
+     * Prints the frames from the daemon until the exit frame.
+     *
+     * @param in The stream from the daemon
+     * @return The exit status of the command
+     * @throws IOException If the stream could not be read
+     */
+    static int relay(DataInputStream in) throws IOException {
+        try {
+            while (true) {
+                byte type = in.readByte();
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                switch (type) {
+                    case DaemonProtocol.STDOUT:
+                        System.out.write(payload);
+                        System.out.flush();
+                        break;
+                    case DaemonProtocol.STDERR:
+                        System.err.write(payload);
+                        System.err.flush();
+                        break;
+                    case DaemonProtocol.EXIT:
+                        return ByteBuffer.wrap(payload).getInt();
+                    default:
+                        throw new IOException("Unknown frame from the Stellar daemon: " + type);
+                }
+            }
+        } catch (EOFException ex) {
+            System.err.println("The Stellar daemon went away before the command finished");
+            return 1;
+        }
+    }
+
+    /**
+     * Makes the path absolute against this working directory.
+     *
+     * @param path The path
+     * @return The absolute path
+     */
+    private static String absolute(String path) {
+        return Paths.get(path.trim()).toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Utility class, no instances required.
+     */
+    private StellarClient() {
+        throw new AssertionError("Utility Class");
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.daemon;
+
+import com.protonmail.sarahszabo.stellar.Main;
+import com.protonmail.sarahszabo.stellar.StellarDiskManager;
+import com.protonmail.sarahszabo.stellar.conversions.StellarHyperspace;
+import com.protonmail.sarahszabo.stellar.util.JobContext;
+import com.protonmail.sarahszabo.stellar.util.StellarLoggingFormatter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * A long running Stellar that takes commands from {@link StellarClient}s over
+ * a Unix domain socket. The disk manager is set up and the temporary folder
+ * made once, and every client shares one resident {@link StellarHyperspace}
+ * and the warm metadata and album art caches, so a command costs milliseconds
+ * instead of a JVM start. Each command runs in its own {@link JobContext}: the
+ * client's working directory and prompt answers, and its output streamed
+ * back to the client. Started with Main's Daemon command, stopped with Daemon
+ * Stop from a client.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public enum StellarDaemon {
+    /**
+     * The daemon instance.
+     */
+    DAEMON;
+
+    /**
+     * The number of frames a client's output buffer holds.
+     */
+    private static final int OUTPUT_FRAMES = 8192;
+    /**
+     * The logger.
+     */
+    private static final Logger logger = StellarLoggingFormatter.forClass(StellarDaemon.class);
+
+    /**
+     * The number of clients served, names the session threads.
+     */
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    /**
+     * The socket being listened on, null when not serving.
+     */
+    private volatile ServerSocketChannel server;
+
+    /**
+     * Listens on the socket and serves clients until a client sends Daemon
+     * Stop. Waits for the commands in progress before returning.
+     *
+     * @param socket The socket path
+     * @throws IOException If the socket could not be bound
+     * @throws IllegalStateException If another daemon is listening on it
+     */
+    public void serve(Path socket) throws IOException {
+        //Nobody is in front of a daemon to answer a dialog
+        System.setProperty("stellar.headless", "true");
+        JobContext.routeStandardStreams();
+        StellarHyperspace.makeResident();
+        //Set up once, here, instead of in every command
+        logger.info("Stellar Daemon temporary folder: " + StellarDiskManager.getTempDirectory());
+        listen(socket);
+    }
+
+    /**
+     * Listens on the socket and serves clients until a client sends Daemon
+     * Stop, without setting up the rest of Stellar first.
+     *
+     * @param socket The socket path
+     * @throws IOException If the socket could not be bound
+     * @throws IllegalStateException If another daemon is listening on it
+     */
+    void listen(Path socket) throws IOException {
+        if (Files.exists(socket)) {
+            try (SocketChannel existing = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+                throw new IllegalStateException("A Stellar daemon is already listening on " + socket);
+            } catch (IOException stale) {
+                Files.delete(socket);
+            }
+        }
+        Files.createDirectories(socket.toAbsolutePath().getParent());
+        ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.bind(UnixDomainSocketAddress.of(socket));
+        this.server = channel;
+        Thread cleanup = new Thread(() -> socket.toFile().delete(), "Stellar Daemon Socket Cleanup");
+        Runtime.getRuntime().addShutdownHook(cleanup);
+        ExecutorService sessions = Executors.newCachedThreadPool(r -> new Thread(r,
+                "Stellar Daemon Session " + this.sessionCount.getAndIncrement()));
+        logger.info("Stellar Daemon listening on " + socket);
+        try {
+            while (true) {
+                SocketChannel client = channel.accept();
+                sessions.execute(() -> serve(client));
+            }
+        } catch (ClosedChannelException stopped) {
+            logger.info("Stellar Daemon stopping, finishing the commands in progress");
+        } finally {
+            this.server = null;
+            sessions.shutdown();
+            try {
+                sessions.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            Files.deleteIfExists(socket);
+            Runtime.getRuntime().removeShutdownHook(cleanup);
+        }
+    }
+
+    /**
+     * Stops listening, the commands in progress are finished.
+     */
+    public void stop() {
+        ServerSocketChannel channel = this.server;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Could not close the daemon socket", ex);
+            }
+        }
+    }
+
+    /**
+     * Serves one client: reads its command, runs it for the client, streams
+     * the output back and ends with the exit status.
+     *
+     * @param channel The client
+     */
+    private void serve(SocketChannel channel) {
+        try (channel) {
+            DaemonProtocol.Request request = DaemonProtocol.readRequest(
+                    new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel))));
+            ClientOutput output = new ClientOutput(channel);
+            long started = System.nanoTime();
+            int status = 0;
+            try {
+                String[] args = request.args.toArray(String[]::new);
+                if (args.length == 2 && args[0].equalsIgnoreCase("Daemon") && args[1].equalsIgnoreCase("Stop")) {
+                    output.print(DaemonProtocol.STDOUT, "Stellar Daemon Stopping\n");
+                    stop();
+                } else if (args.length >= 1 && args[0].equalsIgnoreCase("Daemon")) {
+                    output.print(DaemonProtocol.STDERR, "The Stellar Daemon is already running\n");
+                    status = 1;
+                } else {
+                    new JobContext(request.directory, request.answers, output.stream(DaemonProtocol.STDOUT),
+                            output.stream(DaemonProtocol.STDERR), output).run(() -> {
+                        Main.run(args);
+                        return null;
+                    });
+                }
+            } catch (Exception ex) {
+                status = 1;
+                output.print(DaemonProtocol.STDERR, ex + "\n");
+                logger.log(Level.WARNING, "Command failed: " + request.args, ex);
+            }
+            output.finish(status);
+            logger.fine(request.args + " served in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms");
+        } catch (IOException ex) {
+            logger.warning("Lost a client: " + ex);
+        }
+    }
+
+    /**
+     * The output of one client's command, written to the client by a thread of
+     * its own, like {@link com.protonmail.sarahszabo.stellar.util.AsyncLogHandler}.
+     * What the command prints is never lost: when the client falls behind, the
+     * command waits for room. Log records are buffered without blocking and
+     * dropped when the buffer is full.
+     */
+    private static final class ClientOutput extends Handler {
+
+        /**
+         * The frames waiting to be written, byte arrays prefixed by their type,
+         * or log records.
+         */
+        private final BlockingQueue<Object> frames = new ArrayBlockingQueue<>(OUTPUT_FRAMES);
+        /**
+         * The log records dropped because the client was too slow.
+         */
+        private final LongAdder dropped = new LongAdder();
+        /**
+         * The stream to the client.
+         */
+        private final DataOutputStream out;
+        /**
+         * The thread writing to the client.
+         */
+        private final Thread writer;
+
+        /**
+         * Constructs a new {@link ClientOutput} and starts its writer.
+         *
+         * @param channel The client
+         */
+        private ClientOutput(SocketChannel channel) {
+            this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            setFormatter(new StellarLoggingFormatter());
+            this.writer = new Thread(this::write, Thread.currentThread().getName() + " Writer");
+            this.writer.setDaemon(true);
+            this.writer.start();
+        }
+
+        /**
+         * Gets a stream whose writes become frames of the type.
+         *
+         * @param type The frame type
+         * @return The stream
+         */
+        private OutputStream stream(byte type) {
+            return new OutputStream() {
+                @Override
+                public void write(int b) {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    byte[] frame = new byte[len + 1];
+                    frame[0] = type;
+                    System.arraycopy(b, off, frame, 1, len);
+                    put(frame);
+                }
+            };
+        }
+
+        /**
+         * Prints the text to the client.
+         *
+         * @param type The frame type
+         * @param text The text
+         */
+        private void print(byte type, String text) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            byte[] frame = new byte[bytes.length + 1];
+            frame[0] = type;
+            System.arraycopy(bytes, 0, frame, 1, bytes.length);
+            put(frame);
+        }
+
+        /**
+         * Buffers a frame of output, waiting for room if the client is behind.
+         * The writer keeps taking frames after the client goes away, so this
+         * never waits for long.
+         *
+         * @param frame The frame
+         */
+        private void put(byte[] frame) {
+            try {
+                this.frames.put(frame);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void publish(LogRecord record) {
+            if (isLoggable(record) && !this.frames.offer(record)) {
+                this.dropped.increment();
+            }
+        }
+
+        /**
+         * The writer loop, ends after the exit frame.
+         */
+        private void write() {
+            boolean connected = true;
+            while (true) {
+                Object frame;
+                try {
+                    frame = this.frames.take();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                if (!connected) {
+                    //The client went away, the command still finishes
+                    if (frame instanceof ByteBuffer) {
+                        return;
+                    }
+                    continue;
+                }
+                try {
+                    if (frame instanceof ByteBuffer) {
+                        long lost = this.dropped.sum();
+                        if (lost > 0) {
+                            DaemonProtocol.writeFrame(this.out, DaemonProtocol.STDERR,
+                                    (lost + " log records were dropped\n").getBytes(StandardCharsets.UTF_8));
+                        }
+                        DaemonProtocol.writeFrame(this.out, DaemonProtocol.EXIT, ((ByteBuffer) frame).array());
+                        this.out.flush();
+                        return;
+                    } else if (frame instanceof LogRecord) {
+                        DaemonProtocol.writeFrame(this.out, DaemonProtocol.STDERR,
+                                getFormatter().format((LogRecord) frame).getBytes(StandardCharsets.UTF_8));
+                    } else {
+                        byte[] bytes = (byte[]) frame;
+                        DaemonProtocol.writeFrame(this.out, bytes[0], Arrays.copyOfRange(bytes, 1, bytes.length));
+                    }
+                    if (this.frames.isEmpty()) {
+                        this.out.flush();
+                    }
+                } catch (IOException ex) {
+                    connected = false;
+                }
+            }
+        }
+
+        /**
+         * Sends the exit status after everything already printed, and waits
+         * for it to be written.
+         *
+         * @param status The exit status
+         */
+        private void finish(int status) {
+            try {
+                this.frames.put(ByteBuffer.allocate(Integer.BYTES).putInt(status));
+                this.writer.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
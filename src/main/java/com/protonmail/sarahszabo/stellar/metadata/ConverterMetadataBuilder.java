@@ -64,10 +64,10 @@ public class ConverterMetadataBuilder {
      * @param map The map of metadata
      */
     public ConverterMetadataBuilder(Map<MetadataType, String> map) {
-        this.artist = Objects.requireNonNull(map.get(MetadataType.ARTIST));
-        this.title = Objects.requireNonNull(map.get(MetadataType.TITLE));
+        this.artist = StellarGravitonField.preferredTitleFormat(Objects.requireNonNull(map.get(MetadataType.ARTIST)));
+        this.title = StellarGravitonField.preferredTitleFormat(Objects.requireNonNull(map.get(MetadataType.TITLE)));
         if (map.get(MetadataType.CREATED_BY) != null) {
-            this.createdBy = map.get(MetadataType.CREATED_BY);
+            this.createdBy = StellarGravitonField.preferredTitleFormat(map.get(MetadataType.CREATED_BY));
         }
         if (map.get(MetadataType.DATE) != null) {
             this.date = LocalDate.parse(map.get(MetadataType.DATE), StellarOPUSConverter.DATE_FORMATTER);
@@ -83,9 +83,9 @@ public class ConverterMetadataBuilder {
      * @return This builder, per <i>the builder pattern</i>
      */
     public ConverterMetadataBuilder clear() {
-        this.artist = ConverterMetadata.DEFAULT_METADATA.getArtist();
-        this.title = ConverterMetadata.DEFAULT_METADATA.getTitle();
-        this.createdBy = ConverterMetadata.DEFAULT_METADATA.getCreatedBy();
+        this.artist = StellarGravitonField.preferredTitleFormat(ConverterMetadata.DEFAULT_METADATA.getArtist());
+        this.title = StellarGravitonField.preferredTitleFormat(ConverterMetadata.DEFAULT_METADATA.getTitle());
+        this.createdBy = StellarGravitonField.preferredTitleFormat(ConverterMetadata.DEFAULT_METADATA.getCreatedBy());
         this.date = ConverterMetadata.DEFAULT_METADATA.getStellarIndexDate();
         this.albumArtPath = ConverterMetadata.DEFAULT_METADATA.getAlbumArtPath();
         return this;
@@ -143,10 +143,9 @@ public class ConverterMetadataBuilder {
      * @return The built metadata
      */
     public ConverterMetadata buildMetadata() {
-        return new ConverterMetadata(StellarGravitonField.preferredTitleFormat(this.artist),
-                StellarGravitonField.preferredTitleFormat(this.title), StellarGravitonField.preferredTitleFormat(this.createdBy),
-                this.date, this.albumArtPath.equals(ConverterMetadata.DEFAULT_METADATA.getAlbumArtPath())
-                ? StellarDiskManager.getGenericPicture() : this.albumArtPath, this.bitrate);
+        //Every setter already formatted the fields
+        return new ConverterMetadata(this.artist, this.title, this.createdBy, this.date,
+                this.albumArtPath.equals(ConverterMetadata.DEFAULT_METADATA.getAlbumArtPath()) ? StellarDiskManager.getGenericPicture() : this.albumArtPath, this.bitrate);
     }
 
     /**
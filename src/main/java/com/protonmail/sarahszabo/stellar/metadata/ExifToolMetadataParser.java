@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.metadata;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.protonmail.sarahszabo.stellar.conversions.converters.StellarAudioConverter;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Parses the "Tag Name : Value" lines exiftool prints, its -json output, or
+ * the comments of an .opus file into a {@link ConverterMetadataBuilder}. Pure,
+ * it doesn't touch the disk, so storing the album art is left to the caller.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class ExifToolMetadataParser {
+
+    /**
+     * The option opusenc records the bitrate with in Encoder Options.
+     */
+    private static final String BITRATE_OPTION = "--bitrate ";
+    /**
+     * The prefix exiftool puts on binary values in JSON output.
+     */
+    private static final String BASE64 = "base64:";
+    /**
+     * The normalized name of the Stellar index date tag.
+     */
+    private static final String DATE_TAG = normalize(MetadataType.DATE.toString());
+    /**
+     * The normalized name of the created by tag.
+     */
+    private static final String CREATED_BY_TAG = normalize(MetadataType.CREATED_BY.toString());
+
+    /**
+     * Parses the exiftool output into the builder. Fields exiftool didn't
+     * print are left as they are.
+     *
+     * @param lines The lines exiftool printed
+     * @param metadata The builder to fill
+     * @return Whether or not exiftool reported a picture, which the caller
+     * has to extract
+     */
+    public static boolean parse(Iterable<String> lines, ConverterMetadataBuilder metadata) {
+        boolean picture = false;
+        for (String line : lines) {
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            //exiftool pads the tag name with spaces, the data is always after the first : character
+            picture |= apply(line.substring(0, colon), line.substring(colon + 1).trim(), metadata);
+        }
+        return picture;
+    }
+
+    /**
+     * Parses one entry of exiftool's -json -b output into the builder. Binary
+     * values, like the picture, are base64 encoded by exiftool.
+     *
+     * @param entry The JSON object exiftool printed for the file
+     * @param metadata The builder to fill
+     * @return The album art exiftool extracted, if it reported one
+     */
+    public static Optional<byte[]> parse(JsonNode entry, ConverterMetadataBuilder metadata) {
+        byte[] picture = null;
+        for (Iterator<Map.Entry<String, JsonNode>> fields = entry.fields(); fields.hasNext();) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            String value = field.getValue().asText().trim();
+            if (apply(field.getKey(), value, metadata)) {
+                picture = value.startsWith(BASE64) ? Base64.getMimeDecoder().decode(value.substring(BASE64.length())) : new byte[0];
+            }
+        }
+        return Optional.ofNullable(picture);
+    }
+
+    /**
+     * Parses exiftool's -json -b output for a whole chunk of files. Every file
+     * is parsed on its own, starting from the default metadata, so a malformed
+     * tag, ex: a date that isn't one, fails only its own file.
+     *
+     * @param entries The JSON array exiftool printed, may be null if it
+     * printed nothing
+     * @return Every file exiftool printed, in its order
+     */
+    public static List<Entry> parseChunk(JsonNode entries) {
+        List<Entry> parsed = new ArrayList<>(entries == null ? 0 : entries.size());
+        for (JsonNode entry : entries == null ? List.<JsonNode>of() : entries) {
+            String sourceFile = entry.path("SourceFile").asText();
+            ConverterMetadataBuilder metadata = new ConverterMetadataBuilder(ConverterMetadata.getDefaultMetadata());
+            try {
+                parsed.add(new Entry(sourceFile, metadata, parse(entry, metadata), null));
+            } catch (RuntimeException ex) {
+                parsed.add(new Entry(sourceFile, null, Optional.empty(), ex));
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Parses the NAME=value comments of an .opus file into the builder, with
+     * the same names exiftool reports for them. The picture comment is left
+     * to {@link VorbisPicture}.
+     *
+     * @param comments The comments
+     * @param metadata The builder to fill
+     */
+    public static void parseComments(Iterable<String> comments, ConverterMetadataBuilder metadata) {
+        for (String comment : comments) {
+            int equals = comment.indexOf('=');
+            if (equals > 0 && !comment.regionMatches(true, 0, VorbisPicture.COMMENT_NAME, 0, equals)) {
+                apply(comment.substring(0, equals), comment.substring(equals + 1).trim(), metadata);
+            }
+        }
+    }
+
+    /**
+     * Applies one tag to the builder. Tags are matched on their letters and
+     * digits only, so "Encoder Options", EncoderOptions and ENCODER_OPTIONS
+     * are the same tag.
+     *
+     * @param tag The tag name
+     * @param value The value
+     * @param metadata The builder to fill
+     * @return Whether or not the tag was the picture, which the caller has to
+     * extract
+     */
+    private static boolean apply(String tag, String value, ConverterMetadataBuilder metadata) {
+        switch (normalize(tag)) {
+            case "artist":
+                metadata.artist(value);
+                break;
+            case "title":
+                metadata.title(value);
+                break;
+            case "picture":
+                return true;
+            case "encoderoptions":
+                int option = value.indexOf(BITRATE_OPTION);
+                if (option >= 0) {
+                    metadata.bitrate(Integer.parseInt(value.substring(option + BITRATE_OPTION.length())
+                            .replace('k', ' ').replace('K', ' ').trim()));
+                }
+                break;
+            default:
+                if (normalize(tag).equals(DATE_TAG)) {
+                    metadata.date(LocalDate.parse(value, StellarAudioConverter.DATE_FORMATTER));
+                } else if (normalize(tag).equals(CREATED_BY_TAG)) {
+                    metadata.createdBy(value);
+                }
+        }
+        return false;
+    }
+
+    /**
+     * Strips everything but letters and digits from the tag name, and lower
+     * cases it.
+     *
+     * @param tag The tag name
+     * @return The normalized name
+     */
+    private static String normalize(String tag) {
+        StringBuilder normalized = new StringBuilder(tag.length());
+        for (int i = 0; i < tag.length(); i++) {
+            char c = tag.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Utility class, no instances required.
+     */
+    private ExifToolMetadataParser() {
+        throw new AssertionError("Utility Class");
+    }
+
+    /**
+     * One file of exiftool's -json output, parsed or failed.
+     */
+    public static final class Entry {
+
+        /**
+         * The file, as exiftool printed it.
+         */
+        private final String sourceFile;
+        /**
+         * The metadata of the file, null if it failed.
+         */
+        private final ConverterMetadataBuilder metadata;
+        /**
+         * The album art exiftool extracted, if it reported one.
+         */
+        private final Optional<byte[]> picture;
+        /**
+         * Why the file failed, null if it didn't.
+         */
+        private final RuntimeException failure;
+
+        /**
+         * Constructs a new {@link Entry}.
+         *
+         * @param sourceFile The file, as exiftool printed it
+         * @param metadata The metadata of the file, null if it failed
+         * @param picture The album art exiftool extracted
+         * @param failure Why the file failed, null if it didn't
+         */
+        private Entry(String sourceFile, ConverterMetadataBuilder metadata, Optional<byte[]> picture, RuntimeException failure) {
+            this.sourceFile = sourceFile;
+            this.metadata = metadata;
+            this.picture = picture;
+            this.failure = failure;
+        }
+
+        /**
+         * Gets the file, as exiftool printed it.
+         *
+         * @return The file
+         */
+        public String getSourceFile() {
+            return this.sourceFile;
+        }
+
+        /**
+         * Gets the metadata of the file.
+         *
+         * @return The metadata, empty if the file failed
+         */
+        public Optional<ConverterMetadataBuilder> getMetadata() {
+            return Optional.ofNullable(this.metadata);
+        }
+
+        /**
+         * Gets the album art exiftool extracted.
+         *
+         * @return The picture, if exiftool reported one
+         */
+        public Optional<byte[]> getPicture() {
+            return this.picture;
+        }
+
+        /**
+         * Gets why the file failed.
+         *
+         * @return The failure, empty if the file was parsed
+         */
+        public Optional<RuntimeException> getFailure() {
+            return Optional.ofNullable(this.failure);
+        }
+    }
+}
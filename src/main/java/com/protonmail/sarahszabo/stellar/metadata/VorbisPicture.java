@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.metadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+/**
+ * Builds the METADATA_BLOCK_PICTURE comment that carries album art in .opus
+ * files, the same value opusenc writes for --picture, and extracts the image
+ * back out of it.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class VorbisPicture {
+
+    /**
+     * The name of the picture comment.
+     */
+    public static final String COMMENT_NAME = "METADATA_BLOCK_PICTURE";
+    /**
+     * The FLAC picture type for a front cover.
+     */
+    private static final int FRONT_COVER = 3;
+
+    /**
+     * Builds the base64 METADATA_BLOCK_PICTURE value for the image.
+     *
+     * @param image The image file
+     * @return The base64 comment value
+     * @throws IOException If the image could not be read
+     */
+    public static String toCommentValue(Path image) throws IOException {
+        return Base64.getEncoder().encodeToString(toPictureBlock(image));
+    }
+
+    /**
+     * Builds the raw FLAC picture block for the image.
+     *
+     * @param image The image file
+     * @return The picture block
+     * @throws IOException If the image could not be read
+     */
+    public static byte[] toPictureBlock(Path image) throws IOException {
+        byte[] data = Files.readAllBytes(image);
+        byte[] mime = getMimeType(image).getBytes(StandardCharsets.US_ASCII);
+        int[] size = readSize(data);
+        int width = size[0], height = size[1];
+        ByteBuffer block = ByteBuffer.allocate(32 + mime.length + data.length);
+        block.putInt(FRONT_COVER).putInt(mime.length).put(mime)
+                //Empty description
+                .putInt(0)
+                //Width, height, colour depth, indexed colours
+                .putInt(width).putInt(height).putInt(24).putInt(0)
+                .putInt(data.length).put(data);
+        return block.array();
+    }
+
+    /**
+     * Reads the width and height of the image from its header, without
+     * decoding the pixels. Dimensions are informational only, so a picture
+     * ImageIO can't read is still attached, as 0 by 0.
+     *
+     * @param data The image data
+     * @return The width and height
+     * @throws IOException If the header could not be read
+     */
+    private static int[] readSize(byte[] data) throws IOException {
+        try (ImageInputStream in = new MemoryCacheImageInputStream(new ByteArrayInputStream(data))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return new int[2];
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return new int[]{reader.getWidth(0), reader.getHeight(0)};
+            } catch (IOException | RuntimeException ex) {
+                return new int[2];
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Extracts the image from a base64 METADATA_BLOCK_PICTURE value.
+     *
+     * @param value The base64 comment value
+     * @return The image data
+     * @throws IOException If the value isn't a valid picture block
+     */
+    public static byte[] fromCommentValue(String value) throws IOException {
+        try {
+            ByteBuffer block = ByteBuffer.wrap(Base64.getMimeDecoder().decode(value));
+            //Type, then the MIME type and description
+            block.getInt();
+            for (int field = 0; field < 2; field++) {
+                int length = block.getInt();
+                block.position(block.position() + length);
+            }
+            //Width, height, colour depth, indexed colours
+            block.position(block.position() + 16);
+            byte[] data = new byte[block.getInt()];
+            block.get(data);
+            return data;
+        } catch (IllegalArgumentException | BufferUnderflowException | NegativeArraySizeException ex) {
+            throw new IOException("Invalid " + COMMENT_NAME + " value", ex);
+        }
+    }
+
+    /**
+     * Gets the MIME type of the image from its file extension.
+     *
+     * @param image The image file
+     * @return The MIME type
+     */
+    private static String getMimeType(Path image) {
+        String name = image.getFileName().toString().toLowerCase();
+        if (name.endsWith(".png")) {
+            return "image/png";
+        } else if (name.endsWith(".gif")) {
+            return "image/gif";
+        }
+        return "image/jpeg";
+    }
+
+    /**
+     * Utility class, no instances required.
+     */
+    private VorbisPicture() {
+        throw new AssertionError("Utility Class");
+    }
+}
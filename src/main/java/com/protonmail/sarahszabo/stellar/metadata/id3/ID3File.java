@@ -0,0 +1,673 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.metadata.id3;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The ID3 tags of an .mp3 file: the ID3v2.3 or ID3v2.4 tag at the front and
+ * the ID3v1 tag at the end. Reads and writes Title and Artist, removes the
+ * ID3v1 tag, copies ID3v1 into ID3v2 and always writes ID3v2.4. The v2.3
+ * frames ID3v2.4 dropped are converted to their v2.4 counterparts, other
+ * frames this class doesn't know are carried over unchanged. When the new tag fits into
+ * the space of the old one, only the tag is overwritten, otherwise the file
+ * is rewritten once with fresh padding.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class ID3File {
+
+    /**
+     * The size of an ID3v1 tag.
+     */
+    private static final int V1_SIZE = 128;
+    /**
+     * The size of an ID3v2 header or footer.
+     */
+    private static final int V2_HEADER_SIZE = 10;
+    /**
+     * The padding given to a tag when the file has to be rewritten, so the
+     * next change can be made in place.
+     */
+    private static final int PADDING = 2048;
+    /**
+     * The text encoding byte for UTF-8 in ID3v2.4.
+     */
+    private static final byte UTF_8 = 3;
+
+    /**
+     * Reads the tags of the file.
+     *
+     * @param file The .mp3 file
+     * @return The tags
+     * @throws IOException If the file could not be read, or its tag uses a
+     * feature this class doesn't support (ID3v2.2, unsynchronisation,
+     * compressed or encrypted v2.3 frames)
+     */
+    public static ID3File read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ID3File id3 = new ID3File(file, channel.size());
+            ByteBuffer header = ByteBuffer.allocate(V2_HEADER_SIZE);
+            channel.read(header, 0);
+            byte[] bytes = header.array();
+            if (header.position() == V2_HEADER_SIZE && bytes[0] == 'I' && bytes[1] == 'D' && bytes[2] == '3') {
+                id3.readV2(channel, bytes);
+            }
+            if (channel.size() - id3.audioStart >= V1_SIZE) {
+                ByteBuffer v1 = ByteBuffer.allocate(V1_SIZE);
+                channel.read(v1, channel.size() - V1_SIZE);
+                byte[] tag = v1.array();
+                if (tag[0] == 'T' && tag[1] == 'A' && tag[2] == 'G') {
+                    id3.v1 = tag;
+                    id3.hadV1 = true;
+                }
+            }
+            return id3;
+        }
+    }
+
+    /**
+     * Decodes a synchsafe integer, seven bits per byte.
+     *
+     * @param bytes The bytes
+     * @param offset The offset of the integer
+     * @return The integer
+     */
+    private static int synchsafe(byte[] bytes, int offset) {
+        return (bytes[offset] & 0x7f) << 21 | (bytes[offset + 1] & 0x7f) << 14
+                | (bytes[offset + 2] & 0x7f) << 7 | (bytes[offset + 3] & 0x7f);
+    }
+
+    /**
+     * Encodes a synchsafe integer, seven bits per byte.
+     *
+     * @param value The integer
+     * @return The bytes
+     */
+    private static byte[] synchsafe(int value) {
+        return new byte[]{(byte) (value >> 21 & 0x7f), (byte) (value >> 14 & 0x7f), (byte) (value >> 7 & 0x7f), (byte) (value & 0x7f)};
+    }
+
+    /**
+     * The file.
+     */
+    private final Path file;
+    /**
+     * The size of the file when it was read.
+     */
+    private final long fileSize;
+    /**
+     * The ID3v2 major version, 0 if there is no ID3v2 tag.
+     */
+    private int majorVersion;
+    /**
+     * The frames of the ID3v2 tag, in ID3v2.4 form.
+     */
+    private final List<Frame> frames = new ArrayList<>(16);
+    /**
+     * The space the ID3v2 frames and padding may use without moving the
+     * audio, 0 if there is no room.
+     */
+    private int v2Space;
+    /**
+     * The offset of the audio, right after the ID3v2 tag.
+     */
+    private long audioStart;
+    /**
+     * The ID3v1 tag, null if there isn't one or it was removed.
+     */
+    private byte[] v1;
+    /**
+     * Whether or not the ID3v1 tag was present when the file was read.
+     */
+    private boolean hadV1;
+    /**
+     * Whether or not anything changed since the file was read.
+     */
+    private boolean changed;
+
+    /**
+     * Constructs a new {@link ID3File}.
+     *
+     * @param file The file
+     * @param fileSize The size of the file
+     */
+    private ID3File(Path file, long fileSize) {
+        this.file = file;
+        this.fileSize = fileSize;
+    }
+
+    /**
+     * Reads the ID3v2 tag.
+     *
+     * @param channel The file
+     * @param header The ID3v2 header
+     * @throws IOException If the tag could not be read or isn't supported
+     */
+    private void readV2(FileChannel channel, byte[] header) throws IOException {
+        int version = header[3], flags = header[5] & 0xff, size = synchsafe(header, 6);
+        if (version != 3 && version != 4) {
+            throw new IOException("Unsupported ID3v2." + version + " tag: " + this.file);
+        } else if ((flags & 0x80) != 0) {
+            throw new IOException("Unsynchronised ID3v2 tags are not supported: " + this.file);
+        }
+        boolean footer = version == 4 && (flags & 0x10) != 0;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        channel.read(buffer, V2_HEADER_SIZE);
+        if (buffer.hasRemaining()) {
+            throw new IOException("Truncated ID3v2 tag: " + this.file);
+        }
+        byte[] tag = buffer.array();
+        int offset = 0;
+        if ((flags & 0x40) != 0) {
+            //Extended header, v2.3 doesn't count its own size field, v2.4 does
+            offset = version == 3 ? 4 + ByteBuffer.wrap(tag).getInt(0) : synchsafe(tag, 0);
+        }
+        this.majorVersion = version;
+        this.audioStart = V2_HEADER_SIZE + size + (footer ? V2_HEADER_SIZE : 0);
+        //A footer sits where padding would, so the tag can only be rewritten in place without one
+        this.v2Space = footer ? 0 : size;
+        while (offset + V2_HEADER_SIZE <= size && tag[offset] != 0) {
+            String id = new String(tag, offset, 4, StandardCharsets.ISO_8859_1);
+            int frameSize = version == 4 ? synchsafe(tag, offset + 4) : ByteBuffer.wrap(tag).getInt(offset + 4);
+            int statusFlags = tag[offset + 8] & 0xff, formatFlags = tag[offset + 9] & 0xff;
+            if (frameSize < 0 || offset + V2_HEADER_SIZE + frameSize > size) {
+                throw new IOException("Corrupt ID3v2 frame " + id + ": " + this.file);
+            }
+            byte[] body = new byte[frameSize];
+            System.arraycopy(tag, offset + V2_HEADER_SIZE, body, 0, frameSize);
+            if (version == 3) {
+                if (formatFlags != 0) {
+                    throw new IOException("Compressed or encrypted ID3v2.3 frames are not supported: " + this.file);
+                }
+                //v2.3 status flags sit one bit higher than in v2.4
+                statusFlags = statusFlags >> 1 & 0x70;
+            }
+            this.frames.add(new Frame(id, statusFlags, formatFlags, body));
+            offset += V2_HEADER_SIZE + frameSize;
+        }
+        if (version == 3) {
+            convertV23Frames();
+        }
+    }
+
+    /**
+     * Converts the frames ID3v2.4 dropped into their ID3v2.4 counterparts:
+     * TYER, TDAT and TIME become TDRC, TORY becomes TDOR and IPLS becomes
+     * TIPL. TSIZ, TRDA, RVAD and EQUA have no counterpart that can be derived
+     * from them and are dropped.
+     */
+    private void convertV23Frames() {
+        String year = getText("TYER"), date = getText("TDAT"), time = getText("TIME");
+        StringBuilder recorded = new StringBuilder(year);
+        if (isDigits(year, 4) && isDigits(date, 4)) {
+            //TDAT is DDMM and TIME is HHMM, TDRC is an ISO 8601 timestamp
+            recorded.append('-').append(date, 2, 4).append('-').append(date, 0, 2);
+            if (isDigits(time, 4)) {
+                recorded.append('T').append(time, 0, 2).append(':').append(time, 2, 4);
+            }
+        }
+        boolean hasRecordingTime = findFrame("TDRC") != null;
+        for (int i = this.frames.size() - 1; i >= 0; i--) {
+            Frame frame = this.frames.get(i);
+            switch (frame.id) {
+                case "TYER":
+                    if (hasRecordingTime || recorded.length() == 0) {
+                        this.frames.remove(i);
+                    } else {
+                        this.frames.set(i, new Frame("TDRC", frame.statusFlags, 0, textBody(recorded.toString())));
+                        hasRecordingTime = true;
+                    }
+                    break;
+                case "TORY":
+                    this.frames.set(i, new Frame("TDOR", frame.statusFlags, frame.formatFlags, frame.body));
+                    break;
+                case "IPLS":
+                    //Both are lists of null separated involvement and name pairs
+                    this.frames.set(i, new Frame("TIPL", frame.statusFlags, frame.formatFlags, frame.body));
+                    break;
+                case "TDAT":
+                case "TIME":
+                case "TSIZ":
+                case "TRDA":
+                case "RVAD":
+                case "EQUA":
+                    this.frames.remove(i);
+                    break;
+                default:
+            }
+        }
+    }
+
+    /**
+     * Whether or not the text is exactly the number of ASCII digits.
+     *
+     * @param text The text
+     * @param length The number of digits
+     * @return The boolean
+     */
+    private static boolean isDigits(String text, int length) {
+        if (text.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) < '0' || text.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the first frame with the id.
+     *
+     * @param id The frame id
+     * @return The frame, or null
+     */
+    private Frame findFrame(String id) {
+        for (Frame frame : this.frames) {
+            if (frame.id.equals(id)) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the text of a text frame.
+     *
+     * @param id The frame id
+     * @return The text, empty if there is no such frame
+     */
+    private String getText(String id) {
+        Frame frame = findFrame(id);
+        if (frame == null || frame.body.length == 0 || (frame.formatFlags & 0x0f) != 0) {
+            return "";
+        }
+        Charset charset;
+        switch (frame.body[0]) {
+            case 1:
+                charset = StandardCharsets.UTF_16;
+                break;
+            case 2:
+                charset = StandardCharsets.UTF_16BE;
+                break;
+            case 3:
+                charset = StandardCharsets.UTF_8;
+                break;
+            default:
+                charset = StandardCharsets.ISO_8859_1;
+        }
+        String text = new String(frame.body, 1, frame.body.length - 1, charset);
+        //Several values are separated by nulls, the first one is the one we want
+        int end = text.indexOf('\0');
+        return (end >= 0 ? text.substring(0, end) : text).trim();
+    }
+
+    /**
+     * Sets the text of a text frame, replacing every frame with the id.
+     *
+     * @param id The frame id
+     * @param text The text
+     */
+    private void setText(String id, String text) {
+        Frame frame = new Frame(id, 0, 0, textBody(text));
+        int index = -1;
+        for (int i = this.frames.size() - 1; i >= 0; i--) {
+            if (this.frames.get(i).id.equals(id)) {
+                this.frames.remove(i);
+                index = i;
+            }
+        }
+        this.frames.add(index >= 0 ? index : this.frames.size(), frame);
+        this.changed = true;
+    }
+
+    /**
+     * Encodes the body of a UTF-8 text frame.
+     *
+     * @param text The text
+     * @return The frame body
+     */
+    private static byte[] textBody(String text) {
+        byte[] encoded = text.getBytes(StandardCharsets.UTF_8);
+        byte[] body = new byte[encoded.length + 1];
+        body[0] = UTF_8;
+        System.arraycopy(encoded, 0, body, 1, encoded.length);
+        return body;
+    }
+
+    /**
+     * Gets a field of the ID3v1 tag.
+     *
+     * @param offset The offset of the field
+     * @param length The length of the field
+     * @return The field, empty if there is no ID3v1 tag
+     */
+    private String getV1Field(int offset, int length) {
+        if (this.v1 == null) {
+            return "";
+        }
+        String field = new String(this.v1, offset, length, StandardCharsets.ISO_8859_1);
+        int end = field.indexOf('\0');
+        return (end >= 0 ? field.substring(0, end) : field).trim();
+    }
+
+    /**
+     * Gets the ID3v2 title.
+     *
+     * @return The title, empty if there is none
+     */
+    public String getTitle() {
+        return getText("TIT2");
+    }
+
+    /**
+     * Gets the ID3v2 artist.
+     *
+     * @return The artist, empty if there is none
+     */
+    public String getArtist() {
+        return getText("TPE1");
+    }
+
+    /**
+     * Gets the ID3v2.4 recording time, which a v2.3 tag's TYER, TDAT and
+     * TIME frames are converted into.
+     *
+     * @return The recording time, ex: 1977-05-25T18:30, empty if there is none
+     */
+    public String getRecordingTime() {
+        return getText("TDRC");
+    }
+
+    /**
+     * Sets the ID3v2 title.
+     *
+     * @param title The title
+     * @return This file
+     */
+    public ID3File setTitle(String title) {
+        setText("TIT2", title);
+        return this;
+    }
+
+    /**
+     * Sets the ID3v2 artist.
+     *
+     * @param artist The artist
+     * @return This file
+     */
+    public ID3File setArtist(String artist) {
+        setText("TPE1", artist);
+        return this;
+    }
+
+    /**
+     * Gets the ID3v1 title.
+     *
+     * @return The title, empty if there is none
+     */
+    public String getV1Title() {
+        return getV1Field(3, 30);
+    }
+
+    /**
+     * Gets the ID3v1 artist.
+     *
+     * @return The artist, empty if there is none
+     */
+    public String getV1Artist() {
+        return getV1Field(33, 30);
+    }
+
+    /**
+     * Whether or not there is an ID3v1 tag with a title or an artist.
+     *
+     * @return The boolean
+     */
+    public boolean hasV1Tag() {
+        return !getV1Title().isEmpty() || !getV1Artist().isEmpty();
+    }
+
+    /**
+     * Whether or not there is an ID3v2 tag with a title or an artist.
+     *
+     * @return The boolean
+     */
+    public boolean hasV2Tag() {
+        return !getTitle().isEmpty() || !getArtist().isEmpty();
+    }
+
+    /**
+     * Gets the major version of the ID3v2 tag as read.
+     *
+     * @return 3 or 4, or 0 if there was no ID3v2 tag
+     */
+    public int getMajorVersion() {
+        return this.majorVersion;
+    }
+
+    /**
+     * Copies the title, artist, album and year of the ID3v1 tag into the
+     * ID3v2 tag, replacing what the ID3v2 tag had for them.
+     *
+     * @return This file
+     */
+    public ID3File copyV1ToV2() {
+        String[][] fields = {{"TIT2", getV1Title()}, {"TPE1", getV1Artist()}, {"TALB", getV1Field(63, 30)}, {"TDRC", getV1Field(93, 4)}};
+        for (String[] field : fields) {
+            if (!field[1].isEmpty()) {
+                setText(field[0], field[1]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Removes the ID3v1 tag.
+     *
+     * @return This file
+     */
+    public ID3File removeV1() {
+        if (this.v1 != null) {
+            this.v1 = null;
+            this.changed = true;
+        }
+        return this;
+    }
+
+    /**
+     * Upgrades the ID3v2 tag to ID3v2.4 on the next write, even if nothing
+     * else changed. The v2.3 frames ID3v2.4 dropped were already converted
+     * when the file was read.
+     *
+     * @return This file
+     */
+    public ID3File upgradeTo24() {
+        if (this.majorVersion != 4) {
+            this.changed = true;
+        }
+        return this;
+    }
+
+    /**
+     * Writes the changes to the file as an ID3v2.4 tag. Does nothing if
+     * nothing changed.
+     *
+     * @throws IOException If the file could not be written
+     */
+    public void write() throws IOException {
+        if (!this.changed) {
+            return;
+        }
+        byte[] frameBytes = serializeFrames();
+        if (this.v2Space > 0 && frameBytes.length <= this.v2Space) {
+            writeInPlace(frameBytes);
+        } else {
+            rewrite(frameBytes);
+        }
+        this.changed = false;
+    }
+
+    /**
+     * Serializes the frames in ID3v2.4 form.
+     *
+     * @return The frame bytes
+     */
+    private byte[] serializeFrames() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        for (Frame frame : this.frames) {
+            out.writeBytes(frame.id.getBytes(StandardCharsets.ISO_8859_1));
+            out.writeBytes(synchsafe(frame.body.length));
+            out.write(frame.statusFlags);
+            out.write(frame.formatFlags);
+            out.writeBytes(frame.body);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Builds an ID3v2.4 tag of exactly the size given.
+     *
+     * @param frameBytes The frame bytes
+     * @param size The size of the tag, not counting the header
+     * @return The tag
+     */
+    private static byte[] buildTag(byte[] frameBytes, int size) {
+        byte[] tag = new byte[V2_HEADER_SIZE + size];
+        tag[0] = 'I';
+        tag[1] = 'D';
+        tag[2] = '3';
+        tag[3] = 4;
+        System.arraycopy(synchsafe(size), 0, tag, 6, 4);
+        System.arraycopy(frameBytes, 0, tag, V2_HEADER_SIZE, frameBytes.length);
+        return tag;
+    }
+
+    /**
+     * Overwrites the old tag, which has room for the new one, and truncates
+     * the ID3v1 tag if it was removed.
+     *
+     * @param frameBytes The frame bytes
+     * @throws IOException If the file could not be written
+     */
+    private void writeInPlace(byte[] frameBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.WRITE)) {
+            ByteBuffer tag = ByteBuffer.wrap(buildTag(frameBytes, this.v2Space));
+            while (tag.hasRemaining()) {
+                channel.write(tag, tag.position());
+            }
+            if (this.hadV1 && this.v1 == null) {
+                channel.truncate(this.fileSize - V1_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Writes a new copy of the file with the new tag and fresh padding, then
+     * replaces the file with it. The new copy gets the permissions of the file,
+     * instead of the owner only ones of a temporary file.
+     *
+     * @param frameBytes The frame bytes
+     * @throws IOException If the file could not be written
+     */
+    private void rewrite(byte[] frameBytes) throws IOException {
+        Path temp = Files.createTempFile(this.file.toAbsolutePath().getParent(), ".stellar-", ".mp3.tmp");
+        try {
+            try (FileChannel in = FileChannel.open(this.file, StandardOpenOption.READ);
+                    FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer tag = ByteBuffer.wrap(buildTag(frameBytes, frameBytes.length + PADDING));
+                while (tag.hasRemaining()) {
+                    out.write(tag);
+                }
+                long audioEnd = this.fileSize - (this.hadV1 ? V1_SIZE : 0);
+                long position = this.audioStart;
+                while (position < audioEnd) {
+                    position += in.transferTo(position, audioEnd - position, out);
+                }
+                if (this.v1 != null) {
+                    ByteBuffer v1Tag = ByteBuffer.wrap(this.v1);
+                    while (v1Tag.hasRemaining()) {
+                        out.write(v1Tag);
+                    }
+                }
+            }
+            if (Files.getFileStore(temp).supportsFileAttributeView(PosixFileAttributeView.class)) {
+                Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(this.file));
+            }
+            try {
+                Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * An ID3v2 frame in ID3v2.4 form.
+     */
+    private static final class Frame {
+
+        /**
+         * The frame id, ex: TIT2.
+         */
+        private final String id;
+        /**
+         * The ID3v2.4 status flags.
+         */
+        private final int statusFlags;
+        /**
+         * The ID3v2.4 format flags.
+         */
+        private final int formatFlags;
+        /**
+         * The frame body.
+         */
+        private final byte[] body;
+
+        /**
+         * Constructs a new {@link Frame}.
+         *
+         * @param id The frame id
+         * @param statusFlags The ID3v2.4 status flags
+         * @param formatFlags The ID3v2.4 format flags
+         * @param body The frame body
+         */
+        private Frame(String id, int statusFlags, int formatFlags, byte[] body) {
+            this.id = id;
+            this.statusFlags = statusFlags;
+            this.formatFlags = formatFlags;
+            this.body = body;
+        }
+    }
+}
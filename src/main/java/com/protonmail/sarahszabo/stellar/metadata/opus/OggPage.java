@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.metadata.opus;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single Ogg page, per RFC 3533. Pages are read and written whole, the CRC
+ * is recomputed every time a page is written.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+final class OggPage {
+
+    /**
+     * The size of the fixed part of the page header.
+     */
+    static final int HEADER_SIZE = 27;
+    /**
+     * The header type flag for a page that continues a packet.
+     */
+    static final int CONTINUED = 0x01;
+    /**
+     * The header type flag for the first page of a logical stream.
+     */
+    static final int BEGINNING_OF_STREAM = 0x02;
+    /**
+     * The granule position of a page on which no packet ends.
+     */
+    static final long NO_GRANULE = -1;
+    /**
+     * The most segments one page can hold.
+     */
+    static final int MAX_SEGMENTS = 255;
+    /**
+     * The capture pattern every page starts with.
+     */
+    private static final byte[] CAPTURE_PATTERN = {'O', 'g', 'g', 'S'};
+    /**
+     * The CRC lookup table for the Ogg polynomial 0x04c11db7.
+     */
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 24;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x80000000) != 0 ? (crc << 1) ^ 0x04c11db7 : crc << 1;
+            }
+            CRC_TABLE[i] = crc;
+        }
+    }
+
+    /**
+     * Computes the Ogg CRC of the bytes. The CRC field of a page must be zero
+     * while the CRC is computed.
+     *
+     * @param bytes The bytes
+     * @param offset The offset to start at
+     * @param length The number of bytes
+     * @return The CRC
+     */
+    static int crc(byte[] bytes, int offset, int length) {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++) {
+            crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ bytes[i]) & 0xff];
+        }
+        return crc;
+    }
+
+    /**
+     * Reads the next page from the stream.
+     *
+     * @param in The stream
+     * @return The page, or null if the stream ended cleanly before a page
+     * @throws IOException If the stream does not hold a valid page
+     */
+    static OggPage read(InputStream in) throws IOException {
+        byte[] header = in.readNBytes(HEADER_SIZE);
+        if (header.length == 0) {
+            return null;
+        } else if (header.length < HEADER_SIZE) {
+            throw new EOFException("Truncated Ogg page header");
+        }
+        for (int i = 0; i < CAPTURE_PATTERN.length; i++) {
+            if (header[i] != CAPTURE_PATTERN[i]) {
+                throw new IOException("Missing Ogg capture pattern, this is not an Ogg file");
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+        int headerType = header[5] & 0xff;
+        long granule = buffer.getLong(6);
+        int serial = buffer.getInt(14), sequence = buffer.getInt(18);
+        byte[] lacing = readFully(in, header[26] & 0xff);
+        int dataLength = 0;
+        for (byte segment : lacing) {
+            dataLength += segment & 0xff;
+        }
+        return new OggPage(headerType, granule, serial, sequence, lacing, readFully(in, dataLength));
+    }
+
+    /**
+     * Reads exactly the number of bytes from the stream.
+     *
+     * @param in The stream
+     * @param length The number of bytes
+     * @return The bytes
+     * @throws IOException If the stream ended early
+     */
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length != length) {
+            throw new EOFException("Truncated Ogg page");
+        }
+        return bytes;
+    }
+
+    /**
+     * Splits one whole packet into as many pages as it needs. The packet
+     * starts on the first page and ends on the last, no other packet shares
+     * these pages.
+     *
+     * @param packet The packet
+     * @param serial The serial number of the logical stream
+     * @param firstSequence The sequence number of the first page
+     * @param granule The granule position of the page the packet ends on
+     * @return The pages
+     */
+    static List<OggPage> paginate(byte[] packet, int serial, int firstSequence, long granule) {
+        //A packet of n bytes takes n / 255 full segments and one final segment, which may be 0
+        int segments = packet.length / 255 + 1;
+        List<OggPage> pages = new ArrayList<>(segments / MAX_SEGMENTS + 1);
+        int offset = 0, segmentIndex = 0;
+        while (segmentIndex < segments) {
+            int pageSegments = Math.min(MAX_SEGMENTS, segments - segmentIndex);
+            byte[] lacing = new byte[pageSegments];
+            int pageLength = 0;
+            for (int i = 0; i < pageSegments; i++, segmentIndex++) {
+                int value = segmentIndex == segments - 1 ? packet.length % 255 : 255;
+                lacing[i] = (byte) value;
+                pageLength += value;
+            }
+            byte[] data = new byte[pageLength];
+            System.arraycopy(packet, offset, data, 0, pageLength);
+            boolean last = segmentIndex == segments;
+            pages.add(new OggPage(offset == 0 ? 0 : CONTINUED, last ? granule : NO_GRANULE, serial,
+                    firstSequence + pages.size(), lacing, data));
+            offset += pageLength;
+        }
+        return pages;
+    }
+
+    /**
+     * The header type flags.
+     */
+    private final int headerType;
+    /**
+     * The granule position.
+     */
+    private final long granule;
+    /**
+     * The serial number of the logical stream.
+     */
+    private final int serial;
+    /**
+     * The page sequence number.
+     */
+    private int sequence;
+    /**
+     * The segment table.
+     */
+    private final byte[] lacing;
+    /**
+     * The page body.
+     */
+    private final byte[] data;
+
+    /**
+     * Constructs a new {@link OggPage}.
+     *
+     * @param headerType The header type flags
+     * @param granule The granule position
+     * @param serial The serial number of the logical stream
+     * @param sequence The page sequence number
+     * @param lacing The segment table
+     * @param data The page body
+     */
+    OggPage(int headerType, long granule, int serial, int sequence, byte[] lacing, byte[] data) {
+        this.headerType = headerType;
+        this.granule = granule;
+        this.serial = serial;
+        this.sequence = sequence;
+        this.lacing = lacing;
+        this.data = data;
+    }
+
+    /**
+     * Serializes this page with a freshly computed CRC.
+     *
+     * @return The page bytes
+     */
+    byte[] toBytes() {
+        byte[] bytes = new byte[HEADER_SIZE + this.lacing.length + this.data.length];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(CAPTURE_PATTERN).put((byte) 0).put((byte) this.headerType).putLong(this.granule)
+                .putInt(this.serial).putInt(this.sequence).putInt(0).put((byte) this.lacing.length)
+                .put(this.lacing).put(this.data);
+        buffer.putInt(22, crc(bytes, 0, bytes.length));
+        return bytes;
+    }
+
+    /**
+     * Whether or not the last segment of this page ends a packet.
+     *
+     * @return The boolean
+     */
+    boolean endsPacket() {
+        return this.lacing.length > 0 && (this.lacing[this.lacing.length - 1] & 0xff) < 255;
+    }
+
+    /**
+     * Gets the header type flags.
+     *
+     * @return The flags
+     */
+    int getHeaderType() {
+        return this.headerType;
+    }
+
+    /**
+     * Gets the granule position.
+     *
+     * @return The granule position
+     */
+    long getGranule() {
+        return this.granule;
+    }
+
+    /**
+     * Gets the serial number of the logical stream.
+     *
+     * @return The serial number
+     */
+    int getSerial() {
+        return this.serial;
+    }
+
+    /**
+     * Gets the page sequence number.
+     *
+     * @return The sequence number
+     */
+    int getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * Sets the page sequence number, the CRC follows on the next
+     * {@link OggPage#toBytes()}.
+     *
+     * @param sequence The sequence number
+     */
+    void setSequence(int sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Gets the segment table.
+     *
+     * @return The segment table
+     */
+    byte[] getLacing() {
+        return this.lacing;
+    }
+
+    /**
+     * Gets the page body.
+     *
+     * @return The page body
+     */
+    byte[] getData() {
+        return this.data;
+    }
+}
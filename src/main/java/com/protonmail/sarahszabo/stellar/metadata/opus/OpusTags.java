@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.metadata.opus;
+
+import com.protonmail.sarahszabo.stellar.conversions.converters.StellarAudioConverter;
+import com.protonmail.sarahszabo.stellar.metadata.ConverterMetadata;
+import com.protonmail.sarahszabo.stellar.metadata.MetadataType;
+import com.protonmail.sarahszabo.stellar.metadata.VorbisPicture;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The comment header of an .opus file, per RFC 7845: a vendor string and a
+ * list of NAME=value comments. Comment names are compared without regard to
+ * case.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class OpusTags {
+
+    /**
+     * The magic signature the packet starts with.
+     */
+    private static final byte[] MAGIC = "OpusTags".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Parses an OpusTags packet.
+     *
+     * @param packet The packet
+     * @return The tags
+     * @throws IOException If the packet isn't a valid OpusTags packet
+     */
+    static OpusTags parse(byte[] packet) throws IOException {
+        if (packet.length < MAGIC.length || !Arrays.equals(packet, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            throw new IOException("The second packet is not an OpusTags packet");
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(packet, MAGIC.length, packet.length - MAGIC.length).order(ByteOrder.LITTLE_ENDIAN);
+            String vendor = readString(buffer);
+            int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining() / 4) {
+                throw new IOException("Invalid OpusTags comment count: " + count);
+            }
+            List<String> comments = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                comments.add(readString(buffer));
+            }
+            //Anything after the comments is kept as is, per the specification
+            byte[] trailer = new byte[buffer.remaining()];
+            buffer.get(trailer);
+            return new OpusTags(vendor, comments, trailer);
+        } catch (BufferUnderflowException | IllegalArgumentException ex) {
+            throw new IOException("Truncated OpusTags packet", ex);
+        }
+    }
+
+    /**
+     * Reads a length prefixed UTF-8 string.
+     *
+     * @param buffer The buffer
+     * @return The string
+     */
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String string = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return string;
+    }
+
+    /**
+     * The vendor string.
+     */
+    private final String vendor;
+    /**
+     * The comments, in order.
+     */
+    private final List<String> comments;
+    /**
+     * The bytes after the comment list, kept untouched.
+     */
+    private final byte[] trailer;
+
+    /**
+     * Constructs a new {@link OpusTags}.
+     *
+     * @param vendor The vendor string
+     * @param comments The comments
+     * @param trailer The bytes after the comment list
+     */
+    OpusTags(String vendor, List<String> comments, byte[] trailer) {
+        this.vendor = vendor;
+        this.comments = new ArrayList<>(comments);
+        this.trailer = trailer;
+    }
+
+    /**
+     * Serializes these tags to an OpusTags packet.
+     *
+     * @return The packet
+     */
+    byte[] toPacket() {
+        List<byte[]> encoded = new ArrayList<>(this.comments.size());
+        byte[] vendorBytes = this.vendor.getBytes(StandardCharsets.UTF_8);
+        int length = MAGIC.length + 4 + vendorBytes.length + 4 + this.trailer.length;
+        for (String comment : this.comments) {
+            byte[] bytes = comment.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            length += 4 + bytes.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MAGIC).putInt(vendorBytes.length).put(vendorBytes).putInt(encoded.size());
+        for (byte[] bytes : encoded) {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+        return buffer.put(this.trailer).array();
+    }
+
+    /**
+     * Whether or not the comment has the name.
+     *
+     * @param comment The NAME=value comment
+     * @param name The name
+     * @return The boolean
+     */
+    private static boolean hasName(String comment, String name) {
+        return comment.length() > name.length() && comment.charAt(name.length()) == '='
+                && comment.regionMatches(true, 0, name, 0, name.length());
+    }
+
+    /**
+     * Gets the first value of the comment with the name.
+     *
+     * @param name The comment name
+     * @return The value, if there is one
+     */
+    public Optional<String> get(String name) {
+        return this.comments.stream().filter(comment -> hasName(comment, name))
+                .map(comment -> comment.substring(name.length() + 1)).findFirst();
+    }
+
+    /**
+     * Replaces every comment with the name by the single value.
+     *
+     * @param name The comment name
+     * @param value The value
+     * @return These tags
+     */
+    public OpusTags set(String name, String value) {
+        remove(name);
+        this.comments.add(name + "=" + value);
+        return this;
+    }
+
+    /**
+     * Removes every comment with the name.
+     *
+     * @param name The comment name
+     * @return These tags
+     */
+    public OpusTags remove(String name) {
+        this.comments.removeIf(comment -> hasName(comment, name));
+        return this;
+    }
+
+    /**
+     * Replaces the album art with the image.
+     *
+     * @param image The image file
+     * @return These tags
+     * @throws IOException If the image could not be read
+     */
+    public OpusTags setPicture(Path image) throws IOException {
+        return set(VorbisPicture.COMMENT_NAME, VorbisPicture.toCommentValue(image));
+    }
+
+    /**
+     * Gets the album art stored in these tags.
+     *
+     * @return The image data, if there is a picture
+     * @throws IOException If the picture comment is malformed
+     */
+    public Optional<byte[]> getPicture() throws IOException {
+        Optional<String> value = get(VorbisPicture.COMMENT_NAME);
+        return value.isPresent() ? Optional.of(VorbisPicture.fromCommentValue(value.get())) : Optional.empty();
+    }
+
+    /**
+     * Writes the metadata into these tags, the same comments opusenc writes
+     * for a Stellar conversion. The album art is only replaced if the
+     * metadata's picture exists.
+     *
+     * @param metadata The metadata
+     * @return These tags
+     * @throws IOException If the album art could not be read
+     */
+    public OpusTags setMetadata(ConverterMetadata metadata) throws IOException {
+        set("TITLE", metadata.getTitle());
+        set("ARTIST", metadata.getArtist());
+        set(MetadataType.DATE.toString(), metadata.getStellarIndexDate().format(StellarAudioConverter.DATE_FORMATTER));
+        String createdBy = metadata.getCreatedBy();
+        int separator = createdBy.indexOf('=');
+        set(separator > 0 ? createdBy.substring(0, separator) : StellarAudioConverter.CREATED_BY_TAG,
+                createdBy.substring(separator + 1));
+        if (Files.isRegularFile(metadata.getAlbumArtPath())) {
+            setPicture(metadata.getAlbumArtPath());
+        }
+        return this;
+    }
+
+    /**
+     * Gets the vendor string.
+     *
+     * @return The vendor string
+     */
+    public String getVendor() {
+        return this.vendor;
+    }
+
+    /**
+     * Gets the comments.
+     *
+     * @return The read-only list of comments
+     */
+    public List<String> getComments() {
+        return Collections.unmodifiableList(this.comments);
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.metadata.opus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads and rewrites the tags of .opus files without decoding them. Only the
+ * OpusTags header pages are rebuilt, every audio page is copied byte for byte.
+ * If the new tags need a different number of pages than the old ones, the
+ * sequence numbers and CRCs of the following pages are patched, nothing else
+ * changes.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class OpusTagsRewriter {
+
+    /**
+     * The magic signature of the identification header.
+     */
+    private static final byte[] OPUS_HEAD = "OpusHead".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * The buffer size used for copying.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Reads the tags of the .opus file.
+     *
+     * @param file The .opus file
+     * @return The tags
+     * @throws IOException If the file isn't a valid .opus file
+     */
+    public static OpusTags read(Path file) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE)) {
+            return read(in, file);
+        }
+    }
+
+    /**
+     * Reads the tags of the .opus stream. Only the header pages are read.
+     *
+     * @param in The .opus stream
+     * @param name The name of the stream, for error messages
+     * @return The tags
+     * @throws IOException If the stream isn't a valid .opus stream
+     */
+    static OpusTags read(InputStream in, Object name) throws IOException {
+        OggPage head = readIdentificationHeader(in, name);
+        return OpusTags.parse(readTagsPacket(in, head, name).packet);
+    }
+
+    /**
+     * Copies the .opus file to the destination with the edited tags. The
+     * source and destination may be the same file, in which case the file is
+     * replaced once the new copy is complete, and the new copy gets the
+     * permissions of the source.
+     *
+     * @param source The .opus file
+     * @param destination The file to write
+     * @param edit The changes to make to the tags
+     * @throws IOException If the file isn't a valid .opus file, or it could
+     * not be written
+     */
+    public static void rewrite(Path source, Path destination, TagEdit edit) throws IOException {
+        Path parent = destination.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, ".stellar-", ".opus.tmp");
+        try {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(source), BUFFER_SIZE);
+                    OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE)) {
+                rewrite(in, out, edit, source);
+            }
+            copyPermissions(source, temp);
+            try {
+                Files.move(temp, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, destination, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Gives the target the POSIX permissions of the source, so a temporary
+     * file replacing the source isn't left readable by its owner only.
+     *
+     * @param source The file to copy the permissions from
+     * @param target The file to copy the permissions to
+     * @throws IOException If the permissions could not be read or set
+     */
+    private static void copyPermissions(Path source, Path target) throws IOException {
+        if (Files.getFileStore(target).supportsFileAttributeView(PosixFileAttributeView.class)) {
+            Files.setPosixFilePermissions(target, Files.getPosixFilePermissions(source));
+        }
+    }
+
+    /**
+     * Edits the tags of the .opus file in place.
+     *
+     * @param file The .opus file
+     * @param edit The changes to make to the tags
+     * @throws IOException If the file isn't a valid .opus file, or it could
+     * not be written
+     */
+    public static void rewrite(Path file, TagEdit edit) throws IOException {
+        rewrite(file, file, edit);
+    }
+
+    /**
+     * Copies the .opus stream to the output with the edited tags.
+     *
+     * @param in The .opus stream
+     * @param out The stream to write to
+     * @param edit The changes to make to the tags
+     * @param name The name of the stream, for error messages
+     * @throws IOException If the stream isn't a valid .opus stream
+     */
+    static void rewrite(InputStream in, OutputStream out, TagEdit edit, Object name) throws IOException {
+        OggPage head = readIdentificationHeader(in, name);
+        TagsPacket old = readTagsPacket(in, head, name);
+        OpusTags tags = OpusTags.parse(old.packet);
+        edit.edit(tags);
+        List<OggPage> tagPages = OggPage.paginate(tags.toPacket(), head.getSerial(), head.getSequence() + 1, 0);
+        out.write(head.toBytes());
+        for (OggPage page : tagPages) {
+            out.write(page.toBytes());
+        }
+        int shift = tagPages.size() - old.pages;
+        if (shift == 0) {
+            //Same page count, the audio is copied without even being looked at
+            in.transferTo(out);
+        } else {
+            OggPage page;
+            while ((page = OggPage.read(in)) != null) {
+                if (page.getSerial() == head.getSerial()) {
+                    page.setSequence(page.getSequence() + shift);
+                }
+                out.write(page.toBytes());
+            }
+        }
+    }
+
+    /**
+     * Reads the first page, which must hold only the OpusHead packet.
+     *
+     * @param in The stream
+     * @param name The name of the stream, for error messages
+     * @return The page
+     * @throws IOException If the page isn't an OpusHead page
+     */
+    private static OggPage readIdentificationHeader(InputStream in, Object name) throws IOException {
+        OggPage head = OggPage.read(in);
+        if (head == null || (head.getHeaderType() & OggPage.BEGINNING_OF_STREAM) == 0
+                || head.getData().length < OPUS_HEAD.length
+                || !Arrays.equals(head.getData(), 0, OPUS_HEAD.length, OPUS_HEAD, 0, OPUS_HEAD.length)) {
+            throw new IOException("Not an Ogg Opus file: " + name);
+        } else if (head.getLacing().length != 1 || !head.endsPacket()) {
+            throw new IOException("The OpusHead packet must be alone on the first page: " + name);
+        }
+        return head;
+    }
+
+    /**
+     * Reads the pages holding the OpusTags packet.
+     *
+     * @param in The stream, positioned after the first page
+     * @param head The first page
+     * @param name The name of the stream, for error messages
+     * @return The packet and the number of pages it took
+     * @throws IOException If the packet is missing or shares its last page
+     */
+    private static TagsPacket readTagsPacket(InputStream in, OggPage head, Object name) throws IOException {
+        ByteArrayOutputStream packet = new ByteArrayOutputStream(4096);
+        int pages = 0;
+        while (true) {
+            OggPage page = OggPage.read(in);
+            if (page == null) {
+                throw new IOException("The file ends inside the OpusTags packet: " + name);
+            } else if (page.getSerial() != head.getSerial()) {
+                throw new IOException("Multiplexed Ogg streams are not supported: " + name);
+            }
+            pages++;
+            byte[] lacing = page.getLacing(), data = page.getData();
+            int offset = 0;
+            for (int i = 0; i < lacing.length; i++) {
+                int length = lacing[i] & 0xff;
+                packet.write(data, offset, length);
+                offset += length;
+                if (length < 255) {
+                    if (i != lacing.length - 1) {
+                        throw new IOException("Audio data shares the last OpusTags page: " + name);
+                    }
+                    return new TagsPacket(packet.toByteArray(), pages);
+                }
+            }
+        }
+    }
+
+    /**
+     * The OpusTags packet as it was found in the file.
+     */
+    private static final class TagsPacket {
+
+        /**
+         * The packet.
+         */
+        private final byte[] packet;
+        /**
+         * The number of pages the packet took.
+         */
+        private final int pages;
+
+        /**
+         * Constructs a new {@link TagsPacket}.
+         *
+         * @param packet The packet
+         * @param pages The number of pages the packet took
+         */
+        private TagsPacket(byte[] packet, int pages) {
+            this.packet = packet;
+            this.pages = pages;
+        }
+    }
+
+    /**
+     * A change to make to the tags of a file.
+     */
+    @FunctionalInterface
+    public static interface TagEdit {
+
+        /**
+         * Makes the changes.
+         *
+         * @param tags The tags to change
+         * @throws IOException If something needed for the change could not be
+         * read
+         */
+        void edit(OpusTags tags) throws IOException;
+    }
+
+    /**
+     * Utility class, no instances required.
+     */
+    private OpusTagsRewriter() {
+        throw new AssertionError("Utility Class");
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for a lookup in one of the caches that save a tool
+ * run, ex: album art already ripped, or a file already in the library ledger.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+@Name("stellar.CacheLookup")
+@Label("Cache Lookup")
+@Category("Stellar")
+@Description("A lookup in a cache that saves a tool run")
+public final class CacheLookupEvent extends Event {
+
+    /**
+     * The cache, ex: Album Art.
+     */
+    @Label("Cache")
+    public String cache;
+    /**
+     * The key looked up.
+     */
+    @Label("Key")
+    public String key;
+    /**
+     * Whether or not the key was found.
+     */
+    @Label("Hit")
+    public boolean hit;
+
+    /**
+     * Commits a lookup event if Flight Recorder is recording them.
+     *
+     * @param cache The cache
+     * @param key The key
+     * @param hit Whether or not the key was found
+     */
+    public static void record(String cache, Object key, boolean hit) {
+        CacheLookupEvent event = new CacheLookupEvent();
+        if (event.shouldCommit()) {
+            event.cache = cache;
+            event.key = String.valueOf(key);
+            event.hit = hit;
+            event.commit();
+        }
+    }
+}
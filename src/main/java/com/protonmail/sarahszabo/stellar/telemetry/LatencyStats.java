@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.telemetry;
+
+import com.protonmail.sarahszabo.stellar.util.LatencyHistogram;
+
+/**
+ * Publishes a {@link LatencyHistogram} over JMX, reading it live on every
+ * call.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class LatencyStats implements LatencyStatsMXBean {
+
+    /**
+     * The published histogram.
+     */
+    private final LatencyHistogram latencies;
+
+    /**
+     * Constructs a new {@link LatencyStats}.
+     *
+     * @param latencies The histogram to publish
+     */
+    public LatencyStats(LatencyHistogram latencies) {
+        this.latencies = latencies;
+    }
+
+    @Override
+    public long getCount() {
+        return this.latencies.getCount();
+    }
+
+    @Override
+    public double getMean() {
+        return this.latencies.getMean();
+    }
+
+    @Override
+    public long getP50() {
+        return this.latencies.getP50();
+    }
+
+    @Override
+    public long getP90() {
+        return this.latencies.getP90();
+    }
+
+    @Override
+    public long getP99() {
+        return this.latencies.getP99();
+    }
+
+    @Override
+    public long getMax() {
+        return this.latencies.getMax();
+    }
+
+    @Override
+    public String toString() {
+        return this.latencies.toString();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.telemetry;
+
+/**
+ * The latencies of one pipeline stage or tool, as published over JMX. All
+ * latencies are in microseconds.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public interface LatencyStatsMXBean {
+
+    /**
+     * Gets the number of latencies recorded.
+     *
+     * @return The count
+     */
+    long getCount();
+
+    /**
+     * Gets the mean latency.
+     *
+     * @return The mean
+     */
+    double getMean();
+
+    /**
+     * Gets the median latency.
+     *
+     * @return The 50th percentile
+     */
+    long getP50();
+
+    /**
+     * Gets the 90th percentile latency.
+     *
+     * @return The 90th percentile
+     */
+    long getP90();
+
+    /**
+     * Gets the 99th percentile latency.
+     *
+     * @return The 99th percentile
+     */
+    long getP99();
+
+    /**
+     * Gets the largest latency recorded.
+     *
+     * @return The largest latency
+     */
+    long getMax();
+}
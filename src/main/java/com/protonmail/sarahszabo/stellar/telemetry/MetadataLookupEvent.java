@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for reading the existing tags of a file.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+@Name("stellar.MetadataLookup")
+@Label("Metadata Lookup")
+@Category("Stellar")
+@Description("Reading the existing tags of a file")
+public final class MetadataLookupEvent extends Event {
+
+    /**
+     * The file.
+     */
+    @Label("File")
+    public String file;
+    /**
+     * Whether or not the file had a picture.
+     */
+    @Label("Has Picture")
+    public boolean picture;
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.telemetry;
+
+import com.protonmail.sarahszabo.stellar.util.ToolRunner;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A process started through the {@link StellarTelemetry}: it counts the bytes
+ * that go through its standard streams, records its run in the tool's
+ * {@link ToolStats} when it exits, and commits a {@link ToolProcessEvent} once
+ * it has exited and its piped output has been read or closed.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class MeteredProcess extends Process {
+
+    /**
+     * Starts the process with the runner and meters it.
+     *
+     * @param runner The tool runner
+     * @param builder The process builder
+     * @return The metered process
+     * @throws IOException If the tool could not be started
+     */
+    public static Process start(ToolRunner runner, ProcessBuilder builder) throws IOException {
+        String tool = Paths.get(builder.command().get(0)).getFileName().toString();
+        ToolStats stats = StellarTelemetry.TELEMETRY.getToolStats(tool);
+        ToolProcessEvent event = new ToolProcessEvent();
+        event.begin();
+        long started = System.nanoTime();
+        Process process;
+        try {
+            process = runner.start(builder);
+        } catch (IOException ex) {
+            stats.failedToStart();
+            event.exitStatus = -1;
+            commit(event, builder, tool);
+            throw ex;
+        }
+        stats.started();
+        MeteredProcess metered = new MeteredProcess(process, builder, tool, event);
+        process.onExit().thenAccept(exited -> {
+            int status = exited.exitValue();
+            stats.exited(started, status);
+            metered.event.exitStatus = status;
+            //A killed tool's output is never read to its end
+            if (metered.killed.get()) {
+                metered.endOutput();
+            }
+            metered.finish();
+        });
+        return metered;
+    }
+
+    /**
+     * Fills in the command of the event and commits it, if Flight Recorder is
+     * recording tool processes.
+     *
+     * @param event The event
+     * @param builder The process builder
+     * @param tool The tool
+     */
+    private static void commit(ToolProcessEvent event, ProcessBuilder builder, String tool) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.tool = tool;
+            event.arguments = String.join(" ", builder.command().subList(1, builder.command().size()));
+            event.directory = builder.directory() == null ? System.getProperty("user.dir") : builder.directory().toString();
+            event.commit();
+        }
+    }
+
+    /**
+     * The process being metered.
+     */
+    private final Process process;
+    /**
+     * The builder the process was started from.
+     */
+    private final ProcessBuilder builder;
+    /**
+     * The tool.
+     */
+    private final String tool;
+    /**
+     * The event of this run.
+     */
+    private final ToolProcessEvent event;
+    /**
+     * What the run still waits on before its event is committed: the exit,
+     * and the end of the standard output if it is piped to us, since the
+     * tool's last output is usually read after it exits.
+     */
+    private final AtomicInteger pending;
+    /**
+     * Whether or not the end of the standard output has been seen.
+     */
+    private final AtomicBoolean outputEnded = new AtomicBoolean();
+    /**
+     * The bytes written to the standard input.
+     */
+    private final LongAdder bytesIn = new LongAdder();
+    /**
+     * The bytes read from the standard output.
+     */
+    private final LongAdder bytesOut = new LongAdder();
+    /**
+     * Whether or not the process was destroyed while it was alive.
+     */
+    private final AtomicBoolean killed = new AtomicBoolean();
+    /**
+     * The counted standard input.
+     */
+    private final OutputStream stdin;
+    /**
+     * The counted standard output.
+     */
+    private final InputStream stdout;
+
+    /**
+     * Constructs a new {@link MeteredProcess}.
+     *
+     * @param process The process to meter
+     * @param builder The builder the process was started from
+     * @param tool The tool
+     * @param event The event of this run
+     */
+    private MeteredProcess(Process process, ProcessBuilder builder, String tool, ToolProcessEvent event) {
+        this.process = process;
+        this.builder = builder;
+        this.tool = tool;
+        this.event = event;
+        boolean piped = builder.redirectOutput() == ProcessBuilder.Redirect.PIPE;
+        this.pending = new AtomicInteger(piped ? 2 : 1);
+        this.outputEnded.set(!piped);
+        this.stdin = new FilterOutputStream(process.getOutputStream()) {
+            @Override
+            public void write(int b) throws IOException {
+                this.out.write(b);
+                bytesIn.increment();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                this.out.write(b, off, len);
+                bytesIn.add(len);
+            }
+        };
+        this.stdout = new FilterInputStream(process.getInputStream()) {
+            @Override
+            public int read() throws IOException {
+                int b = this.in.read();
+                if (b >= 0) {
+                    bytesOut.increment();
+                } else {
+                    endOutput();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = this.in.read(b, off, len);
+                if (read > 0) {
+                    bytesOut.add(read);
+                } else if (read < 0) {
+                    endOutput();
+                }
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    endOutput();
+                }
+            }
+        };
+    }
+
+    /**
+     * Marks the end of the standard output, once.
+     */
+    private void endOutput() {
+        if (this.outputEnded.compareAndSet(false, true)) {
+            finish();
+        }
+    }
+
+    /**
+     * Marks one of the things the run waits on as done, and commits its event
+     * once they all are.
+     */
+    private void finish() {
+        if (this.pending.decrementAndGet() != 0) {
+            return;
+        }
+        this.event.bytesIn = this.bytesIn.sum();
+        this.event.bytesOut = this.bytesOut.sum();
+        //Output redirected to a file never goes through our streams
+        if (this.builder.redirectOutput().file() != null) {
+            this.event.bytesOut += this.builder.redirectOutput().file().length();
+        }
+        this.event.killed = this.killed.get();
+        commit(this.event, this.builder, this.tool);
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return this.stdin;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return this.stdout;
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return this.process.getErrorStream();
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+        return this.process.waitFor();
+    }
+
+    @Override
+    public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.process.waitFor(timeout, unit);
+    }
+
+    @Override
+    public int exitValue() {
+        return this.process.exitValue();
+    }
+
+    @Override
+    public boolean isAlive() {
+        return this.process.isAlive();
+    }
+
+    @Override
+    public void destroy() {
+        if (this.process.isAlive()) {
+            this.killed.set(true);
+        }
+        this.process.destroy();
+    }
+
+    @Override
+    public Process destroyForcibly() {
+        if (this.process.isAlive()) {
+            this.killed.set(true);
+        }
+        this.process.destroyForcibly();
+        return this;
+    }
+
+    @Override
+    public boolean supportsNormalTermination() {
+        return this.process.supportsNormalTermination();
+    }
+
+    @Override
+    public long pid() {
+        return this.process.pid();
+    }
+
+    @Override
+    public ProcessHandle toHandle() {
+        return this.process.toHandle();
+    }
+
+    @Override
+    public CompletableFuture<Process> onExit() {
+        return this.process.onExit().thenApply(exited -> this);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for copying a file into the temporary directory.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+@Name("stellar.Staging")
+@Label("File Staging")
+@Category("Stellar")
+@Description("Copying a file into the temporary directory")
+public final class StagingEvent extends Event {
+
+    /**
+     * The file copied.
+     */
+    @Label("Source")
+    public String source;
+    /**
+     * The copy.
+     */
+    @Label("Destination")
+    public String destination;
+    /**
+     * The size of the file.
+     */
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+}
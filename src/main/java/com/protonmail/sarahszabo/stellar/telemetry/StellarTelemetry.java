@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.telemetry;
+
+import com.protonmail.sarahszabo.stellar.conversions.MemoryStaging;
+import com.protonmail.sarahszabo.stellar.conversions.StellarHyperspace;
+import com.protonmail.sarahszabo.stellar.conversions.TempSpaceBudget;
+import com.protonmail.sarahszabo.stellar.conversions.converters.ConversionPath;
+import com.protonmail.sarahszabo.stellar.conversions.converters.ConversionStage;
+import com.protonmail.sarahszabo.stellar.util.AsyncLogHandler;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The counters of the conversion engine: jobs, bytes, conversion stages and
+ * external tools. Everything is published over JMX under the Stellar domain,
+ * ex: Stellar:type=Stage,name=Transcode or Stellar:type=Tool,name=ffmpeg, so
+ * jconsole or any JMX client can watch a batch while it runs. Recording is a
+ * handful of uncontended adds, cheap enough to leave on all the time.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public enum StellarTelemetry implements StellarTelemetryMXBean {
+
+    /**
+     * The telemetry instance.
+     */
+    TELEMETRY;
+
+    /**
+     * The JMX domain everything is published under.
+     */
+    public static final String DOMAIN = "Stellar";
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOG = Logger.getLogger(StellarTelemetry.class.getName());
+
+    /**
+     * The number of jobs running.
+     */
+    private final LongAdder inFlight = new LongAdder();
+    /**
+     * The number of jobs finished.
+     */
+    private final LongAdder completed = new LongAdder();
+    /**
+     * The number of jobs failed.
+     */
+    private final LongAdder failed = new LongAdder();
+    /**
+     * The bytes copied into the temporary directory.
+     */
+    private final LongAdder bytesStaged = new LongAdder();
+    /**
+     * The bytes of finished files written.
+     */
+    private final LongAdder bytesWritten = new LongAdder();
+    /**
+     * The statistics of every tool started so far.
+     */
+    private final Map<String, ToolStats> tools = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs the {@link StellarTelemetry}, publishing it and every
+     * conversion stage.
+     */
+    private StellarTelemetry() {
+        register("type=Hyperspace", this);
+        for (ConversionStage stage : ConversionStage.values()) {
+            register("type=Stage,name=" + stage, new LatencyStats(stage.getLatencies()));
+        }
+    }
+
+    /**
+     * Publishes the bean, logging rather than failing if JMX refuses it.
+     *
+     * @param properties The key properties of the bean's name
+     * @param bean The bean
+     */
+    private static void register(String properties, Object bean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(bean, name);
+            }
+        } catch (JMException | RuntimeException ex) {
+            LOG.log(Level.FINE, "Could not publish " + properties, ex);
+        }
+    }
+
+    /**
+     * Wraps the job so it is counted while it runs in hyperspace.
+     *
+     * @param job The job
+     * @return The counted job
+     */
+    public Callable<Path> track(Callable<Path> job) {
+        return () -> {
+            this.inFlight.increment();
+            try {
+                Path result = job.call();
+                this.completed.increment();
+                return result;
+            } catch (Exception | Error ex) {
+                this.failed.increment();
+                throw ex;
+            } finally {
+                this.inFlight.decrement();
+            }
+        };
+    }
+
+    /**
+     * Gets the statistics of the tool, publishing them the first time the
+     * tool is seen.
+     *
+     * @param tool The tool, ex: ffmpeg
+     * @return The statistics
+     */
+    public ToolStats getToolStats(String tool) {
+        ToolStats stats = this.tools.get(tool);
+        if (stats == null) {
+            stats = this.tools.computeIfAbsent(tool, key -> new ToolStats());
+            register("type=Tool,name=" + (tool.matches("[\\w.+-]+") ? tool : ObjectName.quote(tool)), stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Gets the statistics of every tool started so far.
+     *
+     * @return The read-only statistics by tool
+     */
+    public Map<String, ToolStats> getToolStats() {
+        return Map.copyOf(this.tools);
+    }
+
+    /**
+     * Records a file copied into the temporary directory.
+     *
+     * @param source The file copied
+     * @param destination The copy
+     * @throws IOException If the size of the copy could not be read
+     */
+    public void staged(Path source, Path destination) throws IOException {
+        StagingEvent event = new StagingEvent();
+        event.begin();
+        long bytes = Files.size(destination);
+        this.bytesStaged.add(bytes);
+        if (event.shouldCommit()) {
+            event.source = source.toString();
+            event.destination = destination.toString();
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records bytes of finished files written.
+     *
+     * @param bytes The bytes
+     */
+    public void written(long bytes) {
+        this.bytesWritten.add(bytes);
+    }
+
+    @Override
+    public long getInFlightJobs() {
+        return this.inFlight.sum();
+    }
+
+    @Override
+    public long getQueueDepth() {
+        ExecutorService hyperspace = StellarHyperspace.getHyperspace();
+        return hyperspace instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) hyperspace).getQueue().size() : 0;
+    }
+
+    @Override
+    public long getCompletedJobs() {
+        return this.completed.sum();
+    }
+
+    @Override
+    public long getFailedJobs() {
+        return this.failed.sum();
+    }
+
+    @Override
+    public long getBytesStaged() {
+        return this.bytesStaged.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return this.bytesWritten.sum();
+    }
+
+    @Override
+    public long getTempBytesReserved() {
+        return TempSpaceBudget.BUDGET.getReserved();
+    }
+
+    @Override
+    public long getTempSpaceWaits() {
+        return TempSpaceBudget.BUDGET.getWaits();
+    }
+
+    @Override
+    public long getMemoryStagedBytes() {
+        return MemoryStaging.SHM.getReserved();
+    }
+
+    @Override
+    public long getMemoryStaged() {
+        return MemoryStaging.SHM.getResident();
+    }
+
+    @Override
+    public long getMemoryStagingSpills() {
+        return MemoryStaging.SHM.getSpills();
+    }
+
+    @Override
+    public long getRetagged() {
+        return ConversionPath.RETAG.getCount();
+    }
+
+    @Override
+    public long getRemuxed() {
+        return ConversionPath.REMUX.getCount();
+    }
+
+    @Override
+    public long getTranscoded() {
+        return ConversionPath.TRANSCODE.getCount();
+    }
+
+    @Override
+    public long getDroppedLogRecords() {
+        return AsyncLogHandler.getTotalDropped();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.telemetry;
+
+/**
+ * The state of the conversion engine as a whole, as published over JMX.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public interface StellarTelemetryMXBean {
+
+    /**
+     * Gets the number of jobs running in hyperspace.
+     *
+     * @return The count
+     */
+    long getInFlightJobs();
+
+    /**
+     * Gets the number of jobs waiting for a hyperspace thread.
+     *
+     * @return The count
+     */
+    long getQueueDepth();
+
+    /**
+     * Gets the number of jobs that finished.
+     *
+     * @return The count
+     */
+    long getCompletedJobs();
+
+    /**
+     * Gets the number of jobs that failed.
+     *
+     * @return The count
+     */
+    long getFailedJobs();
+
+    /**
+     * Gets the number of bytes copied into the temporary directory.
+     *
+     * @return The bytes
+     */
+    long getBytesStaged();
+
+    /**
+     * Gets the number of bytes of finished files written to the output
+     * folders.
+     *
+     * @return The bytes
+     */
+    long getBytesWritten();
+
+    /**
+     * Gets the bytes of the temporary folder reserved by the conversions in
+     * flight.
+     *
+     * @return The bytes
+     */
+    long getTempBytesReserved();
+
+    /**
+     * Gets the number of conversions that had to wait for room in the
+     * temporary folder.
+     *
+     * @return The count
+     */
+    long getTempSpaceWaits();
+
+    /**
+     * Gets the bytes reserved by the working directories staged in memory.
+     *
+     * @return The bytes
+     */
+    long getMemoryStagedBytes();
+
+    /**
+     * Gets the number of working directories staged in memory.
+     *
+     * @return The count
+     */
+    long getMemoryStaged();
+
+    /**
+     * Gets the number of working directories that didn't fit in memory and
+     * spilled to disk.
+     *
+     * @return The count
+     */
+    long getMemoryStagingSpills();
+
+    /**
+     * Gets the number of files that were only retagged.
+     *
+     * @return The count
+     */
+    long getRetagged();
+
+    /**
+     * Gets the number of files that were remuxed.
+     *
+     * @return The count
+     */
+    long getRemuxed();
+
+    /**
+     * Gets the number of files that were transcoded.
+     *
+     * @return The count
+     */
+    long getTranscoded();
+
+    /**
+     * Gets the number of log records dropped because a log buffer was full.
+     *
+     * @return The count
+     */
+    long getDroppedLogRecords();
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for one run of an external tool, from its launch to
+ * its exit.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+@Name("stellar.ToolProcess")
+@Label("Tool Process")
+@Category("Stellar")
+@Description("One run of an external tool, from launch to exit")
+public final class ToolProcessEvent extends Event {
+
+    /**
+     * The tool, ex: ffmpeg.
+     */
+    @Label("Tool")
+    String tool;
+    /**
+     * The arguments after the tool.
+     */
+    @Label("Arguments")
+    String arguments;
+    /**
+     * The working directory.
+     */
+    @Label("Directory")
+    String directory;
+    /**
+     * The exit status, -1 if the tool could not start.
+     */
+    @Label("Exit Status")
+    int exitStatus;
+    /**
+     * The bytes written to the tool's standard input.
+     */
+    @Label("Bytes In")
+    @DataAmount
+    long bytesIn;
+    /**
+     * The bytes the tool wrote to its standard output or output file.
+     */
+    @Label("Bytes Out")
+    @DataAmount
+    long bytesOut;
+    /**
+     * Whether or not the tool was destroyed before it exited, ex: by the
+     * processOP watchdog.
+     */
+    @Label("Killed")
+    boolean killed;
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.telemetry;
+
+import com.protonmail.sarahszabo.stellar.util.LatencyHistogram;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The launches, failures and run times of one external tool. Run times are
+ * measured from the start of the process to its exit.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class ToolStats implements ToolStatsMXBean {
+
+    /**
+     * The run times.
+     */
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    /**
+     * The number of launches.
+     */
+    private final LongAdder launches = new LongAdder();
+    /**
+     * The number of failed runs.
+     */
+    private final LongAdder failures = new LongAdder();
+    /**
+     * The number of runs that haven't exited.
+     */
+    private final LongAdder running = new LongAdder();
+
+    /**
+     * Records a launch that failed to start the tool.
+     */
+    public void failedToStart() {
+        this.launches.increment();
+        this.failures.increment();
+    }
+
+    /**
+     * Records a launch of the tool.
+     */
+    public void started() {
+        this.launches.increment();
+        this.running.increment();
+    }
+
+    /**
+     * Records the exit of a run of the tool.
+     *
+     * @param started The {@link System#nanoTime()} the run started at
+     * @param status The exit status
+     */
+    public void exited(long started, int status) {
+        this.latencies.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started));
+        this.running.decrement();
+        if (status != 0) {
+            this.failures.increment();
+        }
+    }
+
+    /**
+     * Gets the run times of the tool.
+     *
+     * @return The run times
+     */
+    public LatencyHistogram getLatencies() {
+        return this.latencies;
+    }
+
+    @Override
+    public long getLaunches() {
+        return this.launches.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return this.failures.sum();
+    }
+
+    @Override
+    public long getRunning() {
+        return this.running.sum();
+    }
+
+    @Override
+    public long getCount() {
+        return this.latencies.getCount();
+    }
+
+    @Override
+    public double getMean() {
+        return this.latencies.getMean();
+    }
+
+    @Override
+    public long getP50() {
+        return this.latencies.getP50();
+    }
+
+    @Override
+    public long getP90() {
+        return this.latencies.getP90();
+    }
+
+    @Override
+    public long getP99() {
+        return this.latencies.getP99();
+    }
+
+    @Override
+    public long getMax() {
+        return this.latencies.getMax();
+    }
+
+    @Override
+    public String toString() {
+        return "Launches: " + getLaunches() + ", Failures: " + getFailures() + ", " + this.latencies;
+    }
+}
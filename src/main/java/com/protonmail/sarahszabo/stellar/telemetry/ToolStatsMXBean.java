@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.telemetry;
+
+/**
+ * The launches and run times of one external tool, as published over JMX.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public interface ToolStatsMXBean extends LatencyStatsMXBean {
+
+    /**
+     * Gets the number of times the tool was started.
+     *
+     * @return The count
+     */
+    long getLaunches();
+
+    /**
+     * Gets the number of runs that could not start or exited with a non-zero
+     * status.
+     *
+     * @return The count
+     */
+    long getFailures();
+
+    /**
+     * Gets the number of runs that haven't exited yet.
+     *
+     * @return The count
+     */
+    long getRunning();
+}
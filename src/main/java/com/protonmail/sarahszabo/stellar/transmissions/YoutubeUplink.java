@@ -17,6 +17,7 @@
 package com.protonmail.sarahszabo.stellar.transmissions;
 
 import com.protonmail.sarahszabo.stellar.StellarDiskManager;
+import com.protonmail.sarahszabo.stellar.util.StellarGravitonField;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -60,8 +61,8 @@ public final class YoutubeUplink implements Uplink {
      */
     @Override
     public boolean recieveTransmission() throws IOException {
-        Process process = new ProcessBuilder("youtube-dl", "-f", "best", "--newline", "-o", getPath().toString(),
-                this.url).directory(StellarDiskManager.getOutputFolder().toFile()).inheritIO().start();
+        Process process = StellarGravitonField.startProcess(new ProcessBuilder("youtube-dl", "-f", "best", "--newline",
+                "-o", getPath().toString(), this.url).directory(StellarDiskManager.getOutputFolder().toFile()).inheritIO());
         try ( Scanner scanner = new Scanner(process.getInputStream())) {
             while (scanner.hasNextLine()) {
                 var str = scanner.nextLine();
@@ -101,7 +102,7 @@ public final class YoutubeUplink implements Uplink {
     public String getTitle() throws IOException {
         String title;
         ProcessBuilder builder = new ProcessBuilder("youtube-dl", "--get-filename", "-o", "%(title)s", url);
-        Process proc = builder.start();
+        Process proc = StellarGravitonField.startProcess(builder);
         try ( BufferedReader reader = new BufferedReader(new InputStreamReader(proc.getInputStream()))) {
             title = reader.readLine();
         }
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.StreamHandler;
+
+/**
+ * A handler that hands records to a bounded ring buffer and returns at once. A
+ * single writer thread drains the buffer in batches into the sink handler, so
+ * threads that log never block on the console or the disk. When the buffer is
+ * full, records are dropped and counted rather than stalling the caller, and
+ * the writer notes how many were lost in the log itself. Every logger shares
+ * one console pipeline and one pipeline per log file.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class AsyncLogHandler extends Handler {
+
+    /**
+     * The default number of records the buffer holds.
+     */
+    public static final int DEFAULT_CAPACITY = 8192;
+    /**
+     * The longest we wait for the buffer to drain when closing.
+     */
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+    /**
+     * The shared console pipeline, created on first use.
+     */
+    private static volatile AsyncLogHandler console;
+    /**
+     * The file pipelines, by the absolute path of their file.
+     */
+    private static final ConcurrentMap<Path, AsyncLogHandler> FILES = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the console pipeline every logger shares, writing to standard
+     * error like a {@link ConsoleHandler}.
+     *
+     * @return The console pipeline
+     */
+    public static AsyncLogHandler console() {
+        AsyncLogHandler handler = console;
+        if (handler == null) {
+            synchronized (AsyncLogHandler.class) {
+                handler = console;
+                if (handler == null) {
+                    ConsoleHandler sink = new ConsoleHandler();
+                    sink.setLevel(Level.ALL);
+                    sink.setFormatter(new StellarLoggingFormatter());
+                    console = handler = new AsyncLogHandler(sink, DEFAULT_CAPACITY, "Console");
+                }
+            }
+        }
+        return handler;
+    }
+
+    /**
+     * Gets the number of records every pipeline dropped because its buffer was
+     * full.
+     *
+     * @return The count
+     */
+    public static long getTotalDropped() {
+        AsyncLogHandler handler = console;
+        long total = handler == null ? 0 : handler.getDropped();
+        for (AsyncLogHandler file : FILES.values()) {
+            total += file.getDropped();
+        }
+        return total;
+    }
+
+    /**
+     * Gets the pipeline that appends to the file, creating the file and its
+     * directories if they don't exist already.
+     *
+     * @param filePath The log file
+     * @return The file pipeline
+     * @throws IOException If the file could not be opened
+     */
+    public static AsyncLogHandler forFile(Path filePath) throws IOException {
+        Path key = filePath.toAbsolutePath().normalize();
+        AsyncLogHandler handler = FILES.get(key);
+        if (handler != null) {
+            return handler;
+        }
+        synchronized (FILES) {
+            handler = FILES.get(key);
+            if (handler == null) {
+                Files.createDirectories(key.getParent());
+                StreamHandler sink = new StreamHandler(Files.newOutputStream(key, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND), new StellarLoggingFormatter());
+                sink.setLevel(Level.ALL);
+                handler = new AsyncLogHandler(sink, DEFAULT_CAPACITY, key.getFileName().toString());
+                FILES.put(key, handler);
+            }
+            return handler;
+        }
+    }
+
+    /**
+     * The handler the writer thread publishes to.
+     */
+    private final Handler sink;
+    /**
+     * The ring buffer of records waiting to be written.
+     */
+    private final BlockingQueue<LogRecord> buffer;
+    /**
+     * The records dropped because the buffer was full.
+     */
+    private final LongAdder dropped = new LongAdder();
+    /**
+     * The dropped records the writer has already noted in the log, only used
+     * by the writer thread.
+     */
+    private long reportedDropped;
+    /**
+     * The writer thread.
+     */
+    private final Thread writer;
+    /**
+     * The number of records the writer has taken from the buffer but not yet
+     * written, guarded by this.
+     */
+    private int writing;
+    /**
+     * Whether or not this handler has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Constructs a new {@link AsyncLogHandler} and starts its writer thread.
+     *
+     * @param sink The handler the writer thread publishes to
+     * @param capacity The number of records the buffer holds
+     * @param name The name of the pipeline, used to name the writer thread
+     */
+    public AsyncLogHandler(Handler sink, int capacity, String name) {
+        this.sink = sink;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        setLevel(Level.ALL);
+        this.writer = new Thread(this::write, "Stellar Log Writer: " + name);
+        this.writer.setDaemon(true);
+        this.writer.start();
+        //Records still in the buffer at exit are written out, not lost
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "Stellar Log Drain: " + name));
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (this.closed || !isLoggable(record)) {
+            return;
+        }
+        //What a job prints goes to its caller, not to the console of the process running it
+        if (this == console) {
+            Optional<JobContext> job = JobContext.current();
+            if (job.isPresent()) {
+                job.get().publish(record);
+                return;
+            }
+        }
+        if (!this.buffer.offer(record)) {
+            this.dropped.increment();
+        }
+    }
+
+    /**
+     * The writer loop, drains the buffer into the sink in batches.
+     */
+    private void write() {
+        List<LogRecord> batch = new ArrayList<>();
+        while (!this.closed || !this.buffer.isEmpty()) {
+            try {
+                LogRecord first = this.buffer.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                synchronized (this) {
+                    batch.add(first);
+                    this.buffer.drainTo(batch);
+                    this.writing = batch.size();
+                }
+                for (LogRecord record : batch) {
+                    this.sink.publish(record);
+                }
+                reportDropped();
+                this.sink.flush();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException ex) {
+                reportError("Stellar log writer failed", ex, ErrorManager.WRITE_FAILURE);
+            } finally {
+                synchronized (this) {
+                    batch.clear();
+                    this.writing = 0;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a line to the sink saying how many records were dropped since the
+     * last such line, if any were.
+     */
+    private void reportDropped() {
+        long total = this.dropped.sum();
+        if (total != this.reportedDropped) {
+            LogRecord record = new LogRecord(Level.WARNING, (total - this.reportedDropped) + " records dropped, the log buffer was full");
+            record.setLoggerName(AsyncLogHandler.class.getName());
+            this.sink.publish(record);
+            this.reportedDropped = total;
+        }
+    }
+
+    /**
+     * Waits for every record published so far to be written, ex: before
+     * exiting. Never call this on a hot path, it blocks on the writer.
+     */
+    @Override
+    public void flush() {
+        drain(CLOSE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Waits for the buffer to drain.
+     *
+     * @param timeoutMillis The longest to wait
+     */
+    private void drain(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (this) {
+            while ((!this.buffer.isEmpty() || this.writing > 0) && this.writer.isAlive()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return;
+                }
+                try {
+                    wait(Math.min(remaining, 100));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes out what is left in the buffer, stops the writer and closes the
+     * sink.
+     */
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        drain(CLOSE_TIMEOUT_MILLIS);
+        this.closed = true;
+        try {
+            this.writer.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        this.sink.close();
+    }
+
+    /**
+     * Gets the handler the writer thread publishes to.
+     *
+     * @return The sink
+     */
+    public Handler getSink() {
+        return this.sink;
+    }
+
+    /**
+     * Gets the number of records dropped because the buffer was full.
+     *
+     * @return The count
+     */
+    public long getDropped() {
+        return this.dropped.sum();
+    }
+}
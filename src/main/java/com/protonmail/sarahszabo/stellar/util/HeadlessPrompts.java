@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.util;
+
+import com.protonmail.sarahszabo.stellar.metadata.ConverterMetadataBuilder;
+import com.protonmail.sarahszabo.stellar.metadata.MetadataType;
+import java.awt.GraphicsEnvironment;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Answers the prompts of {@link StellarCLIUtils} without a display, so Stellar
+ * runs on servers and never boots JavaFX. Headless mode is on with
+ * -Dstellar.headless=true or the --headless flag, whenever Java finds no
+ * display, and for every {@link JobContext} job. Every answer comes from, in
+ * order: the job's answers, a system property (the --flags of
+ * {@link HeadlessPrompts#FLAGS} set these), the Headless.properties file in
+ * the configuration folder, and finally a fixed policy that never deletes,
+ * renames or overwrites anything on its own.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class HeadlessPrompts {
+
+    /**
+     * The command line flags, mapped to the property they set. Ex: --yes sets
+     * stellar.confirm=true, --files=A.mp4:B.mp4 sets stellar.files.
+     */
+    public static final Map<String, String> FLAGS = Map.of("--headless", "stellar.headless",
+            "--yes", "stellar.confirm", "--no", "stellar.confirm", "--files", "stellar.files",
+            "--folder", "stellar.folder", "--picture", "stellar.picture", "--select", "stellar.select",
+            "--artist", "stellar.artist", "--title", "stellar.title");
+    /**
+     * The properties file of headless answers, read from the configuration
+     * folder without loading the disk manager, whose set up may prompt.
+     */
+    private static final Path CONFIGURATION = Paths.get(System.getProperty("stellar.home", "/home/sarah"),
+            "Configuration", "Headless.properties");
+    /**
+     * The answers in the configuration file, loaded on first use.
+     */
+    private static volatile Properties configuration;
+    /**
+     * The logger, answers are logged in place of the dialogs they replace.
+     */
+    private static final Logger logger = StellarLoggingFormatter.forClass(HeadlessPrompts.class);
+
+    /**
+     * Whether or not Stellar is running headless.
+     *
+     * @return The boolean
+     */
+    public static boolean isHeadless() {
+        //A job run for someone else can't show them a dialog
+        if (JobContext.current().isPresent()) {
+            return true;
+        }
+        return Boolean.parseBoolean(get("stellar.headless").orElse("false")) || GraphicsEnvironment.isHeadless();
+    }
+
+    /**
+     * Removes the flags of {@link HeadlessPrompts#FLAGS} from the arguments
+     * and sets their properties, so the rest of the arguments keep Main's
+     * grammar.
+     *
+     * @param args The command line arguments
+     * @return The arguments without the flags
+     */
+    public static String[] applyFlags(String[] args) {
+        return Arrays.stream(args).filter(arg -> {
+            int equals = arg.indexOf('=');
+            String flag = equals < 0 ? arg : arg.substring(0, equals);
+            String property = FLAGS.get(flag.toLowerCase());
+            if (property == null) {
+                return true;
+            }
+            String value = equals < 0 ? String.valueOf(!flag.equalsIgnoreCase("--no")) : arg.substring(equals + 1);
+            System.setProperty(property, value);
+            return false;
+        }).toArray(String[]::new);
+    }
+
+    /**
+     * Gets a headless answer from the system properties or the configuration
+     * file.
+     *
+     * @param property The property, ex: stellar.folder
+     * @return The answer, if any
+     */
+    static Optional<String> get(String property) {
+        String value = JobContext.current().flatMap(job -> job.getAnswer(property)).orElse(null);
+        if (value == null) {
+            value = System.getProperty(property);
+        }
+        if (value == null) {
+            value = getConfiguration().getProperty(property);
+        }
+        return Optional.ofNullable(value).map(String::trim).filter(answer -> !answer.isEmpty());
+    }
+
+    /**
+     * Gets the answers in the configuration file.
+     *
+     * @return The answers, empty if there is no file
+     */
+    private static Properties getConfiguration() {
+        Properties properties = configuration;
+        if (properties == null) {
+            properties = new Properties();
+            if (Files.isReadable(CONFIGURATION)) {
+                try (Reader reader = Files.newBufferedReader(CONFIGURATION)) {
+                    properties.load(reader);
+                } catch (IOException ex) {
+                    logger.warning("Unreadable " + CONFIGURATION + ": " + ex.getMessage());
+                }
+            }
+            configuration = properties;
+        }
+        return properties;
+    }
+
+    /**
+     * Answers a confirmation, no unless stellar.confirm says otherwise.
+     *
+     * @param text The question
+     * @return Whether or not to go ahead
+     */
+    static boolean confirm(String text) {
+        boolean confirmed = Boolean.parseBoolean(get("stellar.confirm").orElse("false"));
+        logger.info(text + "\n" + (confirmed ? "Yes" : "No") + " (Headless, --yes or --no to change)");
+        return confirmed;
+    }
+
+    /**
+     * Answers a choice between paths: the path named by stellar.select, or the
+     * first one.
+     *
+     * @param paths The paths to select from
+     * @return The selected path
+     */
+    static Optional<Path> selectPath(Collection<Path> paths) {
+        Optional<String> select = get("stellar.select");
+        if (select.isPresent()) {
+            Path selected = Paths.get(select.get());
+            return paths.stream().filter(path -> path.equals(selected) || path.getFileName().equals(selected.getFileName()))
+                    .findFirst();
+        }
+        return paths.stream().findFirst();
+    }
+
+    /**
+     * Answers a request for files, from stellar.files: paths separated by the
+     * path separator, ex: A.mp4:B.mp4.
+     *
+     * @param purpose What the files are for, used in the error message
+     * @return The files
+     * @throws IllegalStateException If no files were given, there is no
+     * clipboard or file chooser to fall back on
+     */
+    static List<Path> getFiles(String purpose) {
+        return get("stellar.files").map(files -> Arrays.stream(files.split(File.pathSeparator)).map(String::trim)
+                .filter(file -> !file.isEmpty()).map(Paths::get).collect(Collectors.toList()))
+                .orElseThrow(() -> new IllegalStateException("Headless: no files for " + purpose
+                + ", give them with --files=FILE" + File.pathSeparator + "FILE"));
+    }
+
+    /**
+     * Answers a request for a file, from stellar.picture.
+     *
+     * @return The file, empty so the caller's default is used if none was
+     * given
+     */
+    static Optional<Path> getFile() {
+        return get("stellar.picture").map(Paths::get);
+    }
+
+    /**
+     * Answers a request for a folder, from stellar.folder.
+     *
+     * @return The folder, empty so the caller's default is used if none was
+     * given
+     */
+    static Optional<Path> getFolder() {
+        return get("stellar.folder").map(Paths::get);
+    }
+
+    /**
+     * Answers a request for the artist and title, from stellar.artist and
+     * stellar.title, otherwise with what the dialog suggests: an unknown
+     * artist and the suggested title.
+     *
+     * @param suggestedTitle The title the dialog would suggest
+     * @return The artist and title
+     */
+    static Map<MetadataType, String> askForArtistTitle(String suggestedTitle) {
+        ConverterMetadataBuilder defaults = new ConverterMetadataBuilder();
+        Map<MetadataType, String> map = new HashMap<>(2);
+        map.put(MetadataType.ARTIST, get("stellar.artist").orElse(defaults.getArtist()));
+        map.put(MetadataType.TITLE, get("stellar.title").orElse(suggestedTitle == null || suggestedTitle.isBlank()
+                ? defaults.getTitle() : suggestedTitle.trim()));
+        return map;
+    }
+
+    /**
+     * Utility class, no instances required.
+     */
+    private HeadlessPrompts() {
+        throw new AssertionError("Utility Class");
+    }
+}
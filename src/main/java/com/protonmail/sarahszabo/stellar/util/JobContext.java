@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+/**
+ * The job a thread is working for, when one process runs the jobs of many
+ * callers, ex: the Stellar daemon. A job has its own working directory, its
+ * own answers to the prompts of {@link HeadlessPrompts}, and its own output:
+ * what it prints and logs goes to its caller instead of the process' console.
+ * The context follows the job into Hyperspace through
+ * {@link JobContext#wrap(java.util.concurrent.Callable)}, and into parallel
+ * streams through the job's own fork/join pool, see
+ * {@link JobContext#run(java.util.concurrent.Callable)}. Without a context,
+ * everything behaves like a single command line run.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class JobContext {
+
+    /**
+     * The job the current thread is working for.
+     */
+    private static final ThreadLocal<JobContext> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Gets the job the current thread is working for.
+     *
+     * @return The job, empty outside of one
+     */
+    public static Optional<JobContext> current() {
+        return Optional.ofNullable(CURRENT.get());
+    }
+
+    /**
+     * Gets the working directory of the current job, or of the process outside
+     * of one.
+     *
+     * @return The working directory
+     */
+    public static Path getWorkingDirectory() {
+        JobContext context = CURRENT.get();
+        return context == null ? Paths.get(System.getProperty("user.dir")) : context.directory;
+    }
+
+    /**
+     * Binds the task to the job the submitting thread is working for, so it
+     * runs for the same job on whatever thread picks it up.
+     *
+     * @param <T> The type of the result
+     * @param task The task
+     * @return The bound task, or the task itself outside of a job
+     */
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        JobContext context = CURRENT.get();
+        return context == null ? task : () -> context.call(task);
+    }
+
+    /**
+     * Replaces System.out and System.err with streams that write to the
+     * current job's output when there is one, and to the originals otherwise.
+     */
+    public static synchronized void routeStandardStreams() {
+        if (!(System.out instanceof RoutedPrintStream)) {
+            System.setOut(new RoutedPrintStream(System.out, true));
+            System.setErr(new RoutedPrintStream(System.err, false));
+        }
+    }
+
+    /**
+     * The working directory of the job.
+     */
+    private final Path directory;
+    /**
+     * The prompt answers of the job, ex: stellar.confirm=true.
+     */
+    private final Map<String, String> answers;
+    /**
+     * Where the job's standard output goes.
+     */
+    private final OutputStream out;
+    /**
+     * Where the job's standard error goes.
+     */
+    private final OutputStream err;
+    /**
+     * Where the job's log records go.
+     */
+    private final Handler log;
+
+    /**
+     * Constructs a new {@link JobContext}. The output streams and the handler
+     * are written to by the job's threads, so they must not block.
+     *
+     * @param directory The working directory of the job
+     * @param answers The prompt answers of the job
+     * @param out Where the job's standard output goes
+     * @param err Where the job's standard error goes
+     * @param log Where the job's log records go
+     */
+    public JobContext(Path directory, Map<String, String> answers, OutputStream out, OutputStream err, Handler log) {
+        this.directory = directory;
+        this.answers = Map.copyOf(answers);
+        this.out = out;
+        this.err = err;
+        this.log = log;
+    }
+
+    /**
+     * Runs the task on the current thread, working for this job.
+     *
+     * @param <T> The type of the result
+     * @param task The task
+     * @return The result of the task
+     * @throws Exception If the task failed
+     */
+    public <T> T call(Callable<T> task) throws Exception {
+        JobContext previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return task.call();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Runs the task for this job on a fork/join pool of its own, and waits for
+     * it. Every thread of the pool works for this job, and parallel streams
+     * started on a pool thread run on that pool instead of the common one, so
+     * their prompts, output and logs stay with the job too.
+     *
+     * @param <T> The type of the result
+     * @param task The task
+     * @return The result of the task
+     * @throws Exception If the task failed
+     */
+    public <T> T run(Callable<T> task) throws Exception {
+        AtomicInteger workers = new AtomicInteger();
+        String name = Thread.currentThread().getName();
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), forkJoinPool -> {
+            ForkJoinWorkerThread worker = new ForkJoinWorkerThread(forkJoinPool) {
+                @Override
+                protected void onStart() {
+                    super.onStart();
+                    CURRENT.set(JobContext.this);
+                }
+            };
+            worker.setName(name + " Worker " + workers.incrementAndGet());
+            return worker;
+        }, null, false);
+        try {
+            return pool.submit(() -> call(task)).get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Gets the job's answer to a prompt.
+     *
+     * @param property The property of the answer, ex: stellar.folder
+     * @return The answer, if the job gave one
+     */
+    public Optional<String> getAnswer(String property) {
+        return Optional.ofNullable(this.answers.get(property));
+    }
+
+    /**
+     * Sends a log record to the job's caller.
+     *
+     * @param record The record
+     */
+    void publish(LogRecord record) {
+        this.log.publish(record);
+    }
+
+    /**
+     * A print stream that writes to the current job's output, or to the
+     * original stream outside of a job.
+     */
+    private static final class RoutedPrintStream extends PrintStream {
+
+        /**
+         * Constructs a new {@link RoutedPrintStream}.
+         *
+         * @param original The stream written to outside of a job
+         * @param standardOutput Whether this replaces standard output or error
+         */
+        private RoutedPrintStream(PrintStream original, boolean standardOutput) {
+            super(new OutputStream() {
+                /**
+                 * Gets the stream of the current job, or the original.
+                 *
+                 * @return The stream
+                 */
+                private OutputStream target() {
+                    JobContext context = CURRENT.get();
+                    return context == null ? original : standardOutput ? context.out : context.err;
+                }
+
+                @Override
+                public void write(int b) throws IOException {
+                    target().write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    target().write(b, off, len);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    target().flush();
+                }
+            }, true);
+        }
+    }
+}
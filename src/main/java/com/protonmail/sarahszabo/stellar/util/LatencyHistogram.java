@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free log-linear histogram of latencies in microseconds. Every power
+ * of two is split into eight buckets, so percentiles are reported to within
+ * 12.5% while the histogram stays a fixed 4KB no matter how many latencies are
+ * recorded. Safe to record into from any number of threads.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Latencies below this are counted exactly, one bucket each.
+     */
+    private static final int LINEAR_BUCKETS = 16;
+    /**
+     * The number of bits of each power of two kept as the sub-bucket.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+    /**
+     * The number of buckets, enough for any positive long.
+     */
+    static final int BUCKETS = LINEAR_BUCKETS + (Long.SIZE - 5) * (1 << SUB_BUCKET_BITS);
+
+    /**
+     * Gets the bucket of the latency.
+     *
+     * @param micros The latency
+     * @return The bucket
+     */
+    static int bucketOf(long micros) {
+        if (micros < LINEAR_BUCKETS) {
+            return (int) Math.max(micros, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1);
+        return LINEAR_BUCKETS + (exponent - 4) * (1 << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    /**
+     * Gets the smallest latency that falls into the bucket.
+     *
+     * @param bucket The bucket
+     * @return The latency
+     */
+    static long lowestOf(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / (1 << SUB_BUCKET_BITS) + 4;
+        long subBucket = (bucket - LINEAR_BUCKETS) % (1 << SUB_BUCKET_BITS);
+        return (1L << exponent) + (subBucket << (exponent - SUB_BUCKET_BITS));
+    }
+
+    /**
+     * The number of latencies in each bucket.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    /**
+     * The number of latencies recorded.
+     */
+    private final LongAdder count = new LongAdder();
+    /**
+     * The sum of the latencies recorded.
+     */
+    private final LongAdder sum = new LongAdder();
+    /**
+     * The largest latency recorded.
+     */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records one latency.
+     *
+     * @param micros The latency in microseconds
+     */
+    public void record(long micros) {
+        this.buckets.incrementAndGet(bucketOf(micros));
+        this.count.increment();
+        this.sum.add(micros);
+        this.max.accumulate(micros);
+    }
+
+    /**
+     * Gets the number of latencies recorded.
+     *
+     * @return The count
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * Gets the sum of the latencies recorded.
+     *
+     * @return The sum in microseconds
+     */
+    public long getSum() {
+        return this.sum.sum();
+    }
+
+    /**
+     * Gets the mean latency.
+     *
+     * @return The mean in microseconds, 0 if nothing was recorded
+     */
+    public double getMean() {
+        long recorded = getCount();
+        return recorded == 0 ? 0 : (double) getSum() / recorded;
+    }
+
+    /**
+     * Gets the largest latency recorded.
+     *
+     * @return The largest latency in microseconds
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * Gets the latency that the percentage of the recorded latencies are at or
+     * below, ex: 99 for the 99th percentile. The answer is the top of its
+     * bucket, never more than the largest latency recorded.
+     *
+     * @param percentile The percentile, from 0 to 100
+     * @return The latency in microseconds, 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = this.buckets.get(i);
+            total += counts[i];
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(Math.max(percentile, 0), 100) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                long top = i + 1 < BUCKETS ? lowestOf(i + 1) - 1 : Long.MAX_VALUE;
+                return Math.min(top, getMax());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the median latency.
+     *
+     * @return The 50th percentile in microseconds
+     */
+    public long getP50() {
+        return getPercentile(50);
+    }
+
+    /**
+     * Gets the 90th percentile latency.
+     *
+     * @return The 90th percentile in microseconds
+     */
+    public long getP90() {
+        return getPercentile(90);
+    }
+
+    /**
+     * Gets the 99th percentile latency.
+     *
+     * @return The 99th percentile in microseconds
+     */
+    public long getP99() {
+        return getPercentile(99);
+    }
+
+    /**
+     * Clears every latency recorded.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.buckets.set(i, 0);
+        }
+        this.count.reset();
+        this.sum.reset();
+        this.max.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "Count: " + getCount() + ", p50: " + getPercentile(50) + "us, p90: " + getPercentile(90)
+                + "us, p99: " + getPercentile(99) + "us, Max: " + getMax() + "us";
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.util;
+
+/**
+ * What {@link StellarFileNameParser} found in a filename. Immutable, the with
+ * methods return copies for use in {@link StellarFileNameParser.Rule}s.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class ParsedFileName {
+
+    /**
+     * The filename as given.
+     */
+    private final String fileName;
+    /**
+     * The leading track number, empty if there is none.
+     */
+    private final String trackNumber;
+    /**
+     * The name without track number, noise and file extension.
+     */
+    private final String name;
+    /**
+     * The artist, empty if the name has no separator.
+     */
+    private final String artist;
+    /**
+     * The title, empty if the name has no separator.
+     */
+    private final String title;
+    /**
+     * The noise that was removed, ex: (HQ 320K), empty if there was none.
+     */
+    private final String noise;
+    /**
+     * The file extension with its dot, empty if there is none.
+     */
+    private final String extension;
+
+    /**
+     * Constructs a new {@link ParsedFileName}.
+     *
+     * @param fileName The filename as given
+     * @param trackNumber The leading track number
+     * @param name The name without track number, noise and file extension
+     * @param artist The artist
+     * @param title The title
+     * @param noise The noise that was removed
+     * @param extension The file extension with its dot
+     */
+    public ParsedFileName(String fileName, String trackNumber, String name, String artist, String title, String noise,
+            String extension) {
+        this.fileName = fileName;
+        this.trackNumber = trackNumber;
+        this.name = name;
+        this.artist = artist;
+        this.title = title;
+        this.noise = noise;
+        this.extension = extension;
+    }
+
+    /**
+     * Gets the filename as given.
+     *
+     * @return The filename
+     */
+    public String getFileName() {
+        return this.fileName;
+    }
+
+    /**
+     * Gets the leading track number.
+     *
+     * @return The track number, empty if there is none
+     */
+    public String getTrackNumber() {
+        return this.trackNumber;
+    }
+
+    /**
+     * Whether or not the filename begins with a track number.
+     *
+     * @return The boolean
+     */
+    public boolean hasTrackNumber() {
+        return !this.trackNumber.isEmpty();
+    }
+
+    /**
+     * Gets the name without track number, noise and file extension.
+     *
+     * @return The name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Gets the artist.
+     *
+     * @return The artist, empty if the name has no separator
+     */
+    public String getArtist() {
+        return this.artist;
+    }
+
+    /**
+     * Gets the title.
+     *
+     * @return The title, empty if the name has no separator
+     */
+    public String getTitle() {
+        return this.title;
+    }
+
+    /**
+     * Whether or not an artist or a title was found.
+     *
+     * @return The boolean
+     */
+    public boolean hasArtistTitle() {
+        return !this.artist.isEmpty() || !this.title.isEmpty();
+    }
+
+    /**
+     * Gets the noise that was removed.
+     *
+     * @return The noise, ex: (HQ 320K), empty if there was none
+     */
+    public String getNoise() {
+        return this.noise;
+    }
+
+    /**
+     * Gets the file extension.
+     *
+     * @return The file extension with its dot, empty if there is none
+     */
+    public String getExtension() {
+        return this.extension;
+    }
+
+    /**
+     * Copies this name with another artist.
+     *
+     * @param artist The artist
+     * @return The copy
+     */
+    public ParsedFileName withArtist(String artist) {
+        return new ParsedFileName(this.fileName, this.trackNumber, this.name, artist, this.title, this.noise, this.extension);
+    }
+
+    /**
+     * Copies this name with another title.
+     *
+     * @param title The title
+     * @return The copy
+     */
+    public ParsedFileName withTitle(String title) {
+        return new ParsedFileName(this.fileName, this.trackNumber, this.name, this.artist, title, this.noise, this.extension);
+    }
+
+    @Override
+    public String toString() {
+        return "Track: " + this.trackNumber + ", Artist: " + this.artist + ", Title: " + this.title + ", Noise: " + this.noise;
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The Region-Scan engine. Walks files and directory trees in parallel, plans
+ * every rename {@link StellarGreatFilter} would make, then applies them. The
+ * plan and every finished rename are written to a journal, so an interrupted
+ * run can be resumed and a finished one rolled back.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class RegionScan {
+
+    /**
+     * The default name of the journal file.
+     */
+    public static final String JOURNAL_NAME = ".stellar-region-scan.journal";
+    /**
+     * The first line of every journal.
+     */
+    private static final String JOURNAL_HEADER = "Stellar Region-Scan Journal";
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOG = Logger.getLogger(RegionScan.class.getName());
+
+    /**
+     * Plans a new Region-Scan over the files and directory trees and writes
+     * the plan to the journal. Nothing is renamed until
+     * {@link RegionScan#apply()}.
+     *
+     * @param roots The files and directories to scan
+     * @param journal The journal file
+     * @return The planned scan
+     * @throws IOException If the trees could not be walked or the journal
+     * written
+     * @throws IllegalStateException If the journal belongs to an unfinished
+     * scan, resume or roll that one back first
+     */
+    public static RegionScan plan(Collection<Path> roots, Path journal) throws IOException {
+        if (Files.exists(journal) && !resume(journal).getPending().isEmpty()) {
+            throw new IllegalStateException("Unfinished Region-Scan in " + journal + ", resume or roll it back first");
+        }
+        //Files.walk is sequential, so every top-level entry is walked on its own thread instead
+        List<Path> subtrees = new ArrayList<>(roots.size() * 16);
+        for (Path root : roots) {
+            if (Files.isDirectory(root)) {
+                try (Stream<Path> children = Files.list(root)) {
+                    children.forEach(subtrees::add);
+                }
+            } else {
+                subtrees.add(root);
+            }
+        }
+        List<Path> candidates;
+        try {
+            candidates = subtrees.parallelStream().flatMap(RegionScan::walk)
+                    //Tabs and line breaks would tear the journal lines apart
+                    .filter(path -> !path.toString().contains("\t") && !path.toString().contains("\n"))
+                    .filter(path -> StellarGreatFilter.stripBeginningNumbers(path.getFileName().toString()) != null)
+                    .map(path -> path.toAbsolutePath().normalize()).distinct().sorted().collect(Collectors.toList());
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        //Reserve every target in path order, so two files can't be planned onto the same name and the first keeps it
+        Set<Path> reservations = new HashSet<>(candidates.size() * 2);
+        List<Rename> renames = new ArrayList<>(candidates.size());
+        for (Path source : candidates) {
+            renames.add(planRename(source, reservations));
+        }
+        List<String> lines = new ArrayList<>(renames.size() + 1);
+        lines.add(JOURNAL_HEADER);
+        for (int i = 0; i < renames.size(); i++) {
+            lines.add("P\t" + i + "\t" + renames.get(i).source + "\t" + renames.get(i).target);
+        }
+        Files.write(journal, lines, StandardCharsets.UTF_8);
+        LOG.fine("Region-Scan planned " + renames.size() + " renames");
+        return new RegionScan(journal, renames, new BitSet(renames.size()));
+    }
+
+    /**
+     * Loads the scan recorded in the journal, to resume or roll it back.
+     *
+     * @param journal The journal file
+     * @return The scan, with the renames already done marked
+     * @throws IOException If the journal could not be read
+     */
+    public static RegionScan resume(Path journal) throws IOException {
+        List<String> lines = Files.readAllLines(journal, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(JOURNAL_HEADER)) {
+            throw new IOException("Not a Region-Scan journal: " + journal);
+        }
+        List<Rename> renames = new ArrayList<>(lines.size());
+        BitSet done = new BitSet();
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split("\t");
+            switch (fields[0]) {
+                case "P":
+                    renames.add(new Rename(Paths.get(fields[2]), Paths.get(fields[3])));
+                    break;
+                case "D":
+                    done.set(Integer.parseInt(fields[1]));
+                    break;
+                case "U":
+                    done.clear(Integer.parseInt(fields[1]));
+                    break;
+                default:
+                    //A line torn by a crash, the rename it describes is checked on the disk instead
+                    LOG.fine("Ignoring journal line: " + line);
+            }
+        }
+        return new RegionScan(journal, renames, done);
+    }
+
+    /**
+     * Walks a file or directory tree on the calling thread.
+     *
+     * @param root The file or directory
+     * @return The regular files
+     */
+    private static Stream<Path> walk(Path root) {
+        if (!Files.isDirectory(root)) {
+            return Stream.of(root);
+        }
+        try {
+            return Files.walk(root).filter(Files::isRegularFile);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Plans the rename of one file, reserving its target. If the target is
+     * taken, on the disk or by another file, a number is added to the name.
+     *
+     * @param source The file
+     * @param reservations The targets reserved so far
+     * @return The rename
+     */
+    private static Rename planRename(Path source, Set<Path> reservations) {
+        String name = StellarGreatFilter.stripBeginningNumbers(source.getFileName().toString());
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name, extension = dot > 0 ? name.substring(dot) : "";
+        Path target = source.resolveSibling(name);
+        for (int copy = 2; Files.exists(target) || !reservations.add(target); copy++) {
+            target = source.resolveSibling(base + " (" + copy + ")" + extension);
+        }
+        return new Rename(source, target);
+    }
+
+    /**
+     * The journal file.
+     */
+    private final Path journal;
+    /**
+     * The planned renames, in journal order.
+     */
+    private final List<Rename> renames;
+    /**
+     * The renames that are done, by index.
+     */
+    private final BitSet done;
+
+    /**
+     * Constructs a new {@link RegionScan}.
+     *
+     * @param journal The journal file
+     * @param renames The planned renames
+     * @param done The renames that are done
+     */
+    private RegionScan(Path journal, List<Rename> renames, BitSet done) {
+        this.journal = journal;
+        this.renames = Collections.unmodifiableList(renames);
+        this.done = done;
+    }
+
+    /**
+     * Applies every rename that isn't done yet, in parallel. Each finished
+     * rename is recorded in the journal right away.
+     *
+     * @return The number of files renamed
+     * @throws IOException If a file could not be renamed or the journal
+     * written, the renames done so far stay recorded
+     */
+    public int apply() throws IOException {
+        List<Integer> pending = getPendingIndices();
+        try (BufferedWriter writer = Files.newBufferedWriter(this.journal, StandardCharsets.UTF_8, StandardOpenOption.APPEND)) {
+            pending.parallelStream().forEach(index -> {
+                Rename rename = this.renames.get(index);
+                try {
+                    if (Files.exists(rename.source)) {
+                        Files.move(rename.source, rename.target);
+                    } else if (Files.notExists(rename.target)) {
+                        LOG.warning("File vanished since the scan was planned: " + rename.source);
+                    }
+                    //Otherwise it was renamed just before a crash, before the journal caught up
+                    record(writer, "D\t" + index);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        LOG.fine("Region-Scan renamed " + pending.size() + " files");
+        return pending.size();
+    }
+
+    /**
+     * Undoes every rename that is done, newest first, then deletes the
+     * journal.
+     *
+     * @return The number of files renamed back
+     * @throws IOException If a file could not be renamed back or the journal
+     * written
+     */
+    public int rollback() throws IOException {
+        int count = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(this.journal, StandardCharsets.UTF_8, StandardOpenOption.APPEND)) {
+            for (int index = this.done.previousSetBit(this.renames.size() - 1); index >= 0; index = this.done.previousSetBit(index - 1)) {
+                Rename rename = this.renames.get(index);
+                if (Files.exists(rename.target) && Files.notExists(rename.source)) {
+                    Files.move(rename.target, rename.source);
+                    count++;
+                }
+                record(writer, "U\t" + index);
+                this.done.clear(index);
+            }
+        }
+        Files.delete(this.journal);
+        return count;
+    }
+
+    /**
+     * Appends a line to the journal and flushes it.
+     *
+     * @param writer The journal writer
+     * @param line The line
+     * @throws IOException If the journal could not be written
+     */
+    private void record(BufferedWriter writer, String line) throws IOException {
+        synchronized (writer) {
+            writer.write(line);
+            writer.newLine();
+            writer.flush();
+        }
+        if (line.startsWith("D")) {
+            synchronized (this.done) {
+                this.done.set(Integer.parseInt(line.substring(2)));
+            }
+        }
+    }
+
+    /**
+     * Gets the indices of the renames that aren't done yet.
+     *
+     * @return The indices
+     */
+    private List<Integer> getPendingIndices() {
+        List<Integer> pending = new ArrayList<>(this.renames.size());
+        synchronized (this.done) {
+            for (int index = this.done.nextClearBit(0); index < this.renames.size(); index = this.done.nextClearBit(index + 1)) {
+                pending.add(index);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Gets the journal file.
+     *
+     * @return The journal
+     */
+    public Path getJournal() {
+        return this.journal;
+    }
+
+    /**
+     * Gets every planned rename, in journal order.
+     *
+     * @return The renames, the current names mapped to the new ones
+     */
+    public Map<Path, Path> getRenames() {
+        Map<Path, Path> map = new LinkedHashMap<>(this.renames.size() * 2);
+        this.renames.forEach(rename -> map.put(rename.source, rename.target));
+        return map;
+    }
+
+    /**
+     * Gets the files that are still waiting to be renamed.
+     *
+     * @return The files
+     */
+    public List<Path> getPending() {
+        return getPendingIndices().stream().map(index -> this.renames.get(index).source).collect(Collectors.toList());
+    }
+
+    /**
+     * One planned rename.
+     */
+    private static final class Rename {
+
+        /**
+         * The file as it is named now.
+         */
+        private final Path source;
+        /**
+         * The file as it will be named.
+         */
+        private final Path target;
+
+        /**
+         * Constructs a new {@link Rename}.
+         *
+         * @param source The file as it is named now
+         * @param target The file as it will be named
+         */
+        private Rename(Path source, Path target) {
+            this.source = source;
+            this.target = target;
+        }
+    }
+}
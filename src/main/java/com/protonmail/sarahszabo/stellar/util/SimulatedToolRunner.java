@@ -0,0 +1,569 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link ToolRunner} that emulates ffmpeg, ffprobe, opusenc, exiftool,
+ * kid3-cli and youtube-dl inside the JVM. Each tool has a {@link Profile}: how
+ * long it takes, how much CPU it burns, how often it fails and how large its
+ * outputs are. The emulated tools honour the working directory and redirects
+ * of the process builder, read their standard input, and write output files
+ * and standard output shaped like the real tools', so the pipelines, the
+ * Hyperspace scheduler, the caches and the ledger can be load-tested at tens
+ * of thousands of jobs in seconds.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class SimulatedToolRunner implements ToolRunner {
+
+    /**
+     * How one emulated tool behaves.
+     */
+    public static final class Profile {
+
+        /**
+         * A tool that finishes instantly, never fails and writes 64KB files.
+         */
+        public static final Profile INSTANT = new Profile(0, 0, 0, 1 << 16);
+
+        /**
+         * The mean time the tool takes, spent waiting.
+         */
+        private final long latencyMillis;
+        /**
+         * The CPU time the tool burns.
+         */
+        private final long cpuMillis;
+        /**
+         * The chance of the tool failing, from 0 to 1.
+         */
+        private final double failureRate;
+        /**
+         * The size of the files and streams the tool writes.
+         */
+        private final long outputBytes;
+
+        /**
+         * Constructs a new {@link Profile}. The latency of every run is
+         * picked evenly between half and one and a half times the mean.
+         *
+         * @param latencyMillis The mean time the tool takes, spent waiting
+         * @param cpuMillis The CPU time the tool burns on top of that
+         * @param failureRate The chance of the tool failing, from 0 to 1
+         * @param outputBytes The size of the files and streams the tool
+         * writes
+         */
+        public Profile(long latencyMillis, long cpuMillis, double failureRate, long outputBytes) {
+            if (latencyMillis < 0 || cpuMillis < 0 || failureRate < 0 || failureRate > 1 || outputBytes < 0) {
+                throw new IllegalArgumentException("Invalid tool profile");
+            }
+            this.latencyMillis = latencyMillis;
+            this.cpuMillis = cpuMillis;
+            this.failureRate = failureRate;
+            this.outputBytes = outputBytes;
+        }
+
+        /**
+         * Spends the latency and CPU time of one run, then decides whether it
+         * failed.
+         *
+         * @return Whether or not the run failed
+         * @throws InterruptedException If the process was destroyed
+         */
+        private boolean run() throws InterruptedException {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (this.latencyMillis > 0) {
+                Thread.sleep(this.latencyMillis / 2 + random.nextLong(this.latencyMillis + 1));
+            }
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.cpuMillis);
+            while (System.nanoTime() < deadline) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            return random.nextDouble() < this.failureRate;
+        }
+
+        @Override
+        public String toString() {
+            return "Latency: " + this.latencyMillis + "ms, CPU: " + this.cpuMillis + "ms, Failure Rate: "
+                    + this.failureRate + ", Output: " + this.outputBytes + "B";
+        }
+    }
+
+    /**
+     * The tools that can be emulated.
+     */
+    public static final Set<String> TOOLS = Set.of("ffmpeg", "ffprobe", "opusenc", "exiftool", "kid3-cli", "youtube-dl");
+    /**
+     * The exit status of a destroyed process, like SIGKILL.
+     */
+    private static final int DESTROYED = 137;
+    /**
+     * The size of the emulated pipes, like Linux's.
+     */
+    private static final int PIPE_SIZE = 1 << 16;
+    /**
+     * The JSON mapper for kid3-cli sessions.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    /**
+     * The threads the emulated tools run on.
+     */
+    private static final ExecutorService TOOL_THREADS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "Stellar Simulated Tool");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The profiles of the tools, tools without one are
+     * {@link Profile#INSTANT}.
+     */
+    private final Map<String, Profile> profiles = new ConcurrentHashMap<>();
+    /**
+     * The number of times each tool was started.
+     */
+    private final Map<String, LongAdder> launches = new ConcurrentHashMap<>();
+    /**
+     * The number of emulated runs that failed.
+     */
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * Sets the profile of the tool.
+     *
+     * @param tool The tool, ex: ffmpeg
+     * @param profile The profile
+     * @return This runner
+     */
+    public SimulatedToolRunner tool(String tool, Profile profile) {
+        if (!TOOLS.contains(tool)) {
+            throw new IllegalArgumentException("Not a simulated tool: " + tool);
+        }
+        this.profiles.put(tool, profile);
+        return this;
+    }
+
+    /**
+     * Gets the number of times the tool was started.
+     *
+     * @param tool The tool, ex: ffmpeg
+     * @return The count
+     */
+    public long getLaunches(String tool) {
+        LongAdder count = this.launches.get(tool);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * Gets the number of emulated runs that failed on purpose.
+     *
+     * @return The count
+     */
+    public long getFailures() {
+        return this.failures.sum();
+    }
+
+    @Override
+    public Process start(ProcessBuilder builder) throws IOException {
+        List<String> command = List.copyOf(builder.command());
+        String tool = Paths.get(command.get(0)).getFileName().toString();
+        if (!TOOLS.contains(tool)) {
+            throw new IOException("Cannot run program \"" + command.get(0) + "\": not a simulated tool");
+        }
+        this.launches.computeIfAbsent(tool, key -> new LongAdder()).increment();
+        Path directory = builder.directory() == null ? Paths.get(System.getProperty("user.dir")) : builder.directory().toPath();
+        return new SimulatedProcess(this, tool, command, directory, builder);
+    }
+
+    /**
+     * Runs the emulated tool to completion.
+     *
+     * @param tool The tool
+     * @param command The command line
+     * @param directory The working directory
+     * @param in The tool's standard input
+     * @param out The tool's standard output
+     * @return The exit status
+     * @throws IOException If the streams or files failed
+     * @throws InterruptedException If the process was destroyed
+     */
+    private int run(String tool, List<String> command, Path directory, InputStream in, OutputStream out)
+            throws IOException, InterruptedException {
+        Profile profile = this.profiles.getOrDefault(tool, Profile.INSTANT);
+        if (tool.equals("kid3-cli") && command.size() == 1) {
+            return kid3Session(profile, in, out);
+        }
+        if (profile.run()) {
+            this.failures.increment();
+            return 1;
+        }
+        String last = command.get(command.size() - 1);
+        switch (tool) {
+            case "ffmpeg":
+                int input = command.indexOf("-i") + 1;
+                if (input == 0 || input >= command.size()) {
+                    return 1;
+                } else if (command.get(input).equals("-")) {
+                    in.transferTo(OutputStream.nullOutputStream());
+                } else if (Files.notExists(directory.resolve(command.get(input)))) {
+                    return 1;
+                }
+                if (last.equals("-")) {
+                    writeWAV(out, profile.outputBytes);
+                } else {
+                    writeFile(directory.resolve(last), profile.outputBytes);
+                }
+                return 0;
+            case "ffprobe":
+                if (Files.notExists(directory.resolve(last))) {
+                    return 1;
+                }
+                String name = last.toLowerCase();
+                String probe = (name.endsWith(".opus") || name.endsWith(".ogg") ? "codec_name=opus\nformat_name=ogg\n"
+                        : name.endsWith(".webm") || name.endsWith(".mkv") ? "codec_name=opus\nformat_name=matroska,webm\n"
+                        : "codec_name=aac\nformat_name=mov,mp4,m4a,3gp,3g2,mj2\n") + "duration=180.000000\n";
+                out.write(probe.getBytes(StandardCharsets.UTF_8));
+                return 0;
+            case "opusenc":
+                in.transferTo(OutputStream.nullOutputStream());
+                writeFile(directory.resolve(last), profile.outputBytes);
+                return 0;
+            case "exiftool":
+                if (command.contains("-json")) {
+                    return exiftoolJSON(command, directory, out);
+                }
+                Path file = directory.resolve(last);
+                if (Files.notExists(file)) {
+                    return 1;
+                } else if (!command.contains("-b")) {
+                    out.write(String.format("%-32s: %s%n%-32s: %s%n%-32s: %s bytes%n", "ExifTool Version Number", "12.40",
+                            "File Name", file.getFileName(), "File Size", Files.size(file)).getBytes(StandardCharsets.UTF_8));
+                }
+                return 0;
+            case "kid3-cli":
+                out.write(("File: " + last + "\n").getBytes(StandardCharsets.UTF_8));
+                return 0;
+            default:
+                if (command.contains("--get-filename")) {
+                    out.write("Simulated Transmission\n".getBytes(StandardCharsets.UTF_8));
+                } else {
+                    writeFile(directory.resolve(command.get(command.indexOf("-o") + 1)), profile.outputBytes);
+                }
+                return 0;
+        }
+    }
+
+    /**
+     * Emulates exiftool -json, printing one entry for every file that exists.
+     *
+     * @param command The command line
+     * @param directory The working directory
+     * @param out The tool's standard output
+     * @return The exit status, 1 if any file was missing
+     * @throws IOException If the stream failed
+     */
+    private static int exiftoolJSON(List<String> command, Path directory, OutputStream out) throws IOException {
+        ArrayNode entries = MAPPER.createArrayNode();
+        boolean missing = false;
+        for (String argument : command.subList(1, command.size())) {
+            Path file = directory.resolve(argument);
+            if (argument.startsWith("-")) {
+                continue;
+            } else if (Files.notExists(file)) {
+                missing = true;
+                continue;
+            }
+            entries.addObject().put("SourceFile", argument).put("ExifToolVersion", 12.40)
+                    .put("FileName", file.getFileName().toString()).put("FileSize", Files.size(file) + " bytes");
+        }
+        if (!entries.isEmpty()) {
+            out.write(MAPPER.writeValueAsBytes(entries));
+        }
+        return missing ? 1 : 0;
+    }
+
+    /**
+     * Emulates a kid3-cli JSON session, answering every request until exit.
+     * Every request costs one run of the profile.
+     *
+     * @param profile The kid3-cli profile
+     * @param in The session's requests
+     * @param out The session's responses
+     * @return The exit status
+     * @throws IOException If the streams failed
+     * @throws InterruptedException If the process was destroyed
+     */
+    private int kid3Session(Profile profile, InputStream in, OutputStream out) throws IOException, InterruptedException {
+        BufferedReader requests = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = requests.readLine()) != null && !line.trim().equals("exit")) {
+            JsonNode request = MAPPER.readTree(line);
+            ObjectNode response = MAPPER.createObjectNode().put("jsonrpc", "2.0").set("id", request.path("id"));
+            if (profile.run()) {
+                this.failures.increment();
+                response.putObject("error").put("message", "Simulated failure");
+            } else if (request.path("method").asText().equals("get")) {
+                response.put("result", "");
+            } else {
+                response.putNull("result");
+            }
+            out.write((MAPPER.writeValueAsString(response) + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+        return 0;
+    }
+
+    /**
+     * Writes a file of zeros.
+     *
+     * @param file The file
+     * @param bytes The size of the file
+     * @throws IOException If the file could not be written
+     */
+    private static void writeFile(Path file, long bytes) throws IOException {
+        try (OutputStream stream = Files.newOutputStream(file)) {
+            writeZeros(stream, bytes);
+        }
+    }
+
+    /**
+     * Writes a stereo 48KHz 16 bit WAV stream of silence.
+     *
+     * @param out The stream
+     * @param bytes The size of the audio data
+     * @throws IOException If the stream failed
+     */
+    private static void writeWAV(OutputStream out, long bytes) throws IOException {
+        int size = (int) Math.min(bytes, Integer.MAX_VALUE - 36);
+        ByteBuffer header = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt(36 + size).put("WAVE".getBytes(StandardCharsets.US_ASCII))
+                .put("fmt ".getBytes(StandardCharsets.US_ASCII)).putInt(16).putShort((short) 1).putShort((short) 2)
+                .putInt(48000).putInt(48000 * 4).putShort((short) 4).putShort((short) 16)
+                .put("data".getBytes(StandardCharsets.US_ASCII)).putInt(size);
+        out.write(header.array());
+        writeZeros(out, size);
+    }
+
+    /**
+     * Writes zeros to the stream.
+     *
+     * @param out The stream
+     * @param bytes The number of zeros
+     * @throws IOException If the stream failed
+     */
+    private static void writeZeros(OutputStream out, long bytes) throws IOException {
+        byte[] zeros = new byte[(int) Math.min(bytes, PIPE_SIZE)];
+        for (long left = bytes; left > 0; left -= zeros.length) {
+            out.write(zeros, 0, (int) Math.min(left, zeros.length));
+        }
+    }
+
+    /**
+     * A process whose tool runs on a thread of this JVM.
+     */
+    private static final class SimulatedProcess extends Process {
+
+        /**
+         * The exit status, completed when the tool finishes.
+         */
+        private final CompletableFuture<Integer> exit = new CompletableFuture<>();
+        /**
+         * The standard input of the process.
+         */
+        private final OutputStream stdin;
+        /**
+         * The standard output of the process.
+         */
+        private final InputStream stdout;
+        /**
+         * The tool's side of the standard input.
+         */
+        private final InputStream toolIn;
+        /**
+         * The tool's side of the standard output.
+         */
+        private final OutputStream toolOut;
+        /**
+         * The running tool.
+         */
+        private final Future<?> task;
+
+        /**
+         * Constructs and starts a new {@link SimulatedProcess}.
+         *
+         * @param runner The runner that emulates the tool
+         * @param tool The tool
+         * @param command The command line
+         * @param directory The working directory
+         * @param builder The process builder, for its redirects
+         * @throws IOException If the redirects could not be set up
+         */
+        private SimulatedProcess(SimulatedToolRunner runner, String tool, List<String> command, Path directory,
+                ProcessBuilder builder) throws IOException {
+            if (builder.redirectInput().type() == ProcessBuilder.Redirect.Type.PIPE) {
+                PipedInputStream pipe = new PipedInputStream(PIPE_SIZE);
+                this.stdin = new PipedOutputStream(pipe);
+                this.toolIn = pipe;
+            } else {
+                this.stdin = OutputStream.nullOutputStream();
+                this.toolIn = InputStream.nullInputStream();
+            }
+            ProcessBuilder.Redirect output = builder.redirectOutput();
+            if (output.type() == ProcessBuilder.Redirect.Type.PIPE) {
+                PipedInputStream pipe = new PipedInputStream(PIPE_SIZE);
+                this.toolOut = new PipedOutputStream(pipe);
+                this.stdout = pipe;
+            } else if (output.file() != null) {
+                this.toolOut = Files.newOutputStream(output.file().toPath());
+                this.stdout = InputStream.nullInputStream();
+            } else {
+                this.toolOut = OutputStream.nullOutputStream();
+                this.stdout = InputStream.nullInputStream();
+            }
+            this.task = TOOL_THREADS.submit(() -> {
+                int status = 1;
+                try {
+                    status = runner.run(tool, command, directory, this.toolIn, this.toolOut);
+                } catch (InterruptedException ex) {
+                    status = DESTROYED;
+                } catch (IOException | RuntimeException ex) {
+                    status = 1;
+                } finally {
+                    closeTool();
+                    this.exit.complete(status);
+                }
+            });
+        }
+
+        /**
+         * Closes the tool's side of the pipes, like a process exiting, so the
+         * caller sees the end of the output and a broken input.
+         */
+        private void closeTool() {
+            try {
+                this.toolIn.close();
+            } catch (IOException ex) {
+                //Already closed
+            }
+            try {
+                this.toolOut.close();
+            } catch (IOException ex) {
+                //Already closed
+            }
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return this.stdin;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return this.stdout;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            try {
+                return this.exit.get();
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        @Override
+        public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+            try {
+                this.exit.get(timeout, unit);
+                return true;
+            } catch (TimeoutException ex) {
+                return false;
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        @Override
+        public int exitValue() {
+            if (!this.exit.isDone()) {
+                throw new IllegalThreadStateException("Process hasn't exited");
+            }
+            return this.exit.join();
+        }
+
+        @Override
+        public CompletableFuture<Process> onExit() {
+            return this.exit.thenApply(status -> this);
+        }
+
+        @Override
+        public boolean isAlive() {
+            return !this.exit.isDone();
+        }
+
+        @Override
+        public void destroy() {
+            this.task.cancel(true);
+            closeTool();
+            this.exit.complete(DESTROYED);
+        }
+
+        @Override
+        public Process destroyForcibly() {
+            destroy();
+            return this;
+        }
+    }
+}
@@ -44,7 +44,9 @@ import org.controlsfx.control.Notifications;
 
 /**
  * The UI for the Stellar OPUS Converter's command line interface. Must be
- * shutdown via {@link StellarCLIUtils#shutdownUI()}.
+ * shutdown via {@link StellarCLIUtils#shutdownUI()}. JavaFX is only started by
+ * the first dialog, and in headless mode the prompts are answered by
+ * {@link HeadlessPrompts} instead.
  *
  * @author Sarah Szabo <PhysicistSarah@Gmail.com>
  */
@@ -80,10 +82,23 @@ public enum StellarCLIUtils {
     private static final BlockingQueue<Optional<Path>> PATH_QUEUE = new ArrayBlockingQueue<>(50);
     private static final BlockingQueue<Optional<String>> ASK_USER_METADATA = new ArrayBlockingQueue<>(50);
 
-    static {
-        //Initialize Toolkit
-        new JFXPanel();
-        Platform.setImplicitExit(false);
+    /**
+     * Whether or not the JavaFX toolkit has been started.
+     */
+    private static boolean toolkitStarted;
+
+    /**
+     * Starts the JavaFX toolkit, the first time a dialog is actually needed.
+     * Nothing else boots it, so commands that never ask anything start fast
+     * and run without a display.
+     */
+    private static synchronized void startToolkit() {
+        if (!toolkitStarted) {
+            //Initialize Toolkit
+            new JFXPanel();
+            Platform.setImplicitExit(false);
+            toolkitStarted = true;
+        }
     }
 
     /**
@@ -93,6 +108,10 @@ public enum StellarCLIUtils {
      * @return Whether or not the user agrees to continue the operation
      */
     public static boolean showConfirmationDialog(String text) {
+        if (HeadlessPrompts.isHeadless()) {
+            return HeadlessPrompts.confirm(text);
+        }
+        startToolkit();
         try {
             var queue = new ArrayBlockingQueue<Optional<ButtonType>>(1);
             Platform.runLater(() -> {
@@ -169,10 +188,12 @@ public enum StellarCLIUtils {
     }
 
     /**
-     * Shuts down the UI.
+     * Shuts down the UI, if it was ever started.
      */
-    public static void shutdownUI() {
-        Platform.exit();
+    public static synchronized void shutdownUI() {
+        if (toolkitStarted) {
+            Platform.exit();
+        }
     }
 
     /**
@@ -182,6 +203,10 @@ public enum StellarCLIUtils {
      * @return The selected path
      */
     public static Optional<Path> selectPath(Collection<Path> paths) {
+        if (HeadlessPrompts.isHeadless()) {
+            return HeadlessPrompts.selectPath(paths);
+        }
+        startToolkit();
         synchronized (PATH_QUEUE) {
             Platform.runLater(() -> {
                 try {
@@ -209,6 +234,10 @@ public enum StellarCLIUtils {
      * @return The files or null if none
      */
     public static Optional<List<Path>> getFilesFromClipboard() {
+        if (HeadlessPrompts.isHeadless()) {
+            return Optional.of(HeadlessPrompts.getFiles("the clipboard"));
+        }
+        startToolkit();
         try {
             synchronized (PATH_LIST_QUEUE) {
                 Platform.runLater(() -> {
@@ -250,6 +279,10 @@ public enum StellarCLIUtils {
     public static Map<MetadataType, String> askUserForArtistTitle(String header, String contentArea) {
         String newHeader = StellarGravitonField.preferredTitleFormat(header),
                 newContentArea = StellarGravitonField.preferredTitleFormat(contentArea);
+        if (HeadlessPrompts.isHeadless()) {
+            return HeadlessPrompts.askForArtistTitle(newContentArea);
+        }
+        startToolkit();
         synchronized (ASK_USER_METADATA) {
             Platform.runLater(() -> {
                 try {
@@ -317,6 +350,10 @@ public enum StellarCLIUtils {
      * @return The path to the file on the disk
      */
     public static Optional<Path> getFile(String label, EXTENSION_FILTER currentlySelected) {
+        if (HeadlessPrompts.isHeadless()) {
+            return HeadlessPrompts.getFile();
+        }
+        startToolkit();
         synchronized (PATH_QUEUE) {
             Platform.runLater(() -> {
                 FileChooser chooser = new FileChooser();
@@ -351,6 +388,10 @@ public enum StellarCLIUtils {
      * @return The folder path
      */
     public static Optional<Path> getFolderFor(String type) {
+        if (HeadlessPrompts.isHeadless()) {
+            return HeadlessPrompts.getFolder();
+        }
+        startToolkit();
         synchronized (PATH_QUEUE) {
             Platform.runLater(() -> {
                 DirectoryChooser chooser = new DirectoryChooser();
@@ -377,6 +418,10 @@ public enum StellarCLIUtils {
      * @return The files for conversion
      */
     public static Optional<List<Path>> getFiles() {
+        if (HeadlessPrompts.isHeadless()) {
+            return Optional.of(HeadlessPrompts.getFiles("conversion"));
+        }
+        startToolkit();
         synchronized (PATH_LIST_QUEUE) {
             FileChooser chooser = new FileChooser();
             chooser.setTitle("Stellar: Choose Files to Convert to OPUS");
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.util;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Infers what a filename says about its track: the leading track number, the
+ * artist, the title and noise such as (HQ 320K). The name is scanned by hand
+ * without any regular expressions, once for the track number and the noise
+ * and once for the separator. Further {@link Rule}s can be plugged in, they
+ * run in order on the result of the scan.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class StellarFileNameParser {
+
+    /**
+     * The parser with no extra rules, the one the converters use.
+     */
+    public static final StellarFileNameParser DEFAULT = new StellarFileNameParser(List.of());
+    /**
+     * The separators between artist and title, in order of preference.
+     */
+    private static final char[] SEPARATORS = {'-', '|', '/'};
+    /**
+     * The beginning of the noise, everything from here to the last closing
+     * bracket is dropped.
+     */
+    private static final String NOISE_START = "(HQ";
+
+    /**
+     * Removes the noise, ex: (HQ 320K), from the name and trims it.
+     *
+     * @param name The name, without file extension
+     * @return The name without noise
+     */
+    public static String removeNoise(String name) {
+        int noiseStart = name.indexOf(NOISE_START), noiseEnd = name.lastIndexOf(')');
+        if (noiseStart < 0 || noiseEnd < noiseStart) {
+            return name.trim();
+        }
+        return (name.substring(0, noiseStart) + name.substring(noiseEnd + 1)).trim();
+    }
+
+    /**
+     * Removes the leading track number, ex: 00 - NGE.mp3 -> NGE.mp3.
+     *
+     * @param fileName The filename
+     * @return The filename without track number, or null if it doesn't begin
+     * with one
+     */
+    public static String stripTrackNumber(String fileName) {
+        int start = skipTrackNumber(fileName, extensionStart(fileName));
+        return start > 0 ? fileName.substring(start) : null;
+    }
+
+    /**
+     * Finds where the file extension starts, the same way as
+     * {@link FileExtension#stripFileExtension(java.nio.file.Path)}: the last
+     * dot, with something after it.
+     *
+     * @param fileName The filename
+     * @return The index of the dot, or the length if there is no extension
+     */
+    private static int extensionStart(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot >= 0 && dot < fileName.length() - 1 ? dot : fileName.length();
+    }
+
+    /**
+     * Skips the leading track number: digits, then at least one space, hyphen
+     * or dot, as long as a name follows. Digits that run straight into the
+     * name, ex: 2Pac, are part of it. So are digits followed only by spaces
+     * when they aren't zero padded and the rest is in ARTIST - TITLE form,
+     * ex: 50 Cent - Title, while 01 Artist - Title has a track number.
+     *
+     * @param fileName The filename
+     * @param end Where the name ends
+     * @return Where the name starts, 0 if there is no track number
+     */
+    private static int skipTrackNumber(String fileName, int end) {
+        int digits = 0;
+        while (digits < end && Character.isDigit(fileName.charAt(digits))) {
+            digits++;
+        }
+        int start = digits;
+        boolean spacesOnly = true;
+        for (char c; start < end && (Character.isWhitespace(c = fileName.charAt(start)) || c == '-' || c == '.'); start++) {
+            spacesOnly &= Character.isWhitespace(c);
+        }
+        if (digits == 0 || start == digits || start == end) {
+            return 0;
+        } else if (spacesOnly && fileName.charAt(0) != '0' && fileName.indexOf('-', start) >= 0 && fileName.indexOf('-', start) < end) {
+            return 0;
+        }
+        return start;
+    }
+
+    /**
+     * Checks whether the digits skipped as a track number are the artist
+     * instead: they were followed by a hyphen and no separator follows, ex:
+     * 311 - Amber.mp3 is by 311, while 01 - Artist - Title.mp3 has a track
+     * number. Renaming still strips them, only the artist and title differ.
+     *
+     * @param fileName The filename
+     * @param start Where the name starts after the track number
+     * @param end Where the name ends
+     * @return Whether the digits are the artist
+     */
+    private static boolean isArtistOnly(String fileName, int start, int end) {
+        if (fileName.lastIndexOf('-', start - 1) < 0) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            for (char separator : SEPARATORS) {
+                if (fileName.charAt(i) == separator) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The extra rules, run in order after the scan.
+     */
+    private final List<Rule> rules;
+
+    /**
+     * Constructs a new {@link StellarFileNameParser} with extra rules.
+     *
+     * @param rules The rules, run in order after the scan
+     */
+    public StellarFileNameParser(List<Rule> rules) {
+        this.rules = List.copyOf(rules);
+    }
+
+    /**
+     * Parses the name of the file.
+     *
+     * @param file The file
+     * @return The parsed name
+     */
+    public ParsedFileName parse(Path file) {
+        return parse(file.getFileName().toString());
+    }
+
+    /**
+     * Parses a filename.
+     *
+     * @param fileName The filename, with file extension
+     * @return The parsed name
+     */
+    public ParsedFileName parse(String fileName) {
+        int end = extensionStart(fileName);
+        String extension = fileName.substring(end);
+        int start = skipTrackNumber(fileName, end);
+        if (start > 0 && isArtistOnly(fileName, start, end)) {
+            start = 0;
+        }
+        String trackNumber = "";
+        if (start > 0) {
+            int digits = 0;
+            while (Character.isDigit(fileName.charAt(digits))) {
+                digits++;
+            }
+            trackNumber = fileName.substring(0, digits);
+        }
+        //Noise: from the first (HQ to the last closing bracket
+        int noiseStart = -1, noiseEnd = -1;
+        for (int i = start; i < end; i++) {
+            char c = fileName.charAt(i);
+            if (noiseStart < 0 && c == '(' && fileName.startsWith(NOISE_START, i)) {
+                noiseStart = i;
+            } else if (c == ')' && noiseStart >= 0) {
+                noiseEnd = i;
+            }
+        }
+        String noise = "", name;
+        if (noiseEnd > noiseStart && noiseStart >= 0) {
+            noise = fileName.substring(noiseStart, noiseEnd + 1);
+            name = (fileName.substring(start, noiseStart) + fileName.substring(noiseEnd + 1, end)).trim();
+        } else {
+            name = fileName.substring(start, end).trim();
+        }
+        ParsedFileName parsed = splitArtistTitle(new ParsedFileName(fileName, trackNumber, name, "", "", noise, extension));
+        for (Rule rule : this.rules) {
+            parsed = rule.apply(parsed);
+        }
+        return parsed;
+    }
+
+    /**
+     * Splits the name at the first separator found, in order of preference. A
+     * run of the separator, ex: --, counts as one. The title ends at the next
+     * run of the same separator.
+     *
+     * @param parsed The parsed name, without artist and title
+     * @return The parsed name with artist and title, if there was a separator
+     */
+    private static ParsedFileName splitArtistTitle(ParsedFileName parsed) {
+        String name = parsed.getName();
+        for (char separator : SEPARATORS) {
+            int first = name.indexOf(separator);
+            if (first < 0) {
+                continue;
+            }
+            int titleStart = first;
+            while (titleStart < name.length() && name.charAt(titleStart) == separator) {
+                titleStart++;
+            }
+            int titleEnd = name.indexOf(separator, titleStart);
+            return parsed.withArtist(name.substring(0, first).trim())
+                    .withTitle(name.substring(titleStart, titleEnd < 0 ? name.length() : titleEnd).trim());
+        }
+        return parsed;
+    }
+
+    /**
+     * An extra step of the parser, ex: one that removes "(Official Video)" from
+     * the title.
+     */
+    @FunctionalInterface
+    public interface Rule {
+
+        /**
+         * Applies this rule.
+         *
+         * @param parsed The name as parsed so far
+         * @return The name with this rule applied
+         */
+        ParsedFileName apply(ParsedFileName parsed);
+    }
+}
@@ -6,6 +6,7 @@
 package com.protonmail.sarahszabo.stellar.util;
 
 import com.protonmail.sarahszabo.stellar.StellarDiskManager;
+import com.protonmail.sarahszabo.stellar.telemetry.MeteredProcess;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -14,8 +15,12 @@ import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
 import java.time.temporal.ChronoField;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.logging.ConsoleHandler;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -41,7 +46,55 @@ public class StellarGravitonField {
             .appendValue(ChronoField.MINUTE_OF_HOUR).appendLiteral(":").appendValue(ChronoField.SECOND_OF_MINUTE)
             .appendLiteral(".").appendValue(ChronoField.MILLI_OF_SECOND).toFormatter();
 
-    private static final Logger logger = Logger.getLogger(StellarGravitonField.class.getName());
+    private static final Logger logger = StellarLoggingFormatter.forClass(StellarGravitonField.class);
+    /**
+     * The most fields kept in the title format cache.
+     */
+    private static final int TITLE_FORMAT_CACHE_SIZE = 4096;
+    /**
+     * Fields that were not in the preferred title format, mapped to their
+     * formatted versions.
+     */
+    private static final ConcurrentMap<String, String> TITLE_FORMAT_CACHE = new ConcurrentHashMap<>(TITLE_FORMAT_CACHE_SIZE * 2);
+    /**
+     * The runner every external tool is started with, the tools are emulated
+     * with -Dstellar.tools=simulated, ex: to time a whole command on a machine
+     * without them.
+     */
+    private static volatile ToolRunner toolRunner = "simulated".equalsIgnoreCase(System.getProperty("stellar.tools"))
+            ? new SimulatedToolRunner() : ToolRunner.SYSTEM;
+
+    /**
+     * Gets the runner every external tool is started with.
+     *
+     * @return The tool runner
+     */
+    public static ToolRunner getToolRunner() {
+        return toolRunner;
+    }
+
+    /**
+     * Sets the runner every external tool is started with, ex: a
+     * {@link SimulatedToolRunner} for load tests.
+     *
+     * @param runner The tool runner
+     */
+    public static void setToolRunner(ToolRunner runner) {
+        toolRunner = Objects.requireNonNull(runner);
+    }
+
+    /**
+     * Starts the process with the current {@link ToolRunner}, recording the
+     * launch and run time of the tool in the {@link StellarTelemetry} and as a
+     * Flight Recorder event.
+     *
+     * @param builder The process builder
+     * @return The started process
+     * @throws IOException If the tool could not be started
+     */
+    public static Process startProcess(ProcessBuilder builder) throws IOException {
+        return MeteredProcess.start(toolRunner, builder);
+    }
 
     /**
      * Prints out a large message with horizontal bars for seperators.
@@ -165,7 +218,7 @@ public class StellarGravitonField {
         //Print out FFMPEG Command
         logger.info("COMMAND: " + builder.command().stream().collect(Collectors.joining(" ")));
         //Actually do it
-        Process proc = builder.start();
+        Process proc = startProcess(builder);
         try {
             proc.waitFor(30, TimeUnit.SECONDS);
             if (proc.isAlive()) {
@@ -174,6 +227,9 @@ public class StellarGravitonField {
             }
         } catch (InterruptedException ex) {
             Logger.getLogger(StellarGravitonField.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            //Nothing reads the output, closing it once the tool is done frees the pipe and ends its recorded run
+            proc.getInputStream().close();
         }
         return true;
     }
@@ -282,14 +338,28 @@ public class StellarGravitonField {
 
     /**
      * Sets the logger with a handler of your choosing with a
-     * {@link StellarLoggingFormatter}.
+     * {@link StellarLoggingFormatter}. The handler is written to through an
+     * {@link AsyncLogHandler}, and is attached only once: a logger that already
+     * writes to a handler of the same kind is left as it is. Console handlers
+     * share the one console pipeline.
      *
      * @param logger The logger to attach the formatter to
      * @param handler The handler for the formatter
      */
     public static void toTypicalLoggerFormat(Logger logger, Handler handler) {
-        handler.setFormatter(new StellarLoggingFormatter());
-        logger.addHandler(handler);
+        if (handler instanceof ConsoleHandler) {
+            StellarLoggingFormatter.attach(logger, AsyncLogHandler.console());
+            return;
+        }
+        synchronized (logger) {
+            for (Handler attached : logger.getHandlers()) {
+                if (attached instanceof AsyncLogHandler && ((AsyncLogHandler) attached).getSink().getClass() == handler.getClass()) {
+                    return;
+                }
+            }
+            handler.setFormatter(new StellarLoggingFormatter());
+            logger.addHandler(new AsyncLogHandler(handler, AsyncLogHandler.DEFAULT_CAPACITY, logger.getName()));
+        }
     }
 
     /**
@@ -386,14 +456,68 @@ public class StellarGravitonField {
 
     /**
      * Turns the given field into the proper format, which is the beginning
-     * newPath each character is capitalised.
+     * newPath each character is capitalised. Idempotent: a field already in
+     * the proper format is returned as is, without allocating anything. Other
+     * fields are remembered, so formatting the same field again is a lookup.
      *
      * @param field The field to capitalise
      * @return The formatted string
      */
     public static String preferredTitleFormat(String field) {
-        //Uppercase First Character newPath Both Titles & Trim. Handles unusual edge cases such as F I L E.opus
-        return Stream.of(field.trim().split(" ")).map(string -> string.isEmpty() ? " " : (string.charAt(0) + "").toUpperCase()
-                + (string.length() > 1 ? string.substring(1) : "")).collect(Collectors.joining(" "));
+        if (isPreferredTitleFormat(field)) {
+            return field;
+        }
+        String formatted = TITLE_FORMAT_CACHE.get(field);
+        if (formatted == null) {
+            formatted = toPreferredTitleFormat(field);
+            //Bounded, a full cache simply starts over
+            if (TITLE_FORMAT_CACHE.size() >= TITLE_FORMAT_CACHE_SIZE) {
+                TITLE_FORMAT_CACHE.clear();
+            }
+            TITLE_FORMAT_CACHE.put(field, formatted);
+        }
+        return formatted;
+    }
+
+    /**
+     * Checks whether or not the field is already in the preferred title
+     * format: trimmed, with every word beginning in uppercase.
+     *
+     * @param field The field to check
+     * @return The boolean
+     */
+    private static boolean isPreferredTitleFormat(String field) {
+        int length = field.length();
+        if (length > 0 && (field.charAt(0) <= ' ' || field.charAt(length - 1) <= ' ')) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (i == 0 || field.charAt(i - 1) == ' ') {
+                int codePoint = field.codePointAt(i);
+                if (Character.toUpperCase(codePoint) != codePoint) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Formats the field in one pass: trims it and uppercases the first
+     * character of every word. Handles unusual edge cases such as F I L E.opus,
+     * runs of spaces are kept as they are.
+     *
+     * @param field The field to capitalise
+     * @return The formatted string
+     */
+    private static String toPreferredTitleFormat(String field) {
+        String trimmed = field.trim();
+        StringBuilder builder = new StringBuilder(trimmed.length());
+        for (int i = 0; i < trimmed.length();) {
+            int codePoint = trimmed.codePointAt(i);
+            builder.appendCodePoint(i == 0 || trimmed.charAt(i - 1) == ' ' ? Character.toUpperCase(codePoint) : codePoint);
+            i += Character.charCount(codePoint);
+        }
+        return builder.toString();
     }
 }
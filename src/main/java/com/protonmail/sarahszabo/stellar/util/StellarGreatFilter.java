@@ -46,39 +46,37 @@ public enum StellarGreatFilter {
      * @throws java.io.IOException If something went wrong
      */
     public static List<Path> convertBeginningNumbers(List<Path> paths) throws IOException {
-        String overallPattern = "\\d+\\s*[-]*\\s*.+";
-        logger.fine(paths.get(0).getFileName().toString().matches(overallPattern) + "");
         List<Path> newPaths = new ArrayList<>(paths.size());
-        //Add all paths and remove the malformed ones later
-        newPaths.addAll(paths);
         for (Path path : paths) {
             logger.fine("Original: " + path);
-            if (!path.getFileName().toString().matches(overallPattern)) {
+            String string = stripBeginningNumbers(path.getFileName().toString());
+            if (string == null) {
+                newPaths.add(path);
                 continue;
             }
-            //Remove malformed path from the list
-            newPaths.remove(path);
-            String string = path.getFileName().toString().replaceFirst("\\d+\\s*[-]*\\s*", "");
-            logger.fine("String: " + string);
-            logger.fine("Parent: " + path.getParent());
             Path newPath = StellarGravitonField.newPath(path.toAbsolutePath().getParent(), string);
-            logger.fine("New Path " + newPath);
             logger.fine("New: " + newPath);
+            //Replace the malformed path in place
             newPaths.add(newPath);
             //Avoid Test Cases
             if (Files.notExists(path)) {
                 continue;
             }
-            logger.fine("New: " + newPath);
-            logger.fine("Old: " + path);
-            logger.fine("New Exists? " + Files.exists(newPath));
-            logger.fine("Old Exists? " + Files.exists(path));
             //Move Original File to New Filename of Same Location
             Files.move(path, newPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
-            logger.fine("AFTER MOVE");
-            logger.fine("New Exists? " + Files.exists(newPath));
-            logger.fine("Old Exists? " + Files.exists(path));
         }
         return newPaths;
     }
+
+    /**
+     * Strips the numbers and hyphens from the beginning of a filename. Ex: 00
+     * - NGE.mp3 -> NGE.mp3.
+     *
+     * @param fileName The filename
+     * @return The filename without the numbers, or null if it doesn't begin
+     * with numbers
+     */
+    public static String stripBeginningNumbers(String fileName) {
+        return StellarFileNameParser.stripTrackNumber(fileName);
+    }
 }
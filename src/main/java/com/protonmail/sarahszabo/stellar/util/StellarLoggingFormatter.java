@@ -6,24 +6,36 @@
 package com.protonmail.sarahszabo.stellar.util;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
-import java.util.logging.ConsoleHandler;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+import java.util.Arrays;
 import java.util.logging.Formatter;
-import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
-import java.util.logging.StreamHandler;
 
 /**
  * Our custom formatter for logging. Produces a pleasing date-time format.
+ * Loggers made here write through the shared {@link AsyncLogHandler}
+ * pipelines.
  *
  * @author Sarah Szabo <SarahSzabo@Protonmail.com>
  */
 public final class StellarLoggingFormatter extends Formatter {
 
+    /**
+     * The {@link StellarGravitonField#FORMATTER} format, up to its seconds.
+     */
+    private static final DateTimeFormatter SECONDS_FORMATTER = new DateTimeFormatterBuilder()
+            .appendValue(ChronoField.DAY_OF_MONTH).appendLiteral("/").appendValue(ChronoField.MONTH_OF_YEAR).appendLiteral("/")
+            .appendValue(ChronoField.YEAR).appendLiteral(" -- ").appendValue(ChronoField.HOUR_OF_DAY).appendLiteral(":")
+            .appendValue(ChronoField.MINUTE_OF_HOUR).appendLiteral(":").appendValue(ChronoField.SECOND_OF_MINUTE).toFormatter();
+
     /**
      * Creates a new logger for the specified title in the preferred logger
      * format. Writes the logs to the disk. Creates the directories if they
@@ -38,13 +50,7 @@ public final class StellarLoggingFormatter extends Formatter {
     public static Logger forTitle(String title, Path filePath, Level level) throws IOException {
         Logger logger = Logger.getLogger(title);
         logger.setLevel(level);
-        Files.createDirectories(filePath.getParent());
-        if (Files.notExists(filePath)) {
-            Files.createFile(filePath);
-        }
-        Handler handler = new StreamHandler(Files.newOutputStream(filePath, StandardOpenOption.APPEND), new StellarLoggingFormatter());
-        handler.setLevel(level);
-        logger.addHandler(handler);
+        attach(logger, AsyncLogHandler.forFile(filePath));
         return logger;
     }
 
@@ -73,10 +79,7 @@ public final class StellarLoggingFormatter extends Formatter {
     public static Logger forTitle(String title, Level level) {
         Logger logger = Logger.getLogger(title);
         logger.setLevel(level);
-        Handler handler = new ConsoleHandler();
-        handler.setLevel(level);
-        handler.setFormatter(new StellarLoggingFormatter());
-        logger.addHandler(handler);
+        attach(logger, AsyncLogHandler.console());
         return logger;
     }
 
@@ -140,6 +143,32 @@ public final class StellarLoggingFormatter extends Formatter {
         return forTitle(clazz.getName());
     }
 
+    /**
+     * Attaches the pipeline to the logger, unless it is attached already. The
+     * console pipeline replaces the parent handlers, so a record is printed
+     * once however many times a logger is set up.
+     *
+     * @param logger The logger
+     * @param handler The pipeline
+     */
+    public static void attach(Logger logger, AsyncLogHandler handler) {
+        synchronized (logger) {
+            if (!Arrays.asList(logger.getHandlers()).contains(handler)) {
+                logger.addHandler(handler);
+            }
+            if (handler == AsyncLogHandler.console()) {
+                logger.setUseParentHandlers(false);
+            }
+        }
+    }
+
+    /**
+     * The epoch second of the cached timestamp, and the timestamp up to its
+     * seconds, ex: 12/3/2023 -- 14:5:9. Records arrive in bursts within the
+     * same second, so only the milliseconds usually need formatting.
+     */
+    private volatile CachedSecond cachedSecond = new CachedSecond(Long.MIN_VALUE, "");
+
     /**
      * Constructs a new formatter.
      */
@@ -148,7 +177,41 @@ public final class StellarLoggingFormatter extends Formatter {
 
     @Override
     public String format(LogRecord record) {
-        return record.getLevel() + ": " + record.getMessage() + " -- " + StellarGravitonField.generateTimestamp() + "\n\n";
+        Instant instant = record.getInstant();
+        CachedSecond cached = this.cachedSecond;
+        if (cached.epochSecond != instant.getEpochSecond()) {
+            cached = new CachedSecond(instant.getEpochSecond(), LocalDateTime.ofInstant(instant, ZoneId.systemDefault())
+                    .format(SECONDS_FORMATTER));
+            this.cachedSecond = cached;
+        }
+        return record.getLevel() + ": " + formatMessage(record) + " -- " + cached.timestamp + "."
+                + instant.get(ChronoField.MILLI_OF_SECOND) + "\n\n";
+    }
+
+    /**
+     * The timestamp of one second.
+     */
+    private static final class CachedSecond {
+
+        /**
+         * The epoch second.
+         */
+        private final long epochSecond;
+        /**
+         * The timestamp up to its seconds.
+         */
+        private final String timestamp;
+
+        /**
+         * Constructs a new {@link CachedSecond}.
+         *
+         * @param epochSecond The epoch second
+         * @param timestamp The timestamp up to its seconds
+         */
+        private CachedSecond(long epochSecond, String timestamp) {
+            this.epochSecond = epochSecond;
+            this.timestamp = timestamp;
+        }
     }
 
 }
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.util;
+
+import java.io.IOException;
+
+/**
+ * Starts the external tools Stellar depends on: ffmpeg, ffprobe, opusenc,
+ * exiftool, kid3-cli and youtube-dl. Every process Stellar launches goes
+ * through the runner set with
+ * {@link StellarGravitonField#setToolRunner(ToolRunner)}, so the tools can be
+ * swapped for a {@link SimulatedToolRunner} to load-test everything around
+ * them.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+@FunctionalInterface
+public interface ToolRunner {
+
+    /**
+     * Starts the real tools on this machine.
+     */
+    ToolRunner SYSTEM = ProcessBuilder::start;
+
+    /**
+     * Starts the process described by the builder: its command, working
+     * directory and redirects.
+     *
+     * @param builder The process builder
+     * @return The started process
+     * @throws IOException If the tool could not be started
+     */
+    Process start(ProcessBuilder builder) throws IOException;
+}
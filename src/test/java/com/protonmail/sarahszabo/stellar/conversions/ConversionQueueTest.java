@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.conversions;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public class ConversionQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public ConversionQueueTest() {
+    }
+
+    @Test
+    public void testResumeFromLastStage() throws Exception {
+        Path queues = this.folder.newFolder("Conversion Queue").toPath();
+        Path output = this.folder.newFolder("Output").toPath();
+        Path workspace = this.folder.newFolder("Workspace 1").toPath();
+        Files.writeString(workspace.resolve("Nebula.opus"), "Encoded");
+        Path finished = Files.writeString(output.resolve("Stellar.opus"), "Finished");
+        //Written by a JVM that died while recording the copy back of the second file
+        Path journal = queues.resolve("999999999-0-0.journal");
+        Files.write(journal, List.of("Stellar Conversion Queue",
+                "Q\t0\t/Library/Stellar.mp4\t" + output,
+                "Q\t1\t/Library/Nebula.mp4\t" + output,
+                "D\t0\t" + finished,
+                "S\t1\tTRANSCODE\t" + workspace + "\tNebula.opus",
+                "D\t1"), StandardCharsets.UTF_8);
+        ConversionQueue mine = ConversionQueue.create(queues, List.of(), output);
+        assertEquals(List.of(journal), ConversionQueue.findAbandoned(queues));
+
+        ConversionQueue queue = ConversionQueue.load(journal);
+        assertEquals(List.of(Path.of("/Library/Nebula.mp4")), queue.getPending());
+        List<Future<Path>> futures = queue.run();
+        assertEquals(finished, futures.get(0).get());
+        assertEquals(output.resolve("Nebula.opus"), futures.get(1).get());
+        assertEquals("Finished", Files.readString(finished));
+        assertEquals("Encoded", Files.readString(output.resolve("Nebula.opus")));
+        assertFalse(Files.exists(workspace));
+        assertFalse(Files.exists(journal));
+        assertTrue(Files.exists(mine.getJournal()));
+    }
+
+    @Test
+    public void testFailedCopyBackReleasesWorkspace() throws Exception {
+        MemoryStaging.SHM.setBudget(0);
+        TempSpaceBudget budget = TempSpaceBudget.BUDGET;
+        budget.setBudget(1000);
+        Path queues = this.folder.newFolder("Conversion Queue").toPath();
+        //Not a folder, so the copy back fails
+        Path output = this.folder.newFile("Output").toPath();
+        Path workspace = this.folder.newFolder("Workspace 1").toPath();
+        Files.write(workspace.resolve("Nebula.opus"), new byte[300]);
+        try (TempSpaceBudget.Reservation reservation = budget.reserve(800)) {
+            reservation.retain(workspace);
+        }
+        assertEquals(300, budget.getReserved());
+        Path journal = queues.resolve("999999999-0-0.journal");
+        Files.write(journal, List.of("Stellar Conversion Queue",
+                "Q\t0\t/Library/Nebula.mp4\t" + output,
+                "S\t0\tTRANSCODE\t" + workspace + "\tNebula.opus"), StandardCharsets.UTF_8);
+
+        List<Future<Path>> futures = ConversionQueue.load(journal).run();
+        try {
+            futures.get(0).get();
+            fail("The copy back should have failed");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IOException);
+        }
+        assertEquals(0, budget.getReserved());
+        assertFalse(Files.exists(workspace));
+        assertFalse(Files.exists(journal));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.conversions;
+
+import com.protonmail.sarahszabo.stellar.metadata.ConverterMetadata;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public class LibraryLedgerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public LibraryLedgerTest() {
+    }
+
+    private static ConverterMetadata metadata(int i) {
+        return new ConverterMetadata("Artist " + (i % 3), "Tïtle " + i, "Stellar OPUS Conversion Tool",
+                i == 0 ? LocalDate.MAX : LocalDate.of(2023, 4, 1).minusDays(i), Paths.get("/Music/Pictures/Cover " + i + ".png"), 120 + i);
+    }
+
+    private static void assertSameMetadata(ConverterMetadata expected, ConverterMetadata actual) {
+        assertEquals(expected.getArtist(), actual.getArtist());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getCreatedBy(), actual.getCreatedBy());
+        assertEquals(expected.getStellarIndexDate(), actual.getStellarIndexDate());
+        assertEquals(expected.getAlbumArtPath(), actual.getAlbumArtPath());
+        assertEquals(expected.getBitrate(), actual.getBitrate());
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws Exception {
+        LibraryLedger ledger = new LibraryLedger(100);
+        for (int i = 0; i < 100; i++) {
+            ledger.put(Paths.get("/Music/Artist " + (i % 3), "Song " + i + ".opus"), metadata(i));
+        }
+        Path file = this.folder.getRoot().toPath().resolve("Library Ledger.dat");
+        ledger.store(file);
+
+        LibraryLedger loaded = new LibraryLedger(0);
+        assertEquals(100, loaded.load(file));
+        assertEquals(100, loaded.size());
+        for (int i = 0; i < 100; i++) {
+            Path path = Paths.get("/Music/Artist " + (i % 3), "Song " + i + ".opus");
+            assertTrue(loaded.contains(path));
+            assertSameMetadata(metadata(i), loaded.get(path));
+        }
+        assertFalse(loaded.contains(Paths.get("/Music/Missing.opus")));
+        assertNull(loaded.get(Paths.get("/Music/Artist 0/Song 100.opus")));
+
+        //Unchanged, the mapped file is stored as is
+        Path copy = this.folder.getRoot().toPath().resolve("Copied Ledger.dat");
+        loaded.store(copy);
+        assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(copy));
+
+        //New and changed entries win over the mapped file, and are stored with it
+        Path added = Paths.get("/Music/Added.opus");
+        loaded.put(added, metadata(200));
+        loaded.put(Paths.get("/Music/Artist 1", "Song 1.opus"), metadata(201));
+        assertEquals(101, loaded.size());
+        Set<Path> files = loaded.getFiles();
+        assertEquals(101, files.size());
+        assertTrue(files.contains(added));
+        loaded.store(file);
+        LibraryLedger reloaded = new LibraryLedger(0);
+        assertEquals(101, reloaded.load(file));
+        assertSameMetadata(metadata(201), reloaded.get(Paths.get("/Music/Artist 1", "Song 1.opus")));
+    }
+
+    @Test
+    public void testJSONExportAndImport() throws Exception {
+        LibraryLedger ledger = new LibraryLedger(10);
+        for (int i = 0; i < 10; i++) {
+            ledger.put(Paths.get("/Music", "Song " + i + ".opus"), metadata(i));
+        }
+        Path json = this.folder.getRoot().toPath().resolve("Library Ledger.json");
+        ledger.exportJSON(json);
+        assertTrue(Files.readString(json).trim().startsWith("{"));
+        //A JSON ledger from an older version still loads
+        LibraryLedger loaded = new LibraryLedger(10);
+        assertEquals(10, loaded.load(json));
+        assertSameMetadata(metadata(3), loaded.get(Paths.get("/Music", "Song 3.opus")));
+    }
+
+    @Test
+    public void testInMemoryEntries() {
+        LibraryLedger ledger = new LibraryLedger(0);
+        //Enough to grow every table, titles both in and out of the file names
+        for (int i = 0; i < 5000; i++) {
+            Path path = i % 2 == 0 ? Paths.get("/Music/Artist " + (i % 7), "Artist " + (i % 7) + " -- Title " + i + ".opus")
+                    : Paths.get("Relative", "Track " + i + ".opus");
+            ledger.put(path, metadata(i));
+        }
+        assertEquals(5000, ledger.size());
+        for (int i = 0; i < 5000; i++) {
+            Path path = i % 2 == 0 ? Paths.get("/Music/Artist " + (i % 7), "Artist " + (i % 7) + " -- Title " + i + ".opus")
+                    : Paths.get("Relative", "Track " + i + ".opus");
+            assertTrue(ledger.contains(path));
+            assertSameMetadata(metadata(i), ledger.get(path));
+        }
+        assertFalse(ledger.contains(Paths.get("/Music/Artist 1")));
+        assertFalse(ledger.contains(Paths.get("/Music/Pictures/Cover 2.png")));
+        assertNull(ledger.get(Paths.get("Relative")));
+        assertTrue(ledger.getFiles().contains(Paths.get("Relative", "Track 1.opus")));
+        assertTrue(ledger.getFiles().contains(Paths.get("/Music/Artist 0", "Artist 0 -- Title 0.opus")));
+        //A title that is part of its file name
+        Path named = Paths.get("/Music/Nebula -- Stellar Wind.opus");
+        ledger.put(named, new ConverterMetadata("Nebula", "Stellar Wind", "Stellar", LocalDate.of(2023, 1, 1), Paths.get("Cover.png"), 120));
+        assertEquals("Stellar Wind", ledger.get(named).getTitle());
+        assertEquals(5001, ledger.size());
+        //Replacing keeps the size
+        ledger.put(Paths.get("Relative", "Track 1.opus"), metadata(7));
+        assertEquals(5001, ledger.size());
+        assertSameMetadata(metadata(7), ledger.get(Paths.get("Relative", "Track 1.opus")));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.conversions;
+
+import com.protonmail.sarahszabo.stellar.conversions.converters.encoders.FLACEncoder;
+import com.protonmail.sarahszabo.stellar.conversions.converters.encoders.OpusEncoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public class TempSpaceBudgetTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public TempSpaceBudgetTest() {
+    }
+
+    @Test
+    public void testEstimate() {
+        long source = 4L << 30;
+        //Ten minutes of 192K Opus and CD quality FLAC next to the staged 4GB video
+        long estimate = TempSpaceBudget.estimate(source, OptionalDouble.of(600), List.of(new OpusEncoder(192), new FLACEncoder()));
+        assertTrue(estimate > source + 600 * (24_000 + 176_400));
+        assertTrue(estimate < source + 2 * 600 * (24_000 + 176_400));
+        assertTrue(TempSpaceBudget.estimate(source, OptionalDouble.empty(), List.of(new OpusEncoder(192))) >= 2 * source);
+        assertEquals(20L << 30, TempSpaceBudget.parseSize("20G"));
+        assertEquals(512, TempSpaceBudget.parseSize("512"));
+    }
+
+    @Test
+    public void testAdmission() throws Exception {
+        MemoryStaging.SHM.setBudget(0);
+        TempSpaceBudget budget = TempSpaceBudget.BUDGET;
+        budget.setBudget(100);
+        TempSpaceBudget.Reservation first = budget.reserve(60);
+        CompletableFuture<TempSpaceBudget.Reservation> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return budget.reserve(60);
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        try {
+            second.get(200, TimeUnit.MILLISECONDS);
+            fail("Admitted past the budget");
+        } catch (TimeoutException ex) {
+            assertEquals(60, budget.getReserved());
+        }
+        first.close();
+        first.close();
+        try (TempSpaceBudget.Reservation admitted = second.get(5, TimeUnit.SECONDS)) {
+            assertEquals(60, budget.getReserved());
+        }
+        //Larger than the whole budget, let in alone rather than never
+        try (TempSpaceBudget.Reservation oversized = budget.reserve(500)) {
+            assertEquals(500, oversized.getBytes());
+        }
+        assertEquals(0, budget.getReserved());
+    }
+
+    @Test
+    public void testMemoryStagingSpill() throws Exception {
+        Path shm = this.folder.newFolder("shm").toPath();
+        System.setProperty("stellar.staging.memory.dir", shm.toString());
+        try {
+            MemoryStaging.SHM.setBudget(100);
+            long spills = MemoryStaging.SHM.getSpills();
+            try (TempSpaceBudget.Reservation resident = TempSpaceBudget.BUDGET.reserve(80)) {
+                assertTrue(resident.isInMemory());
+                assertTrue(resident.createWorkspace().startsWith(shm));
+                assertEquals(80, MemoryStaging.SHM.getReserved());
+                TempSpaceBudget.BUDGET.setBudget(1000);
+                try (TempSpaceBudget.Reservation spilled = TempSpaceBudget.BUDGET.reserve(80)) {
+                    assertFalse(spilled.isInMemory());
+                    assertEquals(spills + 1, MemoryStaging.SHM.getSpills());
+                }
+            }
+            assertEquals(0, MemoryStaging.SHM.getReserved());
+        } finally {
+            MemoryStaging.SHM.setBudget(0);
+            System.clearProperty("stellar.staging.memory.dir");
+        }
+    }
+
+    @Test
+    public void testRetainedWorkspace() throws Exception {
+        MemoryStaging.SHM.setBudget(0);
+        TempSpaceBudget budget = TempSpaceBudget.BUDGET;
+        budget.setBudget(1000);
+        Path workspace = this.folder.newFolder("Workspace").toPath();
+        Files.write(workspace.resolve("Song.opus"), new byte[300]);
+        try (TempSpaceBudget.Reservation reservation = budget.reserve(800)) {
+            //A failed copy back keeps the encoded files for the resume
+            reservation.retain(workspace);
+        }
+        //Only the bytes still on the disk stay held
+        assertEquals(300, budget.getReserved());
+        budget.releaseWorkspace(workspace);
+        assertEquals(0, budget.getReserved());
+        budget.releaseWorkspace(workspace);
+        assertEquals(0, budget.getReserved());
+    }
+}
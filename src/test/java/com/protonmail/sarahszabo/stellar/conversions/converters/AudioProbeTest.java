@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.conversions.converters;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public class AudioProbeTest {
+
+    public AudioProbeTest() {
+    }
+
+    @Test
+    public void testOpusPathChoice() {
+        assertEquals(ConversionPath.RETAG, AudioProbe.parse("codec_name=opus\nformat_name=ogg\n").getOpusPath());
+        assertEquals(ConversionPath.REMUX, AudioProbe.parse("codec_name=opus\nformat_name=matroska,webm\n").getOpusPath());
+        assertEquals(ConversionPath.TRANSCODE, AudioProbe.parse("codec_name=aac\nformat_name=mov,mp4,m4a,3gp,3g2,mj2\n").getOpusPath());
+        assertEquals(ConversionPath.TRANSCODE, AudioProbe.parse("codec_name=vorbis\nformat_name=ogg\n").getOpusPath());
+        assertEquals(ConversionPath.TRANSCODE, AudioProbe.UNKNOWN.getOpusPath());
+    }
+
+    @Test
+    public void testDuration() {
+        assertEquals(212.5, AudioProbe.parse("codec_name=opus\nformat_name=ogg\nduration=212.500000\n").getDuration().getAsDouble(), 0);
+        assertFalse(AudioProbe.parse("codec_name=opus\nformat_name=ogg\nduration=N/A\n").getDuration().isPresent());
+        assertFalse(AudioProbe.UNKNOWN.getDuration().isPresent());
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.conversions.converters;
+
+import com.protonmail.sarahszabo.stellar.util.JobContext;
+import java.io.OutputStream;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.logging.ConsoleHandler;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public class ConversionPathTest {
+
+    public ConversionPathTest() {
+    }
+
+    @Test
+    public void testJobCounts() throws Exception {
+        JobContext first = new JobContext(Paths.get("."), Map.of(), OutputStream.nullOutputStream(),
+                OutputStream.nullOutputStream(), new ConsoleHandler());
+        JobContext second = new JobContext(Paths.get("."), Map.of(), OutputStream.nullOutputStream(),
+                OutputStream.nullOutputStream(), new ConsoleHandler());
+        long total = ConversionPath.REMUX.getCount();
+        first.call(() -> {
+            ConversionPath.REMUX.record();
+            ConversionPath.REMUX.record();
+            return null;
+        });
+        assertEquals(2, (long) first.call(ConversionPath.REMUX::getRunCount));
+        assertEquals(0, (long) second.call(ConversionPath.REMUX::getRunCount));
+        assertEquals("Retagged: 0, Remuxed: 0, Transcoded: 0", second.call(ConversionPath::report));
+        assertEquals(total + 2, ConversionPath.REMUX.getCount());
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.daemon;
+
+import com.protonmail.sarahszabo.stellar.util.JobContext;
+import com.protonmail.sarahszabo.stellar.util.RegionScan;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public class StellarDaemonTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public StellarDaemonTest() {
+    }
+
+    @Test
+    public void testCommandRunsInClientDirectory() throws Exception {
+        Path root = this.folder.newFolder("Library").toPath();
+        Files.writeString(root.resolve("01 - Stellar.mp3"), "1");
+        RegionScan.plan(List.of(root), root.resolve(RegionScan.JOURNAL_NAME));
+        Path socket = this.folder.getRoot().toPath().resolve("Stellar.sock");
+
+        JobContext.routeStandardStreams();
+        CompletableFuture<Void> daemon = CompletableFuture.runAsync(() -> {
+            try {
+                StellarDaemon.DAEMON.listen(socket);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(0, send(socket, root, out, "Region-Scan", "Resume"));
+            assertTrue(out.toString(StandardCharsets.UTF_8), out.toString(StandardCharsets.UTF_8).contains("Region-Scan Renamed: 1"));
+            assertEquals("1", Files.readString(root.resolve("Stellar.mp3")));
+        } finally {
+            send(socket, root, new ByteArrayOutputStream(), "Daemon", "Stop");
+            daemon.get(10, TimeUnit.SECONDS);
+        }
+        assertFalse(Files.exists(socket));
+    }
+
+    @Test
+    public void testLongStringsRoundTrip() throws IOException {
+        //Past the 65535 byte limit of writeUTF, and not all one byte characters
+        String longArg = "☆".repeat(40_000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DaemonProtocol.writeRequest(new DataOutputStream(bytes), new DaemonProtocol.Request(
+                Path.of("/Library"), List.of("Convert", longArg), Map.of("stellar.folder", longArg)));
+        DaemonProtocol.Request request = DaemonProtocol.readRequest(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(Path.of("/Library"), request.directory);
+        assertEquals(List.of("Convert", longArg), request.args);
+        assertEquals(Map.of("stellar.folder", longArg), request.answers);
+    }
+
+    /**
+     * Sends the command to the daemon, as the client would.
+     *
+     * @param socket The daemon's socket
+     * @param directory The working directory of the command
+     * @param out Where the command's output goes
+     * @param args The command
+     * @return The exit status
+     * @throws Exception If the daemon could not be reached
+     */
+    private static int send(Path socket, Path directory, ByteArrayOutputStream out, String... args) throws Exception {
+        SocketChannel channel = null;
+        //The daemon binds on its own thread
+        for (int tries = 0; channel == null; tries++) {
+            try {
+                channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+            } catch (IOException ex) {
+                if (tries == 100) {
+                    throw ex;
+                }
+                Thread.sleep(50);
+            }
+        }
+        try (SocketChannel connected = channel) {
+            DaemonProtocol.writeRequest(new DataOutputStream(Channels.newOutputStream(connected)),
+                    new DaemonProtocol.Request(directory, List.of(args), Map.of()));
+            DataInputStream in = new DataInputStream(Channels.newInputStream(connected));
+            while (true) {
+                byte type = in.readByte();
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                if (type == DaemonProtocol.EXIT) {
+                    return ByteBuffer.wrap(payload).getInt();
+                } else if (type == DaemonProtocol.STDOUT) {
+                    out.write(payload);
+                }
+            }
+        }
+    }
+}
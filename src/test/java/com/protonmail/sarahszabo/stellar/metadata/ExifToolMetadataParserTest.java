@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.metadata;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import javax.imageio.ImageIO;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public class ExifToolMetadataParserTest {
+
+    public ExifToolMetadataParserTest() {
+    }
+
+    /**
+     * Builds the metadata without touching the generic pictures.
+     */
+    private static ConverterMetadata build(ConverterMetadataBuilder builder) {
+        return builder.albumArtPath(Paths.get("Cover.png")).buildMetadata();
+    }
+
+    @Test
+    public void testJSONMatchesLines() throws Exception {
+        byte[] image = new byte[300];
+        Arrays.fill(image, (byte) 7);
+        JsonNode entry = new ObjectMapper().readTree("{\"SourceFile\": \"/music/Artist - Song.mp4\", \"Artist\": \"Artist\","
+                + " \"Title\": 1999, \"EncoderOptions\": \"--bitrate 120k\", \"StellarIndexDate\": \"04/05/2023\","
+                + " \"Picture\": \"base64:" + Base64.getEncoder().encodeToString(image) + "\"}");
+        ConverterMetadataBuilder json = new ConverterMetadataBuilder(ConverterMetadata.getDefaultMetadata());
+        Optional<byte[]> picture = ExifToolMetadataParser.parse(entry, json);
+        assertArrayEquals(image, picture.get());
+
+        ConverterMetadataBuilder lines = new ConverterMetadataBuilder(ConverterMetadata.getDefaultMetadata());
+        assertTrue(ExifToolMetadataParser.parse(List.of("Artist                          : Artist",
+                "Title                           : 1999", "Encoder Options                 : --bitrate 120k",
+                "Stellar Index Date              : 04/05/2023", "Picture                         : (Binary data 300 bytes)"), lines));
+        ConverterMetadata fromJSON = build(json), fromLines = build(lines);
+        assertEquals(fromLines.getArtist(), fromJSON.getArtist());
+        assertEquals(fromLines.getTitle(), fromJSON.getTitle());
+        assertEquals(120, fromJSON.getBitrate());
+        assertEquals(LocalDate.of(2023, 5, 4), fromJSON.getStellarIndexDate());
+    }
+
+    @Test
+    public void testMalformedEntryFailsOnlyItsFile() throws Exception {
+        JsonNode entries = new ObjectMapper().readTree("[{\"SourceFile\": \"/music/Good.mp3\", \"Artist\": \"Good Artist\"},"
+                + " {\"SourceFile\": \"/music/Bad.mp3\", \"Artist\": \"Bad Artist\", \"StellarIndexDate\": \"Yesterday\"},"
+                + " {\"SourceFile\": \"/music/Worse.mp3\", \"EncoderOptions\": \"--bitrate fast\"},"
+                + " {\"SourceFile\": \"/music/Also Good.mp3\", \"Title\": \"Fine\"}]");
+        List<ExifToolMetadataParser.Entry> parsed = ExifToolMetadataParser.parseChunk(entries);
+        assertEquals(4, parsed.size());
+        assertEquals("Good Artist", build(parsed.get(0).getMetadata().get()).getArtist());
+        assertTrue(parsed.get(1).getFailure().isPresent());
+        assertFalse(parsed.get(1).getMetadata().isPresent());
+        assertEquals("/music/Worse.mp3", parsed.get(2).getSourceFile());
+        assertTrue(parsed.get(2).getFailure().isPresent());
+        assertEquals("Fine", build(parsed.get(3).getMetadata().get()).getTitle());
+        assertFalse(parsed.get(3).getFailure().isPresent());
+        assertTrue(ExifToolMetadataParser.parseChunk(null).isEmpty());
+    }
+
+    @Test
+    public void testCommentsAndPicture() throws Exception {
+        Path image = Files.createTempFile("Stellar Picture", ".png");
+        try {
+            byte[] data = new byte[150];
+            Arrays.fill(data, (byte) 3);
+            Files.write(image, data);
+            ConverterMetadataBuilder builder = new ConverterMetadataBuilder(ConverterMetadata.getDefaultMetadata());
+            ExifToolMetadataParser.parseComments(List.of("ARTIST=Some Artist", "TITLE=Some Title",
+                    VorbisPicture.COMMENT_NAME + "=" + VorbisPicture.toCommentValue(image)), builder);
+            ConverterMetadata metadata = build(builder);
+            assertEquals("Some Artist", metadata.getArtist());
+            assertEquals("Some Title", metadata.getTitle());
+            assertArrayEquals(data, VorbisPicture.fromCommentValue(VorbisPicture.toCommentValue(image)));
+        } finally {
+            Files.deleteIfExists(image);
+        }
+    }
+
+    @Test
+    public void testPictureSize() throws Exception {
+        Path image = Files.createTempFile("Stellar Picture", ".png");
+        try {
+            ImageIO.write(new BufferedImage(30, 20, BufferedImage.TYPE_INT_RGB), "png", image.toFile());
+            ByteBuffer block = ByteBuffer.wrap(VorbisPicture.toPictureBlock(image));
+            //Type, MIME type, empty description, then the size
+            block.position(4 + 4 + "image/png".length() + 4);
+            assertEquals(30, block.getInt());
+            assertEquals(20, block.getInt());
+        } finally {
+            Files.deleteIfExists(image);
+        }
+    }
+}
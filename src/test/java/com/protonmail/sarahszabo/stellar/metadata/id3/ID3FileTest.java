@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.metadata.id3;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public class ID3FileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public ID3FileTest() {
+    }
+
+    /**
+     * Builds a v2.3 text frame with an ISO-8859-1 body.
+     */
+    private static byte[] frameV23(String id, String text) {
+        byte[] body = text.getBytes(StandardCharsets.ISO_8859_1);
+        return ByteBuffer.allocate(11 + body.length).put(id.getBytes(StandardCharsets.ISO_8859_1))
+                .putInt(body.length + 1).putShort((short) 0).put((byte) 0).put(body).array();
+    }
+
+    /**
+     * Builds an ID3v1 tag.
+     */
+    private static byte[] tagV1(String title, String artist) {
+        byte[] tag = new byte[128];
+        System.arraycopy("TAG".getBytes(StandardCharsets.ISO_8859_1), 0, tag, 0, 3);
+        byte[] titleBytes = title.getBytes(StandardCharsets.ISO_8859_1), artistBytes = artist.getBytes(StandardCharsets.ISO_8859_1);
+        System.arraycopy(titleBytes, 0, tag, 3, titleBytes.length);
+        System.arraycopy(artistBytes, 0, tag, 33, artistBytes.length);
+        return tag;
+    }
+
+    /**
+     * Writes an .mp3 with a v2.3 tag holding the frames and the padding, the
+     * audio and optionally an ID3v1 tag.
+     */
+    private Path writeMP3(byte[] frames, int padding, byte[] audio, byte[] v1) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int size = frames.length + padding;
+        out.write(new byte[]{'I', 'D', '3', 3, 0, 0, (byte) (size >> 21 & 0x7f), (byte) (size >> 14 & 0x7f),
+            (byte) (size >> 7 & 0x7f), (byte) (size & 0x7f)});
+        out.write(frames);
+        out.write(new byte[padding]);
+        out.write(audio);
+        if (v1 != null) {
+            out.write(v1);
+        }
+        Path file = this.folder.newFile("Track.mp3").toPath();
+        Files.write(file, out.toByteArray());
+        return file;
+    }
+
+    /**
+     * Random bytes standing in for MPEG frames.
+     */
+    private static byte[] audio() {
+        byte[] audio = new byte[4096];
+        new Random(7).nextBytes(audio);
+        audio[0] = (byte) 0xff;
+        return audio;
+    }
+
+    @Test
+    public void copiesV1IntoV2AndRemovesV1() throws IOException {
+        byte[] audio = audio();
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frames.write(frameV23("TCON", "Space Rock"));
+        Path file = writeMP3(frames.toByteArray(), 0, audio, tagV1("Old Title", "Old Artist"));
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-r--r--"));
+
+        ID3File id3 = ID3File.read(file);
+        assertEquals(3, id3.getMajorVersion());
+        assertTrue(id3.hasV1Tag());
+        assertFalse(id3.hasV2Tag());
+        id3.copyV1ToV2().removeV1().write();
+
+        ID3File reread = ID3File.read(file);
+        assertEquals(4, reread.getMajorVersion());
+        assertEquals("Old Title", reread.getTitle());
+        assertEquals("Old Artist", reread.getArtist());
+        assertFalse(reread.hasV1Tag());
+        //The tag grew, so the file was replaced by a new copy
+        assertEquals("rw-r--r--", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+        byte[] bytes = Files.readAllBytes(file);
+        assertArrayEquals(audio, Arrays.copyOfRange(bytes, bytes.length - audio.length, bytes.length));
+    }
+
+    @Test
+    public void rewritesInPlaceWhenPaddingAllows() throws IOException {
+        byte[] audio = audio();
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frames.write(frameV23("TIT2", "Old Title"));
+        frames.write(frameV23("TPE1", "Old Artist"));
+        Path file = writeMP3(frames.toByteArray(), 512, audio, null);
+        long size = Files.size(file);
+
+        ID3File.read(file).setTitle("Stellar Title ☆").setArtist("Stellar Artist").write();
+
+        assertEquals(size, Files.size(file));
+        ID3File reread = ID3File.read(file);
+        assertEquals(4, reread.getMajorVersion());
+        assertEquals("Stellar Title ☆", reread.getTitle());
+        assertEquals("Stellar Artist", reread.getArtist());
+        byte[] bytes = Files.readAllBytes(file);
+        assertArrayEquals(audio, Arrays.copyOfRange(bytes, bytes.length - audio.length, bytes.length));
+    }
+
+    @Test
+    public void convertsV23DateFramesOnUpgrade() throws IOException {
+        byte[] audio = audio();
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frames.write(frameV23("TIT2", "Stellar Title"));
+        frames.write(frameV23("TYER", "1977"));
+        frames.write(frameV23("TDAT", "2505"));
+        frames.write(frameV23("TIME", "1830"));
+        frames.write(frameV23("TORY", "1976"));
+        frames.write(frameV23("TSIZ", "4096"));
+        Path file = writeMP3(frames.toByteArray(), 512, audio, null);
+
+        ID3File.read(file).upgradeTo24().write();
+
+        ID3File reread = ID3File.read(file);
+        assertEquals(4, reread.getMajorVersion());
+        assertEquals("Stellar Title", reread.getTitle());
+        assertEquals("1977-05-25T18:30", reread.getRecordingTime());
+        String tag = new String(Files.readAllBytes(file), 0, 512, StandardCharsets.ISO_8859_1);
+        assertTrue(tag.contains("TDOR"));
+        for (String dropped : new String[]{"TYER", "TDAT", "TIME", "TORY", "TSIZ"}) {
+            assertFalse(dropped, tag.contains(dropped));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.metadata.opus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public class OpusTagsRewriterTest {
+
+    private static final int SERIAL = 0x5354454c;
+
+    public OpusTagsRewriterTest() {
+    }
+
+    /**
+     * Builds a small but well formed Ogg Opus stream with three audio pages.
+     */
+    private static byte[] syntheticOpus(List<byte[]> audio) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] head = ByteBuffer.allocate(19).order(ByteOrder.LITTLE_ENDIAN).put("OpusHead".getBytes(StandardCharsets.US_ASCII))
+                .put((byte) 1).put((byte) 2).putShort((short) 312).putInt(48000).putShort((short) 0).put((byte) 0).array();
+        out.write(new OggPage(OggPage.BEGINNING_OF_STREAM, 0, SERIAL, 0, new byte[]{(byte) head.length}, head).toBytes());
+        OpusTags tags = new OpusTags("Stellar Test", List.of("TITLE=Old Title", "ARTIST=Old Artist"), new byte[0]);
+        for (OggPage page : OggPage.paginate(tags.toPacket(), SERIAL, 1, 0)) {
+            out.write(page.toBytes());
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 3; i++) {
+            byte[] data = new byte[200 + i];
+            random.nextBytes(data);
+            audio.add(data);
+            out.write(new OggPage(i == 2 ? 0x04 : 0, 960L * (i + 1), SERIAL, 2 + i, new byte[]{(byte) data.length}, data).toBytes());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Splits the stream into raw pages, checking every CRC on the way.
+     */
+    private static List<byte[]> rawPages(byte[] stream) {
+        List<byte[]> pages = new ArrayList<>();
+        int offset = 0;
+        while (offset < stream.length) {
+            int segments = stream[offset + 26] & 0xff, length = OggPage.HEADER_SIZE + segments;
+            for (int i = 0; i < segments; i++) {
+                length += stream[offset + OggPage.HEADER_SIZE + i] & 0xff;
+            }
+            byte[] page = Arrays.copyOfRange(stream, offset, offset + length);
+            int crc = ByteBuffer.wrap(page).order(ByteOrder.LITTLE_ENDIAN).getInt(22);
+            Arrays.fill(page, 22, 26, (byte) 0);
+            assertEquals("CRC of page " + pages.size(), crc, OggPage.crc(page, 0, page.length));
+            ByteBuffer.wrap(page).order(ByteOrder.LITTLE_ENDIAN).putInt(22, crc);
+            pages.add(page);
+            offset += length;
+        }
+        return pages;
+    }
+
+    private static int sequence(byte[] page) {
+        return ByteBuffer.wrap(page).order(ByteOrder.LITTLE_ENDIAN).getInt(18);
+    }
+
+    @Test
+    public void testRetagKeepsAudioBytes() throws IOException {
+        List<byte[]> audio = new ArrayList<>();
+        byte[] original = syntheticOpus(audio);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OpusTagsRewriter.rewrite(new ByteArrayInputStream(original), out,
+                tags -> tags.set("title", "New Title"), "synthetic");
+        byte[] rewritten = out.toByteArray();
+        //Same page count, so the audio pages are the identical trailing bytes
+        List<byte[]> before = rawPages(original), after = rawPages(rewritten);
+        assertEquals(before.size(), after.size());
+        for (int i = 2; i < before.size(); i++) {
+            assertArrayEquals(before.get(i), after.get(i));
+        }
+        OpusTags tags = OpusTagsRewriter.read(new ByteArrayInputStream(rewritten), "synthetic");
+        assertEquals("New Title", tags.get("TITLE").get());
+        assertEquals("Old Artist", tags.get("ARTIST").get());
+        assertEquals(2, tags.getComments().size());
+    }
+
+    @Test
+    public void testLargePictureRepaginates() throws IOException {
+        List<byte[]> audio = new ArrayList<>();
+        byte[] original = syntheticOpus(audio);
+        //Far more than the 65025 bytes a single page can hold
+        String picture = "A".repeat(200_000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OpusTagsRewriter.rewrite(new ByteArrayInputStream(original), out,
+                tags -> tags.set("METADATA_BLOCK_PICTURE", picture), "synthetic");
+        List<byte[]> pages = rawPages(out.toByteArray());
+        assertTrue(pages.size() > 5);
+        for (int i = 0; i < pages.size(); i++) {
+            assertEquals(i, sequence(pages.get(i)));
+        }
+        //Audio page bodies are untouched, only sequence numbers and CRCs moved
+        for (int i = 0; i < audio.size(); i++) {
+            byte[] page = pages.get(pages.size() - audio.size() + i);
+            assertArrayEquals(audio.get(i), Arrays.copyOfRange(page, OggPage.HEADER_SIZE + 1, page.length));
+        }
+        OpusTags tags = OpusTagsRewriter.read(new ByteArrayInputStream(out.toByteArray()), "synthetic");
+        assertEquals(picture, tags.get("METADATA_BLOCK_PICTURE").get());
+        assertEquals("Old Title", tags.get("title").get());
+    }
+
+    @Test
+    public void testRewriteKeepsPermissions() throws IOException {
+        Path file = Files.createTempFile("stellar-test", ".opus");
+        try {
+            Files.write(file, syntheticOpus(new ArrayList<>()));
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-r--r--"));
+            OpusTagsRewriter.rewrite(file, file, tags -> tags.set("title", "New Title"));
+            assertEquals("rw-r--r--", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+            assertEquals("New Title", OpusTagsRewriter.read(file).get("title").get());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+}
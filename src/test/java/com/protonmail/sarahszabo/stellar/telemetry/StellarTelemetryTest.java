@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.telemetry;
+
+import com.protonmail.sarahszabo.stellar.util.SimulatedToolRunner;
+import com.protonmail.sarahszabo.stellar.util.StellarGravitonField;
+import com.protonmail.sarahszabo.stellar.util.ToolRunner;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public class StellarTelemetryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public StellarTelemetryTest() {
+    }
+
+    @After
+    public void tearDown() {
+        StellarGravitonField.setToolRunner(ToolRunner.SYSTEM);
+    }
+
+    @Test
+    public void testToolsAndJobs() throws Exception {
+        StellarGravitonField.setToolRunner(new SimulatedToolRunner()
+                .tool("youtube-dl", new SimulatedToolRunner.Profile(0, 0, 1, 0)));
+        ToolStats stats = StellarTelemetry.TELEMETRY.getToolStats("youtube-dl");
+        long launches = stats.getLaunches(), failures = stats.getFailures();
+        Process process = StellarGravitonField.startProcess(new ProcessBuilder("youtube-dl", "--get-filename", "url"));
+        assertEquals(1, process.waitFor());
+        process.onExit().join();
+        //The exit is recorded by a callback, which may lag the exit itself
+        for (int i = 0; i < 100 && stats.getRunning() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(launches + 1, stats.getLaunches());
+        assertEquals(failures + 1, stats.getFailures());
+        assertEquals(0, stats.getRunning());
+        //Jobs are counted, and everything is published
+        long completed = StellarTelemetry.TELEMETRY.getCompletedJobs();
+        Path result = StellarTelemetry.TELEMETRY.track(() -> Paths.get("Done.opus")).call();
+        assertEquals(Paths.get("Done.opus"), result);
+        assertEquals(completed + 1, StellarTelemetry.TELEMETRY.getCompletedJobs());
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(completed + 1, server.getAttribute(new ObjectName("Stellar:type=Hyperspace"), "CompletedJobs"));
+        assertNotNull(server.getAttribute(new ObjectName("Stellar:type=Stage,name=Transcode"), "P99"));
+        assertEquals(stats.getLaunches(), server.getAttribute(new ObjectName("Stellar:type=Tool,name=youtube-dl"), "Launches"));
+    }
+
+    @Test
+    public void testFlightRecorderEvents() throws Exception {
+        StellarGravitonField.setToolRunner(new SimulatedToolRunner()
+                .tool("opusenc", new SimulatedToolRunner.Profile(60_000, 0, 0, 0)));
+        Path dump = this.folder.getRoot().toPath().resolve("Stellar.jfr");
+        this.folder.newFile("Song.opus");
+        try (Recording recording = new Recording()) {
+            recording.enable(ToolProcessEvent.class);
+            recording.enable(CacheLookupEvent.class);
+            recording.start();
+            Process probe = StellarGravitonField.startProcess(new ProcessBuilder("ffprobe", "-v", "error", "Song.opus")
+                    .directory(this.folder.getRoot()));
+            assertTrue(probe.getInputStream().readAllBytes().length > 0);
+            assertEquals(0, probe.onExit().get().exitValue());
+            //The watchdog kills a hung tool
+            Process hung = StellarGravitonField.startProcess(new ProcessBuilder("opusenc", "-", "Song.opus"));
+            hung.destroyForcibly();
+            hung.onExit().join();
+            CacheLookupEvent.record("Album Art", "Song.jpg", true);
+            //The event is committed by an exit callback, which may lag the exit itself
+            Thread.sleep(100);
+            recording.stop();
+            recording.dump(dump);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        List<RecordedEvent> tools = events.stream().filter(event -> event.getEventType().getName().equals("stellar.ToolProcess"))
+                .collect(Collectors.toList());
+        assertEquals(2, tools.size());
+        RecordedEvent probe = tools.stream().filter(event -> event.getString("tool").equals("ffprobe")).findFirst().get();
+        assertEquals("-v error Song.opus", probe.getString("arguments"));
+        assertEquals(this.folder.getRoot().toString(), probe.getString("directory"));
+        assertEquals(0, probe.getInt("exitStatus"));
+        assertTrue(probe.getLong("bytesOut") > 0);
+        assertFalse(probe.getBoolean("killed"));
+        RecordedEvent hung = tools.stream().filter(event -> event.getString("tool").equals("opusenc")).findFirst().get();
+        assertTrue(hung.getBoolean("killed"));
+        assertTrue(events.stream().anyMatch(event -> event.getEventType().getName().equals("stellar.CacheLookup")
+                && event.getBoolean("hit")));
+    }
+
+    @Test
+    public void testUnreadOutputIsRecorded() throws Exception {
+        StellarGravitonField.setToolRunner(new SimulatedToolRunner());
+        Path dump = this.folder.getRoot().toPath().resolve("Unread.jfr");
+        this.folder.newFile("Song.opus");
+        try (Recording recording = new Recording()) {
+            recording.enable(ToolProcessEvent.class);
+            recording.start();
+            //processOP pipes the output but never reads it
+            assertTrue(StellarGravitonField.processOP(false, null, this.folder.getRoot().toPath(), "ffprobe", "-v", "error", "Song.opus"));
+            //The event is committed by an exit callback, which may lag the exit itself
+            Thread.sleep(100);
+            recording.stop();
+            recording.dump(dump);
+        }
+        assertTrue(RecordingFile.readAllEvents(dump).stream().anyMatch(event -> event.getEventType().getName().equals("stellar.ToolProcess")
+                && event.getString("tool").equals("ffprobe") && event.getInt("exitStatus") == 0));
+    }
+}
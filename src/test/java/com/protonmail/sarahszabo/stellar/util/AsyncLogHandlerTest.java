@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.StreamHandler;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public class AsyncLogHandlerTest {
+
+    public AsyncLogHandlerTest() {
+    }
+
+    @Test
+    public void testWritesEveryRecordOnce() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AsyncLogHandler handler = new AsyncLogHandler(new StreamHandler(out, new StellarLoggingFormatter()), 1024, "Test");
+        Logger logger = Logger.getLogger("AsyncLogHandlerTest.once");
+        logger.setUseParentHandlers(false);
+        //Set up as many times as there are conversions, still printed once
+        for (int i = 0; i < 10; i++) {
+            StellarLoggingFormatter.attach(logger, handler);
+        }
+        assertEquals(1, logger.getHandlers().length);
+        for (int i = 0; i < 100; i++) {
+            logger.info("Converted " + i);
+        }
+        handler.flush();
+        String log = out.toString(StandardCharsets.UTF_8);
+        assertEquals(100, log.split("INFO: Converted").length - 1);
+        assertTrue(log.contains("INFO: Converted 99 -- "));
+        handler.close();
+        //Console handlers share the console pipeline
+        Logger console = Logger.getLogger("AsyncLogHandlerTest.console");
+        StellarGravitonField.toTypicalLoggerFormat(console, new ConsoleHandler());
+        StellarGravitonField.toTypicalLoggerFormat(console, new ConsoleHandler());
+        assertArrayEquals(new Handler[]{AsyncLogHandler.console()}, console.getHandlers());
+        assertFalse(console.getUseParentHandlers());
+    }
+
+    @Test
+    public void testNeverBlocksWhenFull() throws Exception {
+        CountDownLatch stalled = new CountDownLatch(1);
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        Handler slowDisk = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                written.add(record.getMessage());
+                try {
+                    stalled.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        AsyncLogHandler handler = new AsyncLogHandler(slowDisk, 16, "Slow");
+        long started = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            handler.publish(new LogRecord(Level.INFO, "Record " + i));
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started) < 5);
+        //At most a full buffer, plus the batch the writer is stuck on, got through
+        assertTrue(handler.getDropped() >= 1000 - 2 * 16 - 1);
+        stalled.countDown();
+        handler.close();
+        //The writer says how many were lost
+        assertTrue(written.contains(handler.getDropped() + " records dropped, the log buffer was full"));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.util;
+
+import com.protonmail.sarahszabo.stellar.metadata.MetadataType;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.StreamHandler;
+import java.util.stream.IntStream;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public class HeadlessPromptsTest {
+
+    public HeadlessPromptsTest() {
+    }
+
+    @After
+    public void tearDown() {
+        HeadlessPrompts.FLAGS.values().forEach(System::clearProperty);
+    }
+
+    @Test
+    public void testFlagsAnswerPrompts() {
+        String[] args = HeadlessPrompts.applyFlags(new String[]{"--headless", "-CL", "--yes",
+            "--files=A.mp4" + File.pathSeparator + "B.mkv", "--artist=Synthetic Artist", "Picture-Select", "--select=B.mkv"});
+        //The rest keeps Main's grammar
+        assertArrayEquals(new String[]{"-CL", "Picture-Select"}, args);
+        assertTrue(HeadlessPrompts.isHeadless());
+        assertTrue(StellarCLIUtils.showConfirmationDialog("Delete Original Files?"));
+        List<Path> files = StellarCLIUtils.getFilesFromClipboard().get();
+        assertEquals(List.of(Paths.get("A.mp4"), Paths.get("B.mkv")), files);
+        assertEquals(Paths.get("B.mkv"), StellarCLIUtils.selectPath(files).get());
+        Map<MetadataType, String> artistTitle = StellarCLIUtils.askUserForArtistTitle("Sine Tone");
+        assertEquals("Synthetic Artist", artistTitle.get(MetadataType.ARTIST));
+        assertEquals("Sine Tone", artistTitle.get(MetadataType.TITLE));
+    }
+
+    @Test
+    public void testPolicyWithoutFlags() {
+        HeadlessPrompts.applyFlags(new String[]{"--headless"});
+        //Never deletes anything on its own, and callers fall back to their defaults
+        assertFalse(StellarCLIUtils.showConfirmationDialog("Delete Original Files?"));
+        assertFalse(StellarCLIUtils.getFolderFor("Output Folder").isPresent());
+        assertFalse(StellarCLIUtils.getFile("Select an Image File", StellarCLIUtils.EXTENSION_FILTER.PICTURE_FILES).isPresent());
+        assertThrows(IllegalStateException.class, () -> StellarCLIUtils.getFilesFromClipboard());
+    }
+
+    @Test
+    public void testJobAnswersReachParallelStreams() throws Exception {
+        JobContext job = new JobContext(Paths.get("Job"), Map.of("stellar.confirm", "true"), OutputStream.nullOutputStream(),
+                OutputStream.nullOutputStream(), new StreamHandler());
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        //Without the job's pool these would run on common pool threads, with the process' answer of no
+        boolean confirmed = job.run(() -> IntStream.range(0, 10_000).parallel().allMatch(i -> {
+            threads.add(Thread.currentThread());
+            return HeadlessPrompts.isHeadless() && HeadlessPrompts.get("stellar.confirm").equals(Optional.of("true"));
+        }));
+        assertTrue(confirmed);
+        assertTrue(threads.stream().noneMatch(thread -> thread.getName().startsWith("ForkJoinPool.commonPool")));
+        assertFalse(JobContext.current().isPresent());
+    }
+}
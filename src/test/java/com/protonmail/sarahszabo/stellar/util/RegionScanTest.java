@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public class RegionScanTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public RegionScanTest() {
+    }
+
+    @Test
+    public void testApplyAndRollback() throws IOException {
+        Path root = this.folder.newFolder("Library").toPath();
+        Path album = Files.createDirectories(root.resolve("Album"));
+        Files.writeString(album.resolve("01 - Stellar.mp3"), "1");
+        Files.writeString(album.resolve("02 Stellar.mp3"), "2");
+        Files.writeString(album.resolve("Nebula.mp3"), "3");
+        Path journal = this.folder.getRoot().toPath().resolve(RegionScan.JOURNAL_NAME);
+
+        RegionScan scan = RegionScan.plan(List.of(root), journal);
+        assertEquals(2, scan.getRenames().size());
+        assertEquals(2, scan.apply());
+        assertEquals("1", Files.readString(album.resolve("Stellar.mp3")));
+        //Both files wanted the same name, the second gets a number instead of overwriting the first
+        assertEquals("2", Files.readString(album.resolve("Stellar (2).mp3")));
+        assertTrue(Files.exists(album.resolve("Nebula.mp3")));
+        assertTrue(RegionScan.resume(journal).getPending().isEmpty());
+
+        assertEquals(2, RegionScan.resume(journal).rollback());
+        assertEquals("1", Files.readString(album.resolve("01 - Stellar.mp3")));
+        assertEquals("2", Files.readString(album.resolve("02 Stellar.mp3")));
+        assertFalse(Files.exists(journal));
+    }
+}
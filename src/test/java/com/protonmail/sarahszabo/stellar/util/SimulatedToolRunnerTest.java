@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.util;
+
+import com.protonmail.sarahszabo.stellar.conversions.converters.AudioProbe;
+import com.protonmail.sarahszabo.stellar.conversions.converters.ConversionPath;
+import com.protonmail.sarahszabo.stellar.conversions.converters.standardformconverter.KID3Session;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public class SimulatedToolRunnerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public SimulatedToolRunnerTest() {
+    }
+
+    @After
+    public void tearDown() {
+        StellarGravitonField.setToolRunner(ToolRunner.SYSTEM);
+    }
+
+    @Test
+    public void testPipelineTools() throws IOException, InterruptedException {
+        SimulatedToolRunner runner = new SimulatedToolRunner().tool("opusenc", new SimulatedToolRunner.Profile(0, 0, 0, 1000));
+        StellarGravitonField.setToolRunner(runner);
+        Path webm = Files.createFile(folder.getRoot().toPath().resolve("Artist - Title.webm"));
+        assertEquals(ConversionPath.REMUX, AudioProbe.probe(webm).getOpusPath());
+        //Decode to stdout, encode from stdin
+        Process decoder = StellarGravitonField.startProcess(new ProcessBuilder("ffmpeg", "-i", webm.getFileName().toString(),
+                "-f", "wav", "-").directory(folder.getRoot()));
+        Process encoder = StellarGravitonField.startProcess(new ProcessBuilder("opusenc", "-", "Title.opus").directory(folder.getRoot()));
+        try (OutputStream stdin = encoder.getOutputStream()) {
+            //A WAV header and the 64KB an instant tool writes
+            assertEquals(44 + (1 << 16), decoder.getInputStream().transferTo(stdin));
+        }
+        assertEquals(0, decoder.waitFor());
+        assertEquals(0, encoder.waitFor());
+        assertEquals(1000, Files.size(folder.getRoot().toPath().resolve("Title.opus")));
+        assertEquals(1, runner.getLaunches("opusenc"));
+        //Missing inputs fail like the real tools
+        assertEquals(1, StellarGravitonField.startProcess(new ProcessBuilder("exiftool", "Missing.opus")
+                .directory(folder.getRoot())).waitFor());
+        try {
+            StellarGravitonField.startProcess(new ProcessBuilder("lame", "in.wav"));
+            fail("Unknown tools can't be started");
+        } catch (IOException ex) {
+        }
+    }
+
+    @Test
+    public void testFailuresAndDestroy() throws IOException, InterruptedException {
+        SimulatedToolRunner runner = new SimulatedToolRunner().tool("ffmpeg", new SimulatedToolRunner.Profile(0, 0, 1, 0))
+                .tool("exiftool", new SimulatedToolRunner.Profile(60_000, 0, 0, 0));
+        StellarGravitonField.setToolRunner(runner);
+        Files.createFile(folder.getRoot().toPath().resolve("in.wav"));
+        assertEquals(1, runner.start(new ProcessBuilder("ffmpeg", "-i", "in.wav", "out.opus").directory(folder.getRoot())).waitFor());
+        assertEquals(1, runner.getFailures());
+        Process slow = runner.start(new ProcessBuilder("exiftool", "in.wav").directory(folder.getRoot()));
+        assertFalse(slow.waitFor(10, TimeUnit.MILLISECONDS));
+        assertTrue(slow.isAlive());
+        slow.destroyForcibly();
+        assertFalse(slow.isAlive());
+        assertNotEquals(0, slow.exitValue());
+    }
+
+    @Test
+    public void testKID3Session() throws IOException {
+        StellarGravitonField.setToolRunner(new SimulatedToolRunner());
+        Path mp3 = Files.createFile(folder.getRoot().toPath().resolve("Artist - Title.mp3"));
+        try (KID3Session session = new KID3Session()) {
+            assertFalse(session.select(mp3).hasTag(2));
+            session.set("Title", "Title", 2).save();
+        }
+    }
+}
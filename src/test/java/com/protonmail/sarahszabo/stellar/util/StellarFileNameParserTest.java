@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.util;
+
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public class StellarFileNameParserTest {
+
+    public StellarFileNameParserTest() {
+    }
+
+    @Test
+    public void testParse() {
+        ParsedFileName parsed = StellarFileNameParser.DEFAULT.parse("01 - Stellar Artist -- Nebula (HQ 320K).mp4");
+        assertEquals("01", parsed.getTrackNumber());
+        assertEquals("Stellar Artist", parsed.getArtist());
+        assertEquals("Nebula", parsed.getTitle());
+        assertEquals("(HQ 320K)", parsed.getNoise());
+        assertEquals(".mp4", parsed.getExtension());
+
+        parsed = StellarFileNameParser.DEFAULT.parse("Stellar Artist | Nebula.opus");
+        assertEquals("Stellar Artist", parsed.getArtist());
+        assertEquals("Nebula", parsed.getTitle());
+
+        parsed = StellarFileNameParser.DEFAULT.parse("Nebula.opus");
+        assertFalse(parsed.hasTrackNumber());
+        assertFalse(parsed.hasArtistTitle());
+        assertEquals("Nebula", parsed.getName());
+        assertNull(StellarFileNameParser.stripTrackNumber("01.mp3"));
+    }
+
+    @Test
+    public void testDigitLedArtists() {
+        assertNull(StellarFileNameParser.stripTrackNumber("2Pac - Changes.mp3"));
+        assertNull(StellarFileNameParser.stripTrackNumber("10cc - Dreadlock Holiday.mp3"));
+        assertNull(StellarFileNameParser.stripTrackNumber("50 Cent - In Da Club.mp3"));
+        ParsedFileName parsed = StellarFileNameParser.DEFAULT.parse("50 Cent - In Da Club.mp3");
+        assertFalse(parsed.hasTrackNumber());
+        assertEquals("50 Cent", parsed.getArtist());
+        assertEquals("In Da Club", parsed.getTitle());
+        assertEquals("2Pac", StellarFileNameParser.DEFAULT.parse("2Pac - Changes.mp3").getArtist());
+
+        assertEquals("Artist - Title.mp3", StellarFileNameParser.stripTrackNumber("01 Artist - Title.mp3"));
+        assertEquals("Title.mp3", StellarFileNameParser.stripTrackNumber("7. Title.mp3"));
+        assertEquals("Title.mp3", StellarFileNameParser.stripTrackNumber("12 Title.mp3"));
+        assertEquals("50 Cent - In Da Club.mp3", StellarFileNameParser.stripTrackNumber("03 - 50 Cent - In Da Club.mp3"));
+    }
+
+    @Test
+    public void testDigitArtistWithoutTrackNumber() {
+        for (String[] expected : new String[][]{{"01 - Song.flac", "01", "Song"}, {"311 - Amber.mp3", "311", "Amber"},
+        {"1999 - Prince.mp4", "1999", "Prince"}}) {
+            ParsedFileName parsed = StellarFileNameParser.DEFAULT.parse(expected[0]);
+            assertFalse(expected[0], parsed.hasTrackNumber());
+            assertEquals(expected[1], parsed.getArtist());
+            assertEquals(expected[2], parsed.getTitle());
+        }
+        ParsedFileName parsed = StellarFileNameParser.DEFAULT.parse("01 - Artist - Title.flac");
+        assertEquals("01", parsed.getTrackNumber());
+        assertEquals("Artist", parsed.getArtist());
+        assertEquals("Title", parsed.getTitle());
+        assertFalse(StellarFileNameParser.DEFAULT.parse("07. Title.mp3").hasArtistTitle());
+    }
+
+    @Test
+    public void testRules() {
+        StellarFileNameParser parser = new StellarFileNameParser(List.of(
+                parsed -> parsed.withTitle(parsed.getTitle().replace("(Official Video)", "").trim())));
+        assertEquals("Nebula", parser.parse("Stellar Artist - Nebula (Official Video).webm").getTitle());
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.util;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public class StellarGravitonFieldTest {
+
+    public StellarGravitonFieldTest() {
+    }
+
+    @Test
+    public void testPreferredTitleFormat() {
+        assertEquals("Stellar Opus Converter", StellarGravitonField.preferredTitleFormat("  stellar opus converter "));
+        assertEquals("F I L E.opus", StellarGravitonField.preferredTitleFormat("f i l e.opus"));
+        assertEquals("Éclair  Über", StellarGravitonField.preferredTitleFormat("éclair  über"));
+        assertEquals("", StellarGravitonField.preferredTitleFormat(""));
+        //Idempotent, and already formatted fields come back untouched
+        String formatted = StellarGravitonField.preferredTitleFormat("nebula  -  the stars");
+        assertEquals("Nebula  -  The Stars", formatted);
+        assertSame(formatted, StellarGravitonField.preferredTitleFormat(formatted));
+    }
+}
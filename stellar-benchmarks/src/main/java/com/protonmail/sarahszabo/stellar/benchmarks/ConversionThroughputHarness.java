@@ -0,0 +1,399 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.protonmail.sarahszabo.stellar.StellarDiskManager;
+import com.protonmail.sarahszabo.stellar.conversions.MemoryStaging;
+import com.protonmail.sarahszabo.stellar.conversions.StellarHyperspace;
+import com.protonmail.sarahszabo.stellar.conversions.converters.ConversionPath;
+import com.protonmail.sarahszabo.stellar.conversions.converters.ConversionStage;
+import com.protonmail.sarahszabo.stellar.conversions.converters.StellarOPUSConverter;
+import com.protonmail.sarahszabo.stellar.conversions.converters.encoders.FLACEncoder;
+import com.protonmail.sarahszabo.stellar.conversions.converters.encoders.OpusEncoder;
+import com.protonmail.sarahszabo.stellar.util.LatencyHistogram;
+import com.protonmail.sarahszabo.stellar.util.SimulatedToolRunner;
+import com.protonmail.sarahszabo.stellar.util.StellarGravitonField;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * End to end conversion throughput on this machine. Generates synthetic media
+ * with ffmpeg's sine and noise sources (mp4, mkv, webm, wav and flac of
+ * several lengths), runs them through the conversion pipelines of the modes
+ * headlessly, and reports files per minute, CPU use, the peak size of the
+ * temporary folder and the latency percentiles of every
+ * {@link ConversionStage}. Needs ffmpeg, ffprobe, opusenc, flac and exiftool,
+ * but no network. With -simulated the tools are emulated by a
+ * {@link SimulatedToolRunner} instead, which load-tests the scheduler and
+ * everything around the tools at thousands of files in seconds. Everything
+ * happens in its own Stellar home, ex:
+ * <pre>
+ * java -cp stellar-benchmarks/target/benchmarks.jar com.protonmail.sarahszabo.stellar.benchmarks.ConversionThroughputHarness -files 40 -rff throughput.json
+ * </pre>
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class ConversionThroughputHarness {
+
+    /**
+     * The pipelines of the modes that run without asking the user anything.
+     */
+    private enum Pipeline {
+        /**
+         * A 192K .opus file per input, like Direct Link and Clipboard.
+         */
+        OPUS {
+            @Override
+            List<Future<Path>> run(List<Path> inputs) {
+                return StellarHyperspace.runConversionTasks(inputs);
+            }
+        },
+        /**
+         * A 192K .opus file and a .flac archive per input, like Clipboard
+         * Archive.
+         */
+        ARCHIVE {
+            @Override
+            List<Future<Path>> run(List<Path> inputs) {
+                return StellarHyperspace.runMultiFormatConversionTasks(inputs,
+                        List.of(new OpusEncoder(StellarOPUSConverter.DEFAULT_BITRATE), new FLACEncoder()));
+            }
+        };
+
+        /**
+         * Runs the inputs through the pipeline.
+         *
+         * @param inputs The inputs
+         * @return The future primary outputs
+         */
+        abstract List<Future<Path>> run(List<Path> inputs);
+    }
+
+    /**
+     * How a synthetic input is encoded, ffmpeg arguments after the sources.
+     */
+    private static final Map<String, List<String>> FORMATS = Map.of(
+            ".mp4", List.of("-map", "0:v", "-map", "1:a", "-c:v", "mpeg4", "-c:a", "aac", "-b:a", "192k"),
+            ".mkv", List.of("-map", "0:v", "-map", "1:a", "-c:v", "mpeg4", "-c:a", "libopus", "-b:a", "160k"),
+            ".webm", List.of("-map", "0:v", "-map", "1:a", "-c:v", "libvpx", "-c:a", "libopus", "-b:a", "160k"),
+            ".wav", List.of("-map", "1:a", "-c:a", "pcm_s16le"),
+            ".flac", List.of("-map", "1:a", "-c:a", "flac"));
+    /**
+     * The order the formats are generated in.
+     */
+    private static final List<String> FORMAT_ORDER = List.of(".mp4", ".mkv", ".webm", ".wav", ".flac");
+    /**
+     * The lengths of the synthetic inputs in seconds, all past the 30s the
+     * album art is ripped at.
+     */
+    private static final int[] LENGTHS = {40, 90, 180, 360};
+    /**
+     * How often the CPU and the temporary folder are sampled.
+     */
+    private static final long SAMPLE_MILLIS = 250;
+    /**
+     * The size of the placeholder inputs of a simulated run.
+     */
+    private static final int SIMULATED_INPUT_BYTES = 4096;
+    /**
+     * The stage percentiles reported.
+     */
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    /**
+     * Runs the harness. Options: -files N (default 20), -pipelines
+     * OPUS,ARCHIVE (default all), -dir FOLDER (default a temporary folder),
+     * -rff FILE (default Stellar Throughput.json), -simulated (emulate the
+     * tools).
+     *
+     * @param args The options
+     * @throws Exception If the harness could not run
+     */
+    public static void main(String[] args) throws Exception {
+        int files = 20;
+        List<Pipeline> pipelines = List.of(Pipeline.values());
+        Path dir = null, results = Paths.get("Stellar Throughput.json");
+        SimulatedToolRunner simulator = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-files":
+                    files = Integer.parseInt(args[++i]);
+                    break;
+                case "-pipelines":
+                    pipelines = Arrays.stream(args[++i].split(",")).map(String::trim).map(String::toUpperCase)
+                            .map(Pipeline::valueOf).toList();
+                    break;
+                case "-dir":
+                    dir = Paths.get(args[++i]);
+                    break;
+                case "-rff":
+                    results = Paths.get(args[++i]);
+                    break;
+                case "-simulated":
+                    simulator = newSimulator();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        dir = dir == null ? Files.createTempDirectory("Stellar Throughput ") : Files.createDirectories(dir);
+        //The home has to be in place before the disk manager is loaded, or it asks for folders
+        Path output = prepareHome(dir);
+        if (simulator != null) {
+            StellarGravitonField.setToolRunner(simulator);
+        }
+        List<Path> inputs = generateInputs(Files.createDirectories(dir.resolve("Inputs")), files, simulator != null);
+        long inputBytes = 0;
+        for (Path input : inputs) {
+            inputBytes += Files.size(input);
+        }
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        ObjectNode report = mapper.createObjectNode();
+        report.put("files", inputs.size()).put("inputBytes", inputBytes)
+                .put("processors", Runtime.getRuntime().availableProcessors()).put("simulated", simulator != null);
+        ArrayNode runs = report.putArray("pipelines");
+        for (Pipeline pipeline : pipelines) {
+            FileUtils.cleanDirectory(output.toFile());
+            runs.add(runPipeline(pipeline, inputs, inputBytes, runs.objectNode()));
+        }
+        StellarHyperspace.initiateFalseVacuum();
+        if (simulator != null) {
+            ObjectNode launches = report.putObject("toolLaunches");
+            for (String tool : SimulatedToolRunner.TOOLS) {
+                launches.put(tool, simulator.getLaunches(tool));
+            }
+            report.put("simulatedFailures", simulator.getFailures());
+        }
+        mapper.writeValue(results.toFile(), report);
+        System.out.println(mapper.writeValueAsString(report));
+        System.out.println("Results saved to " + results.toAbsolutePath());
+    }
+
+    /**
+     * Makes the tool emulator for -simulated runs, the tools take about a
+     * tenth of what they take on real media.
+     *
+     * @return The emulator
+     */
+    private static SimulatedToolRunner newSimulator() {
+        return new SimulatedToolRunner().tool("ffprobe", new SimulatedToolRunner.Profile(5, 1, 0, 0))
+                .tool("exiftool", new SimulatedToolRunner.Profile(15, 2, 0, 0))
+                .tool("ffmpeg", new SimulatedToolRunner.Profile(40, 10, 0, 1 << 18))
+                .tool("opusenc", new SimulatedToolRunner.Profile(30, 10, 0, 1 << 16));
+    }
+
+    /**
+     * Lays out a Stellar home in the folder, with its output, picture and
+     * Space-Bridge folders, a generic picture, and the state file so nothing
+     * is asked for, then points Stellar at it.
+     *
+     * @param dir The folder
+     * @return The output folder
+     * @throws IOException If the home could not be laid out
+     */
+    static Path prepareHome(Path dir) throws IOException {
+        Path home = dir.resolve("Home"), configuration = home.resolve("Configuration");
+        Path output = Files.createDirectories(home.resolve("Converted Files")),
+                pictures = Files.createDirectories(home.resolve("Pictures")),
+                bridge = Files.createDirectories(home.resolve("Space Bridge"));
+        BufferedImage picture = new BufferedImage(512, 512, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < 512; x++) {
+            for (int y = 0; y < 512; y++) {
+                picture.setRGB(x, y, (x * 255 / 512) << 16 | (y * 255 / 512) << 8 | 128);
+            }
+        }
+        ImageIO.write(picture, "png", Files.createDirectories(configuration.resolve("Default Pictures"))
+                .resolve("Synthetic.png").toFile());
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode state = mapper.createObjectNode().put("outputFolder", output.toAbsolutePath().toString())
+                .put("pictureOutputFolder", pictures.toAbsolutePath().toString())
+                .put("spaceBridgeDirectory", bridge.toAbsolutePath().toString());
+        mapper.writeValue(configuration.resolve("Previous State.json").toFile(), state);
+        System.setProperty("stellar.home", home.toAbsolutePath().toString());
+        return output;
+    }
+
+    /**
+     * Generates the synthetic inputs with ffmpeg, cycling through the formats
+     * and lengths, alternating between a sine tone and pink noise. Named
+     * ARTIST - TITLE so the pipelines never ask for tags. Simulated inputs are
+     * small placeholders, the emulated tools never read them.
+     *
+     * @param folder The folder to put them in
+     * @param count The number of inputs
+     * @param simulated Whether or not the tools are emulated
+     * @return The inputs
+     * @throws IOException If ffmpeg failed
+     * @throws InterruptedException If interrupted while waiting on ffmpeg
+     */
+    private static List<Path> generateInputs(Path folder, int count, boolean simulated) throws IOException, InterruptedException {
+        List<Path> inputs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String extension = FORMAT_ORDER.get(i % FORMAT_ORDER.size());
+            int seconds = LENGTHS[(i / FORMAT_ORDER.size()) % LENGTHS.length];
+            String audio = i % 2 == 0 ? "sine=frequency=" + (220 + 20 * i) + ":sample_rate=48000:duration=" + seconds
+                    : "anoisesrc=color=pink:sample_rate=48000:amplitude=0.3:duration=" + seconds;
+            Path input = folder.resolve("Synthetic Artist " + (i % 7) + " - " + (i % 2 == 0 ? "Sine" : "Noise")
+                    + " Tone " + Character.toString('A' + i % 26) + i + extension);
+            inputs.add(input);
+            if (simulated) {
+                Files.write(input, new byte[SIMULATED_INPUT_BYTES]);
+                continue;
+            }
+            List<String> command = new ArrayList<>(List.of("ffmpeg", "-v", "error", "-nostdin", "-y",
+                    "-f", "lavfi", "-i", "testsrc2=size=320x240:rate=5:duration=" + seconds, "-f", "lavfi", "-i", audio));
+            command.addAll(FORMATS.get(extension));
+            command.add(input.toString());
+            Process process = new ProcessBuilder(command).inheritIO().start();
+            if (process.waitFor() != 0) {
+                throw new IOException("ffmpeg could not generate " + input);
+            }
+        }
+        return inputs;
+    }
+
+    /**
+     * Runs the inputs through the pipeline while sampling the CPU and the
+     * temporary folder, and reports the run.
+     *
+     * @param pipeline The pipeline
+     * @param inputs The inputs
+     * @param inputBytes The total size of the inputs
+     * @param run The node to report the run in
+     * @return The report
+     * @throws Exception If the run could not be measured
+     */
+    private static ObjectNode runPipeline(Pipeline pipeline, List<Path> inputs, long inputBytes, ObjectNode run) throws Exception {
+        ConversionStage.resetAll();
+        Map<ConversionPath, Long> paths = new EnumMap<>(ConversionPath.class);
+        for (ConversionPath path : ConversionPath.values()) {
+            paths.put(path, path.getCount());
+        }
+        Path temp = StellarDiskManager.getTempDirectory();
+        long resident = MemoryStaging.SHM.getResident(), spills = MemoryStaging.SHM.getSpills();
+        var os = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        double[] cpu = new double[2];
+        long[] samples = new long[1], peakTemp = new long[1];
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                double load = os.getCpuLoad();
+                if (load >= 0) {
+                    cpu[0] += load;
+                    cpu[1] = Math.max(cpu[1], load);
+                    samples[0]++;
+                }
+                peakTemp[0] = Math.max(peakTemp[0], sizeOf(temp));
+                try {
+                    Thread.sleep(SAMPLE_MILLIS);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+        }, "Stellar Throughput Sampler");
+        long started = System.nanoTime();
+        sampler.start();
+        int failed = 0;
+        for (Future<Path> future : pipeline.run(inputs)) {
+            try {
+                future.get();
+            } catch (ExecutionException ex) {
+                failed++;
+                System.err.println(pipeline + " conversion failed: " + ex.getCause());
+            }
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        sampler.interrupt();
+        sampler.join();
+        run.put("pipeline", pipeline.name()).put("converted", inputs.size() - failed).put("failed", failed)
+                .put("seconds", seconds).put("filesPerMinute", (inputs.size() - failed) * 60 / seconds)
+                .put("inputMegabytesPerSecond", inputBytes / 1e6 / seconds)
+                .put("meanCpuLoad", samples[0] == 0 ? 0 : cpu[0] / samples[0]).put("peakCpuLoad", cpu[1])
+                .put("peakTempBytes", peakTemp[0])
+                .put("memoryStaged", MemoryStaging.SHM.getResident() - resident)
+                .put("memoryStagingSpills", MemoryStaging.SHM.getSpills() - spills)
+                .put("peakMemoryStagedBytes", MemoryStaging.SHM.getPeakReserved());
+        ObjectNode taken = run.putObject("conversionPaths");
+        for (ConversionPath path : ConversionPath.values()) {
+            taken.put(path.toString(), path.getCount() - paths.get(path));
+        }
+        ObjectNode stages = run.putObject("stageLatencyMicros");
+        for (ConversionStage stage : ConversionStage.values()) {
+            LatencyHistogram latencies = stage.getLatencies();
+            if (latencies.getCount() > 0) {
+                ObjectNode node = stages.putObject(stage.toString()).put("count", latencies.getCount())
+                        .put("mean", latencies.getMean());
+                for (double percentile : PERCENTILES) {
+                    node.put("p" + (int) percentile, latencies.getPercentile(percentile));
+                }
+                node.put("max", latencies.getMax());
+            }
+        }
+        //Workspaces of a finished run are dead weight for the next one
+        try (Stream<Path> workspaces = Files.list(temp)) {
+            workspaces.filter(path -> path.getFileName().toString().startsWith("Workspace "))
+                    .forEach(path -> FileUtils.deleteQuietly(path.toFile()));
+        }
+        return run;
+    }
+
+    /**
+     * Gets the size of every file in the folder, files vanishing while they
+     * are counted are skipped.
+     *
+     * @param folder The folder
+     * @return The size in bytes
+     */
+    private static long sizeOf(Path folder) {
+        try (Stream<Path> files = Files.walk(folder)) {
+            return files.mapToLong(file -> {
+                try {
+                    return Files.isRegularFile(file) ? Files.size(file) : 0;
+                } catch (IOException ex) {
+                    return 0;
+                }
+            }).sum();
+        } catch (IOException | UncheckedIOException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * Utility class, no instances required.
+     */
+    private ConversionThroughputHarness() {
+        throw new AssertionError("Utility Class");
+    }
+}
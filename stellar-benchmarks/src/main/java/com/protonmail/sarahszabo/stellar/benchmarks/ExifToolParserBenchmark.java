@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.benchmarks;
+
+import com.protonmail.sarahszabo.stellar.metadata.ConverterMetadata;
+import com.protonmail.sarahszabo.stellar.metadata.ConverterMetadataBuilder;
+import com.protonmail.sarahszabo.stellar.metadata.ExifToolMetadataParser;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * exiftool outputs parsed per second by {@link ExifToolMetadataParser}, the
+ * in-JVM half of StellarDiskManager.getMetadata. The output is that of a
+ * typical .opus file written by Stellar.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExifToolParserBenchmark {
+
+    /**
+     * The exiftool output.
+     */
+    private List<String> lines;
+
+    /**
+     * Sets up the exiftool output.
+     */
+    @Setup
+    public void setup() {
+        this.lines = List.of("ExifTool Version Number         : 12.40",
+                "File Name                       : Nebula.opus",
+                "Directory                       : .",
+                "File Size                       : 5.8 MiB",
+                "File Modification Date/Time     : 2023:04:01 12:00:00+00:00",
+                "File Access Date/Time           : 2023:04:01 12:00:00+00:00",
+                "File Inode Change Date/Time     : 2023:04:01 12:00:00+00:00",
+                "File Permissions                : -rw-r--r--",
+                "File Type                       : OPUS",
+                "File Type Extension             : opus",
+                "MIME Type                       : audio/ogg",
+                "Opus Version                    : 1",
+                "Audio Channels                  : 2",
+                "Sample Rate                     : 48000",
+                "Output Gain                     : 1",
+                "Vendor                          : libopus 1.3.1",
+                "Encoder                         : opusenc from opus-tools 0.2",
+                "Encoder Options                 : --bitrate 192",
+                "Title                           : Nebula: The Second Light",
+                "Artist                          : Stellar Artist",
+                "Stellar Index Date              : 01/04/2023",
+                "Created By                      : Stellar OPUS Conversion Tool",
+                "Picture MIME Type               : image/png",
+                "Picture Width                   : 1280",
+                "Picture Height                  : 720",
+                "Picture                         : (Binary data 1021394 bytes, use -b option to extract)",
+                "Duration                        : 0:04:02 (approx)");
+    }
+
+    /**
+     * Parses one exiftool output.
+     *
+     * @return The builder
+     */
+    @Benchmark
+    public ConverterMetadataBuilder parse() {
+        ConverterMetadataBuilder builder = new ConverterMetadataBuilder(ConverterMetadata.getDefaultMetadata());
+        ExifToolMetadataParser.parse(this.lines, builder);
+        return builder;
+    }
+}
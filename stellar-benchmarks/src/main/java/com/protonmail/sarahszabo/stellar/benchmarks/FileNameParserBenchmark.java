@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.benchmarks;
+
+import com.protonmail.sarahszabo.stellar.util.ParsedFileName;
+import com.protonmail.sarahszabo.stellar.util.StellarFileNameParser;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Filenames parsed per second by {@link StellarFileNameParser} against the
+ * regex chain it replaced: the track number filter of StellarGreatFilter, the
+ * (HQ) filter and the separator loop of the converters.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileNameParserBenchmark {
+
+    /**
+     * The number of names parsed per invocation.
+     */
+    private static final int NAMES = 1024;
+
+    /**
+     * The names, a mix of the shapes seen in real libraries.
+     */
+    private String[] names;
+
+    /**
+     * Generates the names.
+     */
+    @Setup
+    public void setup() {
+        String[] shapes = {"%02d - Artist %d - Title %d.mp3", "Artist %2$d -- Title %3$d (HQ 320K).mp4",
+            "Artist %2$d | Title %3$d.webm", "Title %3$d.opus", "%d Artist %d - Title %d (HQ).flac"};
+        Random random = new Random(42);
+        this.names = new String[NAMES];
+        for (int i = 0; i < NAMES; i++) {
+            this.names[i] = String.format(shapes[random.nextInt(shapes.length)], i % 100, random.nextInt(500), random.nextInt(5000));
+        }
+    }
+
+    /**
+     * The regex chain as it was before the compiled parser.
+     *
+     * @param hole The blackhole
+     */
+    @Benchmark
+    @OperationsPerInvocation(NAMES)
+    public void regexChain(Blackhole hole) {
+        for (String name : this.names) {
+            //StellarGreatFilter.convertBeginningNumbers
+            if (name.matches("\\d+\\s*[-]*\\s*.+")) {
+                name = name.replaceFirst("\\d+\\s*[-]*\\s*", "");
+            }
+            //FileExtension.stripFileExtension and StellarAudioConverter.applyFileNameFilters
+            String noExtension = name.replaceFirst("[.][^.]+$", "").replaceFirst("\\(HQ.*\\)", "").trim();
+            //StellarAudioConverter.generateMetadataFromRegex
+            String artist = "", title = "";
+            for (String separator : new String[]{"-", "|", "/"}) {
+                if (noExtension.matches(".*[" + separator + "]+.*")) {
+                    String[] split = noExtension.split(separator);
+                    artist = split[0].trim();
+                    title = split.length > 1 ? split[1].trim() : "";
+                    break;
+                }
+            }
+            hole.consume(artist);
+            hole.consume(title);
+        }
+    }
+
+    /**
+     * The compiled parser.
+     *
+     * @param hole The blackhole
+     */
+    @Benchmark
+    @OperationsPerInvocation(NAMES)
+    public void compiledParser(Blackhole hole) {
+        for (String name : this.names) {
+            ParsedFileName parsed = StellarFileNameParser.DEFAULT.parse(name);
+            hole.consume(parsed.getArtist());
+            hole.consume(parsed.getTitle());
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.benchmarks;
+
+import com.protonmail.sarahszabo.stellar.conversions.LibraryLedger;
+import com.protonmail.sarahszabo.stellar.metadata.ConverterMetadata;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to load and store the Space-Bridge {@link LibraryLedger} for libraries
+ * of different sizes, in the binary format and as the JSON it used to be.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LibraryLedgerBenchmark {
+
+    /**
+     * The number of files in the library.
+     */
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    /**
+     * The folder for the ledger files.
+     */
+    private Path folder;
+    /**
+     * The ledger file loaded by the benchmark.
+     */
+    private Path stored;
+    /**
+     * The JSON ledger file loaded by the benchmark.
+     */
+    private Path json;
+    /**
+     * The ledger stored by the benchmark.
+     */
+    private LibraryLedger ledger;
+
+    /**
+     * Generates the ledger and stores it once.
+     *
+     * @throws IOException If the ledger could not be stored
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.folder = Files.createTempDirectory("Stellar Ledger Benchmark ");
+        this.stored = this.folder.resolve("Library Ledger.dat");
+        this.ledger = new LibraryLedger(this.size);
+        LocalDate date = LocalDate.of(2023, 4, 1);
+        for (int i = 0; i < this.size; i++) {
+            this.ledger.put(Paths.get("/Music/Artist " + (i % 997), "Album " + (i % 31), "Title " + i + ".opus"),
+                    new ConverterMetadata("Artist " + (i % 997), "Title " + i, "Stellar OPUS Conversion Tool",
+                            date.minusDays(i % 3650), Paths.get("/Music/Pictures/Artist " + (i % 997) + " -- Title " + i + ".png"), 192));
+        }
+        this.ledger.store(this.stored);
+        this.json = this.folder.resolve("Library Ledger.json");
+        this.ledger.exportJSON(this.json);
+    }
+
+    /**
+     * Deletes the ledger files.
+     *
+     * @throws IOException If they could not be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.stored);
+        Files.deleteIfExists(this.folder.resolve("Stored Ledger.dat"));
+        Files.deleteIfExists(this.json);
+        Files.deleteIfExists(this.folder.resolve("Stored Ledger.json"));
+        Files.delete(this.folder);
+    }
+
+    /**
+     * Loads the ledger file.
+     *
+     * @return The loaded ledger
+     * @throws IOException If the ledger could not be read
+     */
+    @Benchmark
+    public LibraryLedger load() throws IOException {
+        LibraryLedger loaded = new LibraryLedger(this.size);
+        loaded.load(this.stored);
+        return loaded;
+    }
+
+    /**
+     * Stores the ledger file.
+     *
+     * @throws IOException If the ledger could not be written
+     */
+    @Benchmark
+    public void store() throws IOException {
+        this.ledger.store(this.folder.resolve("Stored Ledger.dat"));
+    }
+
+    /**
+     * Loads the ledger file and reads every entry, what generating the
+     * playlists costs.
+     *
+     * @return The number of entries read
+     * @throws IOException If the ledger could not be read
+     */
+    @Benchmark
+    public int loadAndReadAll() throws IOException {
+        LibraryLedger loaded = new LibraryLedger(this.size);
+        loaded.load(this.stored);
+        int read = 0;
+        for (Path file : loaded.getFiles()) {
+            read += loaded.get(file).getBitrate() > 0 ? 1 : 0;
+        }
+        return read;
+    }
+
+    /**
+     * Loads the JSON ledger file.
+     *
+     * @return The loaded ledger
+     * @throws IOException If the ledger could not be read
+     */
+    @Benchmark
+    public LibraryLedger loadJSON() throws IOException {
+        LibraryLedger loaded = new LibraryLedger(this.size);
+        loaded.importJSON(this.json);
+        return loaded;
+    }
+
+    /**
+     * Stores the ledger as JSON.
+     *
+     * @throws IOException If the ledger could not be written
+     */
+    @Benchmark
+    public void storeJSON() throws IOException {
+        this.ledger.exportJSON(this.folder.resolve("Stored Ledger.json"));
+    }
+}
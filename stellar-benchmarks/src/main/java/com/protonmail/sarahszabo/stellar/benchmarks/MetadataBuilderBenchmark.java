@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.benchmarks;
+
+import com.protonmail.sarahszabo.stellar.metadata.ConverterMetadata;
+import com.protonmail.sarahszabo.stellar.metadata.ConverterMetadataBuilder;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Metadata built per second by {@link ConverterMetadataBuilder}, the way the
+ * converters build it: from the defaults, then artist, title, date and album
+ * art. The album art is set so no generic picture has to be picked from the
+ * disk.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetadataBuilderBenchmark {
+
+    /**
+     * The album art.
+     */
+    private Path albumArt;
+    /**
+     * The index date.
+     */
+    private LocalDate date;
+
+    /**
+     * Sets up the fields.
+     */
+    @Setup
+    public void setup() {
+        this.albumArt = Paths.get("/Stellar/Pictures/Artist -- Title.png");
+        this.date = LocalDate.of(2023, 4, 1);
+    }
+
+    /**
+     * Builds one metadata.
+     *
+     * @return The metadata
+     */
+    @Benchmark
+    public ConverterMetadata buildMetadata() {
+        return new ConverterMetadataBuilder(ConverterMetadata.getDefaultMetadata()).artist("the stellar artist")
+                .title("a song about nebulae (remastered)").date(this.date).albumArtPath(this.albumArt).buildMetadata();
+    }
+}
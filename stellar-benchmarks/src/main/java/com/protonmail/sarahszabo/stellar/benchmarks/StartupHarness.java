@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Startup time of the commands that should feel instant: Status, Space-Bridge
+ * over an empty library, and a direct conversion of one file. Every run is a
+ * fresh JVM on the classpath of this one, headless, in its own Stellar home,
+ * with the tools emulated so only Stellar itself is timed. Reports the wall
+ * time of every command and the time the JVM took to reach it, which Main
+ * prints with -Dstellar.startup.report=true. With -daemon, one Stellar daemon
+ * is started first and every run is a thin client JVM sending it the command,
+ * ex:
+ * <pre>
+ * java -cp stellar-benchmarks/target/benchmarks.jar com.protonmail.sarahszabo.stellar.benchmarks.StartupHarness -runs 10 -rff startup.json
+ * </pre>
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class StartupHarness {
+
+    /**
+     * The line Main reports its startup with.
+     */
+    private static final Pattern STARTUP = Pattern.compile("Stellar Startup: (\\d+) ms");
+    /**
+     * The class of Stellar's command line.
+     */
+    private static final String MAIN = "com.protonmail.sarahszabo.stellar.Main";
+    /**
+     * The class of the daemon's thin client.
+     */
+    private static final String CLIENT = "com.protonmail.sarahszabo.stellar.daemon.StellarClient";
+
+    /**
+     * Runs the harness. Options: -runs N (default 5), -dir FOLDER (default a
+     * temporary folder), -rff FILE (default Stellar Startup.json), -windowed
+     * (don't force headless mode, JavaFX still only starts for a dialog),
+     * -daemon (time the commands through a running Stellar daemon).
+     *
+     * @param args The options
+     * @throws Exception If the harness could not run
+     */
+    public static void main(String[] args) throws Exception {
+        int runs = 5;
+        boolean headless = true, daemon = false;
+        Path dir = null, results = Paths.get("Stellar Startup.json");
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-runs":
+                    runs = Integer.parseInt(args[++i]);
+                    break;
+                case "-dir":
+                    dir = Paths.get(args[++i]);
+                    break;
+                case "-rff":
+                    results = Paths.get(args[++i]);
+                    break;
+                case "-windowed":
+                    headless = false;
+                    break;
+                case "-daemon":
+                    daemon = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        dir = dir == null ? Files.createTempDirectory("Stellar Startup ") : Files.createDirectories(dir);
+        ConversionThroughputHarness.prepareHome(dir);
+        Path home = Paths.get(System.getProperty("stellar.home"));
+        Path input = Files.write(Files.createDirectories(dir.resolve("Inputs")).resolve("Synthetic Artist - Startup Tone.mp4"),
+                new byte[4096]);
+        Map<String, List<String>> commands = new LinkedHashMap<>();
+        commands.put("Status", List.of("Status"));
+        commands.put("Space-Bridge", List.of("Space-Bridge"));
+        commands.put("Direct Conversion", List.of(input.toString()));
+        Process server = daemon ? startDaemon(home, dir) : null;
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        ObjectNode report = mapper.createObjectNode().put("runs", runs).put("headless", headless).put("daemon", daemon)
+                .put("processors", Runtime.getRuntime().availableProcessors());
+        ArrayNode timings = report.putArray("commands");
+        for (Map.Entry<String, List<String>> command : commands.entrySet()) {
+            List<Long> wall = new ArrayList<>(runs), dispatch = new ArrayList<>(runs);
+            int failed = 0;
+            for (int run = 0; run < runs; run++) {
+                long[] timing = launch(home, headless, daemon ? CLIENT : MAIN, command.getValue());
+                if (timing == null) {
+                    failed++;
+                    continue;
+                }
+                wall.add(timing[0]);
+                if (timing[1] >= 0) {
+                    dispatch.add(timing[1]);
+                }
+            }
+            ObjectNode node = timings.addObject().put("command", command.getKey()).put("failed", failed);
+            summarize(node.putObject("wallMillis"), wall);
+            summarize(node.putObject("toCommandMillis"), dispatch);
+        }
+        if (server != null) {
+            launch(home, headless, CLIENT, List.of("Daemon", "Stop"));
+            server.waitFor();
+        }
+        mapper.writeValue(results.toFile(), report);
+        System.out.println(mapper.writeValueAsString(report));
+        System.out.println("Results saved to " + results.toAbsolutePath());
+    }
+
+    /**
+     * Starts a Stellar daemon and waits until it listens.
+     *
+     * @param home The Stellar home
+     * @param dir The folder its log goes in
+     * @return The daemon
+     * @throws IOException If the JVM could not be started
+     * @throws InterruptedException If interrupted while waiting on the JVM
+     */
+    private static Process startDaemon(Path home, Path dir) throws IOException, InterruptedException {
+        Path socket = home.resolve("Configuration").resolve("Stellar.sock");
+        Files.deleteIfExists(socket);
+        Process process = new ProcessBuilder(javaCommand(home, true, MAIN, List.of("Daemon")))
+                .redirectErrorStream(true).redirectOutput(dir.resolve("Stellar Daemon.log").toFile()).start();
+        while (Files.notExists(socket)) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("The Stellar daemon exited with " + process.exitValue()
+                        + ", see " + dir.resolve("Stellar Daemon.log"));
+            }
+            Thread.sleep(10);
+        }
+        return process;
+    }
+
+    /**
+     * Builds the command line of a fresh JVM running Stellar.
+     *
+     * @param home The Stellar home
+     * @param headless Whether or not to force headless mode
+     * @param mainClass The class to run
+     * @param args The command line of Stellar
+     * @return The command line
+     */
+    private static List<String> javaCommand(Path home, boolean headless, String mainClass, List<String> args) {
+        List<String> command = new ArrayList<>(Arrays.asList(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Dstellar.home=" + home, "-Dstellar.tools=simulated", "-Dstellar.startup.report=true",
+                "-Dstellar.headless=" + headless, "-cp", System.getProperty("java.class.path"), mainClass));
+        command.addAll(args);
+        return command;
+    }
+
+    /**
+     * Runs Stellar once in a fresh JVM.
+     *
+     * @param home The Stellar home
+     * @param headless Whether or not to force headless mode
+     * @param mainClass The class to run, Main or the daemon's client
+     * @param args The command line of Stellar
+     * @return The wall time and the time to reach the command in milliseconds,
+     * the latter -1 if it wasn't reported, or null if the command failed
+     * @throws IOException If the JVM could not be started
+     * @throws InterruptedException If interrupted while waiting on the JVM
+     */
+    private static long[] launch(Path home, boolean headless, String mainClass, List<String> args)
+            throws IOException, InterruptedException {
+        List<String> command = javaCommand(home, headless, mainClass, args);
+        long started = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        String errors = new String(process.getErrorStream().readAllBytes(), StandardCharsets.UTF_8);
+        int status = process.waitFor();
+        long wall = (System.nanoTime() - started) / 1_000_000;
+        if (status != 0) {
+            System.err.println(String.join(" ", args) + " exited with " + status + ":\n" + errors);
+            return null;
+        }
+        Matcher startup = STARTUP.matcher(errors);
+        return new long[]{wall, startup.find() ? Long.parseLong(startup.group(1)) : -1};
+    }
+
+    /**
+     * Puts the minimum, median and maximum of the timings in the node.
+     *
+     * @param node The node
+     * @param millis The timings
+     */
+    private static void summarize(ObjectNode node, List<Long> millis) {
+        if (millis.isEmpty()) {
+            return;
+        }
+        Collections.sort(millis);
+        node.put("min", millis.get(0)).put("median", millis.get(millis.size() / 2)).put("max", millis.get(millis.size() - 1));
+    }
+
+    /**
+     * Utility class, no instances required.
+     */
+    private StartupHarness() {
+        throw new AssertionError("Utility Class");
+    }
+}
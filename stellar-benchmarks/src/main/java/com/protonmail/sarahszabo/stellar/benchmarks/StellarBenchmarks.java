@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.benchmarks;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the benchmarks like the JMH launcher, but writes the results as JSON
+ * unless told otherwise, so runs can be compared to find regressions. Any JMH
+ * option can be given, ex: TitleFormat -rff results.json.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+public final class StellarBenchmarks {
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args The JMH command line
+     * @throws Exception If JMH failed
+     */
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(List.of(args));
+        if (!arguments.contains("-rf")) {
+            arguments.add("-rf");
+            arguments.add("json");
+        }
+        if (!arguments.contains("-rff")) {
+            arguments.add("-rff");
+            arguments.add("Stellar Benchmarks " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH-mm-ss")) + ".json");
+        }
+        org.openjdk.jmh.Main.main(arguments.toArray(String[]::new));
+    }
+
+    /**
+     * Utility class, no instances required.
+     */
+    private StellarBenchmarks() {
+        throw new AssertionError("Utility Class");
+    }
+}
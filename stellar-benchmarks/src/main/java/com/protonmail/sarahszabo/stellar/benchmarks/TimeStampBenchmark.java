@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.benchmarks;
+
+import com.protonmail.sarahszabo.stellar.conversions.StellarFFMPEGTimeStamp;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Timestamps checked and parsed per second by {@link StellarFFMPEGTimeStamp},
+ * the way Main checks and parses the timestamp arguments.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeStampBenchmark {
+
+    /**
+     * The timestamps.
+     */
+    private String[] timestamps;
+
+    /**
+     * Sets up the timestamps.
+     */
+    @Setup
+    public void setup() {
+        this.timestamps = new String[]{"2:5:47", "5:0:0", "0:20", "0:40", "01:23:45", "59:59", "10:00:00", "3:07"};
+    }
+
+    /**
+     * Checks and parses every timestamp.
+     *
+     * @param hole The blackhole
+     */
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public void fromString(Blackhole hole) {
+        for (String timestamp : this.timestamps) {
+            if (StellarFFMPEGTimeStamp.matchesFFmpegTimestampFormat(timestamp)) {
+                hole.consume(StellarFFMPEGTimeStamp.fromString(timestamp));
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2023 Sarah Szabo <SarahSzabo@Protonmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.protonmail.sarahszabo.stellar.benchmarks;
+
+import com.protonmail.sarahszabo.stellar.util.StellarGravitonField;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Fields formatted per second by
+ * {@link StellarGravitonField#preferredTitleFormat(java.lang.String)} against
+ * the split, stream and join version it replaced. Half of the fields are
+ * already formatted, as they are when a metadata builder formats its fields
+ * again.
+ *
+ * @author Sarah Szabo <SarahSzabo@Protonmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TitleFormatBenchmark {
+
+    /**
+     * The number of fields formatted per invocation.
+     */
+    private static final int FIELDS = 1024;
+
+    /**
+     * The fields.
+     */
+    private String[] fields;
+
+    /**
+     * Generates the fields.
+     */
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        this.fields = new String[FIELDS];
+        for (int i = 0; i < FIELDS; i++) {
+            String field = "the stellar artist number " + random.nextInt(200) + " and friends";
+            this.fields[i] = i % 2 == 0 ? field : StellarGravitonField.preferredTitleFormat(field);
+        }
+    }
+
+    /**
+     * The version before the rewrite.
+     *
+     * @param hole The blackhole
+     */
+    @Benchmark
+    @OperationsPerInvocation(FIELDS)
+    public void splitStreamJoin(Blackhole hole) {
+        for (String field : this.fields) {
+            hole.consume(Stream.of(field.trim().split(" ")).map(string -> string.isEmpty() ? " " : (string.charAt(0) + "").toUpperCase()
+                    + (string.length() > 1 ? string.substring(1) : "")).collect(Collectors.joining(" ")));
+        }
+    }
+
+    /**
+     * The single pass version with its cache.
+     *
+     * @param hole The blackhole
+     */
+    @Benchmark
+    @OperationsPerInvocation(FIELDS)
+    public void preferredTitleFormat(Blackhole hole) {
+        for (String field : this.fields) {
+            hole.consume(StellarGravitonField.preferredTitleFormat(field));
+        }
+    }
+}